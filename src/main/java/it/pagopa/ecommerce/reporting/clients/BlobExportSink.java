@@ -0,0 +1,187 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Writes exported files as block blobs of a blob container, through the Blob
+ * service REST API on the shared pooled http client. Azurite can be used as a
+ * local stand-in.
+ * <p>
+ * The container is addressed by its URL with a SAS token granting write access
+ * in the query string, e.g.
+ * {@code http://127.0.0.1:10000/devstoreaccount1/reports?sv=...&sig=...}.
+ * Contents are staged as blocks of {@value #BLOCK_SIZE} bytes while they are
+ * written, so a file of any size takes a single block of memory, and the
+ * block list is only committed when the file is: until then the blob is not
+ * visible, and uncommitted blocks are discarded by the service.
+ */
+public class BlobExportSink implements ExportSink {
+
+    static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private static final String API_VERSION = "2021-08-06";
+    private static final int CREATED = 201;
+
+    private final String containerUrl;
+    private final String sasToken;
+    private final CloseableHttpClient httpClient;
+
+    public BlobExportSink(String containerSasUrl) {
+        this(containerSasUrl, HttpTransport.getInstance().getHttpClient());
+    }
+
+    BlobExportSink(
+            String containerSasUrl,
+            CloseableHttpClient httpClient
+    ) {
+        int queryStart = containerSasUrl.indexOf('?');
+        String url = queryStart >= 0 ? containerSasUrl.substring(0, queryStart) : containerSasUrl;
+        this.containerUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.sasToken = queryStart >= 0 ? containerSasUrl.substring(queryStart + 1) : "";
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public ExportFile create(String name) {
+        return new BlockBlobFile(containerUrl + "/" + encodePath(name));
+    }
+
+    private String requestUrl(
+                              String blobUrl,
+                              String query
+    ) {
+        return blobUrl + "?" + (sasToken.isEmpty() ? query : sasToken + "&" + query);
+    }
+
+    private void put(
+                     String url,
+                     byte[] body,
+                     int length,
+                     String contentType
+    ) throws IOException {
+        HttpPut httpPut = new HttpPut(url);
+        httpPut.setHeader("x-ms-version", API_VERSION);
+        if (contentType != null) {
+            httpPut.setHeader("x-ms-blob-content-type", contentType);
+        }
+        httpPut.setEntity(new ByteArrayEntity(body, 0, length));
+        // the http client is shared and pooled: only the response is closed
+        try (CloseableHttpResponse response = httpClient.execute(httpPut)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = response.getEntity() != null
+                    ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)
+                    : "";
+            if (statusCode != CREATED) {
+                throw new IOException("Blob upload failed with status " + statusCode + ": " + responseBody);
+            }
+        }
+    }
+
+    private static String encodePath(String name) {
+        return Arrays.stream(name.split("/"))
+                .map(segment -> URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20"))
+                .collect(Collectors.joining("/"));
+    }
+
+    /**
+     * A block blob staged block by block.
+     */
+    private class BlockBlobFile extends OutputStream implements ExportFile {
+
+        private final String blobUrl;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final List<String> blockIds = new ArrayList<>();
+        private int blockLength;
+        private boolean committed;
+
+        BlockBlobFile(String blobUrl) {
+            this.blobUrl = blobUrl;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this;
+        }
+
+        @Override
+        public String getLocation() {
+            return blobUrl;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (blockLength == BLOCK_SIZE) {
+                stageBlock();
+            }
+            block[blockLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(
+                          byte[] bytes,
+                          int offset,
+                          int length
+        ) throws IOException {
+            while (length > 0) {
+                if (blockLength == BLOCK_SIZE) {
+                    stageBlock();
+                }
+                int chunk = Math.min(length, BLOCK_SIZE - blockLength);
+                System.arraycopy(bytes, offset, block, blockLength, chunk);
+                blockLength += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (blockLength > 0) {
+                stageBlock();
+            }
+            StringBuilder blockList = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?><BlockList>");
+            blockIds.forEach(blockId -> blockList.append("<Latest>").append(blockId).append("</Latest>"));
+            blockList.append("</BlockList>");
+            byte[] body = blockList.toString().getBytes(StandardCharsets.UTF_8);
+            put(requestUrl(blobUrl, "comp=blocklist"), body, body.length, "text/csv");
+            committed = true;
+        }
+
+        @Override
+        public void close() {
+            // staged blocks of a file that is not committed are never made visible
+            if (!committed) {
+                blockLength = 0;
+                blockIds.clear();
+            }
+        }
+
+        private void stageBlock() throws IOException {
+            // block ids of a blob must all have the same length
+            String blockId = Base64.getEncoder()
+                    .encodeToString(String.format("block-%08d", blockIds.size()).getBytes(StandardCharsets.UTF_8));
+            put(
+                    requestUrl(blobUrl, "comp=block&blockid=" + URLEncoder.encode(blockId, StandardCharsets.UTF_8)),
+                    block,
+                    blockLength,
+                    null
+            );
+            blockIds.add(blockId);
+            blockLength = 0;
+        }
+    }
+}
@@ -1,24 +1,39 @@
 package it.pagopa.ecommerce.reporting.clients;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
 
 public class EcommerceHelpdeskServiceClient {
 
-    private static ObjectMapper objectMapper = new ObjectMapper();
+    private static final int DEFAULT_CONNECTION_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 10000;
+    private static final int NO_SAMPLING = 0;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final AtomicLong responseCounter = new AtomicLong();
     private static EcommerceHelpdeskServiceClient instance = null;
     private final Logger logger;
 
@@ -34,22 +49,188 @@ public class EcommerceHelpdeskServiceClient {
         return System.getenv("HELPDESK_SERVICE_API_ENDPOINT");
     }
 
+    private int connectionTimeout() {
+        return MapParametersUtils
+                .parsePositiveInteger(System.getenv("HELPDESK_SERVICE_CONNECTION_TIMEOUT"), DEFAULT_CONNECTION_TIMEOUT)
+                .getOrElse(DEFAULT_CONNECTION_TIMEOUT);
+    }
+
+    private int readTimeout() {
+        return MapParametersUtils
+                .parsePositiveInteger(System.getenv("HELPDESK_SERVICE_READ_TIMEOUT"), DEFAULT_READ_TIMEOUT)
+                .getOrElse(DEFAULT_READ_TIMEOUT);
+    }
+
     private EcommerceHelpdeskServiceClient(Logger logger) {
         this.logger = logger;
     }
 
-    public JsonNode fetchTransactionMetrics(
-                                            String clientId,
-                                            String pspId,
-                                            String paymentTypeCode,
-                                            OffsetDateTime startDate,
-                                            OffsetDateTime endDate
+    private int responseLogSamplingRate() {
+        return MapParametersUtils
+                .parsePositiveInteger(System.getenv("HELPDESK_SERVICE_RESPONSE_LOG_SAMPLING_RATE"), NO_SAMPLING)
+                .getOrElse(NO_SAMPLING);
+    }
+
+    /**
+     * Fetches the transaction status counts of a (client, psp, paymentTypeCode)
+     * triple over the given time range.
+     * <p>
+     * The response is parsed while it is read from the connection straight into a
+     * {@link StatusVector}, without buffering the body. The body is only buffered
+     * and logged when the logger is enabled for {@link Level#FINE} or when the
+     * response is picked by the {@code HELPDESK_SERVICE_RESPONSE_LOG_SAMPLING_RATE}
+     * sampling (one response out of N).
+     *
+     * @return the status counts, or an empty optional for invalid input, failed
+     *         requests, non-2xx responses or bodies reporting no status
+     */
+    public Optional<StatusVector> fetchTransactionMetrics(
+                                                          String clientId,
+                                                          String pspId,
+                                                          String paymentTypeCode,
+                                                          OffsetDateTime startDate,
+                                                          OffsetDateTime endDate
+    ) {
+        if (!isValidRequest(clientId, pspId, paymentTypeCode, startDate, endDate)) {
+            return Optional.empty();
+        }
+        // the pooled client is shared: only the response is closed, giving the
+        // connection back to the pool
+        HttpTransport httpTransport = HttpTransport.getInstance();
+        try {
+            CloseableHttpClient httpClient = httpTransport.getHttpClient();
+            HttpPost httpPost = createHttpPost(clientId, pspId, paymentTypeCode, startDate, endDate);
+            httpPost.setConfig(httpTransport.requestConfig(connectionTimeout(), readTimeout()));
+            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                logger.warning(() -> String.format("Response status: %d", statusCode));
+                if (!isSuccessful(statusCode)) {
+                    logResponseBody(EntityUtils.toByteArray(response.getEntity()));
+                    return Optional.empty();
+                }
+                return reportedStatuses(readStatusVector(response.getEntity()));
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to fetch transaction details", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Non-blocking variant of
+     * {@link #fetchTransactionMetrics(String, String, String, OffsetDateTime, OffsetDateTime)}.
+     * <p>
+     * The request is sent through the shared asynchronous client of
+     * {@link HttpTransport}, so no thread is held while the request is in flight.
+     * The returned future never completes exceptionally: as for the blocking
+     * variant, an empty optional is returned for invalid input or failed requests.
+     *
+     * @return a future completed with the status counts
+     */
+    public CompletableFuture<Optional<StatusVector>> fetchTransactionMetricsAsync(
+                                                                                  String clientId,
+                                                                                  String pspId,
+                                                                                  String paymentTypeCode,
+                                                                                  OffsetDateTime startDate,
+                                                                                  OffsetDateTime endDate
+    ) {
+        if (!isValidRequest(clientId, pspId, paymentTypeCode, startDate, endDate)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        try {
+            String jsonPayload = createJsonPayload(clientId, pspId, paymentTypeCode, startDate, endDate);
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(apiHost() + apiEndpoint()))
+                    .timeout(Duration.ofMillis(readTimeout()))
+                    .header("ocp-apim-subscription-key", apiKey())
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(jsonPayload, StandardCharsets.UTF_8))
+                    .build();
+            return HttpTransport.getInstance().getAsyncHttpClient()
+                    .sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> {
+                        logger.warning(() -> String.format("Response status: %d", response.statusCode()));
+                        if (!isSuccessful(response.statusCode())) {
+                            logResponseBody(response.body());
+                            return Optional.<StatusVector>empty();
+                        }
+                        try {
+                            if (shouldLogResponseBody()) {
+                                logResponseBody(response.body());
+                            }
+                            return reportedStatuses(parseStatusVector(response.body()));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .exceptionally(e -> {
+                        logger.log(Level.SEVERE, "Failed to fetch transaction details", e);
+                        return Optional.empty();
+                    });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to fetch transaction details", e);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    private static boolean isSuccessful(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * A 2xx body without any known status (e.g. an error payload returned with
+     * a success code) is not a valid answer: treating it as all-zero counts would
+     * record the window as collected with nothing in it.
+     */
+    private Optional<StatusVector> reportedStatuses(StatusVector statusVector) {
+        if (statusVector.isEmpty()) {
+            logger.warning("Response body does not report any transaction status");
+            return Optional.empty();
+        }
+        return Optional.of(statusVector);
+    }
+
+    private StatusVector readStatusVector(HttpEntity entity) throws IOException {
+        if (shouldLogResponseBody()) {
+            byte[] body = EntityUtils.toByteArray(entity);
+            logResponseBody(body);
+            return parseStatusVector(body);
+        }
+        try (InputStream content = entity.getContent(); JsonParser parser = JSON_FACTORY.createParser(content)) {
+            return StatusVector.readFrom(parser);
+        }
+    }
+
+    private StatusVector parseStatusVector(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return StatusVector.readFrom(parser);
+        }
+    }
+
+    private boolean shouldLogResponseBody() {
+        if (logger.isLoggable(Level.FINE)) {
+            return true;
+        }
+        int samplingRate = responseLogSamplingRate();
+        return samplingRate > 0 && Math.floorMod(responseCounter.getAndIncrement(), samplingRate) == 0;
+    }
+
+    private void logResponseBody(byte[] body) {
+        Level level = logger.isLoggable(Level.FINE) ? Level.FINE : Level.INFO;
+        logger.log(level, () -> "Response body: " + new String(body, StandardCharsets.UTF_8));
+    }
+
+    private boolean isValidRequest(
+                                   String clientId,
+                                   String pspId,
+                                   String paymentTypeCode,
+                                   OffsetDateTime startDate,
+                                   OffsetDateTime endDate
     ) {
         if (!isValid(clientId, "Client ID") || !isValid(pspId, "PSP ID")
                 || !isValid(paymentTypeCode, "PaymentTypeCode") || !isValid(startDate, "startDate")
                 || !isValid(endDate, "endDate") || !isValid(apiKey(), "Subscription Key")) {
             logger.warning("Invalid fields passed");
-            return objectMapper.createObjectNode();
+            return false;
         }
         logger.warning(
                 () -> String.format(
@@ -61,18 +242,7 @@ public class EcommerceHelpdeskServiceClient {
                         endDate.format(DateTimeFormatter.ISO_DATE)
                 )
         );
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = createHttpPost(clientId, pspId, paymentTypeCode, startDate, endDate);
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                logger.warning(() -> String.format("Response status: %d", response.getStatusLine().getStatusCode()));
-                logger.warning(() -> String.format(responseBody));
-                return objectMapper.readTree(responseBody);
-            }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Failed to fetch transaction details", e);
-            return objectMapper.createObjectNode();
-        }
+        return true;
     }
 
     private boolean isValid(
@@ -107,6 +277,18 @@ public class EcommerceHelpdeskServiceClient {
         HttpPost httpPost = new HttpPost(apiHost() + apiEndpoint());
         httpPost.setHeader("ocp-apim-subscription-key", apiKey());
         httpPost.setHeader("Content-Type", "application/json");
+        String jsonPayload = createJsonPayload(clientId, pspId, paymentTypeCode, startDate, endDate);
+        httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
+        return httpPost;
+    }
+
+    private String createJsonPayload(
+                                     String clientId,
+                                     String pspId,
+                                     String paymentTypeCode,
+                                     OffsetDateTime startDate,
+                                     OffsetDateTime endDate
+    ) {
         String jsonPayload = String.format(
                 "{\"clientId\":\"%s\",\"pspId\":\"%s\",\"paymentTypeCode\":\"%s\",\"timeRange\":{\"startDate\":\"%s\",\"endDate\":\"%s\"}}",
                 clientId,
@@ -116,8 +298,7 @@ public class EcommerceHelpdeskServiceClient {
                 endDate
         );
         logger.info(jsonPayload);
-        httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
-        return httpPost;
+        return jsonPayload;
     }
 
     public static EcommerceHelpdeskServiceClient getInstance(Logger logger) {
@@ -0,0 +1,62 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Destination of exported report files.
+ * <p>
+ * Files are written as streams and only become visible when committed: a file
+ * closed without being committed, e.g. because the export failed halfway, is
+ * discarded, so readers never see a truncated export.
+ */
+public interface ExportSink {
+
+    /**
+     * A file being written.
+     */
+    interface ExportFile extends Closeable {
+
+        /**
+         * @return the stream of the contents of the file
+         */
+        OutputStream getOutputStream();
+
+        /**
+         * Makes the written contents visible under the name of the file.
+         *
+         * @throws IOException if the file cannot be committed
+         */
+        void commit() throws IOException;
+
+        /**
+         * @return where the file is visible once committed
+         */
+        String getLocation();
+    }
+
+    /**
+     * Starts writing a file, replacing any committed file with the same name.
+     *
+     * @param name the name of the file, which may contain '/' separated folders
+     * @return the file to write
+     * @throws IOException if the file cannot be created
+     */
+    ExportFile create(String name) throws IOException;
+
+    /**
+     * Creates the sink of an export target: a blob container URL, with a SAS
+     * token in its query string, or a local directory.
+     *
+     * @param target the export target
+     * @return the sink of the target
+     */
+    static ExportSink fromTarget(String target) {
+        if (target.startsWith("http://") || target.startsWith("https://")) {
+            return new BlobExportSink(target);
+        }
+        return new LocalDirectoryExportSink(Path.of(target));
+    }
+}
@@ -0,0 +1,193 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Outbound HTTP layer shared by all the clients of this application.
+ * <p>
+ * A single pooled, keep-alive {@link CloseableHttpClient} is created per
+ * worker process, so consecutive requests towards the same host (APIM, Slack)
+ * reuse warm connections instead of paying a new TCP and TLS handshake every
+ * time. The pool is configured through the following environment variables:
+ * <ul>
+ * <li>{@code HTTP_CLIENT_MAX_CONNECTIONS}: max open connections overall</li>
+ * <li>{@code HTTP_CLIENT_MAX_CONNECTIONS_PER_ROUTE}: max open connections per
+ * host</li>
+ * <li>{@code HTTP_CLIENT_KEEP_ALIVE_SECONDS}: max time an idle connection is
+ * kept open</li>
+ * <li>{@code HTTP_CLIENT_CONNECTION_TIMEOUT}: default connect timeout
+ * (ms)</li>
+ * <li>{@code HTTP_CLIENT_READ_TIMEOUT}: default socket read timeout (ms)</li>
+ * <li>{@code HTTP_CLIENT_POOL_ACQUIRE_TIMEOUT}: max time to wait for a pooled
+ * connection (ms)</li>
+ * </ul>
+ * Clients must never close the shared {@link CloseableHttpClient}: they only
+ * close their responses, which gives the connection back to the pool.
+ * <p>
+ * For non-blocking calls a shared JDK {@link HttpClient} is also available
+ * through {@link #getAsyncHttpClient()}: it negotiates HTTP/2 when the server
+ * supports it, multiplexing concurrent requests over a single connection, and
+ * completes responses on the shared {@link WorkerPool} instead of holding a
+ * thread per in-flight request.
+ */
+public class HttpTransport {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 30;
+    private static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    private static final int DEFAULT_POOL_ACQUIRE_TIMEOUT_MILLIS = 2000;
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static HttpTransport instance = null;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final int poolAcquireTimeoutMillis;
+    private final RequestConfig defaultRequestConfig;
+    private final int connectionTimeoutMillis;
+    private HttpClient asyncHttpClient;
+
+    private HttpTransport() {
+        int maxConnections = getPositiveInteger("HTTP_CLIENT_MAX_CONNECTIONS", DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = getPositiveInteger(
+                "HTTP_CLIENT_MAX_CONNECTIONS_PER_ROUTE",
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE
+        );
+        long keepAliveMillis = TimeUnit.SECONDS
+                .toMillis(getPositiveInteger("HTTP_CLIENT_KEEP_ALIVE_SECONDS", DEFAULT_KEEP_ALIVE_SECONDS));
+        this.poolAcquireTimeoutMillis = getPositiveInteger(
+                "HTTP_CLIENT_POOL_ACQUIRE_TIMEOUT",
+                DEFAULT_POOL_ACQUIRE_TIMEOUT_MILLIS
+        );
+        this.connectionTimeoutMillis = getPositiveInteger(
+                "HTTP_CLIENT_CONNECTION_TIMEOUT",
+                DEFAULT_CONNECTION_TIMEOUT_MILLIS
+        );
+        this.defaultRequestConfig = requestConfig(
+                connectionTimeoutMillis,
+                getPositiveInteger("HTTP_CLIENT_READ_TIMEOUT", DEFAULT_READ_TIMEOUT_MILLIS)
+        );
+
+        this.connectionManager = new PoolingHttpClientConnectionManager(keepAliveMillis, TimeUnit.MILLISECONDS);
+        this.connectionManager.setMaxTotal(maxConnections);
+        this.connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        this.connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+
+        // honour the server keep-alive hint, capped to the configured keep-alive
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(defaultRequestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static synchronized HttpTransport getInstance() {
+        if (instance == null) {
+            instance = new HttpTransport();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the shared pooled client. The returned client must not be closed.
+     *
+     * @return the shared http client
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the shared non-blocking client, creating it on first use. The
+     * client prefers HTTP/2 and falls back to HTTP/1.1 when the server does not
+     * support it.
+     *
+     * @return the shared asynchronous http client
+     */
+    public synchronized HttpClient getAsyncHttpClient() {
+        if (asyncHttpClient == null) {
+            asyncHttpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(Duration.ofMillis(connectionTimeoutMillis))
+                    .executor(WorkerPool.getExecutor())
+                    .build();
+        }
+        return asyncHttpClient;
+    }
+
+    /**
+     * Builds a request configuration with custom connect and read timeouts and
+     * the shared pool acquire timeout.
+     *
+     * @param connectTimeoutMillis connect timeout in milliseconds
+     * @param readTimeoutMillis    socket read timeout in milliseconds
+     * @return the request configuration
+     */
+    public RequestConfig requestConfig(
+                                       int connectTimeoutMillis,
+                                       int readTimeoutMillis
+    ) {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .setConnectionRequestTimeout(poolAcquireTimeoutMillis)
+                .build();
+    }
+
+    public RequestConfig getDefaultRequestConfig() {
+        return defaultRequestConfig;
+    }
+
+    /**
+     * Returns the statistics of the whole connection pool.
+     *
+     * @return leased, pending, available and max connections of the pool
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    public String describePoolStats() {
+        PoolStats stats = getPoolStats();
+        return String.format(
+                "HTTP pool stats: leased: %d, pending: %d, available: %d, max: %d",
+                stats.getLeased(),
+                stats.getPending(),
+                stats.getAvailable(),
+                stats.getMax()
+        );
+    }
+
+    private static int getPositiveInteger(
+                                          String name,
+                                          int defaultValue
+    ) {
+        return MapParametersUtils.parsePositiveInteger(System.getenv(name), defaultValue)
+                .fold(exception -> {
+                    throw exception;
+                }, Function.identity());
+    }
+}
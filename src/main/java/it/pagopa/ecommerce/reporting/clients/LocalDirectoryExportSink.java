@@ -0,0 +1,63 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes exported files to a local directory. Each file is written next to its
+ * final path with a {@code .part} suffix and atomically renamed on commit.
+ */
+public class LocalDirectoryExportSink implements ExportSink {
+
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final Path directory;
+
+    public LocalDirectoryExportSink(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public ExportFile create(String name) throws IOException {
+        Path target = directory.resolve(name).normalize();
+        if (!target.startsWith(directory.normalize())) {
+            throw new IOException("Export file outside of the export directory: " + name);
+        }
+        Files.createDirectories(target.getParent());
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+        OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(partial));
+        return new ExportFile() {
+
+            private boolean committed;
+
+            @Override
+            public OutputStream getOutputStream() {
+                return outputStream;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                outputStream.close();
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                committed = true;
+            }
+
+            @Override
+            public String getLocation() {
+                return target.toString();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!committed) {
+                    outputStream.close();
+                    Files.deleteIfExists(partial);
+                }
+            }
+        };
+    }
+}
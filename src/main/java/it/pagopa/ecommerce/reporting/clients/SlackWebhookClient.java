@@ -10,7 +10,6 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 
 public class SlackWebhookClient {
@@ -19,6 +18,10 @@ public class SlackWebhookClient {
     private final Logger logger;
     private final HttpClientFactory httpClientFactory;
 
+    /**
+     * Provides the http client used to post messages. The returned client is
+     * not closed after use.
+     */
     public interface HttpClientFactory {
         CloseableHttpClient createHttpClient();
     }
@@ -28,7 +31,7 @@ public class SlackWebhookClient {
                 webhookEndpoint,
                 new ObjectMapper(),
                 Logger.getLogger(SlackWebhookClient.class.getName()),
-                HttpClients::createDefault
+                () -> HttpTransport.getInstance().getHttpClient()
         );
     }
 
@@ -44,39 +47,49 @@ public class SlackWebhookClient {
         this.httpClientFactory = httpClientFactory;
     }
 
-    public void postRawJsonToWebhook(String jsonPayload) {
+    /**
+     * Posts a JSON payload to the Slack webhook.
+     *
+     * @param jsonPayload the message payload
+     * @return true if Slack accepted the message with a 2xx response, false if
+     *         the payload was not sent or was rejected
+     */
+    public boolean postRawJsonToWebhook(String jsonPayload) {
         logger.info("Posting message to Slack webhook");
 
         // Check if webhook endpoint is configured
         if (webhookEndpoint == null || webhookEndpoint.isEmpty()) {
             logger.severe("ECOMMERCE_SLACK_REPORTING_WEBHOOK_ENDPOINT environment variable is not set!");
-            return;
+            return false;
         }
 
         // Validate JSON before sending
         if (!validateJsonPayload(jsonPayload)) {
             logger.severe("Invalid JSON payload provided to postRawJsonToWebhook");
-            return;
+            return false;
         }
 
-        try (CloseableHttpClient httpClient = httpClientFactory.createHttpClient()) {
-            HttpPost httpPost = new HttpPost(webhookEndpoint);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
+        // The http client is shared and pooled: only the response is closed
+        CloseableHttpClient httpClient = httpClientFactory.createHttpClient();
+        HttpPost httpPost = new HttpPost(webhookEndpoint);
+        httpPost.setHeader("Content-Type", "application/json");
+        httpPost.setEntity(new StringEntity(jsonPayload, StandardCharsets.UTF_8));
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                int statusCode = response.getStatusLine().getStatusCode();
-                logger.info("Received response with status code: " + statusCode);
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            logger.info("Received response with status code: " + statusCode);
 
-                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
 
-                // Check for Slack error responses
-                if (statusCode != 200) {
-                    logger.info("Error response from Slack: " + responseBody + ", " + jsonPayload);
-                }
+            // Check for Slack error responses
+            if (statusCode < 200 || statusCode >= 300) {
+                logger.warning("Error response from Slack: " + responseBody + ", " + jsonPayload);
+                return false;
             }
+            return true;
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error posting to Slack webhook", e);
+            return false;
         }
     }
 
@@ -94,7 +107,12 @@ public class SlackWebhookClient {
         }
     }
 
-    public void postMessageToWebhook(String message) {
-        postRawJsonToWebhook(message);
+    /**
+     * @param message the message payload
+     * @return true if Slack accepted the message
+     * @see #postRawJsonToWebhook(String)
+     */
+    public boolean postMessageToWebhook(String message) {
+        return postRawJsonToWebhook(message);
     }
 }
@@ -0,0 +1,227 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.azure.data.tables.models.TableEntity;
+
+/**
+ * Entities of the historical backfills: one row per backfill, holding its
+ * request and its progress.
+ * <p>
+ * Every backfill lives in the {@value #PARTITION_KEY} partition, with its id
+ * as RowKey. While a backfill runs, the row is its checkpoint: the start of the
+ * next hourly window to collect, saved after every chunk of windows, so a
+ * backfill interrupted by a restart resumes from its last chunk. The chunks
+ * whose windows kept failing are recorded in the row too, to be collected again
+ * by the later runs (see {@link FailedChunk}).
+ */
+public class BackfillEntity {
+
+    /**
+     * The states of a backfill.
+     */
+    public enum Status {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public static final String PARTITION_KEY = "backfill";
+
+    public static final String STATUS = "status";
+    public static final String START_DATE = "startDate";
+    public static final String END_DATE = "endDate";
+    public static final String CLIENT_ID = "clientId";
+    public static final String PAYMENT_TYPE_CODE = "paymentTypeCode";
+    public static final String PSP_ID = "pspId";
+    public static final String NEXT_WINDOW = "nextWindow";
+    public static final String ATTEMPTS = "attempts";
+    public static final String COLLECTED_WINDOWS = "collectedWindows";
+    public static final String FAILED_WINDOWS = "failedWindows";
+    public static final String FAILED_CHUNKS = "failedChunks";
+    public static final String LEASE_UNTIL = "leaseUntil";
+    public static final String ERROR = "error";
+
+    /**
+     * A chunk of windows given up after its attempts, left to later runs.
+     *
+     * @param start         The start of the first window of the chunk.
+     * @param end           The start of the last window of the chunk.
+     * @param failedWindows The number of windows of the chunk that failed.
+     * @param retries       The number of times the chunk has been collected
+     *                      again.
+     */
+    public record FailedChunk(
+            OffsetDateTime start,
+            OffsetDateTime end,
+            long failedWindows,
+            int retries
+    ) {
+
+        private static FailedChunk parse(String value) {
+            String[] fields = value.split("/");
+            return new FailedChunk(
+                    OffsetDateTime.parse(fields[0]),
+                    OffsetDateTime.parse(fields[1]),
+                    Long.parseLong(fields[2]),
+                    Integer.parseInt(fields[3])
+            );
+        }
+
+        /**
+         * @return the range of the chunk, as {@code start/end}
+         */
+        public String range() {
+            return utc(start) + "/" + utc(end);
+        }
+
+        @Override
+        public String toString() {
+            return range() + "/" + failedWindows + "/" + retries;
+        }
+    }
+
+    private BackfillEntity() {
+    }
+
+    /**
+     * Creates the row of a submitted backfill.
+     *
+     * @param backfillId      The id of the backfill.
+     * @param startDate       The inclusive start date, in UTC.
+     * @param endDate         The inclusive end date, in UTC.
+     * @param clientId        The client to collect.
+     * @param paymentTypeCode The payment type code to collect, or null for all.
+     * @param pspId           The PSP to collect, or null for all.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           String backfillId,
+                                           LocalDate startDate,
+                                           LocalDate endDate,
+                                           String clientId,
+                                           String paymentTypeCode,
+                                           String pspId
+    ) {
+        TableEntity entity = new TableEntity(PARTITION_KEY, backfillId)
+                .addProperty(STATUS, Status.PENDING.name())
+                .addProperty(START_DATE, startDate.toString())
+                .addProperty(END_DATE, endDate.toString())
+                .addProperty(CLIENT_ID, clientId)
+                .addProperty(ATTEMPTS, 0)
+                .addProperty(COLLECTED_WINDOWS, 0L)
+                .addProperty(FAILED_WINDOWS, 0L);
+        setNextWindow(entity, startDate.atStartOfDay().atOffset(ZoneOffset.UTC));
+        if (paymentTypeCode != null) {
+            entity.addProperty(PAYMENT_TYPE_CODE, paymentTypeCode);
+        }
+        if (pspId != null) {
+            entity.addProperty(PSP_ID, pspId);
+        }
+        return entity;
+    }
+
+    /**
+     * @param entity A backfill row.
+     * @return the status of the backfill
+     */
+    public static Status status(TableEntity entity) {
+        return Status.valueOf(String.valueOf(entity.getProperty(STATUS)));
+    }
+
+    /**
+     * @param entity A backfill row.
+     * @return the start of the next window to collect
+     */
+    public static OffsetDateTime nextWindow(TableEntity entity) {
+        return OffsetDateTime.parse(String.valueOf(entity.getProperty(NEXT_WINDOW)));
+    }
+
+    /**
+     * Moves the checkpoint of a backfill.
+     *
+     * @param entity     A backfill row.
+     * @param nextWindow The start of the next window to collect.
+     */
+    public static void setNextWindow(
+                                     TableEntity entity,
+                                     OffsetDateTime nextWindow
+    ) {
+        entity.addProperty(NEXT_WINDOW, utc(nextWindow));
+    }
+
+    /**
+     * @param entity A backfill row.
+     * @return the failed chunks of the backfill, in the order they were recorded
+     */
+    public static List<FailedChunk> failedChunks(TableEntity entity) {
+        Object failedChunks = entity.getProperty(FAILED_CHUNKS);
+        List<FailedChunk> chunks = new ArrayList<>();
+        if (failedChunks != null && !failedChunks.toString().isEmpty()) {
+            for (String chunk : failedChunks.toString().split(";")) {
+                chunks.add(FailedChunk.parse(chunk));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Records the failed chunks of a backfill.
+     *
+     * @param entity       A backfill row.
+     * @param failedChunks The failed chunks, replacing the recorded ones.
+     */
+    public static void setFailedChunks(
+                                       TableEntity entity,
+                                       List<FailedChunk> failedChunks
+    ) {
+        entity.addProperty(
+                FAILED_CHUNKS,
+                failedChunks.stream().map(FailedChunk::toString).collect(Collectors.joining(";"))
+        );
+    }
+
+    /**
+     * @param entity A backfill row.
+     * @return the time until which the backfill is owned by a runner, or null
+     */
+    public static OffsetDateTime leaseUntil(TableEntity entity) {
+        Object leaseUntil = entity.getProperty(LEASE_UNTIL);
+        return leaseUntil != null ? OffsetDateTime.parse(leaseUntil.toString()) : null;
+    }
+
+    /**
+     * Sets the time until which the backfill is owned by a runner.
+     *
+     * @param entity     A backfill row.
+     * @param leaseUntil The end of the lease.
+     */
+    public static void setLeaseUntil(
+                                     TableEntity entity,
+                                     OffsetDateTime leaseUntil
+    ) {
+        entity.addProperty(LEASE_UNTIL, utc(leaseUntil));
+    }
+
+    /**
+     * @param entity   A backfill row.
+     * @param property A numeric property of the row.
+     * @return the value of the property, 0 if not set
+     */
+    public static long count(
+                             TableEntity entity,
+                             String property
+    ) {
+        return entity.getProperty(property) instanceof Number count ? count.longValue() : 0;
+    }
+
+    private static String utc(OffsetDateTime dateTime) {
+        return dateTime.withOffsetSameInstant(ZoneOffset.UTC).toString();
+    }
+}
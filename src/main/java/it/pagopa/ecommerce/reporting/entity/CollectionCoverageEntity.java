@@ -0,0 +1,211 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import com.azure.data.tables.models.TableEntity;
+
+/**
+ * Entities of the collection coverage index: the hourly windows of a day
+ * whose metrics have been collected for a (client, paymentTypeCode, psp)
+ * triple, as a bitmask where bit {@code h} is set once the window starting at
+ * {@code h:00} UTC is stored.
+ * <p>
+ * The PartitionKey is the client, so the coverage of a client over a look-back
+ * period is read with a single range query and updated with entity group
+ * transactions. The RowKey is {@code yyyy-MM-dd|paymentTypeCode|pspId}.
+ * A collected window without any transaction has no {@link StateMetricEntity}
+ * row: its bit is the only record of it, and its counts are zero.
+ * <p>
+ * Collected windows whose transactions were still largely in progress are also
+ * flagged in the {@value #UNSETTLED} bitmask: each of them has a
+ * {@link Settling} property with the hash of its last counts and the time of
+ * its next poll.
+ */
+public class CollectionCoverageEntity {
+
+    public static final String HOURS = "hours";
+    public static final String UNSETTLED = "unsettled";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_DATE;
+    private static final String ROW_KEY_SEPARATOR = "|";
+    private static final String SETTLING_PREFIX = "settling";
+    private static final String SETTLING_SEPARATOR = "|";
+
+    /**
+     * The polling state of an unsettled window.
+     *
+     * @param statusHash the hash of the counts of the last poll, see
+     *                   {@link StateMetricEntity#statusHash(TableEntity)}
+     * @param repolls    the number of polls after the first one
+     * @param nextPoll   the time from which the window is polled again
+     */
+    public record Settling(
+            long statusHash,
+            int repolls,
+            OffsetDateTime nextPoll
+    ) {
+    }
+
+    /**
+     * Creates the coverage row of a triple for a day.
+     *
+     * @param clientId        The client ID.
+     * @param date            The UTC day of the windows.
+     * @param paymentTypeCode The payment type code or name.
+     * @param pspId           The PSP ID or name.
+     * @param hours           The bitmask of the collected windows.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           String clientId,
+                                           LocalDate date,
+                                           String paymentTypeCode,
+                                           String pspId,
+                                           int hours
+    ) {
+        return new TableEntity(clientId, rowKey(date, paymentTypeCode, pspId))
+                .addProperty(HOURS, hours);
+    }
+
+    /**
+     * @param date            The UTC day of the windows.
+     * @param paymentTypeCode The payment type code or name.
+     * @param pspId           The PSP ID or name.
+     * @return the RowKey of the coverage of the triple for the day
+     */
+    public static String rowKey(
+                                LocalDate date,
+                                String paymentTypeCode,
+                                String pspId
+    ) {
+        return String.join(ROW_KEY_SEPARATOR, date.format(DATE_FORMATTER), paymentTypeCode, pspId);
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @return the UTC day of the windows of the row
+     */
+    public static LocalDate date(TableEntity entity) {
+        return LocalDate.parse(rowKeyParts(entity)[0], DATE_FORMATTER);
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @return the payment type code of the row
+     */
+    public static String paymentTypeCode(TableEntity entity) {
+        return rowKeyParts(entity)[1];
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @return the PSP ID of the row
+     */
+    public static String pspId(TableEntity entity) {
+        return rowKeyParts(entity)[2];
+    }
+
+    /**
+     * @param windowStart The start of an hourly window.
+     * @return the RowKey date of the window
+     */
+    public static LocalDate day(OffsetDateTime windowStart) {
+        return windowStart.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * @param windowStart The start of an hourly window.
+     * @return the bit of the window in the bitmask of its day
+     */
+    public static int hourBit(OffsetDateTime windowStart) {
+        return 1 << hour(windowStart);
+    }
+
+    /**
+     * @param windowStart The start of an hourly window.
+     * @return the UTC hour of the window
+     */
+    public static int hour(OffsetDateTime windowStart) {
+        return windowStart.withOffsetSameInstant(ZoneOffset.UTC).getHour();
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @return the bitmask of the collected windows, 0 if not set
+     */
+    public static int hours(TableEntity entity) {
+        return entity.getProperty(HOURS) instanceof Number hours ? hours.intValue() : 0;
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @return the bitmask of the unsettled windows, 0 if not set
+     */
+    public static int unsettled(TableEntity entity) {
+        return entity.getProperty(UNSETTLED) instanceof Number unsettled ? unsettled.intValue() : 0;
+    }
+
+    /**
+     * @param entity A coverage row.
+     * @param hour   The UTC hour of a window.
+     * @return the polling state of the window, or null if it is not unsettled
+     */
+    public static Settling settling(
+                                    TableEntity entity,
+                                    int hour
+    ) {
+        Object settling = entity.getProperty(SETTLING_PREFIX + hour);
+        if ((unsettled(entity) & (1 << hour)) == 0 || settling == null) {
+            return null;
+        }
+        String[] fields = settling.toString().split("\\" + SETTLING_SEPARATOR);
+        return new Settling(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), OffsetDateTime.parse(fields[2]));
+    }
+
+    /**
+     * Flags a window as unsettled.
+     *
+     * @param entity   A coverage row.
+     * @param hour     The UTC hour of the window.
+     * @param settling The polling state of the window.
+     */
+    public static void setSettling(
+                                   TableEntity entity,
+                                   int hour,
+                                   Settling settling
+    ) {
+        entity.addProperty(UNSETTLED, unsettled(entity) | (1 << hour));
+        entity.addProperty(
+                SETTLING_PREFIX + hour,
+                String.join(
+                        SETTLING_SEPARATOR,
+                        Long.toString(settling.statusHash()),
+                        Integer.toString(settling.repolls()),
+                        settling.nextPoll().withOffsetSameInstant(ZoneOffset.UTC).toString()
+                )
+        );
+    }
+
+    /**
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @return the RowKey filter of the coverage rows of the days
+     */
+    public static String rowKeyRangeFilter(
+                                           LocalDate startDate,
+                                           LocalDate endDate
+    ) {
+        return String.format(
+                "RowKey ge '%s' and RowKey lt '%s'",
+                startDate.format(DATE_FORMATTER),
+                endDate.plusDays(1).format(DATE_FORMATTER)
+        );
+    }
+
+    private static String[] rowKeyParts(TableEntity entity) {
+        return entity.getRowKey().split("\\" + ROW_KEY_SEPARATOR, 3);
+    }
+}
@@ -0,0 +1,152 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+/**
+ * Entities of the daily aggregate cache: the status counts of a whole day for
+ * each (client, paymentTypeCode, psp) triple, summed from the hourly
+ * {@link StateMetricEntity} rows of the day.
+ * <p>
+ * The PartitionKey is the date, as for the hourly rows. Every RowKey starts
+ * with the schema version, so rows written with a different layout of the
+ * status fields are never read back. Each cached day has a manifest row, whose
+ * RowKey is the version prefix alone: it is written after the groups and
+ * records the latest hourly row included in them.
+ */
+public class DailyAggregateEntity {
+
+    /**
+     * Version of the cached rows. Groups store raw status counts, so only a
+     * change of {@link StatusStorageFields} requires a new version; a change of
+     * the category mapping does not.
+     */
+    public static final int SCHEMA_VERSION = 1;
+
+    public static final String WATERMARK = "watermark";
+    public static final String GROUPS = "groups";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_DATE;
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final String ROW_KEY_SEPARATOR = "|";
+    private static final String ROW_KEY_PREFIX = "v" + SCHEMA_VERSION + ROW_KEY_SEPARATOR;
+
+    /**
+     * Creates the cached row of a group.
+     *
+     * @param date  The aggregated day.
+     * @param group The counts of a (client, paymentTypeCode, psp) triple.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           LocalDate date,
+                                           AggregatedStatusGroup group
+    ) {
+        TableEntity entity = new TableEntity(
+                partitionKey(date),
+                ROW_KEY_PREFIX + String.join(
+                        ROW_KEY_SEPARATOR,
+                        group.getClientId(),
+                        group.getPaymentTypeCode(),
+                        group.getPspId()
+                )
+        )
+                .addProperty("clientId", group.getClientId())
+                .addProperty("paymentTypeCode", group.getPaymentTypeCode())
+                .addProperty("pspId", group.getPspId());
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            long count = group.getStatusCount(i);
+            if (count != 0) {
+                entity.addProperty(StatusStorageFields.values.get(i), count);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Creates the manifest row of a cached day.
+     *
+     * @param date      The aggregated day.
+     * @param watermark The Timestamp of the latest hourly row included in the
+     *                  cached groups, or null if the day has no rows.
+     * @param groups    The number of cached groups.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createManifest(
+                                             LocalDate date,
+                                             OffsetDateTime watermark,
+                                             int groups
+    ) {
+        TableEntity entity = new TableEntity(partitionKey(date), ROW_KEY_PREFIX)
+                .addProperty(GROUPS, groups);
+        if (watermark != null) {
+            entity.addProperty(WATERMARK, watermark.withOffsetSameInstant(ZoneOffset.UTC).format(TIMESTAMP_FORMATTER));
+        }
+        return entity;
+    }
+
+    /**
+     * Reads back a cached group.
+     *
+     * @param entity A cached group row.
+     * @return the group, dated with the PartitionKey of the row
+     */
+    public static AggregatedStatusGroup toGroup(TableEntity entity) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(
+                entity.getPartitionKey(),
+                String.valueOf(entity.getProperty("clientId")),
+                String.valueOf(entity.getProperty("pspId")),
+                String.valueOf(entity.getProperty("paymentTypeCode"))
+        );
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                group.addStatus(i, count.longValue());
+            }
+        }
+        return group;
+    }
+
+    /**
+     * @param entity A manifest row.
+     * @return the watermark of the cached day, or null if the day had no rows
+     */
+    public static OffsetDateTime watermark(TableEntity entity) {
+        Object watermark = entity.getProperty(WATERMARK);
+        return watermark != null ? OffsetDateTime.parse(watermark.toString(), TIMESTAMP_FORMATTER) : null;
+    }
+
+    /**
+     * @param entity A row of the cache table.
+     * @return true if the row is the manifest of its day
+     */
+    public static boolean isManifest(TableEntity entity) {
+        return ROW_KEY_PREFIX.equals(entity.getRowKey());
+    }
+
+    /**
+     * @param date The aggregated day.
+     * @return the PartitionKey of the cached rows of the day
+     */
+    public static String partitionKey(LocalDate date) {
+        return date.format(DATE_FORMATTER);
+    }
+
+    /**
+     * @return the filter matching the cached rows of the current version,
+     *         manifest included
+     */
+    public static String rowKeyFilter() {
+        // '}' is the character following the separator, bounding the prefix
+        return String.format(
+                "RowKey ge '%s' and RowKey lt 'v%d}'",
+                ROW_KEY_PREFIX,
+                SCHEMA_VERSION
+        );
+    }
+}
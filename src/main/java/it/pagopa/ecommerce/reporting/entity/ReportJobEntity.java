@@ -0,0 +1,164 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.azure.data.tables.models.TableEntity;
+
+/**
+ * Entities of the report jobs: one row per job, holding its request, its
+ * progress and, once completed, its result.
+ * <p>
+ * Every job lives in the {@value #PARTITION_KEY} partition, with its id as
+ * RowKey. While a job runs, the row is its checkpoint: the continuation token
+ * of the next page of the range query and the groups aggregated so far, saved
+ * together after every slice, so a job interrupted by a restart resumes from
+ * its last slice. Groups are stored as JSON, split in chunks of
+ * {@value #STATE_CHUNK_LENGTH} characters to fit the size limit of string
+ * properties.
+ */
+public class ReportJobEntity {
+
+    /**
+     * The states of a job.
+     */
+    public enum Status {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    public static final String PARTITION_KEY = "reportJob";
+
+    public static final String STATUS = "status";
+    public static final String START_DATE = "startDate";
+    public static final String END_DATE = "endDate";
+    public static final String GROUPING = "grouping";
+    public static final String CONTINUATION_TOKEN = "continuationToken";
+    public static final String SLICES = "slices";
+    public static final String LEASE_UNTIL = "leaseUntil";
+    public static final String ERROR = "error";
+    public static final String STATE_CHUNKS = "stateChunks";
+
+    /**
+     * Max length of a state chunk: string properties hold up to 64KiB of UTF-16.
+     */
+    static final int STATE_CHUNK_LENGTH = 32_000;
+
+    /**
+     * Max number of state chunks, keeping the row under the 1MiB entity limit.
+     */
+    static final int MAX_STATE_CHUNKS = 15;
+
+    private static final String STATE_PREFIX = "state";
+
+    private ReportJobEntity() {
+    }
+
+    /**
+     * Creates the row of a submitted job.
+     *
+     * @param jobId     The id of the job.
+     * @param startDate The inclusive start date of the report.
+     * @param endDate   The inclusive end date of the report.
+     * @param grouping  The comma-separated dimensions of the report.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           String jobId,
+                                           LocalDate startDate,
+                                           LocalDate endDate,
+                                           String grouping
+    ) {
+        return new TableEntity(PARTITION_KEY, jobId)
+                .addProperty(STATUS, Status.PENDING.name())
+                .addProperty(START_DATE, startDate.toString())
+                .addProperty(END_DATE, endDate.toString())
+                .addProperty(GROUPING, grouping)
+                .addProperty(SLICES, 0L)
+                .addProperty(STATE_CHUNKS, 0);
+    }
+
+    /**
+     * @param entity A job row.
+     * @return the status of the job
+     */
+    public static Status status(TableEntity entity) {
+        return Status.valueOf(String.valueOf(entity.getProperty(STATUS)));
+    }
+
+    /**
+     * @param entity A job row.
+     * @return the time until which the job is owned by a runner, or null
+     */
+    public static OffsetDateTime leaseUntil(TableEntity entity) {
+        Object leaseUntil = entity.getProperty(LEASE_UNTIL);
+        return leaseUntil != null ? OffsetDateTime.parse(leaseUntil.toString()) : null;
+    }
+
+    /**
+     * Sets the time until which the job is owned by a runner.
+     *
+     * @param entity     A job row.
+     * @param leaseUntil The end of the lease.
+     */
+    public static void setLeaseUntil(
+                                     TableEntity entity,
+                                     OffsetDateTime leaseUntil
+    ) {
+        entity.addProperty(LEASE_UNTIL, leaseUntil.withOffsetSameInstant(ZoneOffset.UTC).toString());
+    }
+
+    /**
+     * Reads the groups aggregated so far.
+     *
+     * @param entity A job row.
+     * @return the JSON of the groups, or null if none has been stored
+     */
+    public static String state(TableEntity entity) {
+        int chunks = entity.getProperty(STATE_CHUNKS) instanceof Number count ? count.intValue() : 0;
+        if (chunks == 0) {
+            return null;
+        }
+        StringBuilder state = new StringBuilder();
+        for (int i = 0; i < chunks; i++) {
+            state.append(entity.getProperty(STATE_PREFIX + i));
+        }
+        return state.toString();
+    }
+
+    /**
+     * Replaces the groups aggregated so far.
+     *
+     * @param entity A job row.
+     * @param state  The JSON of the groups.
+     * @throws IllegalArgumentException if the state does not fit a row
+     */
+    public static void setState(
+                                TableEntity entity,
+                                String state
+    ) {
+        List<String> chunks = new ArrayList<>();
+        for (int start = 0; start < state.length(); start += STATE_CHUNK_LENGTH) {
+            chunks.add(state.substring(start, Math.min(state.length(), start + STATE_CHUNK_LENGTH)));
+        }
+        if (chunks.size() > MAX_STATE_CHUNKS) {
+            throw new IllegalArgumentException(
+                    "Report too large to be stored: " + state.length() + " characters"
+            );
+        }
+        int previousChunks = entity.getProperty(STATE_CHUNKS) instanceof Number count ? count.intValue() : 0;
+        // chunks past the new count are never read, they are only emptied
+        for (int i = chunks.size(); i < previousChunks; i++) {
+            entity.addProperty(STATE_PREFIX + i, "");
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            entity.addProperty(STATE_PREFIX + i, chunks.get(i));
+        }
+        entity.addProperty(STATE_CHUNKS, chunks.size());
+    }
+}
@@ -0,0 +1,136 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+/**
+ * Entities of the report snapshots: the status counts of each (client,
+ * paymentTypeCode) pair over a reported period, stored by the report of the
+ * period so that the report of the following period can compare against them.
+ * <p>
+ * The PartitionKey is the period, e.g. {@code 2025-09-15_2025-09-21}. As for
+ * {@link DailyAggregateEntity}, every RowKey starts with the schema version and
+ * each snapshot has a manifest row, written after the groups, whose RowKey is
+ * the version prefix alone.
+ */
+public class ReportSnapshotEntity {
+
+    /**
+     * Version of the snapshot rows, see {@link DailyAggregateEntity#SCHEMA_VERSION}.
+     */
+    public static final int SCHEMA_VERSION = 1;
+
+    public static final String GROUPS = "groups";
+
+    private static final String PERIOD_SEPARATOR = "_";
+    private static final String ROW_KEY_SEPARATOR = "|";
+    private static final String ROW_KEY_PREFIX = "v" + SCHEMA_VERSION + ROW_KEY_SEPARATOR;
+
+    /**
+     * Creates the snapshot row of a group.
+     *
+     * @param startDate The inclusive start date of the period.
+     * @param endDate   The inclusive end date of the period.
+     * @param group     The counts of a (client, paymentTypeCode) pair.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           LocalDate startDate,
+                                           LocalDate endDate,
+                                           AggregatedStatusGroup group
+    ) {
+        TableEntity entity = new TableEntity(
+                partitionKey(startDate, endDate),
+                ROW_KEY_PREFIX + String.join(ROW_KEY_SEPARATOR, group.getClientId(), group.getPaymentTypeCode())
+        )
+                .addProperty("clientId", group.getClientId())
+                .addProperty("paymentTypeCode", group.getPaymentTypeCode());
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            long count = group.getStatusCount(i);
+            if (count != 0) {
+                entity.addProperty(StatusStorageFields.values.get(i), count);
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Creates the manifest row of a snapshot.
+     *
+     * @param startDate The inclusive start date of the period.
+     * @param endDate   The inclusive end date of the period.
+     * @param groups    The number of stored groups.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createManifest(
+                                             LocalDate startDate,
+                                             LocalDate endDate,
+                                             int groups
+    ) {
+        return new TableEntity(partitionKey(startDate, endDate), ROW_KEY_PREFIX)
+                .addProperty(GROUPS, groups);
+    }
+
+    /**
+     * Reads back a snapshot group.
+     *
+     * @param entity A snapshot group row.
+     * @return the group of the (client, paymentTypeCode) pair
+     */
+    public static AggregatedStatusGroup toGroup(TableEntity entity) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(
+                null,
+                String.valueOf(entity.getProperty("clientId")),
+                null,
+                String.valueOf(entity.getProperty("paymentTypeCode"))
+        );
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                group.addStatus(i, count.longValue());
+            }
+        }
+        return group;
+    }
+
+    /**
+     * @param entity A row of the snapshot table.
+     * @return true if the row is the manifest of its period
+     */
+    public static boolean isManifest(TableEntity entity) {
+        return ROW_KEY_PREFIX.equals(entity.getRowKey());
+    }
+
+    /**
+     * @param startDate The inclusive start date of the period.
+     * @param endDate   The inclusive end date of the period.
+     * @return the PartitionKey of the snapshot of the period
+     */
+    public static String partitionKey(
+                                      LocalDate startDate,
+                                      LocalDate endDate
+    ) {
+        return startDate + PERIOD_SEPARATOR + endDate;
+    }
+
+    /**
+     * @param startDate The inclusive start date of the period.
+     * @param endDate   The inclusive end date of the period.
+     * @return the filter matching the rows of the snapshot of the period in the
+     *         current version, manifest included
+     */
+    public static String filter(
+                                LocalDate startDate,
+                                LocalDate endDate
+    ) {
+        // '}' is the character following the separator, bounding the prefix
+        return String.format(
+                "PartitionKey eq '%s' and RowKey ge '%s' and RowKey lt 'v%d}'",
+                partitionKey(startDate, endDate),
+                ROW_KEY_PREFIX,
+                SCHEMA_VERSION
+        );
+    }
+}
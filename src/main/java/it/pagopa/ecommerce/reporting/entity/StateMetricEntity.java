@@ -1,49 +1,437 @@
 package it.pagopa.ecommerce.reporting.entity;
 
-import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
-import java.util.Map;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import it.pagopa.ecommerce.reporting.utils.StatusVectorCodec;
 
+/**
+ * Entities of the hourly metrics, stored with one of two layouts sharing the
+ * date PartitionKey:
+ * <ul>
+ * <li>narrow rows, one per (client, paymentTypeCode, psp, window), with a
+ * property per status;</li>
+ * <li>wide rows, one per (client, window), holding the vectors of every pair
+ * packed in the {@value #VECTORS} property by {@link StatusVectorCodec}. Their
+ * RowKey is the {@code clientId|yyyy-MM-ddTHH|} prefix of the narrow rows of
+ * the window.</li>
+ * </ul>
+ * Readers go through {@link #forEachRow(TableEntity, Consumer)}, which expands
+ * wide rows into the equivalent narrow ones, so both layouts can be read from
+ * the same table. Narrow rows folded into a wide row are deleted only after
+ * the wide row is written, so scans go through a {@link RowReader}, which skips
+ * the narrow rows whose RowKey is already packed in the wide row of their
+ * window.
+ */
 public class StateMetricEntity {
 
     // PartitionKey format: yyyy-MM-dd (ISO)
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_DATE;
     private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    // window part of the RowKey: yyyy-MM-ddTHH (UTC)
+    private static final DateTimeFormatter WINDOW_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+    private static final String ROW_KEY_SEPARATOR = "|";
+
+    public static final String WINDOW_START = "windowStart";
+    public static final String VECTORS = "vectors";
+    public static final int NO_WINDOW_HOUR = -1;
+
+    // max size of a binary property in Table Storage
+    private static final int MAX_VECTORS_BYTES = 64 * 1024;
 
     /**
-     * Creates a metric entity to store in Azure Table Storage.
+     * Creates a metric entity to store in Azure Table Storage from a status
+     * vector. Only the statuses set in the vector are added as properties.
+     * <p>
+     * Keys are derived from the collected window, so writing the metrics of the
+     * same window twice targets the same entity: the PartitionKey is the UTC
+     * date of the window and the RowKey is built by
+     * {@link #rowKey(String, String, String, OffsetDateTime)}.
      *
-     * @param date            The date of the metric (used as PartitionKey, no
-     *                        time).
+     * @param windowStart     The start of the collected window.
      * @param clientId        The client ID.
      * @param paymentTypeCode The payment type code or name.
      * @param pspId           The PSP ID or name.
-     * @param statusCounts    A map containing the count for each status (e.g.,
-     *                        "ACTIVATED", "CLOSED", etc.).
+     * @param statusVector    The count for each status.
      * @return TableEntity A ready-to-store TableEntity.
      */
     public static TableEntity createEntity(
-                                           LocalDate date,
+                                           OffsetDateTime windowStart,
                                            String clientId,
                                            String paymentTypeCode,
                                            String pspId,
-                                           Map<String, Integer> statusCounts
+                                           StatusVector statusVector
     ) {
-        TableEntity entity = new TableEntity(date.format(DATE_FORMATTER), UUID.randomUUID().toString())
+        return createEntity(
+                partitionKey(windowStart),
+                rowKey(clientId, paymentTypeCode, pspId, windowStart),
+                clientId,
+                paymentTypeCode,
+                pspId,
+                toUtc(windowStart).format(TIMESTAMP_FORMATTER),
+                OffsetDateTime.now().format(TIMESTAMP_FORMATTER),
+                statusVector
+        );
+    }
+
+    /**
+     * Creates an empty wide row of a client for an hourly window, to be filled
+     * by {@link #setRows(TableEntity, Collection)}.
+     *
+     * @param windowStart The start of the collected window.
+     * @param clientId    The client ID.
+     * @return TableEntity A wide row without vectors.
+     */
+    public static TableEntity createWideEntity(
+                                               OffsetDateTime windowStart,
+                                               String clientId
+    ) {
+        return new TableEntity(partitionKey(windowStart), wideRowKey(clientId, windowStart))
                 .addProperty("clientId", clientId)
-                .addProperty("paymentTypeCode", paymentTypeCode)
-                .addProperty("pspId", pspId)
+                .addProperty(WINDOW_START, toUtc(windowStart).format(TIMESTAMP_FORMATTER));
+    }
+
+    /**
+     * @param clientId    The client ID.
+     * @param windowStart The start of the collected window.
+     * @return the RowKey of the wide row of the client for the window, which is
+     *         the window prefix of its narrow rows
+     */
+    public static String wideRowKey(
+                                    String clientId,
+                                    OffsetDateTime windowStart
+    ) {
+        return clientId + ROW_KEY_SEPARATOR + toUtc(windowStart).format(WINDOW_FORMATTER) + ROW_KEY_SEPARATOR;
+    }
+
+    /**
+     * @param entity A stored metrics entity.
+     * @return true if the entity is a wide row
+     */
+    public static boolean isWide(TableEntity entity) {
+        return entity.getProperty(VECTORS) instanceof byte[];
+    }
+
+    /**
+     * Packs narrow rows of the client and window of a wide row into it,
+     * replacing the vectors it held.
+     *
+     * @param wide A wide row.
+     * @param rows The narrow rows of its client and window.
+     * @throws IllegalArgumentException if the packed vectors do not fit in a
+     *                                  property
+     */
+    public static void setRows(
+                               TableEntity wide,
+                               Collection<TableEntity> rows
+    ) {
+        List<StatusVectorCodec.Cell> cells = new ArrayList<>(rows.size());
+        for (TableEntity row : rows) {
+            StatusVector statusVector = new StatusVector();
+            for (int i = 0; i < StatusStorageFields.size(); i++) {
+                if (row.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                    statusVector.set(i, count.longValue());
+                }
+            }
+            cells.add(
+                    new StatusVectorCodec.Cell(
+                            String.valueOf(row.getProperty("paymentTypeCode")),
+                            String.valueOf(row.getProperty("pspId")),
+                            statusVector
+                    )
+            );
+        }
+        byte[] vectors = StatusVectorCodec.encode(cells);
+        if (vectors.length > MAX_VECTORS_BYTES) {
+            throw new IllegalArgumentException(
+                    "Vectors of " + wide.getRowKey() + " take " + vectors.length + " bytes, over " + MAX_VECTORS_BYTES
+            );
+        }
+        wide.addProperty(VECTORS, vectors)
                 .addProperty("createdAt", OffsetDateTime.now().format(TIMESTAMP_FORMATTER));
+    }
+
+    /**
+     * Passes the narrow rows of a stored entity to an action: the entity itself
+     * if it is a narrow row, or the rows packed in a wide row, with the keys and
+     * properties they would have as narrow rows. The wide row must have been
+     * read with its RowKey and its {@value #VECTORS} property.
+     *
+     * @param stored A stored metrics entity.
+     * @param action The action run on each narrow row.
+     */
+    public static void forEachRow(
+                                  TableEntity stored,
+                                  Consumer<TableEntity> action
+    ) {
+        if (!(stored.getProperty(VECTORS) instanceof byte[] vectors)) {
+            action.accept(stored);
+            return;
+        }
+        String prefix = stored.getRowKey();
+        int clientEnd = prefix.indexOf(ROW_KEY_SEPARATOR);
+        String clientId = prefix.substring(0, clientEnd);
+        String windowStart = LocalDateTime.parse(prefix.substring(clientEnd + 1, prefix.length() - 1) + ":00")
+                .atOffset(ZoneOffset.UTC)
+                .format(TIMESTAMP_FORMATTER);
+        Object createdAt = stored.getProperty("createdAt");
+        for (StatusVectorCodec.Cell cell : StatusVectorCodec.decode(vectors)) {
+            action.accept(
+                    createEntity(
+                            stored.getPartitionKey(),
+                            prefix + cell.paymentTypeCode() + ROW_KEY_SEPARATOR + cell.pspId(),
+                            clientId,
+                            cell.paymentTypeCode(),
+                            cell.pspId(),
+                            windowStart,
+                            createdAt != null ? createdAt.toString() : null,
+                            cell.statusVector()
+                    )
+            );
+        }
+    }
+
+    /**
+     * Passes the narrow rows of the entities of a scan to an action, as
+     * {@link #forEachRow(TableEntity, Consumer)} does, skipping the narrow rows
+     * packed in the wide row of their window. Entities must be passed in the
+     * order of their keys, where the wide row of a window comes right before its
+     * narrow rows.
+     */
+    public static final class RowReader implements Consumer<TableEntity> {
 
-        // Add each status and its corresponding count as a property
-        for (var entry : statusCounts.entrySet()) {
-            entity.addProperty(entry.getKey(), entry.getValue());
+        private final Consumer<TableEntity> action;
+        private final Set<String> packed = new HashSet<>();
+        private String partitionKey;
+
+        /**
+         * @param action The action run on each narrow row.
+         */
+        public RowReader(Consumer<TableEntity> action) {
+            this.action = action;
+        }
+
+        @Override
+        public void accept(TableEntity stored) {
+            if (isWide(stored)) {
+                partitionKey = stored.getPartitionKey();
+                packed.clear();
+                forEachRow(stored, row -> {
+                    packed.add(row.getRowKey());
+                    action.accept(row);
+                });
+            } else if (!(packed.contains(stored.getRowKey()) && stored.getPartitionKey().equals(partitionKey))) {
+                action.accept(stored);
+            }
         }
 
+        /**
+         * Skips the narrow rows packed in a wide row without reading it, e.g. when
+         * a scan resumes between the wide row of a window and its narrow rows.
+         *
+         * @param wide A wide row.
+         */
+        public void skipRowsOf(TableEntity wide) {
+            partitionKey = wide.getPartitionKey();
+            packed.clear();
+            forEachRow(wide, row -> packed.add(row.getRowKey()));
+        }
+    }
+
+    private static TableEntity createEntity(
+                                            String partitionKey,
+                                            String rowKey,
+                                            String clientId,
+                                            String paymentTypeCode,
+                                            String pspId,
+                                            String windowStart,
+                                            String createdAt,
+                                            StatusVector statusVector
+    ) {
+        TableEntity entity = new TableEntity(partitionKey, rowKey)
+                .addProperty("clientId", clientId)
+                .addProperty("paymentTypeCode", paymentTypeCode)
+                .addProperty("pspId", pspId)
+                .addProperty(WINDOW_START, windowStart);
+        if (createdAt != null) {
+            entity.addProperty("createdAt", createdAt);
+        }
+        for (int i = 0; i < statusVector.size(); i++) {
+            if (statusVector.isPresent(i)) {
+                // counts are stored as Int32 properties, as read by the aggregation
+                entity.addProperty(StatusStorageFields.values.get(i), (int) statusVector.get(i));
+            }
+        }
         return entity;
     }
+
+    /**
+     * Replaces the properties of a stored narrow row with the ones of a new row
+     * with the same keys. The stored row keeps the ETag it has been read with,
+     * so it can be replaced only if unchanged since. Statuses the new row does
+     * not have are set to 0.
+     *
+     * @param stored A stored narrow row.
+     * @param row    The new row.
+     * @return the stored row
+     */
+    public static TableEntity overwrite(
+                                        TableEntity stored,
+                                        TableEntity row
+    ) {
+        for (String property : List.of("clientId", "paymentTypeCode", "pspId", WINDOW_START, "createdAt")) {
+            if (row.getProperty(property) != null) {
+                stored.addProperty(property, row.getProperty(property));
+            }
+        }
+        for (String status : StatusStorageFields.values) {
+            Object count = row.getProperty(status);
+            if (count != null || stored.getProperty(status) != null) {
+                stored.addProperty(status, count != null ? count : 0);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * @param windowStart The start of the collected window.
+     * @return the PartitionKey of the metrics of the window
+     */
+    public static String partitionKey(OffsetDateTime windowStart) {
+        return toUtc(windowStart).toLocalDate().format(DATE_FORMATTER);
+    }
+
+    /**
+     * Builds the RowKey of the metrics of a (client, paymentTypeCode, psp) triple
+     * for an hourly window, in the form
+     * {@code clientId|yyyy-MM-ddTHH|paymentTypeCode|pspId}.
+     *
+     * @param clientId        The client ID.
+     * @param paymentTypeCode The payment type code or name.
+     * @param pspId           The PSP ID or name.
+     * @param windowStart     The start of the collected window.
+     * @return the RowKey
+     */
+    public static String rowKey(
+                                String clientId,
+                                String paymentTypeCode,
+                                String pspId,
+                                OffsetDateTime windowStart
+    ) {
+        return String.join(
+                ROW_KEY_SEPARATOR,
+                clientId,
+                toUtc(windowStart).format(WINDOW_FORMATTER),
+                paymentTypeCode,
+                pspId
+        );
+    }
+
+    /**
+     * @param rowKey A RowKey built by
+     *               {@link #rowKey(String, String, String, OffsetDateTime)}.
+     * @return the leading {@code clientId|yyyy-MM-ddTHH|} part of the RowKey,
+     *         shared by the rows of a client for a window
+     */
+    public static String windowPrefix(String rowKey) {
+        int clientEnd = rowKey.indexOf(ROW_KEY_SEPARATOR);
+        return rowKey.substring(0, rowKey.indexOf(ROW_KEY_SEPARATOR, clientEnd + 1) + 1);
+    }
+
+    /**
+     * @param rowKey The RowKey of a metrics row.
+     * @return the UTC hour of the window of a RowKey built by
+     *         {@link #rowKey(String, String, String, OffsetDateTime)}, or
+     *         {@value #NO_WINDOW_HOUR} for RowKeys in another form, such as the
+     *         UUIDs of legacy rows
+     */
+    public static int windowHour(String rowKey) {
+        int windowStart = rowKey != null ? rowKey.indexOf(ROW_KEY_SEPARATOR) + 1 : 0;
+        int windowEnd = windowStart > 0 ? rowKey.indexOf(ROW_KEY_SEPARATOR, windowStart) : -1;
+        if (windowEnd < 0) {
+            return NO_WINDOW_HOUR;
+        }
+        try {
+            return WINDOW_FORMATTER.parse(rowKey.substring(windowStart, windowEnd)).get(ChronoField.HOUR_OF_DAY);
+        } catch (DateTimeParseException e) {
+            return NO_WINDOW_HOUR;
+        }
+    }
+
+    /**
+     * @param prefix A RowKey prefix ending with the separator.
+     * @return the exclusive upper bound of the RowKeys starting with the prefix
+     */
+    public static String windowPrefixUpperBound(String prefix) {
+        // '}' is the character following the separator
+        return prefix.substring(0, prefix.length() - 1) + "}";
+    }
+
+    /**
+     * Hashes the status counts of a metrics row (FNV-1a over the index and the
+     * count of every stored status), to tell whether two polls of a window
+     * returned the same counts without comparing the rows.
+     *
+     * @param entity A metrics row.
+     * @return the hash of the status counts
+     */
+    public static long statusHash(TableEntity entity) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                hash = (hash ^ i) * 0x100000001b3L;
+                hash = (hash ^ count.longValue()) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @param entity A metrics row.
+     * @return true if the row has a count for at least one status
+     */
+    public static boolean hasStatuses(TableEntity entity) {
+        for (String status : StatusStorageFields.values) {
+            if (entity.getProperty(status) instanceof Number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param entity A metrics row.
+     * @return true if the row reports at least one status and no status has a
+     *         count other than 0; a row without any status is not empty, as it
+     *         does not tell that the window had no transaction
+     */
+    public static boolean isEmpty(TableEntity entity) {
+        boolean reported = false;
+        for (String status : StatusStorageFields.values) {
+            if (entity.getProperty(status) instanceof Number count) {
+                if (count.longValue() != 0) {
+                    return false;
+                }
+                reported = true;
+            }
+        }
+        return reported;
+    }
+
+    private static OffsetDateTime toUtc(OffsetDateTime dateTime) {
+        return dateTime.withOffsetSameInstant(ZoneOffset.UTC);
+    }
 }
@@ -0,0 +1,177 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+/**
+ * Entities of the running weekly aggregates: the status counts of an ISO week
+ * for each (client, paymentTypeCode) pair, updated every time hourly metrics
+ * are written.
+ * <p>
+ * The PartitionKey is the ISO week, e.g. {@code 2025-W37}, and the RowKey is
+ * {@code clientId|paymentTypeCode}. Each week also has a marker row recording
+ * the first hourly window merged into the week, which tells whether the week
+ * has been aggregated since its beginning, and whether some changes of the
+ * week could not be merged, in which case its aggregates are not to be used.
+ */
+public class WeeklyAggregateEntity {
+
+    public static final String FIRST_WINDOW_START = "firstWindowStart";
+    public static final String MARKER_ROW_KEY = "~since";
+    public static final String INVALIDATED = "invalidated";
+
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final String ROW_KEY_SEPARATOR = "|";
+
+    /**
+     * Creates the empty aggregate row of a (client, paymentTypeCode) pair.
+     *
+     * @param week            The ISO week.
+     * @param clientId        The client ID.
+     * @param paymentTypeCode The payment type code or name.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createEntity(
+                                           String week,
+                                           String clientId,
+                                           String paymentTypeCode
+    ) {
+        return new TableEntity(week, rowKey(clientId, paymentTypeCode))
+                .addProperty("clientId", clientId)
+                .addProperty("paymentTypeCode", paymentTypeCode);
+    }
+
+    /**
+     * Adds status counts to an aggregate row. Counts may be negative, when
+     * hourly metrics are replaced by lower values.
+     *
+     * @param entity The aggregate row.
+     * @param counts The counts to add, by raw status.
+     */
+    public static void addCounts(
+                                 TableEntity entity,
+                                 AggregatedStatusGroup counts
+    ) {
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            long count = counts.getStatusCount(i);
+            if (count != 0) {
+                String status = StatusStorageFields.values.get(i);
+                long current = entity.getProperty(status) instanceof Number number ? number.longValue() : 0;
+                entity.addProperty(status, current + count);
+            }
+        }
+    }
+
+    /**
+     * Reads back an aggregate row.
+     *
+     * @param entity An aggregate row.
+     * @return the group of the (client, paymentTypeCode) pair
+     */
+    public static AggregatedStatusGroup toGroup(TableEntity entity) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(
+                null,
+                String.valueOf(entity.getProperty("clientId")),
+                null,
+                String.valueOf(entity.getProperty("paymentTypeCode"))
+        );
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                group.addStatus(i, count.longValue());
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Creates the marker row of a week.
+     *
+     * @param week        The ISO week.
+     * @param windowStart The start of the first merged window.
+     * @return TableEntity A ready-to-store TableEntity.
+     */
+    public static TableEntity createMarker(
+                                           String week,
+                                           OffsetDateTime windowStart
+    ) {
+        return setFirstWindowStart(new TableEntity(week, MARKER_ROW_KEY), windowStart);
+    }
+
+    /**
+     * @param marker      The marker row of a week.
+     * @param windowStart The start of the first merged window.
+     * @return the marker row
+     */
+    public static TableEntity setFirstWindowStart(
+                                                  TableEntity marker,
+                                                  OffsetDateTime windowStart
+    ) {
+        return marker.addProperty(
+                FIRST_WINDOW_START,
+                windowStart.withOffsetSameInstant(ZoneOffset.UTC).format(TIMESTAMP_FORMATTER)
+        );
+    }
+
+    /**
+     * @param marker The marker row of a week.
+     * @return the start of the first window merged into the week
+     */
+    public static OffsetDateTime firstWindowStart(TableEntity marker) {
+        Object firstWindowStart = marker.getProperty(FIRST_WINDOW_START);
+        return firstWindowStart != null ? OffsetDateTime.parse(firstWindowStart.toString(), TIMESTAMP_FORMATTER)
+                : null;
+    }
+
+    /**
+     * Creates the marker change flagging a week whose aggregates missed some
+     * changes of its hourly rows, to be merged into its marker row.
+     *
+     * @param week The ISO week.
+     * @return TableEntity A ready-to-merge TableEntity.
+     */
+    public static TableEntity createInvalidatedMarker(String week) {
+        return new TableEntity(week, MARKER_ROW_KEY).addProperty(INVALIDATED, true);
+    }
+
+    /**
+     * @param marker The marker row of a week.
+     * @return true if some changes of the week could not be merged
+     */
+    public static boolean isInvalidated(TableEntity marker) {
+        return Boolean.TRUE.equals(marker.getProperty(INVALIDATED));
+    }
+
+    /**
+     * @param windowStart The start of a collected window.
+     * @return the ISO week of the window in UTC, e.g. {@code 2025-W37}
+     */
+    public static String partitionKey(OffsetDateTime windowStart) {
+        return partitionKey(windowStart.withOffsetSameInstant(ZoneOffset.UTC).toLocalDate());
+    }
+
+    /**
+     * @param date A day of the week.
+     * @return the ISO week of the day, e.g. {@code 2025-W37}
+     */
+    public static String partitionKey(LocalDate date) {
+        return String.format(
+                "%d-W%02d",
+                date.get(IsoFields.WEEK_BASED_YEAR),
+                date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)
+        );
+    }
+
+    public static String rowKey(
+                                String clientId,
+                                String paymentTypeCode
+    ) {
+        return String.join(ROW_KEY_SEPARATOR, clientId, paymentTypeCode);
+    }
+}
@@ -0,0 +1,138 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.pagopa.ecommerce.reporting.exceptions.InvalidRequestException;
+import it.pagopa.ecommerce.reporting.services.BackfillService;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Azure Functions of the historical backfills (see {@link BackfillService}).
+ * <p>
+ * {@code POST backfills} submits a backfill, with the query parameters:
+ * <ul>
+ * <li>{@code startDate}, {@code endDate}: the inclusive UTC range, as
+ * {@code yyyy-MM-dd}</li>
+ * <li>{@code clientId}: the client to collect, among the ones of
+ * {@code ECOMMERCE_CLIENTS_LIST}</li>
+ * <li>{@code paymentTypeCode}, {@code pspId}: optional filters of the
+ * configured PSPs to collect</li>
+ * </ul>
+ * The response holds the id of the backfill. {@code GET backfills/{backfillId}}
+ * returns its progress.
+ */
+public class BackfillHttpFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackfillHttpFunction.class);
+
+    @FunctionName("BackfillSubmit")
+    public HttpResponseMessage submit(
+                                      @HttpTrigger(
+                                              name = "BackfillSubmitTrigger", methods = {
+                                                      HttpMethod.POST
+                                              }, route = "backfills", authLevel = AuthorizationLevel.FUNCTION
+                                      ) HttpRequestMessage<Optional<String>> request,
+                                      final ExecutionContext context
+    ) throws JsonProcessingException {
+        Optional<BackfillService> backfillService = getBackfillService();
+        if (backfillService.isEmpty()) {
+            return notConfigured(request);
+        }
+        Map<String, String> parameters = request.getQueryParameters();
+        try {
+            LocalDate startDate = ReportExportHttpFunction.parseDate(parameters, "startDate");
+            LocalDate endDate = ReportExportHttpFunction.parseDate(parameters, "endDate");
+            if (endDate.isBefore(startDate)) {
+                throw new InvalidRequestException("endDate is before startDate");
+            }
+            String clientId = parameters.get("clientId");
+            if (clientId == null || clientId.isBlank()) {
+                throw new InvalidRequestException("Missing clientId");
+            }
+            String backfillId = backfillService.get().submit(
+                    startDate,
+                    endDate,
+                    clientId,
+                    parameters.get("paymentTypeCode"),
+                    parameters.get("pspId")
+            );
+            return request.createResponseBuilder(HttpStatus.ACCEPTED)
+                    .header("Content-Type", "application/json")
+                    .header("Location", "/backfills/" + backfillId)
+                    .body("{\"backfillId\":\"" + backfillId + "\"}")
+                    .build();
+        } catch (InvalidRequestException | IllegalArgumentException e) {
+            return ReportExportHttpFunction
+                    .jsonResponse(request, HttpStatus.BAD_REQUEST, Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Backfill submission failed", e);
+            return ReportExportHttpFunction.jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Backfill submission failed: " + e.getMessage())
+            );
+        }
+    }
+
+    @FunctionName("BackfillStatus")
+    public HttpResponseMessage status(
+                                      @HttpTrigger(
+                                              name = "BackfillStatusTrigger", methods = {
+                                                      HttpMethod.GET
+                                              }, route = "backfills/{backfillId}", authLevel = AuthorizationLevel.FUNCTION
+                                      ) HttpRequestMessage<Optional<String>> request,
+                                      @BindingName("backfillId") String backfillId,
+                                      final ExecutionContext context
+    ) throws JsonProcessingException {
+        Optional<BackfillService> backfillService = getBackfillService();
+        if (backfillService.isEmpty()) {
+            return notConfigured(request);
+        }
+        try {
+            Optional<BackfillService.Backfill> backfill = backfillService.get().get(backfillId);
+            if (backfill.isEmpty()) {
+                return ReportExportHttpFunction.jsonResponse(
+                        request,
+                        HttpStatus.NOT_FOUND,
+                        Map.of("error", "Unknown backfill " + backfillId)
+                );
+            }
+            return ReportExportHttpFunction.jsonResponse(request, HttpStatus.OK, backfill.get());
+        } catch (Exception e) {
+            logger.error("Backfill status read failed", e);
+            return ReportExportHttpFunction.jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Backfill status read failed: " + e.getMessage())
+            );
+        }
+    }
+
+    private static HttpResponseMessage notConfigured(HttpRequestMessage<?> request) throws JsonProcessingException {
+        logger.error("ECOMMERCE_REPORTING_BACKFILLS_TABLE environment variable is not set");
+        return ReportExportHttpFunction
+                .jsonResponse(request, HttpStatus.SERVICE_UNAVAILABLE, Map.of("error", "Backfills not configured"));
+    }
+
+    /**
+     * Creates the BackfillService
+     *
+     * @return The BackfillService, or an empty optional if not configured
+     */
+    protected Optional<BackfillService> getBackfillService() {
+        return BackfillService.fromEnvironment();
+    }
+}
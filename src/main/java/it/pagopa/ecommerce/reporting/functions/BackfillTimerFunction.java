@@ -0,0 +1,55 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+import it.pagopa.ecommerce.reporting.services.BackfillService;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Runs the submitted backfills in the background (see
+ * {@link BackfillService}). Each run works on the pending and interrupted
+ * backfills until the run deadline ({@code ECOMMERCE_RUN_DEADLINE_SECONDS}),
+ * and the backfills still running are resumed by the next run from their last
+ * checkpoint.
+ */
+public class BackfillTimerFunction {
+
+    @FunctionName("BackfillTimerTriggered")
+    public void run(
+                    @TimerTrigger(
+                            name = "backfillTimerInfo", schedule = "%NCRON_SCHEDULE_BACKFILLS%"
+                    ) String timerInfo,
+                    ExecutionContext context
+    ) {
+        Logger logger = context.getLogger();
+        Optional<BackfillService> backfillService = getBackfillService();
+        if (backfillService.isEmpty()) {
+            logger.warning(
+                    "[BackfillTimerFunction] ECOMMERCE_REPORTING_BACKFILLS_TABLE is not set. No backfill will be run"
+            );
+            return;
+        }
+        Duration budget = getRunDeadline();
+        int completed = backfillService.get().runPending(budget);
+        logger.info(
+                () -> String.format(
+                        "[BackfillTimerFunction][id=%s] completed %d backfills",
+                        context.getInvocationId(),
+                        completed
+                )
+        );
+    }
+
+    protected Optional<BackfillService> getBackfillService() {
+        return BackfillService.fromEnvironment();
+    }
+
+    protected Duration getRunDeadline() {
+        return WorkerPool.getRunDeadline();
+    }
+}
@@ -0,0 +1,74 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+import it.pagopa.ecommerce.reporting.services.DailyAggregateCacheService;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Compacts the hourly metrics of the last closed days into one rollup row per
+ * (client, paymentTypeCode, psp) and day, stored in the daily aggregate table
+ * read by the reports (see {@link DailyAggregateCacheService}).
+ * <p>
+ * Each run also checks the previous {@code ECOMMERCE_DAILY_ROLLUP_LOOKBACK_DAYS}
+ * days, so days that received late writes after their compaction are
+ * compacted again.
+ */
+public class DailyRollupTimerFunction {
+
+    private static final int DEFAULT_LOOKBACK_DAYS = 3;
+
+    private final int lookbackDays = MapParametersUtils
+            .parsePositiveInteger(
+                    System.getenv("ECOMMERCE_DAILY_ROLLUP_LOOKBACK_DAYS"),
+                    DEFAULT_LOOKBACK_DAYS
+            )
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    @FunctionName("DailyRollupTimerTriggered")
+    public void run(
+                    @TimerTrigger(
+                            name = "dailyRollupTimerInfo", schedule = "%NCRON_SCHEDULE_DAILY_ROLLUP%"
+                    ) String timerInfo,
+                    ExecutionContext context
+    ) {
+        Logger logger = context.getLogger();
+        Optional<DailyAggregateCacheService> dailyAggregateCache = getDailyAggregateCacheService();
+        if (dailyAggregateCache.isEmpty()) {
+            logger.warning(
+                    "[DailyRollupTimerFunction] ECOMMERCE_REPORTING_DAILY_AGGREGATES_TABLE is not set. No rollup will be performed"
+            );
+            return;
+        }
+        LocalDate endDate = getCurrentDate().minusDays(1);
+        LocalDate startDate = endDate.minusDays(lookbackDays - 1L);
+        int compacted = dailyAggregateCache.get().compact(startDate, endDate);
+        logger.info(
+                () -> String.format(
+                        "[DailyRollupTimerFunction][id=%s] compacted %d/%d days from %s to %s",
+                        context.getInvocationId(),
+                        compacted,
+                        lookbackDays,
+                        startDate,
+                        endDate
+                )
+        );
+    }
+
+    protected Optional<DailyAggregateCacheService> getDailyAggregateCacheService() {
+        return DailyAggregateCacheService.fromEnvironment();
+    }
+
+    protected LocalDate getCurrentDate() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+}
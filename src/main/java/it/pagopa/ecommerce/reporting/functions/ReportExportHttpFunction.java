@@ -0,0 +1,174 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.pagopa.ecommerce.reporting.clients.ExportSink;
+import it.pagopa.ecommerce.reporting.exceptions.InvalidRequestException;
+import it.pagopa.ecommerce.reporting.services.CollectionCoverageService;
+import it.pagopa.ecommerce.reporting.services.ReportExportService;
+import it.pagopa.ecommerce.reporting.services.TransactionStatusAggregationService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Azure Function exporting the metrics of a date range as CSV files, to the
+ * local directory or blob container configured by
+ * {@code ECOMMERCE_REPORTING_EXPORT_TARGET}.
+ * <p>
+ * Query parameters:
+ * <ul>
+ * <li>{@code startDate}, {@code endDate}: the inclusive range, as
+ * {@code yyyy-MM-dd}</li>
+ * <li>{@code groupings}: the groupings to export, separated by {@code ;}, each
+ * a comma-separated list of dimensions, e.g.
+ * {@code client,payment_type;payment_type,psp}; defaults to the grouping of the
+ * weekly report</li>
+ * <li>{@code hourly}: whether to also export the raw hourly rows, defaults to
+ * {@code true}</li>
+ * </ul>
+ */
+public class ReportExportHttpFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportExportHttpFunction.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @FunctionName("ReportExport")
+    public HttpResponseMessage run(
+                                   @HttpTrigger(
+                                           name = "ReportExportTrigger", methods = {
+                                                   HttpMethod.POST
+                                           }, route = "reports/export", authLevel = AuthorizationLevel.FUNCTION
+                                   ) HttpRequestMessage<Optional<String>> request,
+                                   final ExecutionContext context
+    ) throws JsonProcessingException {
+        String target = getEnvVariable("ECOMMERCE_REPORTING_EXPORT_TARGET");
+        if (target == null || target.isBlank()) {
+            logger.error("ECOMMERCE_REPORTING_EXPORT_TARGET environment variable is not set");
+            return jsonResponse(request, HttpStatus.SERVICE_UNAVAILABLE, Map.of("error", "Export not configured"));
+        }
+        Map<String, String> parameters = request.getQueryParameters();
+        LocalDate startDate;
+        LocalDate endDate;
+        List<Grouping> groupings;
+        try {
+            startDate = parseDate(parameters, "startDate");
+            endDate = parseDate(parameters, "endDate");
+            if (endDate.isBefore(startDate)) {
+                throw new InvalidRequestException("endDate is before startDate");
+            }
+            groupings = parseGroupings(parameters.get("groupings"));
+        } catch (InvalidRequestException e) {
+            return jsonResponse(request, HttpStatus.BAD_REQUEST, Map.of("error", e.getMessage()));
+        }
+        boolean hourly = !"false".equalsIgnoreCase(parameters.get("hourly"));
+
+        try {
+            ReportExportService.Result result = createExportService()
+                    .export(startDate, endDate, groupings, hourly, createExportSink(target), logger);
+            return jsonResponse(request, HttpStatus.OK, result);
+        } catch (Exception e) {
+            logger.error("Report export failed", e);
+            return jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Report export failed: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * Parses the groupings parameter.
+     *
+     * @param groupings the groupings, separated by ';', or null
+     * @return the groupings
+     * @throws InvalidRequestException if a grouping is not valid
+     */
+    static List<Grouping> parseGroupings(String groupings) {
+        if (groupings == null || groupings.isBlank()) {
+            return List.of(Grouping.CLIENT_PAYMENT_TYPE);
+        }
+        try {
+            return Arrays.stream(groupings.split(";"))
+                    .filter(grouping -> !grouping.isBlank())
+                    .map(Grouping::parse)
+                    .distinct()
+                    .toList();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid groupings: " + groupings, e);
+        }
+    }
+
+    static LocalDate parseDate(
+                               Map<String, String> parameters,
+                               String name
+    ) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new InvalidRequestException("Missing " + name);
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidRequestException("Invalid " + name + ": " + value, e);
+        }
+    }
+
+    static HttpResponseMessage jsonResponse(
+                                            HttpRequestMessage<?> request,
+                                            HttpStatus status,
+                                            Object body
+    ) throws JsonProcessingException {
+        return request.createResponseBuilder(status)
+                .header("Content-Type", "application/json")
+                .body(OBJECT_MAPPER.writeValueAsString(body))
+                .build();
+    }
+
+    /**
+     * Gets an environment variable value
+     *
+     * @param name The name of the environment variable
+     * @return The value of the environment variable
+     */
+    protected String getEnvVariable(String name) {
+        return System.getenv(name);
+    }
+
+    /**
+     * Creates a new ReportExportService
+     *
+     * @return A new ReportExportService instance
+     */
+    protected ReportExportService createExportService() {
+        return new ReportExportService(
+                new TransactionStatusAggregationService(),
+                CollectionCoverageService.fromEnvironment().orElse(null)
+        );
+    }
+
+    /**
+     * Creates the sink of the export target
+     *
+     * @param target The export target
+     * @return The sink of the target
+     */
+    protected ExportSink createExportSink(String target) {
+        return ExportSink.fromTarget(target);
+    }
+}
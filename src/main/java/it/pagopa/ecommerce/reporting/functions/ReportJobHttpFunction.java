@@ -0,0 +1,145 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.pagopa.ecommerce.reporting.exceptions.InvalidRequestException;
+import it.pagopa.ecommerce.reporting.services.ReportJobService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Azure Functions of the report jobs (see {@link ReportJobService}).
+ * <p>
+ * {@code POST reports/jobs} submits a job, with the {@code startDate},
+ * {@code endDate} and {@code grouping} query parameters of
+ * {@link ReportExportHttpFunction}, where the grouping may use any dimension;
+ * the response holds the id of the job. {@code GET reports/jobs/{jobId}}
+ * returns the status of the job and, once completed, its groups.
+ */
+public class ReportJobHttpFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobHttpFunction.class);
+
+    @FunctionName("ReportJobSubmit")
+    public HttpResponseMessage submit(
+                                      @HttpTrigger(
+                                              name = "ReportJobSubmitTrigger", methods = {
+                                                      HttpMethod.POST
+                                              }, route = "reports/jobs", authLevel = AuthorizationLevel.FUNCTION
+                                      ) HttpRequestMessage<Optional<String>> request,
+                                      final ExecutionContext context
+    ) throws JsonProcessingException {
+        Optional<ReportJobService> jobService = getJobService();
+        if (jobService.isEmpty()) {
+            return notConfigured(request);
+        }
+        Map<String, String> parameters = request.getQueryParameters();
+        LocalDate startDate;
+        LocalDate endDate;
+        Grouping grouping;
+        try {
+            startDate = ReportExportHttpFunction.parseDate(parameters, "startDate");
+            endDate = ReportExportHttpFunction.parseDate(parameters, "endDate");
+            if (endDate.isBefore(startDate)) {
+                throw new InvalidRequestException("endDate is before startDate");
+            }
+            grouping = parseGrouping(parameters.get("grouping"));
+        } catch (InvalidRequestException e) {
+            return ReportExportHttpFunction
+                    .jsonResponse(request, HttpStatus.BAD_REQUEST, Map.of("error", e.getMessage()));
+        }
+
+        try {
+            String jobId = jobService.get().submit(startDate, endDate, grouping);
+            return request.createResponseBuilder(HttpStatus.ACCEPTED)
+                    .header("Content-Type", "application/json")
+                    .header("Location", "/reports/jobs/" + jobId)
+                    .body("{\"jobId\":\"" + jobId + "\"}")
+                    .build();
+        } catch (Exception e) {
+            logger.error("Report job submission failed", e);
+            return ReportExportHttpFunction.jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Report job submission failed: " + e.getMessage())
+            );
+        }
+    }
+
+    @FunctionName("ReportJobStatus")
+    public HttpResponseMessage status(
+                                      @HttpTrigger(
+                                              name = "ReportJobStatusTrigger", methods = {
+                                                      HttpMethod.GET
+                                              }, route = "reports/jobs/{jobId}", authLevel = AuthorizationLevel.FUNCTION
+                                      ) HttpRequestMessage<Optional<String>> request,
+                                      @BindingName("jobId") String jobId,
+                                      final ExecutionContext context
+    ) throws JsonProcessingException {
+        Optional<ReportJobService> jobService = getJobService();
+        if (jobService.isEmpty()) {
+            return notConfigured(request);
+        }
+        try {
+            Optional<ReportJobService.Job> job = jobService.get().get(jobId);
+            if (job.isEmpty()) {
+                return ReportExportHttpFunction
+                        .jsonResponse(request, HttpStatus.NOT_FOUND, Map.of("error", "Unknown job " + jobId));
+            }
+            return ReportExportHttpFunction.jsonResponse(request, HttpStatus.OK, job.get());
+        } catch (Exception e) {
+            logger.error("Report job status read failed", e);
+            return ReportExportHttpFunction.jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Report job status read failed: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * Parses the grouping parameter.
+     *
+     * @param grouping the comma-separated dimensions, or null
+     * @return the grouping
+     * @throws InvalidRequestException if the grouping is not valid
+     */
+    static Grouping parseGrouping(String grouping) {
+        if (grouping == null || grouping.isBlank()) {
+            return Grouping.CLIENT_PAYMENT_TYPE;
+        }
+        try {
+            return Grouping.parse(grouping);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid grouping: " + grouping, e);
+        }
+    }
+
+    private static HttpResponseMessage notConfigured(HttpRequestMessage<?> request) throws JsonProcessingException {
+        logger.error("ECOMMERCE_REPORTING_REPORT_JOBS_TABLE environment variable is not set");
+        return ReportExportHttpFunction
+                .jsonResponse(request, HttpStatus.SERVICE_UNAVAILABLE, Map.of("error", "Report jobs not configured"));
+    }
+
+    /**
+     * Creates the ReportJobService
+     *
+     * @return The ReportJobService, or an empty optional if not configured
+     */
+    protected Optional<ReportJobService> getJobService() {
+        return ReportJobService.fromEnvironment();
+    }
+}
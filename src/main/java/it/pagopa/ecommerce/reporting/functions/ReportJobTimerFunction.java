@@ -0,0 +1,54 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+import it.pagopa.ecommerce.reporting.services.ReportJobService;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Runs the submitted report jobs in the background (see
+ * {@link ReportJobService}). Each run works on the pending and interrupted jobs
+ * until the run deadline ({@code ECOMMERCE_RUN_DEADLINE_SECONDS}), and the
+ * jobs still running are resumed by the next run from their last checkpoint.
+ */
+public class ReportJobTimerFunction {
+
+    @FunctionName("ReportJobTimerTriggered")
+    public void run(
+                    @TimerTrigger(
+                            name = "reportJobTimerInfo", schedule = "%NCRON_SCHEDULE_REPORT_JOBS%"
+                    ) String timerInfo,
+                    ExecutionContext context
+    ) {
+        Logger logger = context.getLogger();
+        Optional<ReportJobService> jobService = getJobService();
+        if (jobService.isEmpty()) {
+            logger.warning(
+                    "[ReportJobTimerFunction] ECOMMERCE_REPORTING_REPORT_JOBS_TABLE is not set. No job will be run"
+            );
+            return;
+        }
+        Duration budget = getRunDeadline();
+        int completed = jobService.get().runPending(budget);
+        logger.info(
+                () -> String.format(
+                        "[ReportJobTimerFunction][id=%s] completed %d report jobs",
+                        context.getInvocationId(),
+                        completed
+                )
+        );
+    }
+
+    protected Optional<ReportJobService> getJobService() {
+        return ReportJobService.fromEnvironment();
+    }
+
+    protected Duration getRunDeadline() {
+        return WorkerPool.getRunDeadline();
+    }
+}
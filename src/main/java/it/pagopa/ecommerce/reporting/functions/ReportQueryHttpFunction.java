@@ -0,0 +1,205 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.pagopa.ecommerce.reporting.exceptions.InvalidRequestException;
+import it.pagopa.ecommerce.reporting.services.ReportQueryService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Azure Function returning the status counts of a date range as JSON.
+ * <p>
+ * Query parameters:
+ * <ul>
+ * <li>{@code startDate}, {@code endDate}: the inclusive range, as
+ * {@code yyyy-MM-dd}</li>
+ * <li>{@code clientId}: the client to report, defaults to every client</li>
+ * <li>{@code grouping}: a comma-separated list of dimensions among
+ * {@code client}, {@code payment_type}, {@code psp} and {@code day}, defaults
+ * to {@code client,payment_type}</li>
+ * </ul>
+ * Ranges longer than {@code ECOMMERCE_REPORT_QUERY_MAX_RANGE_DAYS} days are
+ * rejected with {@code 400 Bad Request}: they are reported asynchronously with
+ * {@code POST reports/jobs}, see {@link ReportJobHttpFunction}.
+ * <p>
+ * Responses carry an {@code ETag} computed from their body: requests whose
+ * {@code If-None-Match} header holds the current tag get an empty
+ * {@code 304 Not Modified} response, so polling clients only download a report
+ * when it changes.
+ */
+public class ReportQueryHttpFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportQueryHttpFunction.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @FunctionName("ReportQuery")
+    public HttpResponseMessage run(
+                                   @HttpTrigger(
+                                           name = "ReportQueryTrigger", methods = {
+                                                   HttpMethod.GET
+                                           }, route = "reports", authLevel = AuthorizationLevel.FUNCTION
+                                   ) HttpRequestMessage<Optional<String>> request,
+                                   final ExecutionContext context
+    ) throws JsonProcessingException {
+        Map<String, String> parameters = request.getQueryParameters();
+        LocalDate startDate;
+        LocalDate endDate;
+        Grouping grouping;
+        try {
+            startDate = ReportExportHttpFunction.parseDate(parameters, "startDate");
+            endDate = ReportExportHttpFunction.parseDate(parameters, "endDate");
+            if (endDate.isBefore(startDate)) {
+                throw new InvalidRequestException("endDate is before startDate");
+            }
+            grouping = parseGrouping(parameters.get("grouping"));
+            long rangeDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+            int maxRangeDays = getQueryService().getMaxRangeDays();
+            if (rangeDays > maxRangeDays) {
+                throw new InvalidRequestException(
+                        "Range of " + rangeDays + " days longer than the maximum of " + maxRangeDays
+                                + " days, submit a report job with POST reports/jobs instead"
+                );
+            }
+        } catch (InvalidRequestException e) {
+            return ReportExportHttpFunction
+                    .jsonResponse(request, HttpStatus.BAD_REQUEST, Map.of("error", e.getMessage()));
+        }
+        String clientId = parameters.get("clientId");
+        if (clientId != null && clientId.isBlank()) {
+            clientId = null;
+        }
+
+        String body;
+        try {
+            body = OBJECT_MAPPER.writeValueAsString(
+                    getQueryService().query(startDate, endDate, clientId, grouping, logger)
+            );
+        } catch (Exception e) {
+            logger.error("Report query failed", e);
+            return ReportExportHttpFunction.jsonResponse(
+                    request,
+                    HttpStatus.INTERNAL_SERVER_ERROR,
+                    Map.of("error", "Report query failed: " + e.getMessage())
+            );
+        }
+        String etag = etagOf(body);
+        if (matches(header(request, "If-None-Match"), etag)) {
+            return request.createResponseBuilder(HttpStatus.NOT_MODIFIED)
+                    .header("ETag", etag)
+                    .header("Cache-Control", "no-cache")
+                    .build();
+        }
+        return request.createResponseBuilder(HttpStatus.OK)
+                .header("Content-Type", "application/json")
+                .header("ETag", etag)
+                // clients may keep the response, but must revalidate it with its tag
+                .header("Cache-Control", "no-cache")
+                .body(body)
+                .build();
+    }
+
+    /**
+     * Parses the grouping parameter.
+     *
+     * @param grouping the comma-separated dimensions, or null
+     * @return the grouping
+     * @throws InvalidRequestException if the grouping is not valid
+     */
+    static Grouping parseGrouping(String grouping) {
+        if (grouping == null || grouping.isBlank()) {
+            return Grouping.CLIENT_PAYMENT_TYPE;
+        }
+        try {
+            Grouping parsed = Grouping.parse(grouping);
+            if (!ReportQueryService.DIMENSIONS.containsAll(parsed.dimensions())) {
+                throw new InvalidRequestException(
+                        "Invalid grouping: " + grouping + ", supported dimensions are "
+                                + ReportQueryService.DIMENSIONS
+                );
+            }
+            return parsed;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid grouping: " + grouping, e);
+        }
+    }
+
+    /**
+     * Computes the strong entity tag of a response body.
+     *
+     * @param body the response body
+     * @return the quoted tag
+     */
+    static String etagOf(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Checks an {@code If-None-Match} header against the current tag, with the
+     * weak comparison required for this header.
+     *
+     * @param ifNoneMatch the header value, or null
+     * @param etag        the current tag
+     * @return true if the client already has the current response
+     */
+    static boolean matches(
+                           String ifNoneMatch,
+                           String etag
+    ) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+    }
+
+    private static String header(
+                                 HttpRequestMessage<?> request,
+                                 String name
+    ) {
+        Map<String, String> headers = request.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        return headers.entrySet().stream()
+                .filter(header -> header.getKey().equalsIgnoreCase(name))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Returns the ReportQueryService shared by the invocations
+     *
+     * @return The ReportQueryService instance
+     */
+    protected ReportQueryService getQueryService() {
+        return ReportQueryService.getInstance();
+    }
+}
@@ -6,17 +6,22 @@ import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.TimerTrigger;
 import it.pagopa.ecommerce.reporting.clients.SlackWebhookClient;
+import it.pagopa.ecommerce.reporting.services.ReportSnapshotService;
 import it.pagopa.ecommerce.reporting.services.TransactionStatusAggregationService;
 import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
 import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.ReportDataset;
+import it.pagopa.ecommerce.reporting.utils.RunSummary;
 import it.pagopa.ecommerce.reporting.utils.SlackDateRangeReportMessageUtils;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
 
 import java.time.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
-import java.util.TimerTask;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -76,50 +81,77 @@ public class SlackReportingTimerTriggered {
                 aggregatedStatuses.size()
         );
 
+        // The period is loaded once into a dataset shared by the reports
+        ReportDataset dataset = ReportDataset.fromGroups(aggregatedStatuses);
+
+        // The previous period is read from the snapshot stored by its own report,
+        // and the snapshot of a closed period is stored for the next report
+        ReportDataset previousDataset = null;
+        Optional<ReportSnapshotService> reportSnapshotService = createReportSnapshotService();
+        if (reportSnapshotService.isPresent()) {
+            previousDataset = reportSnapshotService.get()
+                    .loadPrevious(startDate, endDate)
+                    .map(ReportDataset::fromGroups)
+                    .orElse(null);
+            if (endDate.isBefore(today)) {
+                reportSnapshotService.get()
+                        .store(
+                                startDate,
+                                endDate,
+                                dataset.getGroups()
+                        );
+            }
+            logger.info("Previous period snapshot available: {}", previousDataset != null);
+        }
+
         // Create the report messages
         List<String> reportMessages = new java.util.ArrayList<>(List.of(""));
 
         for (String client : ecommerceClientList) {
             String[] reportMessage = SlackDateRangeReportMessageUtils
-                    .createAggregatedTableWeeklyReport(aggregatedStatuses, startDate, endDate, logger, client);
+                    .createAggregatedTableWeeklyReport(
+                            dataset,
+                            previousDataset,
+                            startDate,
+                            endDate,
+                            logger,
+                            client
+                    );
             reportMessages.addAll(Arrays.asList(reportMessage));
         }
         reportMessages.removeIf(String::isBlank);
 
         logger.info("Sending {} table-based messages to Slack", reportMessages.size());
 
-        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        // Slack webhooks accept about one message per second: deliveries are spaced
+        // one second apart on the shared worker pool and awaited before returning,
+        // each one counted as failed when Slack does not accept it
+        ScheduledExecutorService scheduledExecutorService = getExecutorService();
+        List<Future<Boolean>> deliveries = new ArrayList<>();
         AtomicInteger index = new AtomicInteger(0);
         String[] initialBlock = SlackDateRangeReportMessageUtils.createInitialBlock(startDate, endDate, logger);
         for (String block : initialBlock) {
             index.getAndIncrement();
-            TimerTask task = new TimerTask() {
-                @Override
-                public void run() {
-                    logger.info("Sending block message {}", block);
-                    slackWebhookClient.postMessageToWebhook(block);
-                }
-            };
-            scheduledExecutorService.schedule(task, index.get(), TimeUnit.SECONDS);
+            deliveries.add(scheduledExecutorService.schedule(() -> {
+                logger.info("Sending block message {}", block);
+                return slackWebhookClient.postMessageToWebhook(block);
+            }, index.get(), TimeUnit.SECONDS));
         }
         for (String report : reportMessages) {
             int currentIndex = index.incrementAndGet();
-            TimerTask task = new TimerTask() {
-                @Override
-                public void run() {
-                    logger.info("Sending report message {}", report);
-                    logger.info(
-                            "Sending table message {} of {}",
-                            currentIndex,
-                            reportMessages.size()
-                    );
-                    slackWebhookClient.postMessageToWebhook(report);
-                }
-            };
-            scheduledExecutorService.schedule(task, index.get(), TimeUnit.SECONDS);
+            deliveries.add(scheduledExecutorService.schedule(() -> {
+                logger.info("Sending report message {}", report);
+                logger.info(
+                        "Sending table message {} of {}",
+                        currentIndex,
+                        reportMessages.size()
+                );
+                return slackWebhookClient.postMessageToWebhook(report);
+            }, index.get(), TimeUnit.SECONDS));
         }
 
-        logger.info("All messages sent successfully");
+        RunSummary summary = WorkerPool.awaitAll("SlackReportingTimerTriggered", deliveries, getRunDeadline());
+        logger.info("Slack messages delivery completed: {}", summary);
     }
 
     protected LocalDate getDateFromString(
@@ -168,6 +200,33 @@ public class SlackReportingTimerTriggered {
         return new TransactionStatusAggregationService();
     }
 
+    /**
+     * Creates the ReportSnapshotService, if a snapshot table is configured
+     *
+     * @return The ReportSnapshotService, or an empty optional
+     */
+    protected Optional<ReportSnapshotService> createReportSnapshotService() {
+        return ReportSnapshotService.fromEnvironment();
+    }
+
+    /**
+     * Gets the executor used to deliver the Slack messages
+     *
+     * @return The shared worker pool executor
+     */
+    protected ScheduledExecutorService getExecutorService() {
+        return WorkerPool.getExecutor();
+    }
+
+    /**
+     * Gets the maximum time to wait for the Slack messages delivery
+     *
+     * @return The run deadline
+     */
+    protected Duration getRunDeadline() {
+        return WorkerPool.getRunDeadline();
+    }
+
     /**
      * Creates a new SlackWebhookClient
      *
@@ -0,0 +1,531 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+
+import it.pagopa.ecommerce.reporting.entity.BackfillEntity;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.RunSummary;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Historical backfills: collection of the hourly metrics of a past date range,
+ * e.g. when a client or a PSP is onboarded and its metrics would otherwise
+ * start from the deploy hour.
+ * <p>
+ * A backfill is submitted with
+ * {@link #submit(LocalDate, LocalDate, String, String, String)} and run in the
+ * background by
+ * {@link it.pagopa.ecommerce.reporting.functions.BackfillTimerFunction}. The
+ * range is split in hourly windows, collected in chunks of
+ * {@code ECOMMERCE_BACKFILL_CHECKPOINT_HOURS} hours through
+ * {@link ReadDataService#readAndWriteWindows(String, List)}: requests share the
+ * worker pool and the rate limit of the regular collection, and metrics are
+ * stored with the keys of their window, so collecting a window twice replaces
+ * its row. The next window to collect is checkpointed after every chunk (see
+ * {@link BackfillEntity}); a run stops at its deadline and the next run
+ * resumes from the last checkpoint.
+ * <p>
+ * A chunk with failed windows is collected again, up to
+ * {@value #MAX_CHUNK_ATTEMPTS} times, then it is recorded in the backfill row
+ * and the backfill moves on. Once the range is collected, the later runs
+ * collect the recorded chunks again, each up to {@value #MAX_CHUNK_RETRIES}
+ * more times, one retry per run: the backfill completes when none of them is
+ * left to retry, and the chunks still failing stay listed in its state so they
+ * can be backfilled again. Running backfills are leased by their runner as report
+ * jobs are, see {@link ReportJobService}.
+ */
+public class BackfillService {
+
+    static final int MAX_CHUNK_ATTEMPTS = 3;
+    static final int MAX_CHUNK_RETRIES = 3;
+
+    private static final int DEFAULT_CHECKPOINT_HOURS = 24;
+    private static final int DEFAULT_LEASE_SECONDS = 300;
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private static final Logger logger = Logger.getLogger(BackfillService.class.getName());
+
+    private final TableClient backfillsTableClient;
+    private final ReadDataService readDataService;
+    private final Set<String> clientIds;
+    private final Clock clock;
+    private final int checkpointHours;
+    private final Duration lease;
+
+    public BackfillService(
+            TableClient backfillsTableClient,
+            ReadDataService readDataService,
+            Set<String> clientIds,
+            Clock clock,
+            int checkpointHours,
+            Duration lease
+    ) {
+        this.backfillsTableClient = backfillsTableClient;
+        this.readDataService = readDataService;
+        this.clientIds = clientIds;
+        this.clock = clock;
+        this.checkpointHours = checkpointHours;
+        this.lease = lease;
+    }
+
+    /**
+     * Creates the service on the table named by
+     * {@code ECOMMERCE_REPORTING_BACKFILLS_TABLE}.
+     *
+     * @return the service, or an empty optional if no table is configured
+     */
+    public static Optional<BackfillService> fromEnvironment() {
+        String backfillsTable = System.getenv("ECOMMERCE_REPORTING_BACKFILLS_TABLE");
+        if (backfillsTable == null || backfillsTable.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new BackfillService(
+                        new TableClientBuilder()
+                                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                                .tableName(backfillsTable)
+                                .buildClient(),
+                        ReadDataService.getInstance(Logger.getLogger(ReadDataService.class.getName())),
+                        MapParametersUtils.parseSetString(System.getenv("ECOMMERCE_CLIENTS_LIST"))
+                                .fold(exception -> {
+                                    throw exception;
+                                }, Function.identity()),
+                        Clock.systemUTC(),
+                        positiveInteger("ECOMMERCE_BACKFILL_CHECKPOINT_HOURS", DEFAULT_CHECKPOINT_HOURS),
+                        Duration.ofSeconds(positiveInteger("ECOMMERCE_BACKFILL_LEASE_SECONDS", DEFAULT_LEASE_SECONDS))
+                )
+        );
+    }
+
+    /**
+     * The state of a backfill.
+     *
+     * @param backfillId       the id of the backfill
+     * @param status           the status of the backfill
+     * @param startDate        the inclusive start date
+     * @param endDate          the inclusive end date
+     * @param clientId         the collected client
+     * @param paymentTypeCode  the collected payment type code, or null for all
+     * @param pspId            the collected PSP, or null for all
+     * @param nextWindow       the start of the next window to collect
+     * @param collectedWindows the number of windows collected so far
+     * @param failedWindows    the number of windows given up so far
+     * @param failedChunks     the ranges of the chunks with failed windows, as
+     *                         {@code start/end}
+     * @param error            the cause of the failure of a failed backfill, or
+     *                         null
+     */
+    public record Backfill(
+            String backfillId,
+            BackfillEntity.Status status,
+            String startDate,
+            String endDate,
+            String clientId,
+            String paymentTypeCode,
+            String pspId,
+            String nextWindow,
+            long collectedWindows,
+            long failedWindows,
+            List<String> failedChunks,
+            String error
+    ) {
+    }
+
+    /**
+     * Submits a backfill, run by the next runs of the backfill runner.
+     *
+     * @param startDate       the inclusive start date, in UTC
+     * @param endDate         the inclusive end date, in UTC
+     * @param clientId        the client to collect
+     * @param paymentTypeCode the payment type code to collect, or null for all
+     * @param pspId           the PSP to collect, or null for all
+     * @return the id of the backfill
+     * @throws IllegalArgumentException if the client is not configured or no
+     *                                  configured PSP matches the filter
+     */
+    public String submit(
+                         LocalDate startDate,
+                         LocalDate endDate,
+                         String clientId,
+                         String paymentTypeCode,
+                         String pspId
+    ) {
+        if (!clientIds.contains(clientId)) {
+            throw new IllegalArgumentException("Unknown clientId " + clientId);
+        }
+        if (pairs(paymentTypeCode, pspId).isEmpty()) {
+            throw new IllegalArgumentException(
+                    "No configured PSP matches paymentTypeCode " + paymentTypeCode + " and pspId " + pspId
+            );
+        }
+        String backfillId = UUID.randomUUID().toString();
+        backfillsTableClient.createEntity(
+                BackfillEntity.createEntity(backfillId, startDate, endDate, clientId, paymentTypeCode, pspId)
+        );
+        logger.info("Backfill " + backfillId + " submitted for " + clientId + " from " + startDate + " to " + endDate);
+        return backfillId;
+    }
+
+    /**
+     * Reads the state of a backfill.
+     *
+     * @param backfillId the id of the backfill
+     * @return the backfill, or an empty optional if it does not exist
+     */
+    public Optional<Backfill> get(String backfillId) {
+        TableEntity entity = read(backfillId);
+        if (entity == null) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new Backfill(
+                        backfillId,
+                        BackfillEntity.status(entity),
+                        String.valueOf(entity.getProperty(BackfillEntity.START_DATE)),
+                        String.valueOf(entity.getProperty(BackfillEntity.END_DATE)),
+                        String.valueOf(entity.getProperty(BackfillEntity.CLIENT_ID)),
+                        stringOrNull(entity, BackfillEntity.PAYMENT_TYPE_CODE),
+                        stringOrNull(entity, BackfillEntity.PSP_ID),
+                        String.valueOf(entity.getProperty(BackfillEntity.NEXT_WINDOW)),
+                        BackfillEntity.count(entity, BackfillEntity.COLLECTED_WINDOWS),
+                        BackfillEntity.count(entity, BackfillEntity.FAILED_WINDOWS),
+                        BackfillEntity.failedChunks(entity).stream().map(BackfillEntity.FailedChunk::range).toList(),
+                        stringOrNull(entity, BackfillEntity.ERROR)
+                )
+        );
+    }
+
+    /**
+     * Runs the pending and interrupted backfills, one after the other, until
+     * they are all completed or the time budget is over.
+     *
+     * @param budget the time the run may last
+     * @return the number of backfills completed by the run
+     */
+    public int runPending(Duration budget) {
+        Instant deadline = clock.instant().plus(budget);
+        ListEntitiesOptions query = new ListEntitiesOptions().setFilter(
+                "PartitionKey eq '" + BackfillEntity.PARTITION_KEY + "' and ("
+                        + BackfillEntity.STATUS + " eq '" + BackfillEntity.Status.PENDING + "' or "
+                        + BackfillEntity.STATUS + " eq '" + BackfillEntity.Status.RUNNING + "')"
+        );
+        List<TableEntity> backfills = new ArrayList<>();
+        backfillsTableClient.listEntities(query, null, null).forEach(backfills::add);
+        int completed = 0;
+        for (TableEntity backfill : backfills) {
+            if (!clock.instant().isBefore(deadline)) {
+                break;
+            }
+            if (run(backfill, deadline)) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Runs a backfill from its last checkpoint, if it is not leased by another
+     * runner. Windows later than the latest window of the regular collection are
+     * left to it. Once the range is collected, the chunks recorded as failed by
+     * the previous runs are collected again.
+     *
+     * @param backfill the row of the backfill
+     * @param deadline the time by which the run stops
+     * @return true if the backfill has been completed
+     */
+    boolean run(
+                TableEntity backfill,
+                Instant deadline
+    ) {
+        OffsetDateTime leaseUntil = BackfillEntity.leaseUntil(backfill);
+        if (leaseUntil != null && leaseUntil.toInstant().isAfter(clock.instant())) {
+            return false;
+        }
+        String backfillId = backfill.getRowKey();
+        try {
+            backfill.addProperty(BackfillEntity.STATUS, BackfillEntity.Status.RUNNING.name());
+            BackfillEntity.setLeaseUntil(backfill, leaseEnd(clock.instant().plus(lease)));
+            backfill = save(backfill);
+            if (backfill == null) {
+                return false;
+            }
+
+            String clientId = String.valueOf(backfill.getProperty(BackfillEntity.CLIENT_ID));
+            Map<String, Set<String>> pairs = pairs(
+                    stringOrNull(backfill, BackfillEntity.PAYMENT_TYPE_CODE),
+                    stringOrNull(backfill, BackfillEntity.PSP_ID)
+            );
+            OffsetDateTime endWindow = LocalDate.parse(String.valueOf(backfill.getProperty(BackfillEntity.END_DATE)))
+                    .plusDays(1).atStartOfDay().atOffset(ZoneOffset.UTC).minusHours(1);
+            OffsetDateTime latestWindow = readDataService.latestWindow();
+            OffsetDateTime lastWindow = latestWindow.isBefore(endWindow) ? latestWindow : endWindow;
+            // chunks given up by this run are left to the next ones
+            Deque<String> toRetry = new ArrayDeque<>();
+            retryableChunks(backfill).forEach(chunk -> toRetry.add(chunk.range()));
+
+            while (true) {
+                OffsetDateTime nextWindow = BackfillEntity.nextWindow(backfill);
+                if (!nextWindow.isAfter(lastWindow)) {
+                    collectChunk(backfill, clientId, pairs, nextWindow, lastWindow);
+                } else if (!toRetry.isEmpty()) {
+                    retryChunk(backfill, clientId, pairs, toRetry.poll());
+                }
+                Instant now = clock.instant();
+                boolean rangeLeft = !BackfillEntity.nextWindow(backfill).isAfter(lastWindow);
+                boolean more = rangeLeft || !retryableChunks(backfill).isEmpty();
+                boolean continuing = more && now.isBefore(deadline) && (rangeLeft || !toRetry.isEmpty());
+                backfill.addProperty(
+                        BackfillEntity.STATUS,
+                        (more ? BackfillEntity.Status.RUNNING : BackfillEntity.Status.COMPLETED).name()
+                );
+                // a backfill left for the next run is released right away
+                BackfillEntity.setLeaseUntil(backfill, leaseEnd(continuing ? now.plus(lease) : now));
+                backfill = save(backfill);
+                if (backfill == null) {
+                    logger.warning("Backfill " + backfillId + " lost its lease");
+                    return false;
+                }
+                if (!continuing) {
+                    logger.info(
+                            "Backfill " + backfillId + (more ? " checkpointed at " : " completed before ")
+                                    + backfill.getProperty(BackfillEntity.NEXT_WINDOW) + " with "
+                                    + BackfillEntity.failedChunks(backfill).size() + " failed chunks"
+                    );
+                    return !more;
+                }
+            }
+        } catch (Exception e) {
+            logger.severe("Backfill " + backfillId + " failed. Error: " + e.getMessage());
+            fail(backfillId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Collects the next chunk of windows and moves the checkpoint past it, unless
+     * some windows failed and the chunk can be collected again.
+     */
+    private void collectChunk(
+                              TableEntity backfill,
+                              String clientId,
+                              Map<String, Set<String>> pairs,
+                              OffsetDateTime chunkStart,
+                              OffsetDateTime lastWindow
+    ) {
+        OffsetDateTime chunkEnd = chunkStart.plusHours(checkpointHours - 1L);
+        if (chunkEnd.isAfter(lastWindow)) {
+            chunkEnd = lastWindow;
+        }
+        RunSummary summary = readDataService.readAndWriteWindows(clientId, windows(pairs, chunkStart, chunkEnd));
+        long attempts = BackfillEntity.count(backfill, BackfillEntity.ATTEMPTS) + 1;
+        if (summary.isSuccessful() || attempts >= MAX_CHUNK_ATTEMPTS) {
+            if (!summary.isSuccessful()) {
+                List<BackfillEntity.FailedChunk> failedChunks = BackfillEntity.failedChunks(backfill);
+                failedChunks.add(
+                        new BackfillEntity.FailedChunk(
+                                chunkStart,
+                                chunkEnd,
+                                (long) summary.failed() + summary.timedOut(),
+                                0
+                        )
+                );
+                BackfillEntity.setFailedChunks(backfill, failedChunks);
+            }
+            BackfillEntity.setNextWindow(backfill, chunkEnd.plusHours(1));
+            backfill.addProperty(BackfillEntity.ATTEMPTS, 0);
+            backfill.addProperty(
+                    BackfillEntity.COLLECTED_WINDOWS,
+                    BackfillEntity.count(backfill, BackfillEntity.COLLECTED_WINDOWS) + summary.done()
+            );
+            backfill.addProperty(
+                    BackfillEntity.FAILED_WINDOWS,
+                    BackfillEntity.count(backfill, BackfillEntity.FAILED_WINDOWS) + summary.failed()
+                            + summary.timedOut()
+            );
+        } else {
+            backfill.addProperty(BackfillEntity.ATTEMPTS, (int) attempts);
+        }
+    }
+
+    /**
+     * Collects a recorded failed chunk again: the windows recovered are counted
+     * as collected, and the chunk is dropped once none of them fails.
+     */
+    private void retryChunk(
+                            TableEntity backfill,
+                            String clientId,
+                            Map<String, Set<String>> pairs,
+                            String range
+    ) {
+        List<BackfillEntity.FailedChunk> failedChunks = BackfillEntity.failedChunks(backfill);
+        for (int i = 0; i < failedChunks.size(); i++) {
+            BackfillEntity.FailedChunk chunk = failedChunks.get(i);
+            if (!chunk.range().equals(range)) {
+                continue;
+            }
+            RunSummary summary = readDataService
+                    .readAndWriteWindows(clientId, windows(pairs, chunk.start(), chunk.end()));
+            long recovered = Math.max(chunk.failedWindows() - summary.failed() - summary.timedOut(), 0);
+            backfill.addProperty(
+                    BackfillEntity.COLLECTED_WINDOWS,
+                    BackfillEntity.count(backfill, BackfillEntity.COLLECTED_WINDOWS) + recovered
+            );
+            backfill.addProperty(
+                    BackfillEntity.FAILED_WINDOWS,
+                    BackfillEntity.count(backfill, BackfillEntity.FAILED_WINDOWS) - recovered
+            );
+            if (summary.isSuccessful()) {
+                failedChunks.remove(i);
+            } else {
+                failedChunks.set(
+                        i,
+                        new BackfillEntity.FailedChunk(
+                                chunk.start(),
+                                chunk.end(),
+                                chunk.failedWindows() - recovered,
+                                chunk.retries() + 1
+                        )
+                );
+            }
+            BackfillEntity.setFailedChunks(backfill, failedChunks);
+            return;
+        }
+    }
+
+    private static List<BackfillEntity.FailedChunk> retryableChunks(TableEntity backfill) {
+        return BackfillEntity.failedChunks(backfill).stream()
+                .filter(chunk -> chunk.retries() < MAX_CHUNK_RETRIES)
+                .toList();
+    }
+
+    /**
+     * @return the (paymentTypeCode, psp, window) items of the windows from
+     *         {@code start} to {@code end}
+     */
+    private static List<CollectionCoverageService.Window> windows(
+                                                                  Map<String, Set<String>> pairs,
+                                                                  OffsetDateTime start,
+                                                                  OffsetDateTime end
+    ) {
+        List<CollectionCoverageService.Window> windows = new ArrayList<>();
+        for (OffsetDateTime window = start; !window.isAfter(end); window = window.plusHours(1)) {
+            for (Map.Entry<String, Set<String>> paymentType : pairs.entrySet()) {
+                for (String pspId : paymentType.getValue()) {
+                    windows.add(new CollectionCoverageService.Window(paymentType.getKey(), pspId, window));
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * @return the configured PSPs of each payment type code matching the filter
+     */
+    private Map<String, Set<String>> pairs(
+                                           String paymentTypeCode,
+                                           String pspId
+    ) {
+        Map<String, Set<String>> pairs = new LinkedHashMap<>();
+        readDataService.getPspsByPaymentType().forEach((configuredPaymentType, psps) -> {
+            if (paymentTypeCode == null || paymentTypeCode.equals(configuredPaymentType)) {
+                Set<String> matching = new LinkedHashSet<>();
+                psps.stream().filter(psp -> pspId == null || pspId.equals(psp)).forEach(matching::add);
+                if (!matching.isEmpty()) {
+                    pairs.put(configuredPaymentType, matching);
+                }
+            }
+        });
+        return pairs;
+    }
+
+    /**
+     * Replaces a backfill row if its ETag is unchanged, then reads it back to
+     * get the new ETag.
+     *
+     * @return the updated row, or null if another runner changed it
+     */
+    private TableEntity save(TableEntity backfill) {
+        try {
+            backfillsTableClient.updateEntityWithResponse(backfill, TableEntityUpdateMode.REPLACE, true, null, null);
+        } catch (TableServiceException e) {
+            int status = statusCode(e);
+            if (status == CONFLICT || status == PRECONDITION_FAILED) {
+                return null;
+            }
+            throw e;
+        }
+        return read(backfill.getRowKey());
+    }
+
+    private void fail(
+                      String backfillId,
+                      Exception cause
+    ) {
+        try {
+            TableEntity backfill = read(backfillId);
+            if (backfill != null) {
+                backfill.addProperty(BackfillEntity.STATUS, BackfillEntity.Status.FAILED.name());
+                backfill.addProperty(BackfillEntity.ERROR, String.valueOf(cause.getMessage()));
+                backfillsTableClient
+                        .updateEntityWithResponse(backfill, TableEntityUpdateMode.REPLACE, false, null, null);
+            }
+        } catch (Exception e) {
+            logger.warning("Failed to record the failure of backfill " + backfillId + ". Error: " + e.getMessage());
+        }
+    }
+
+    private TableEntity read(String backfillId) {
+        try {
+            return backfillsTableClient.getEntity(BackfillEntity.PARTITION_KEY, backfillId);
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static String stringOrNull(
+                                       TableEntity entity,
+                                       String property
+    ) {
+        Object value = entity.getProperty(property);
+        return value != null ? value.toString() : null;
+    }
+
+    private static OffsetDateTime leaseEnd(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    private static int statusCode(TableServiceException e) {
+        HttpResponse response = e.getResponse();
+        return response != null ? response.getStatusCode() : 0;
+    }
+
+    private static int positiveInteger(
+                                       String variable,
+                                       int defaultValue
+    ) {
+        return MapParametersUtils.parsePositiveInteger(System.getenv(variable), defaultValue)
+                .fold(exception -> {
+                    throw exception;
+                }, Function.identity());
+    }
+}
@@ -0,0 +1,546 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+
+import it.pagopa.ecommerce.reporting.entity.CollectionCoverageEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Index of the hourly windows collected for each (client, paymentTypeCode,
+ * psp) triple, stored in a dedicated table (see
+ * {@link CollectionCoverageEntity}).
+ * <p>
+ * A collection run no longer reads only its own window: it reads the coverage
+ * of the client over the look-back period and collects every window still
+ * missing, so the windows lost to a skipped timer, a restart or a failed
+ * helpdesk call are recovered by the next runs. Coverage rows are created, or
+ * replaced only if unchanged since they were read: when a backfill and a
+ * regular run of the same client update the same row, the rejected one reads
+ * the row again and adds its windows to the ones just recorded.
+ * <p>
+ * A window whose share of in-progress transactions is above
+ * {@code ECOMMERCE_SETTLING_IN_PROGRESS_PERCENT} when collected is left
+ * unsettled and polled again after
+ * {@code ECOMMERCE_SETTLING_FIRST_DELAY_MINUTES}, then after twice that delay
+ * and so on, until its counts stop changing, its share drops under the
+ * threshold or it has been polled {@code ECOMMERCE_SETTLING_MAX_REPOLLS} more
+ * times. A poll returning the counts of the previous one is not stored again.
+ * <p>
+ * Storage is sparse: a window collected for the first time without any
+ * transaction is only recorded in the index, without an hourly row.
+ * Aggregations count a missing row as zero, while the hourly export reads the
+ * index through {@link #forEachRow(LocalDate, LocalDate, Consumer)} to tell
+ * these windows from the ones never collected.
+ */
+public class CollectionCoverageService {
+
+    private static final int DEFAULT_IN_PROGRESS_PERCENT = 5;
+    private static final int DEFAULT_MAX_REPOLLS = 4;
+    private static final int DEFAULT_FIRST_DELAY_MINUTES = 60;
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+    private static final String ETAG = "odata.etag";
+
+    private static final Logger logger = Logger.getLogger(CollectionCoverageService.class.getName());
+
+    private final TableClient coverageTableClient;
+    private final TableBatchWriter coverageWriter;
+    private final Clock clock;
+    private final int inProgressPercent;
+    private final int maxRepolls;
+    private final Duration firstDelay;
+
+    public CollectionCoverageService(TableClient coverageTableClient) {
+        this(
+                coverageTableClient,
+                Clock.systemUTC(),
+                DEFAULT_IN_PROGRESS_PERCENT,
+                DEFAULT_MAX_REPOLLS,
+                Duration.ofMinutes(DEFAULT_FIRST_DELAY_MINUTES)
+        );
+    }
+
+    public CollectionCoverageService(
+            TableClient coverageTableClient,
+            Clock clock,
+            int inProgressPercent,
+            int maxRepolls,
+            Duration firstDelay
+    ) {
+        this.coverageTableClient = coverageTableClient;
+        this.coverageWriter = new TableBatchWriter(coverageTableClient);
+        this.clock = clock;
+        this.inProgressPercent = inProgressPercent;
+        this.maxRepolls = maxRepolls;
+        this.firstDelay = firstDelay;
+    }
+
+    /**
+     * Creates the index on the table named by
+     * {@code ECOMMERCE_REPORTING_COVERAGE_TABLE}.
+     *
+     * @return the index, or an empty optional if no coverage table is configured
+     */
+    public static Optional<CollectionCoverageService> fromEnvironment() {
+        String coverageTable = System.getenv("ECOMMERCE_REPORTING_COVERAGE_TABLE");
+        if (coverageTable == null || coverageTable.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new CollectionCoverageService(
+                        new TableClientBuilder()
+                                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                                .tableName(coverageTable)
+                                .buildClient(),
+                        Clock.systemUTC(),
+                        positiveInteger("ECOMMERCE_SETTLING_IN_PROGRESS_PERCENT", DEFAULT_IN_PROGRESS_PERCENT),
+                        positiveInteger("ECOMMERCE_SETTLING_MAX_REPOLLS", DEFAULT_MAX_REPOLLS),
+                        Duration.ofMinutes(
+                                positiveInteger("ECOMMERCE_SETTLING_FIRST_DELAY_MINUTES", DEFAULT_FIRST_DELAY_MINUTES)
+                        )
+                )
+        );
+    }
+
+    /**
+     * An hourly window of a triple to collect.
+     *
+     * @param paymentTypeCode the payment type code
+     * @param pspId           the PSP ID
+     * @param start           the start of the window
+     */
+    public record Window(
+            String paymentTypeCode,
+            String pspId,
+            OffsetDateTime start
+    ) {
+    }
+
+    /**
+     * Lists the windows to collect among the last {@code lookbackHours} windows
+     * ending with {@code latestWindow}, for every configured triple: the windows
+     * not collected yet and the unsettled windows due for a new poll. Windows
+     * are sorted from the latest one, so the regular window of the run is
+     * collected first when the run cannot collect them all.
+     *
+     * @param clientId          the client
+     * @param pspByPaymentType  the PSPs of each payment type code
+     * @param latestWindow      the start of the latest window to collect
+     * @param lookbackHours     the number of windows checked for each triple
+     * @return the windows to collect
+     */
+    public List<Window> missingWindows(
+                                       String clientId,
+                                       Map<String, Set<String>> pspByPaymentType,
+                                       OffsetDateTime latestWindow,
+                                       int lookbackHours
+    ) {
+        OffsetDateTime oldestWindow = latestWindow.minusHours(lookbackHours - 1L);
+        Map<String, TableEntity> coverage = read(
+                clientId,
+                CollectionCoverageEntity.day(oldestWindow),
+                CollectionCoverageEntity.day(latestWindow)
+        );
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        List<Window> missing = new ArrayList<>();
+        for (OffsetDateTime window = latestWindow; !window.isBefore(oldestWindow); window = window.minusHours(1)) {
+            LocalDate day = CollectionCoverageEntity.day(window);
+            int hour = CollectionCoverageEntity.hour(window);
+            for (Map.Entry<String, Set<String>> paymentType : pspByPaymentType.entrySet()) {
+                for (String pspId : paymentType.getValue()) {
+                    TableEntity row = coverage.get(CollectionCoverageEntity.rowKey(day, paymentType.getKey(), pspId));
+                    if (row == null || (CollectionCoverageEntity.hours(row) & (1 << hour)) == 0) {
+                        missing.add(new Window(paymentType.getKey(), pspId, window));
+                        continue;
+                    }
+                    CollectionCoverageEntity.Settling settling = CollectionCoverageEntity.settling(row, hour);
+                    if (settling != null && !settling.nextPoll().isAfter(now)) {
+                        missing.add(new Window(paymentType.getKey(), pspId, window));
+                    }
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Reads the coverage rows of the windows of the collected metrics.
+     *
+     * @param clientId  the client
+     * @param collected the {@link StateMetricEntity} rows collected by a run
+     * @return the coverage rows by RowKey
+     */
+    public Map<String, TableEntity> read(
+                                         String clientId,
+                                         List<TableEntity> collected
+    ) {
+        if (collected.isEmpty()) {
+            return new HashMap<>();
+        }
+        LocalDate startDate = null;
+        LocalDate endDate = null;
+        for (TableEntity entity : collected) {
+            LocalDate day = CollectionCoverageEntity.day(windowStart(entity));
+            startDate = startDate == null || day.isBefore(startDate) ? day : startDate;
+            endDate = endDate == null || day.isAfter(endDate) ? day : endDate;
+        }
+        return read(clientId, startDate, endDate);
+    }
+
+    /**
+     * Passes the coverage rows of every client for a date range to an action.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param action    the action run on each coverage row
+     */
+    public void forEachRow(
+                           LocalDate startDate,
+                           LocalDate endDate,
+                           Consumer<TableEntity> action
+    ) {
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter(CollectionCoverageEntity.rowKeyRangeFilter(startDate, endDate));
+        coverageTableClient.listEntities(query, null, null).forEach(action);
+    }
+
+    /**
+     * Filters out the collected metrics equal to the previous poll of their
+     * unsettled window, which do not need to be stored again, and the ones
+     * without any status, which must never replace the stored counts of their
+     * window.
+     *
+     * @param collected the {@link StateMetricEntity} rows collected by a run
+     * @param coverage  the coverage rows read by {@link #read(String, List)}
+     * @return the collected rows to store
+     */
+    public List<TableEntity> changed(
+                                     List<TableEntity> collected,
+                                     Map<String, TableEntity> coverage
+    ) {
+        List<TableEntity> changed = new ArrayList<>();
+        for (TableEntity entity : collected) {
+            if (!StateMetricEntity.hasStatuses(entity)) {
+                continue;
+            }
+            CollectionCoverageEntity.Settling settling = settlingOf(entity, coverage);
+            if (settling == null || settling.statusHash() != StateMetricEntity.statusHash(entity)) {
+                changed.add(entity);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Selects the collected metrics of windows collected for the first time
+     * without any transaction, which are recorded by
+     * {@link #markCollected(String, List, Map, Logger)} without being stored.
+     * An empty poll of an already collected window is still stored, as it
+     * replaces the previous counts. Only polls reporting their statuses can be
+     * empty: a poll without any status tells nothing about the window.
+     *
+     * @param collected the {@link StateMetricEntity} rows collected by a run
+     * @param coverage  the coverage rows read by {@link #read(String, List)}
+     * @return the collected rows not to store
+     */
+    public List<TableEntity> empty(
+                                   List<TableEntity> collected,
+                                   Map<String, TableEntity> coverage
+    ) {
+        List<TableEntity> empty = new ArrayList<>();
+        for (TableEntity entity : collected) {
+            if (StateMetricEntity.isEmpty(entity) && !isCollected(entity, coverage)) {
+                empty.add(entity);
+            }
+        }
+        return empty;
+    }
+
+    /**
+     * Records the windows of the stored hourly metrics as collected, and as
+     * settled or to be polled again.
+     *
+     * @param clientId the client
+     * @param stored   the {@link StateMetricEntity} rows stored by a run, or
+     *                 equal to the stored ones
+     * @param coverage the coverage rows read by {@link #read(String, List)}
+     * @param log      the logger
+     * @return the number of coverage rows that could not be updated
+     */
+    public int markCollected(
+                             String clientId,
+                             List<TableEntity> stored,
+                             Map<String, TableEntity> coverage,
+                             Logger log
+    ) {
+        if (stored.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<TableEntity>> windowsByRow = new LinkedHashMap<>();
+        for (TableEntity entity : stored) {
+            windowsByRow.computeIfAbsent(coverageRowKey(entity, windowStart(entity)), k -> new ArrayList<>())
+                    .add(entity);
+        }
+        Map<TableTransactionAction, TableEntity> actions = new LinkedHashMap<>();
+        for (Map.Entry<String, List<TableEntity>> windows : windowsByRow.entrySet()) {
+            TableEntity previous = coverage.get(windows.getKey());
+            TableEntity row = update(clientId, windows.getValue(), previous);
+            actions.put(
+                    previous == null ? new TableTransactionAction(TableTransactionActionType.CREATE, row)
+                            : new TableTransactionAction(TableTransactionActionType.UPDATE_REPLACE, row, true),
+                    row
+            );
+        }
+        // a row changed since it was read is read again, and updated on its own
+        List<TableEntity> written = coverageWriter.submit(
+                actions,
+                row -> updateIfUnchanged(clientId, windowsByRow.get(row.getRowKey()), log),
+                log
+        );
+        return actions.size() - written.size();
+    }
+
+    /**
+     * Records windows of a triple and day in its coverage row.
+     *
+     * @param clientId the client
+     * @param windows  the {@link StateMetricEntity} rows of the windows
+     * @param previous the coverage row, or null if not stored yet
+     * @return the new coverage row, to replace the previous one only if
+     *         unchanged
+     */
+    private TableEntity update(
+                               String clientId,
+                               List<TableEntity> windows,
+                               TableEntity previous
+    ) {
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        TableEntity first = windows.get(0);
+        // rows are replaced, so the windows collected by the previous runs are kept
+        TableEntity row = copy(
+                clientId,
+                CollectionCoverageEntity.day(windowStart(first)),
+                String.valueOf(first.getProperty("paymentTypeCode")),
+                String.valueOf(first.getProperty("pspId")),
+                previous
+        );
+        for (TableEntity entity : windows) {
+            int hour = CollectionCoverageEntity.hour(windowStart(entity));
+            CollectionCoverageEntity.Settling settling = previous != null
+                    ? CollectionCoverageEntity.settling(previous, hour)
+                    : null;
+            long statusHash = StateMetricEntity.statusHash(entity);
+            int repolls = settling != null ? settling.repolls() + 1 : 0;
+            row.addProperty(CollectionCoverageEntity.HOURS, CollectionCoverageEntity.hours(row) | (1 << hour));
+            boolean settled = !isInProgress(entity) || repolls >= maxRepolls
+                    || settling != null && settling.statusHash() == statusHash;
+            if (settled) {
+                row.addProperty(
+                        CollectionCoverageEntity.UNSETTLED,
+                        CollectionCoverageEntity.unsettled(row) & ~(1 << hour)
+                );
+            } else {
+                CollectionCoverageEntity.setSettling(
+                        row,
+                        hour,
+                        new CollectionCoverageEntity.Settling(
+                                statusHash,
+                                repolls,
+                                now.plus(firstDelay.multipliedBy(1L << repolls))
+                        )
+                );
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Reads a coverage row again and records windows in it, creating the row or
+     * replacing it only if unchanged since, up to
+     * {@value #MAX_UPDATE_ATTEMPTS} times.
+     *
+     * @return whether the row has been written
+     */
+    private boolean updateIfUnchanged(
+                                      String clientId,
+                                      List<TableEntity> windows,
+                                      Logger log
+    ) {
+        TableEntity first = windows.get(0);
+        String rowKey = coverageRowKey(first, windowStart(first));
+        for (int attempt = 1; attempt <= MAX_UPDATE_ATTEMPTS; attempt++) {
+            try {
+                TableEntity previous = readRow(clientId, rowKey);
+                TableEntity row = update(clientId, windows, previous);
+                if (previous == null) {
+                    coverageTableClient.createEntity(row);
+                } else {
+                    coverageTableClient.updateEntityWithResponse(row, TableEntityUpdateMode.REPLACE, true, null, null);
+                }
+                return true;
+            } catch (TableServiceException e) {
+                int status = statusCode(e);
+                if (status != CONFLICT && status != PRECONDITION_FAILED) {
+                    log.warning("Failed to update coverage row " + rowKey + ". Error: " + e.getMessage());
+                    return false;
+                }
+                // the row has been written by another run since it was read
+            } catch (Exception e) {
+                log.warning("Failed to update coverage row " + rowKey + ". Error: " + e.getMessage());
+                return false;
+            }
+        }
+        log.warning("Failed to update coverage row " + rowKey + " after " + MAX_UPDATE_ATTEMPTS + " attempts");
+        return false;
+    }
+
+    /**
+     * @return whether the share of in-progress transactions of a metrics row is
+     *         above the threshold
+     */
+    private boolean isInProgress(TableEntity entity) {
+        long total = 0;
+        long inProgress = 0;
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                total += count.longValue();
+                if (StatusCategory.of(i) == StatusCategory.IN_PROGRESS) {
+                    inProgress += count.longValue();
+                }
+            }
+        }
+        return inProgress * 100 > total * inProgressPercent;
+    }
+
+    /**
+     * Copies the collected windows and the unsettled windows of a coverage row,
+     * dropping the polling state of the settled ones.
+     */
+    private static TableEntity copy(
+                                    String clientId,
+                                    LocalDate day,
+                                    String paymentTypeCode,
+                                    String pspId,
+                                    TableEntity previous
+    ) {
+        TableEntity row = CollectionCoverageEntity.createEntity(
+                clientId,
+                day,
+                paymentTypeCode,
+                pspId,
+                previous != null ? CollectionCoverageEntity.hours(previous) : 0
+        );
+        if (previous != null) {
+            if (previous.getETag() != null) {
+                // the copy replaces the row only if unchanged since it was read
+                row.addProperty(ETAG, previous.getETag());
+            }
+            for (int hour = 0; hour < 24; hour++) {
+                CollectionCoverageEntity.Settling settling = CollectionCoverageEntity.settling(previous, hour);
+                if (settling != null) {
+                    CollectionCoverageEntity.setSettling(row, hour, settling);
+                }
+            }
+        }
+        return row;
+    }
+
+    private static boolean isCollected(
+                                       TableEntity entity,
+                                       Map<String, TableEntity> coverage
+    ) {
+        OffsetDateTime windowStart = windowStart(entity);
+        TableEntity row = coverage.get(coverageRowKey(entity, windowStart));
+        return row != null
+                && (CollectionCoverageEntity.hours(row) & CollectionCoverageEntity.hourBit(windowStart)) != 0;
+    }
+
+    private static CollectionCoverageEntity.Settling settlingOf(
+                                                                TableEntity entity,
+                                                                Map<String, TableEntity> coverage
+    ) {
+        OffsetDateTime windowStart = windowStart(entity);
+        TableEntity row = coverage.get(coverageRowKey(entity, windowStart));
+        return row != null ? CollectionCoverageEntity.settling(row, CollectionCoverageEntity.hour(windowStart)) : null;
+    }
+
+    private static String coverageRowKey(
+                                         TableEntity entity,
+                                         OffsetDateTime windowStart
+    ) {
+        return CollectionCoverageEntity.rowKey(
+                CollectionCoverageEntity.day(windowStart),
+                String.valueOf(entity.getProperty("paymentTypeCode")),
+                String.valueOf(entity.getProperty("pspId"))
+        );
+    }
+
+    private static OffsetDateTime windowStart(TableEntity entity) {
+        return OffsetDateTime.parse(String.valueOf(entity.getProperty(StateMetricEntity.WINDOW_START)));
+    }
+
+    private TableEntity readRow(
+                                String clientId,
+                                String rowKey
+    ) {
+        try {
+            return coverageTableClient.getEntity(clientId, rowKey);
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static int statusCode(TableServiceException e) {
+        return e.getResponse() != null ? e.getResponse().getStatusCode() : 0;
+    }
+
+    private Map<String, TableEntity> read(
+                                          String clientId,
+                                          LocalDate startDate,
+                                          LocalDate endDate
+    ) {
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter(
+                        "PartitionKey eq '" + clientId + "' and "
+                                + CollectionCoverageEntity.rowKeyRangeFilter(startDate, endDate)
+                );
+        Map<String, TableEntity> coverage = new HashMap<>();
+        coverageTableClient.listEntities(query, null, null).forEach(row -> coverage.put(row.getRowKey(), row));
+        logger.fine(() -> "Read " + coverage.size() + " coverage rows of " + clientId);
+        return coverage;
+    }
+
+    private static int positiveInteger(
+                                       String variable,
+                                       int defaultValue
+    ) {
+        return MapParametersUtils.parsePositiveInteger(System.getenv(variable), defaultValue)
+                .fold(exception -> {
+                    throw exception;
+                }, Function.identity());
+    }
+}
@@ -0,0 +1,258 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+
+import it.pagopa.ecommerce.reporting.entity.DailyAggregateEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StateMetricQueryBuilder;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StorageLayout;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the daily status counts of each (client, paymentTypeCode, psp)
+ * triple, stored in a dedicated table.
+ * <p>
+ * Once a day is over its hourly metrics stop changing, so the first report
+ * reading a closed day sums its hourly rows once and stores the result; later
+ * reports read the cached groups instead. A cached day is only discarded when a
+ * late write lands in its partition, i.e. when the metrics table holds a row of
+ * that day written after the latest row included in the cache.
+ * <p>
+ * Days are also compacted ahead of the reports, right after they close, by
+ * {@link it.pagopa.ecommerce.reporting.functions.DailyRollupTimerFunction}.
+ */
+public class DailyAggregateCacheService {
+
+    /**
+     * Properties read from the hourly rows to build the daily groups.
+     */
+    static final List<String> DAY_PROJECTION;
+
+    static {
+        List<String> projection = new ArrayList<>();
+        projection.add("clientId");
+        projection.add("paymentTypeCode");
+        projection.add("pspId");
+        projection.add("Timestamp");
+        projection.addAll(StatusStorageFields.values);
+        DAY_PROJECTION = Collections.unmodifiableList(projection);
+    }
+
+    private static final Logger logger = Logger.getLogger(DailyAggregateCacheService.class.getName());
+    private static final DateTimeFormatter FILTER_TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_INSTANT;
+
+    private final TableClient cacheTableClient;
+    private final TableClient metricsTableClient;
+    private final TableBatchWriter cacheWriter;
+    private final StorageLayout storageLayout = StorageLayout.fromEnvironment();
+
+    public DailyAggregateCacheService(
+            TableClient cacheTableClient,
+            TableClient metricsTableClient
+    ) {
+        this.cacheTableClient = cacheTableClient;
+        this.metricsTableClient = metricsTableClient;
+        this.cacheWriter = new TableBatchWriter(cacheTableClient);
+    }
+
+    /**
+     * Creates the cache on the table named by
+     * {@code ECOMMERCE_REPORTING_DAILY_AGGREGATES_TABLE}, reading the hourly
+     * metrics from {@code ECOMMERCE_REPORTING_TABLE}.
+     *
+     * @return the cache, or an empty optional if no cache table is configured
+     */
+    public static Optional<DailyAggregateCacheService> fromEnvironment() {
+        return fromEnvironment(
+                new TableClientBuilder()
+                        .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                        .tableName(System.getenv("ECOMMERCE_REPORTING_TABLE"))
+                        .buildClient()
+        );
+    }
+
+    /**
+     * Creates the cache on the table named by
+     * {@code ECOMMERCE_REPORTING_DAILY_AGGREGATES_TABLE}.
+     *
+     * @param metricsTableClient the client of the hourly metrics table
+     * @return the cache, or an empty optional if no cache table is configured
+     */
+    public static Optional<DailyAggregateCacheService> fromEnvironment(TableClient metricsTableClient) {
+        String cacheTable = System.getenv("ECOMMERCE_REPORTING_DAILY_AGGREGATES_TABLE");
+        if (cacheTable == null || cacheTable.isBlank()) {
+            return Optional.empty();
+        }
+        TableClient cacheTableClient = new TableClientBuilder()
+                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                .tableName(cacheTable)
+                .buildClient();
+        return Optional.of(new DailyAggregateCacheService(cacheTableClient, metricsTableClient));
+    }
+
+    /**
+     * Reads the cached days of a date range with a single range query. Days
+     * without a complete cache of the current schema version, or with late
+     * writes, are left out of the result.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @return the cached groups of each valid day
+     */
+    public Map<LocalDate, List<AggregatedStatusGroup>> load(
+                                                            LocalDate startDate,
+                                                            LocalDate endDate
+    ) {
+        Map<String, TableEntity> manifests = new HashMap<>();
+        Map<String, List<AggregatedStatusGroup>> groupsByDay = new HashMap<>();
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter(
+                        StateMetricQueryBuilder.partitionRangeFilter(startDate, endDate) + " and "
+                                + DailyAggregateEntity.rowKeyFilter()
+                )
+                .setTop(StateMetricQueryBuilder.MAX_PAGE_SIZE);
+        for (TableEntity entity : cacheTableClient.listEntities(query, null, null)) {
+            if (DailyAggregateEntity.isManifest(entity)) {
+                manifests.put(entity.getPartitionKey(), entity);
+            } else {
+                groupsByDay.computeIfAbsent(entity.getPartitionKey(), k -> new ArrayList<>())
+                        .add(DailyAggregateEntity.toGroup(entity));
+            }
+        }
+
+        Map<LocalDate, List<AggregatedStatusGroup>> cached = new HashMap<>();
+        manifests.forEach((partitionKey, manifest) -> {
+            LocalDate day = LocalDate.parse(partitionKey);
+            List<AggregatedStatusGroup> groups = groupsByDay.getOrDefault(partitionKey, List.of());
+            Object expectedGroups = manifest.getProperty(DailyAggregateEntity.GROUPS);
+            if (!(expectedGroups instanceof Number count) || count.intValue() != groups.size()) {
+                logger.warning("Incomplete daily aggregate cache for " + partitionKey);
+            } else if (hasLateWrites(day, DailyAggregateEntity.watermark(manifest))) {
+                logger.info("Late writes found for " + partitionKey + ", daily aggregate cache invalidated");
+            } else {
+                cached.put(day, groups);
+            }
+        });
+        return cached;
+    }
+
+    /**
+     * Compacts the closed days of a date range into their daily rollups: the
+     * days without a valid cache, never compacted or with late writes, are
+     * aggregated from their hourly rows and stored.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date, which must be over
+     * @return the number of compacted days
+     */
+    public int compact(
+                       LocalDate startDate,
+                       LocalDate endDate
+    ) {
+        Map<LocalDate, List<AggregatedStatusGroup>> cached = load(startDate, endDate);
+        List<LocalDate> missing = startDate.datesUntil(endDate.plusDays(1))
+                .filter(day -> !cached.containsKey(day))
+                .toList();
+        missing.forEach(this::aggregateDay);
+        return missing.size();
+    }
+
+    /**
+     * Sums the hourly rows of a closed day by (client, paymentTypeCode, psp) and
+     * stores the result in the cache. This runs once per day, so groups are
+     * simply keyed by the joined triple.
+     *
+     * @param day the day to aggregate
+     * @return the groups of the day
+     */
+    public List<AggregatedStatusGroup> aggregateDay(LocalDate day) {
+        ListEntitiesOptions query = StateMetricQueryBuilder.forDateRange(day, day)
+                .select(DAY_PROJECTION)
+                .layout(storageLayout)
+                .build()
+                .get(0);
+        Map<String, AggregatedStatusGroup> groups = new HashMap<>();
+        OffsetDateTime watermark = null;
+        String date = DailyAggregateEntity.partitionKey(day);
+        StateMetricEntity.RowReader reader = new StateMetricEntity.RowReader(row -> {
+            String clientId = String.valueOf(row.getProperty("clientId"));
+            String paymentType = String.valueOf(row.getProperty("paymentTypeCode"));
+            String pspId = String.valueOf(row.getProperty("pspId"));
+            AggregatedStatusGroup group = groups.computeIfAbsent(
+                    String.join("|", clientId, paymentType, pspId),
+                    k -> new AggregatedStatusGroup(date, clientId, pspId, paymentType)
+            );
+            for (int i = 0; i < StatusStorageFields.size(); i++) {
+                if (row.getProperty(StatusStorageFields.values.get(i)) instanceof Number count) {
+                    group.addStatus(i, count.longValue());
+                }
+            }
+        });
+        for (TableEntity entity : metricsTableClient.listEntities(query, null, null)) {
+            reader.accept(entity);
+            // the Timestamp of a wide row is the one of its last write
+            OffsetDateTime timestamp = entity.getTimestamp();
+            if (timestamp != null && (watermark == null || timestamp.isAfter(watermark))) {
+                watermark = timestamp;
+            }
+        }
+        List<AggregatedStatusGroup> dayGroups = new ArrayList<>(groups.values());
+        store(day, dayGroups, watermark);
+        return dayGroups;
+    }
+
+    /**
+     * Stores the groups of a day, then its manifest. The manifest is only
+     * written when every group has been stored, so a partially written day is
+     * never read back.
+     */
+    private void store(
+                       LocalDate day,
+                       List<AggregatedStatusGroup> groups,
+                       OffsetDateTime watermark
+    ) {
+        try {
+            List<TableEntity> entities = groups.stream()
+                    .map(group -> DailyAggregateEntity.createEntity(day, group))
+                    .toList();
+            int written = cacheWriter.upsertEntities(entities, logger);
+            if (written == entities.size()) {
+                cacheTableClient.upsertEntity(DailyAggregateEntity.createManifest(day, watermark, groups.size()));
+            } else {
+                logger.warning("Daily aggregate cache not stored for " + day + ": " + written + "/" + entities.size());
+            }
+        } catch (Exception e) {
+            // the report does not depend on the cache
+            logger.warning("Failed to store daily aggregate cache for " + day + ". Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether the metrics table holds a row of the day written after the
+     * cached watermark.
+     */
+    private boolean hasLateWrites(
+                                  LocalDate day,
+                                  OffsetDateTime watermark
+    ) {
+        String filter = "PartitionKey eq '" + DailyAggregateEntity.partitionKey(day) + "'";
+        if (watermark != null) {
+            filter += " and Timestamp gt datetime'" + FILTER_TIMESTAMP_FORMATTER.format(watermark) + "'";
+        }
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter(filter)
+                .setSelect(List.of("PartitionKey"))
+                .setTop(1);
+        return metricsTableClient.listEntities(query, null, null).iterator().hasNext();
+    }
+}
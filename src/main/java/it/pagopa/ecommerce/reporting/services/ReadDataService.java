@@ -1,23 +1,34 @@
 package it.pagopa.ecommerce.reporting.services;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.azure.data.tables.models.TableEntity;
 import it.pagopa.ecommerce.reporting.clients.EcommerceHelpdeskServiceClient;
+import it.pagopa.ecommerce.reporting.clients.HttpTransport;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
 import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.RequestRateLimiter;
+import it.pagopa.ecommerce.reporting.utils.RunSummary;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
 
+import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
 public class ReadDataService {
+    private static final int DEFAULT_MAX_REQUESTS_PER_SECOND = 10;
+    private static final int DEFAULT_LOOKBACK_HOURS = 24;
     private final Logger logger;
     private static ReadDataService instance = null;
     private final WriteDataService writeDataService;
     private final EcommerceHelpdeskServiceClient ecommerceHelpdeskServiceClient;
+    private final CollectionCoverageService collectionCoverage;
 
     private final Set<String> paymentTypeCodeList = MapParametersUtils
             .parseSetString(System.getenv("ECOMMERCE_PAYMENT_METHODS_TYPE_CODE_LIST")).fold(exception -> {
@@ -32,10 +43,48 @@ public class ReadDataService {
                     Function.identity()
             );
 
+    private final int maxRequestsPerSecond = MapParametersUtils
+            .parsePositiveInteger(
+                    System.getenv("HELPDESK_SERVICE_MAX_REQUESTS_PER_SECOND"),
+                    DEFAULT_MAX_REQUESTS_PER_SECOND
+            )
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    private final int lookbackHours = MapParametersUtils
+            .parsePositiveInteger(System.getenv("ECOMMERCE_COLLECTION_LOOKBACK_HOURS"), DEFAULT_LOOKBACK_HOURS)
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    private final boolean asyncEnabled = Boolean.parseBoolean(System.getenv("HELPDESK_SERVICE_ASYNC_ENABLED"));
+
+    private final ScheduledExecutorService collectionExecutor;
+    private final RequestRateLimiter requestRateLimiter;
+    private final Duration runDeadline = WorkerPool.getRunDeadline();
+
     private ReadDataService(Logger logger) {
+        this(
+                logger,
+                WriteDataService.getInstance(),
+                EcommerceHelpdeskServiceClient.getInstance(logger),
+                CollectionCoverageService.fromEnvironment().orElse(null)
+        );
+    }
+
+    ReadDataService(
+            Logger logger,
+            WriteDataService writeDataService,
+            EcommerceHelpdeskServiceClient ecommerceHelpdeskServiceClient,
+            CollectionCoverageService collectionCoverage
+    ) {
         this.logger = logger;
-        this.writeDataService = WriteDataService.getInstance();
-        this.ecommerceHelpdeskServiceClient = EcommerceHelpdeskServiceClient.getInstance(this.logger);
+        this.writeDataService = writeDataService;
+        this.ecommerceHelpdeskServiceClient = ecommerceHelpdeskServiceClient;
+        this.collectionCoverage = collectionCoverage;
+        this.collectionExecutor = WorkerPool.getExecutor();
+        this.requestRateLimiter = new RequestRateLimiter(maxRequestsPerSecond);
     }
 
     public static ReadDataService getInstance(Logger logger) {
@@ -45,46 +94,277 @@ public class ReadDataService {
         return instance;
     }
 
-    public void readAndWriteData(String clientId) {
-        OffsetDateTime startDateTime = OffsetDateTime.now().minusHours(2).withSecond(0).withMinute(0).withNano(0);
-        OffsetDateTime endDateTime = startDateTime.plusHours(1).minusNanos(1);
-        AtomicInteger index = new AtomicInteger(0);
-        logger.info("Start read and write");
-        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-        paymentTypeCodeList.forEach(
-                paymentMethodTypeCode -> pspList.get(paymentMethodTypeCode).forEach(pspId -> {
-
-                    index.getAndIncrement();
-                    TimerTask task = new TimerTask() {
-
-                        @Override
-                        public void run() {
+    /**
+     * Collects the metrics of the previous hour for the given client and stores
+     * them in table storage.
+     * <p>
+     * One work item is created for each (paymentTypeCode, pspId) pair. Work items
+     * run on the shared {@link WorkerPool} and are paced by a shared
+     * {@link RequestRateLimiter} so that no more than
+     * {@code HELPDESK_SERVICE_MAX_REQUESTS_PER_SECOND} requests per second are
+     * sent to the helpdesk service. The method returns once every work item has
+     * completed or the run deadline has elapsed.
+     * <p>
+     * Work items only fetch the metrics: the resulting entities are buffered and
+     * stored at the end of the run with a single batched write, see
+     * {@link WriteDataService#writeStateMetrics(List, List, Logger)}.
+     * <p>
+     * When {@code HELPDESK_SERVICE_ASYNC_ENABLED} is set to {@code true} requests
+     * are sent through the non-blocking helpdesk client instead, so pool threads
+     * are not used to wait on the network.
+     * <p>
+     * When {@code ECOMMERCE_REPORTING_COVERAGE_TABLE} is set, the run also
+     * collects the windows of the last {@code ECOMMERCE_COLLECTION_LOOKBACK_HOURS}
+     * hours still missing from the {@link CollectionCoverageService} index, and
+     * records the stored windows there: the windows lost by previous runs are
+     * recovered without a manual backfill. Windows collected while many of their
+     * transactions were still in progress are polled again by later runs until
+     * they settle, and rewritten only when their counts changed. Windows
+     * collected for the first time without any transaction are only recorded in
+     * the index, without an hourly row.
+     *
+     * @param clientId the client to collect metrics for
+     * @return the summary of the collection run
+     */
+    public RunSummary readAndWriteData(String clientId) {
+        return readAndWriteWindows(clientId, windowsToCollect(clientId, latestWindow()));
+    }
 
-                            JsonNode node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+    /**
+     * Collects the metrics of the given windows for the given client and stores
+     * them in table storage, as {@link #readAndWriteData(String)} does for the
+     * windows of a regular run.
+     *
+     * @param clientId the client to collect metrics for
+     * @param windows  the (paymentTypeCode, psp, window) items to collect
+     * @return the summary of the collection run
+     */
+    public RunSummary readAndWriteWindows(
+                                          String clientId,
+                                          List<CollectionCoverageService.Window> windows
+    ) {
+        List<Future<Boolean>> workItems = new ArrayList<>();
+        List<TableEntity> collected = Collections.synchronizedList(new ArrayList<>());
+        logger.info("Start read and write of " + windows.size() + " windows");
+        for (CollectionCoverageService.Window window : windows) {
+            OffsetDateTime startDateTime = window.start();
+            OffsetDateTime endDateTime = startDateTime.plusHours(1).minusNanos(1);
+            workItems.add(
+                    asyncEnabled
+                            ? readMetricsAsync(
                                     clientId,
-                                    pspId,
-                                    paymentMethodTypeCode,
+                                    window.paymentTypeCode(),
+                                    window.pspId(),
                                     startDateTime,
-                                    endDateTime
-                            );
-                            logger.info("[LOGGER] Node result " + node);
-                            writeDataService
-                                    .writeStateMetricsInTableStorage(
-                                            node,
-                                            logger,
+                                    endDateTime,
+                                    collected
+                            )
+                            : collectionExecutor.schedule(
+                                    () -> readMetrics(
                                             clientId,
-                                            paymentMethodTypeCode,
-                                            pspId
-                                    );
+                                            window.paymentTypeCode(),
+                                            window.pspId(),
+                                            startDateTime,
+                                            endDateTime,
+                                            collected
+                                    ),
+                                    requestRateLimiter.reserve(),
+                                    TimeUnit.NANOSECONDS
+                            )
+            );
+        }
+        RunSummary fetchSummary = WorkerPool.awaitAll("readAndWriteData_" + clientId, workItems, runDeadline);
+        // a poll reporting no status is a failed fetch: the window keeps its
+        // stored counts and is neither stored nor recorded as collected
+        List<TableEntity> entities;
+        int unreported;
+        synchronized (collected) {
+            entities = collected.stream().filter(StateMetricEntity::hasStatuses).toList();
+            unreported = collected.size() - entities.size();
+        }
+        Map<String, TableEntity> coverage = collectionCoverage != null ? readCoverage(clientId, entities) : null;
+        List<TableEntity> changed = coverage != null ? collectionCoverage.changed(entities, coverage) : entities;
+        List<TableEntity> empty = coverage != null ? collectionCoverage.empty(changed, coverage) : List.of();
+        Set<TableEntity> notToStore = Collections.newSetFromMap(new IdentityHashMap<>());
+        notToStore.addAll(empty);
+        List<TableEntity> toStore = changed.stream().filter(entity -> !notToStore.contains(entity)).toList();
+        logger.fine(() -> "Windows without transactions not stored: " + empty.size());
+        List<TableEntity> written = writeDataService.writeStateMetrics(toStore, empty, logger);
+        RunSummary summary = fetchSummary.withFailures(unreported + toStore.size() - written.size());
+        if (coverage != null) {
+            // empty windows and windows polled again with unchanged counts are not
+            // stored, but are recorded in the coverage
+            Set<TableEntity> stored = Collections.newSetFromMap(new IdentityHashMap<>());
+            stored.addAll(toStore);
+            List<TableEntity> recorded = new ArrayList<>(written);
+            entities.stream().filter(entity -> !stored.contains(entity)).forEach(recorded::add);
+            markCollected(clientId, recorded, coverage);
+        }
+        logger.info(summary::toString);
+        logger.info(() -> HttpTransport.getInstance().describePoolStats());
+        return summary;
+    }
+
+    /**
+     * @return the start of the latest window collected by a regular run, whose
+     *         transactions have had time to reach a final status
+     */
+    public OffsetDateTime latestWindow() {
+        return OffsetDateTime.now().minusHours(2).withSecond(0).withMinute(0).withNano(0);
+    }
+
+    /**
+     * @return the PSPs collected for each configured payment type code
+     */
+    public Map<String, Set<String>> getPspsByPaymentType() {
+        Map<String, Set<String>> psps = new LinkedHashMap<>();
+        paymentTypeCodeList.forEach(
+                paymentMethodTypeCode -> psps.put(paymentMethodTypeCode, pspList.get(paymentMethodTypeCode))
+        );
+        return psps;
+    }
 
-                        }
-                    };
-                    scheduledExecutorService.schedule(task, index.get(), TimeUnit.SECONDS);
+    /**
+     * Lists the windows collected by a run: the latest window of every triple,
+     * or the missing windows of the look-back period if the coverage index is
+     * enabled. If the index cannot be read, the run falls back to the latest
+     * window, and the others are recovered by the next runs.
+     */
+    private List<CollectionCoverageService.Window> windowsToCollect(
+                                                                    String clientId,
+                                                                    OffsetDateTime latestWindow
+    ) {
+        if (collectionCoverage != null) {
+            try {
+                return collectionCoverage.missingWindows(clientId, getPspsByPaymentType(), latestWindow, lookbackHours);
+            } catch (Exception e) {
+                logger.warning("Failed to read the collection coverage of " + clientId + ". Error: " + e.getMessage());
+            }
+        }
+        List<CollectionCoverageService.Window> windows = new ArrayList<>();
+        paymentTypeCodeList.forEach(
+                paymentMethodTypeCode -> pspList.get(paymentMethodTypeCode).forEach(
+                        pspId -> windows
+                                .add(new CollectionCoverageService.Window(paymentMethodTypeCode, pspId, latestWindow))
+                )
+        );
+        return windows;
+    }
 
-                }
+    /**
+     * Reads the coverage of the collected windows. If it cannot be read, every
+     * collected window is stored and the coverage is left as is: the windows
+     * are collected again by the next run.
+     */
+    private Map<String, TableEntity> readCoverage(
+                                                  String clientId,
+                                                  List<TableEntity> collected
+    ) {
+        try {
+            return collectionCoverage.read(clientId, collected);
+        } catch (Exception e) {
+            logger.warning("Failed to read the collection coverage of " + clientId + ". Error: " + e.getMessage());
+            return null;
+        }
+    }
 
+    private void markCollected(
+                               String clientId,
+                               List<TableEntity> stored,
+                               Map<String, TableEntity> coverage
+    ) {
+        try {
+            int failed = collectionCoverage.markCollected(clientId, stored, coverage, logger);
+            if (failed > 0) {
+                logger.warning("Failed to update " + failed + " collection coverage rows of " + clientId);
+            }
+        } catch (Exception e) {
+            // the windows are collected again by the next run
+            logger.warning("Failed to update the collection coverage of " + clientId + ". Error: " + e.getMessage());
+        }
+    }
+
+    private boolean readMetrics(
+                                String clientId,
+                                String paymentMethodTypeCode,
+                                String pspId,
+                                OffsetDateTime startDateTime,
+                                OffsetDateTime endDateTime,
+                                List<TableEntity> collected
+    ) {
+        Optional<StatusVector> statusVector = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+                clientId,
+                pspId,
+                paymentMethodTypeCode,
+                startDateTime,
+                endDateTime
+        );
+        return collectMetrics(statusVector, startDateTime, clientId, paymentMethodTypeCode, pspId, collected);
+    }
+
+    private CompletableFuture<Boolean> readMetricsAsync(
+                                                        String clientId,
+                                                        String paymentMethodTypeCode,
+                                                        String pspId,
+                                                        OffsetDateTime startDateTime,
+                                                        OffsetDateTime endDateTime,
+                                                        List<TableEntity> collected
+    ) {
+        Executor pacedExecutor = CompletableFuture
+                .delayedExecutor(requestRateLimiter.reserve(), TimeUnit.NANOSECONDS, collectionExecutor);
+        return CompletableFuture.runAsync(() -> {
+        }, pacedExecutor)
+                .thenCompose(
+                        ignored -> ecommerceHelpdeskServiceClient.fetchTransactionMetricsAsync(
+                                clientId,
+                                pspId,
+                                paymentMethodTypeCode,
+                                startDateTime,
+                                endDateTime
+                        )
+                )
+                .thenApply(
+                        statusVector -> collectMetrics(
+                                statusVector,
+                                startDateTime,
+                                clientId,
+                                paymentMethodTypeCode,
+                                pspId,
+                                collected
+                        )
+                );
+    }
+
+    private boolean collectMetrics(
+                                   Optional<StatusVector> statusVector,
+                                   OffsetDateTime windowStart,
+                                   String clientId,
+                                   String paymentMethodTypeCode,
+                                   String pspId,
+                                   List<TableEntity> collected
+    ) {
+        if (statusVector.isEmpty()) {
+            logger.warning(
+                    () -> String.format(
+                            "No metrics fetched for clientId: %s paymentTypeCode: %s pspId: %s",
+                            clientId,
+                            paymentMethodTypeCode,
+                            pspId
+                    )
+            );
+            return false;
+        }
+        logger.fine(() -> "Status counts: " + statusVector.get());
+        collected.add(
+                StateMetricEntity.createEntity(
+                        windowStart,
+                        clientId,
+                        paymentMethodTypeCode,
+                        pspId,
+                        statusVector.get()
                 )
         );
+        return true;
     }
 
     private EcommerceHelpdeskServiceClient getEcommerceHelpdeskServiceClient(Logger logger) {
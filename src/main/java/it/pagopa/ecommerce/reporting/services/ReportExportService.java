@@ -0,0 +1,270 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.models.TableEntity;
+
+import it.pagopa.ecommerce.reporting.clients.ExportSink;
+import it.pagopa.ecommerce.reporting.entity.CollectionCoverageEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregationDimension;
+import it.pagopa.ecommerce.reporting.utils.CsvWriter;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+
+/**
+ * Exports the metrics of a date range as CSV files.
+ * <p>
+ * The hourly rows of the range are scanned once, with the parallel sub-range
+ * queries of
+ * {@link TransactionStatusAggregationService#aggregateByDimensions(LocalDate, LocalDate, List, Consumer, Logger)}:
+ * each row is written to the raw file as soon as it is read, while the same
+ * scan computes the requested groupings, written to one file each at the end.
+ * Rows are never collected, so the memory used only depends on the number of
+ * groups.
+ * <p>
+ * Windows collected without any transaction have no hourly row (see
+ * {@link CollectionCoverageService}). When the coverage index is configured,
+ * the raw file gets a row of zero counts for each of them, so a window missing
+ * from the file is a window that was never collected; the hourly bitmask of
+ * each (client, day, paymentTypeCode, psp) stored row is kept to find them.
+ * Groupings only hold groups with at least one transaction: a window without
+ * transactions adds nothing to them, whether it was collected or not.
+ * <p>
+ * Files are written under a folder named after the range, e.g.
+ * {@code 2025-09-15_2025-09-21/hourly.csv} and
+ * {@code 2025-09-15_2025-09-21/client-payment_type.csv}, and are committed only
+ * when complete.
+ */
+public class ReportExportService {
+
+    public static final String HOURLY_FILE = "hourly.csv";
+
+    private static final List<String> HOURLY_HEADER;
+
+    static {
+        List<String> header = new ArrayList<>(
+                List.of("date", "window", "clientId", "paymentTypeCode", "pspId")
+        );
+        header.addAll(StatusStorageFields.values);
+        HOURLY_HEADER = List.copyOf(header);
+    }
+
+    private final TransactionStatusAggregationService aggregationService;
+    private final CollectionCoverageService collectionCoverage;
+
+    public ReportExportService(TransactionStatusAggregationService aggregationService) {
+        this(aggregationService, null);
+    }
+
+    /**
+     * @param aggregationService the service scanning the hourly rows
+     * @param collectionCoverage the coverage index, or null if not configured
+     */
+    public ReportExportService(
+            TransactionStatusAggregationService aggregationService,
+            CollectionCoverageService collectionCoverage
+    ) {
+        this.aggregationService = aggregationService;
+        this.collectionCoverage = collectionCoverage;
+    }
+
+    /**
+     * The outcome of an export.
+     *
+     * @param hourlyRows the number of exported hourly rows, including the rows of
+     *                   the windows collected without transactions
+     * @param files      the location of each committed file
+     */
+    public record Result(
+            long hourlyRows,
+            List<String> files
+    ) {
+    }
+
+    /**
+     * Exports the metrics of a date range.
+     *
+     * @param startDate  the inclusive start date
+     * @param endDate    the inclusive end date
+     * @param groupings  the groupings to export, one file each
+     * @param hourlyRows true to also export the raw hourly rows
+     * @param sink       the destination of the files
+     * @param logger     the logger used to record execution progress
+     * @return the outcome of the export
+     * @throws IOException if a file cannot be written
+     */
+    public Result export(
+                         LocalDate startDate,
+                         LocalDate endDate,
+                         List<Grouping> groupings,
+                         boolean hourlyRows,
+                         ExportSink sink,
+                         Logger logger
+    ) throws IOException {
+        String folder = startDate + "_" + endDate + "/";
+        List<String> files = new ArrayList<>();
+        Map<Grouping, List<DimensionalGroup>> groups;
+        long exportedRows = 0;
+        if (hourlyRows) {
+            try (ExportSink.ExportFile file = sink.create(folder + HOURLY_FILE)) {
+                CsvWriter csv = new CsvWriter(file.getOutputStream());
+                csv.writeRow(HOURLY_HEADER);
+                Map<String, Integer> storedHours = new ConcurrentHashMap<>();
+                groups = aggregationService.aggregateByDimensions(
+                        startDate,
+                        endDate,
+                        groupings,
+                        entity -> {
+                            writeHourlyRow(csv, entity);
+                            int hour = StateMetricEntity.windowHour(entity.getRowKey());
+                            // legacy rows, keyed by UUID, have no window in the coverage
+                            if (collectionCoverage != null && hour != StateMetricEntity.NO_WINDOW_HOUR) {
+                                storedHours.merge(coverageKey(entity), 1 << hour, (a, b) -> a | b);
+                            }
+                        },
+                        logger
+                );
+                if (collectionCoverage != null) {
+                    long emptyRows = csv.getRows();
+                    collectionCoverage.forEachRow(
+                            startDate,
+                            endDate,
+                            coverage -> writeEmptyRows(csv, coverage, storedHours)
+                    );
+                    logger.info("[export] Exported {} windows without transactions", csv.getRows() - emptyRows);
+                }
+                csv.flush();
+                file.commit();
+                exportedRows = csv.getRows() - 1;
+                files.add(file.getLocation());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            groups = aggregationService.aggregateByDimensions(startDate, endDate, groupings, logger);
+        }
+
+        for (Map.Entry<Grouping, List<DimensionalGroup>> grouping : groups.entrySet()) {
+            // parsed groupings are named after their comma-separated dimensions
+            String fileName = grouping.getKey().name().replace(',', '-') + ".csv";
+            try (ExportSink.ExportFile file = sink.create(folder + fileName)) {
+                CsvWriter csv = new CsvWriter(file.getOutputStream());
+                writeGroups(csv, grouping.getKey(), grouping.getValue());
+                csv.flush();
+                file.commit();
+                files.add(file.getLocation());
+            }
+        }
+        logger.info("[export] Exported {} hourly rows to {}", exportedRows, files);
+        return new Result(exportedRows, files);
+    }
+
+    private static void writeHourlyRow(
+                                       CsvWriter csv,
+                                       TableEntity entity
+    ) {
+        List<Object> row = new ArrayList<>(HOURLY_HEADER.size());
+        String rowKey = entity.getRowKey();
+        String[] keyParts = rowKey != null ? rowKey.split("\\|", -1) : new String[0];
+        row.add(entity.getPartitionKey());
+        row.add(keyParts.length > 1 ? keyParts[1] : null);
+        row.add(entity.getProperty("clientId"));
+        row.add(entity.getProperty("paymentTypeCode"));
+        row.add(entity.getProperty("pspId"));
+        for (String status : StatusStorageFields.values) {
+            Object count = entity.getProperty(status);
+            row.add(count != null ? count : 0);
+        }
+        // rows come from the parallel sub-range readers
+        synchronized (csv) {
+            try {
+                csv.writeRow(row);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes a row of zero counts for each window of a coverage row collected
+     * without an hourly row.
+     */
+    private static void writeEmptyRows(
+                                       CsvWriter csv,
+                                       TableEntity coverage,
+                                       Map<String, Integer> storedHours
+    ) {
+        String clientId = coverage.getPartitionKey();
+        LocalDate date = CollectionCoverageEntity.date(coverage);
+        String paymentTypeCode = CollectionCoverageEntity.paymentTypeCode(coverage);
+        String pspId = CollectionCoverageEntity.pspId(coverage);
+        int empty = CollectionCoverageEntity.hours(coverage)
+                & ~storedHours.getOrDefault(clientId + "|" + coverage.getRowKey(), 0);
+        for (int hour = 0; empty != 0; hour++, empty >>>= 1) {
+            if ((empty & 1) != 0) {
+                OffsetDateTime windowStart = date.atStartOfDay().atOffset(ZoneOffset.UTC).plusHours(hour);
+                writeHourlyRow(
+                        csv,
+                        new TableEntity(
+                                StateMetricEntity.partitionKey(windowStart),
+                                StateMetricEntity.rowKey(clientId, paymentTypeCode, pspId, windowStart)
+                        )
+                                .addProperty("clientId", clientId)
+                                .addProperty("paymentTypeCode", paymentTypeCode)
+                                .addProperty("pspId", pspId)
+                );
+            }
+        }
+    }
+
+    /**
+     * @return the client and the coverage RowKey of an hourly row
+     */
+    private static String coverageKey(TableEntity entity) {
+        return entity.getProperty("clientId") + "|" + CollectionCoverageEntity.rowKey(
+                LocalDate.parse(entity.getPartitionKey()),
+                String.valueOf(entity.getProperty("paymentTypeCode")),
+                String.valueOf(entity.getProperty("pspId"))
+        );
+    }
+
+    private static void writeGroups(
+                                    CsvWriter csv,
+                                    Grouping grouping,
+                                    List<DimensionalGroup> groups
+    ) throws IOException {
+        List<String> header = new ArrayList<>();
+        grouping.dimensions().forEach(dimension -> header.add(dimension.name().toLowerCase(Locale.ROOT)));
+        Arrays.stream(StatusCategory.values()).forEach(category -> header.add(category.name()));
+        header.addAll(StatusStorageFields.values);
+        csv.writeRow(header);
+        for (DimensionalGroup group : groups) {
+            List<Object> row = new ArrayList<>(header.size());
+            for (AggregationDimension dimension : grouping.dimensions()) {
+                row.add(group.get(dimension));
+            }
+            for (StatusCategory category : StatusCategory.values()) {
+                row.add(group.getCounts().getCategoryCount(category));
+            }
+            for (int i = 0; i < StatusStorageFields.size(); i++) {
+                row.add(group.getCounts().getStatusCount(i));
+            }
+            csv.writeRow(row);
+        }
+    }
+}
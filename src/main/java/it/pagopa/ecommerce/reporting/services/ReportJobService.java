@@ -0,0 +1,485 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.pagopa.ecommerce.reporting.entity.ReportJobEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.AggregationDimension;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Report jobs: reports of date ranges too long to be aggregated within a single
+ * invocation, e.g. a quarter.
+ * <p>
+ * A job is submitted with {@link #submit(LocalDate, LocalDate, Grouping)} and
+ * run in the background by
+ * {@link it.pagopa.ecommerce.reporting.functions.ReportJobTimerFunction}, one
+ * slice at a time: each slice reads up to
+ * {@code ECOMMERCE_REPORT_JOB_CHECKPOINT_PAGES} pages of the range query with
+ * {@link TransactionStatusAggregationService#aggregateByDimensionsSlice}, then
+ * checkpoints the groups aggregated so far with the continuation token of the
+ * next page (see {@link ReportJobEntity}). A run stops at its deadline, and the
+ * next run resumes from the last checkpoint, so a job interrupted by a restart
+ * only loses its last slice.
+ * <p>
+ * A running job is leased by its runner for
+ * {@code ECOMMERCE_REPORT_JOB_LEASE_SECONDS}, renewed at every checkpoint, and
+ * every write is guarded by the ETag of the job row: concurrent runners never
+ * aggregate the same job, and a runner that lost its lease stops at its next
+ * checkpoint.
+ * <p>
+ * A job fails only on errors that would happen again on every run, e.g. an
+ * invalid checkpoint or a request rejected by the service. On transient errors,
+ * such as timeouts, throttling or server errors, the job is left as it is and
+ * picked up again once its lease expires.
+ */
+public class ReportJobService {
+
+    private static final int DEFAULT_CHECKPOINT_PAGES = 20;
+    private static final int DEFAULT_LEASE_SECONDS = 300;
+    private static final int NOT_FOUND = 404;
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    private static final Logger logger = Logger.getLogger(ReportJobService.class.getName());
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<List<StoredGroup>> STATE_TYPE = new TypeReference<>() {
+    };
+
+    private final TableClient jobsTableClient;
+    private final TransactionStatusAggregationService aggregationService;
+    private final Clock clock;
+    private final int checkpointPages;
+    private final Duration lease;
+
+    public ReportJobService(
+            TableClient jobsTableClient,
+            TransactionStatusAggregationService aggregationService,
+            Clock clock,
+            int checkpointPages,
+            Duration lease
+    ) {
+        this.jobsTableClient = jobsTableClient;
+        this.aggregationService = aggregationService;
+        this.clock = clock;
+        this.checkpointPages = checkpointPages;
+        this.lease = lease;
+    }
+
+    /**
+     * Creates the service on the table named by
+     * {@code ECOMMERCE_REPORTING_REPORT_JOBS_TABLE}.
+     *
+     * @return the service, or an empty optional if no table is configured
+     */
+    public static Optional<ReportJobService> fromEnvironment() {
+        String jobsTable = System.getenv("ECOMMERCE_REPORTING_REPORT_JOBS_TABLE");
+        if (jobsTable == null || jobsTable.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new ReportJobService(
+                        new TableClientBuilder()
+                                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                                .tableName(jobsTable)
+                                .buildClient(),
+                        new TransactionStatusAggregationService(),
+                        Clock.systemUTC(),
+                        positiveInteger("ECOMMERCE_REPORT_JOB_CHECKPOINT_PAGES", DEFAULT_CHECKPOINT_PAGES),
+                        Duration.ofSeconds(positiveInteger("ECOMMERCE_REPORT_JOB_LEASE_SECONDS", DEFAULT_LEASE_SECONDS))
+                )
+        );
+    }
+
+    /**
+     * The state of a job.
+     *
+     * @param jobId     the id of the job
+     * @param status    the status of the job
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param grouping  the names of the dimensions of the groups
+     * @param slices    the number of slices aggregated so far
+     * @param error     the cause of the failure of a failed job, or null
+     * @param groups    the groups of a completed job, sorted by dimension values,
+     *                  or null
+     */
+    public record Job(
+            String jobId,
+            ReportJobEntity.Status status,
+            String startDate,
+            String endDate,
+            List<String> grouping,
+            long slices,
+            String error,
+            List<ReportQueryService.Row> groups
+    ) {
+    }
+
+    /**
+     * A group of a checkpoint: the values of the dimensions of the grouping, in
+     * order, and the non-zero raw status counts.
+     */
+    record StoredGroup(
+            List<String> values,
+            Map<String, Long> counts
+    ) {
+    }
+
+    /**
+     * Submits a job, run by the next runs of the job runner.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param grouping  the grouping of the report
+     * @return the id of the job
+     */
+    public String submit(
+                         LocalDate startDate,
+                         LocalDate endDate,
+                         Grouping grouping
+    ) {
+        String jobId = UUID.randomUUID().toString();
+        // stored as parsable dimension names, whatever the name of the grouping
+        String dimensions = grouping.dimensions().stream()
+                .map(dimension -> dimension.name().toLowerCase(Locale.ROOT))
+                .collect(Collectors.joining(","));
+        jobsTableClient.createEntity(ReportJobEntity.createEntity(jobId, startDate, endDate, dimensions));
+        logger.info("Report job " + jobId + " submitted for " + dimensions + " from " + startDate + " to " + endDate);
+        return jobId;
+    }
+
+    /**
+     * Reads the state of a job, with its groups once completed.
+     *
+     * @param jobId the id of the job
+     * @return the job, or an empty optional if it does not exist
+     */
+    public Optional<Job> get(String jobId) {
+        TableEntity entity = read(jobId);
+        if (entity == null) {
+            return Optional.empty();
+        }
+        Grouping grouping = Grouping.parse(String.valueOf(entity.getProperty(ReportJobEntity.GROUPING)));
+        ReportJobEntity.Status status = ReportJobEntity.status(entity);
+        List<ReportQueryService.Row> groups = null;
+        if (status == ReportJobEntity.Status.COMPLETED) {
+            groups = readState(ReportJobEntity.state(entity)).stream()
+                    .sorted((first, second) -> ReportQueryService.compareKeys(first.values(), second.values()))
+                    .map(group -> ReportQueryService.toRow(grouping, group.values(), countsOf(group)))
+                    .toList();
+        }
+        Object error = entity.getProperty(ReportJobEntity.ERROR);
+        return Optional.of(
+                new Job(
+                        jobId,
+                        status,
+                        String.valueOf(entity.getProperty(ReportJobEntity.START_DATE)),
+                        String.valueOf(entity.getProperty(ReportJobEntity.END_DATE)),
+                        grouping.dimensions().stream().map(dimension -> dimension.name().toLowerCase(Locale.ROOT))
+                                .toList(),
+                        slices(entity),
+                        error != null ? error.toString() : null,
+                        groups
+                )
+        );
+    }
+
+    /**
+     * Runs the pending and interrupted jobs, one after the other, until they are
+     * all completed or the time budget is over.
+     *
+     * @param budget the time the run may last
+     * @return the number of jobs completed by the run
+     */
+    public int runPending(Duration budget) {
+        Instant deadline = clock.instant().plus(budget);
+        ListEntitiesOptions query = new ListEntitiesOptions().setFilter(
+                "PartitionKey eq '" + ReportJobEntity.PARTITION_KEY + "' and ("
+                        + ReportJobEntity.STATUS + " eq '" + ReportJobEntity.Status.PENDING + "' or "
+                        + ReportJobEntity.STATUS + " eq '" + ReportJobEntity.Status.RUNNING + "')"
+        );
+        List<TableEntity> jobs = new ArrayList<>();
+        jobsTableClient.listEntities(query, null, null).forEach(jobs::add);
+        int completed = 0;
+        for (TableEntity job : jobs) {
+            if (!clock.instant().isBefore(deadline)) {
+                break;
+            }
+            if (run(job, deadline)) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Runs a job from its last checkpoint, if it is not leased by another runner.
+     *
+     * @param job      the row of the job
+     * @param deadline the time by which the run stops
+     * @return true if the job has been completed
+     */
+    boolean run(
+                TableEntity job,
+                Instant deadline
+    ) {
+        OffsetDateTime leaseUntil = ReportJobEntity.leaseUntil(job);
+        if (leaseUntil != null && leaseUntil.toInstant().isAfter(clock.instant())) {
+            return false;
+        }
+        String jobId = job.getRowKey();
+        try {
+            job.addProperty(ReportJobEntity.STATUS, ReportJobEntity.Status.RUNNING.name());
+            ReportJobEntity.setLeaseUntil(job, leaseEnd(clock.instant().plus(lease)));
+            job = save(job);
+            if (job == null) {
+                return false;
+            }
+
+            Grouping grouping = Grouping.parse(String.valueOf(job.getProperty(ReportJobEntity.GROUPING)));
+            LocalDate startDate = LocalDate.parse(String.valueOf(job.getProperty(ReportJobEntity.START_DATE)));
+            LocalDate endDate = LocalDate.parse(String.valueOf(job.getProperty(ReportJobEntity.END_DATE)));
+            DimensionalAggregator aggregator = new DimensionalAggregator(List.of(grouping));
+            restore(aggregator, grouping, readState(ReportJobEntity.state(job)));
+            Object token = job.getProperty(ReportJobEntity.CONTINUATION_TOKEN);
+            String continuationToken = token != null && !token.toString().isEmpty() ? token.toString() : null;
+            long slices = slices(job);
+
+            while (true) {
+                continuationToken = aggregationService.aggregateByDimensionsSlice(
+                        startDate,
+                        endDate,
+                        aggregator,
+                        continuationToken,
+                        checkpointPages
+                );
+                slices++;
+                Instant now = clock.instant();
+                boolean more = continuationToken != null;
+                boolean continuing = more && now.isBefore(deadline);
+                ReportJobEntity.setState(job, writeState(aggregator, grouping));
+                job.addProperty(ReportJobEntity.CONTINUATION_TOKEN, more ? continuationToken : "");
+                job.addProperty(ReportJobEntity.SLICES, slices);
+                job.addProperty(
+                        ReportJobEntity.STATUS,
+                        (more ? ReportJobEntity.Status.RUNNING : ReportJobEntity.Status.COMPLETED).name()
+                );
+                // a job left for the next run is released right away
+                ReportJobEntity.setLeaseUntil(job, leaseEnd(continuing ? now.plus(lease) : now));
+                job = save(job);
+                if (job == null) {
+                    logger.warning("Report job " + jobId + " lost its lease after " + slices + " slices");
+                    return false;
+                }
+                if (!continuing) {
+                    logger.info(
+                            "Report job " + jobId + (more ? " checkpointed" : " completed") + " after " + slices
+                                    + " slices"
+                    );
+                    return !more;
+                }
+            }
+        } catch (Exception e) {
+            if (isTransient(e)) {
+                logger.warning(
+                        "Report job " + jobId + " interrupted, resumed once its lease expires. Error: "
+                                + e.getMessage()
+                );
+            } else {
+                logger.severe("Report job " + jobId + " failed. Error: " + e.getMessage());
+                fail(job, e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Replaces a job row if its ETag is unchanged, then reads it back to get the
+     * new ETag.
+     *
+     * @return the updated row, or null if another runner changed it
+     */
+    private TableEntity save(TableEntity job) {
+        try {
+            jobsTableClient.updateEntityWithResponse(job, TableEntityUpdateMode.REPLACE, true, null, null);
+        } catch (TableServiceException e) {
+            int status = statusCode(e);
+            if (status == CONFLICT || status == PRECONDITION_FAILED) {
+                return null;
+            }
+            throw e;
+        }
+        return read(job.getRowKey());
+    }
+
+    /**
+     * Marks a job as failed, if its row is unchanged since the runner last saved
+     * it: a job taken over by another runner is left to that runner. The row is
+     * read again, so the failure is recorded with the last saved checkpoint.
+     *
+     * @param job   the row of the job, with the ETag it has been saved with
+     * @param cause the cause of the failure
+     */
+    private void fail(
+                      TableEntity job,
+                      Exception cause
+    ) {
+        String jobId = job.getRowKey();
+        try {
+            TableEntity stored = read(jobId);
+            if (stored == null || !Objects.equals(stored.getETag(), job.getETag())) {
+                logger.warning("Report job " + jobId + " changed by another runner, failure not recorded");
+                return;
+            }
+            stored.addProperty(ReportJobEntity.STATUS, ReportJobEntity.Status.FAILED.name());
+            stored.addProperty(ReportJobEntity.ERROR, String.valueOf(cause.getMessage()));
+            jobsTableClient.updateEntityWithResponse(stored, TableEntityUpdateMode.REPLACE, true, null, null);
+        } catch (Exception e) {
+            logger.warning("Failed to record the failure of report job " + jobId + ". Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tells whether a job may succeed when run again: storage requests that
+     * timed out, were throttled or hit a server error, and I/O errors. Any other
+     * error would happen again on every run.
+     */
+    private static boolean isTransient(Exception e) {
+        if (e instanceof TableServiceException tableException) {
+            int status = statusCode(tableException);
+            return status == 0 || status == REQUEST_TIMEOUT || status == TOO_MANY_REQUESTS || status >= SERVER_ERROR;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TableEntity read(String jobId) {
+        try {
+            return jobsTableClient.getEntity(ReportJobEntity.PARTITION_KEY, jobId);
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static void restore(
+                                DimensionalAggregator aggregator,
+                                Grouping grouping,
+                                List<StoredGroup> groups
+    ) {
+        for (StoredGroup group : groups) {
+            Map<AggregationDimension, String> values = new EnumMap<>(AggregationDimension.class);
+            for (int d = 0; d < grouping.dimensions().size(); d++) {
+                values.put(grouping.dimensions().get(d), group.values().get(d));
+            }
+            long[] counts = new long[StatusStorageFields.size()];
+            group.counts().forEach((status, count) -> {
+                int statusIndex = StatusStorageFields.indexOf(status);
+                if (statusIndex >= 0) {
+                    counts[statusIndex] = count;
+                }
+            });
+            aggregator.add(grouping, values, counts);
+        }
+    }
+
+    private static String writeState(
+                                     DimensionalAggregator aggregator,
+                                     Grouping grouping
+    ) throws JsonProcessingException {
+        List<StoredGroup> groups = new ArrayList<>();
+        for (DimensionalGroup group : aggregator.results().get(grouping)) {
+            List<String> values = grouping.dimensions().stream().map(group::get).toList();
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (int i = 0; i < StatusStorageFields.size(); i++) {
+                long count = group.getCounts().getStatusCount(i);
+                if (count != 0) {
+                    counts.put(StatusStorageFields.values.get(i), count);
+                }
+            }
+            groups.add(new StoredGroup(values, counts));
+        }
+        return OBJECT_MAPPER.writeValueAsString(groups);
+    }
+
+    private static List<StoredGroup> readState(String state) {
+        if (state == null) {
+            return List.of();
+        }
+        try {
+            return OBJECT_MAPPER.readValue(state, STATE_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid report job checkpoint", e);
+        }
+    }
+
+    private static AggregatedStatusGroup countsOf(StoredGroup group) {
+        AggregatedStatusGroup counts = new AggregatedStatusGroup(null, null, null, null);
+        group.counts().forEach((status, count) -> {
+            int statusIndex = StatusStorageFields.indexOf(status);
+            if (statusIndex >= 0) {
+                counts.addStatus(statusIndex, count);
+            }
+        });
+        return counts;
+    }
+
+    private static long slices(TableEntity job) {
+        return job.getProperty(ReportJobEntity.SLICES) instanceof Number count ? count.longValue() : 0;
+    }
+
+    private static OffsetDateTime leaseEnd(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    private static int statusCode(TableServiceException e) {
+        HttpResponse response = e.getResponse();
+        return response != null ? response.getStatusCode() : 0;
+    }
+
+    private static int positiveInteger(
+                                       String variable,
+                                       int defaultValue
+    ) {
+        return MapParametersUtils.parsePositiveInteger(System.getenv(variable), defaultValue)
+                .fold(exception -> {
+                    throw exception;
+                }, Function.identity());
+    }
+}
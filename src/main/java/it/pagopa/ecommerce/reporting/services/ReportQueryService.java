@@ -0,0 +1,409 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.AggregationDimension;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import org.slf4j.Logger;
+
+/**
+ * Answers report queries: the status counts of a date range, optionally of a
+ * single client, grouped by client, paymentType, psp and day.
+ * <p>
+ * Queries are answered from the (client, paymentTypeCode, psp) groups of each
+ * day, kept in memory by the worker process. Closed days are read once, from
+ * the {@link DailyAggregateCacheService} when configured or else from their
+ * hourly rows, and then kept for
+ * {@code ECOMMERCE_REPORT_QUERY_CLOSED_DAY_TTL_SECONDS} so that late writes
+ * are eventually picked up. The open day is the only one
+ * read from storage while it is being collected, at most once every
+ * {@code ECOMMERCE_REPORT_QUERY_OPEN_DAY_TTL_SECONDS}, so dashboards polling
+ * the same range share the same reads.
+ * <p>
+ * Ranges are limited to {@code ECOMMERCE_REPORT_QUERY_MAX_RANGE_DAYS} days,
+ * so a single request cannot scan an unbounded number of days: longer ranges
+ * are reported through {@link ReportJobService} instead.
+ */
+public class ReportQueryService {
+
+    /**
+     * The dimensions of the groups kept for each day.
+     */
+    public static final Set<AggregationDimension> DIMENSIONS = Collections.unmodifiableSet(
+            EnumSet.of(
+                    AggregationDimension.CLIENT,
+                    AggregationDimension.PAYMENT_TYPE,
+                    AggregationDimension.PSP,
+                    AggregationDimension.DAY
+            )
+    );
+
+    private static final Grouping DAY_GROUPING = Grouping.of(
+            "reportQueryDay",
+            AggregationDimension.DAY,
+            AggregationDimension.CLIENT,
+            AggregationDimension.PAYMENT_TYPE,
+            AggregationDimension.PSP
+    );
+
+    private static final int DEFAULT_CLOSED_DAY_TTL_SECONDS = 3600;
+    private static final int DEFAULT_OPEN_DAY_TTL_SECONDS = 60;
+    private static final int DEFAULT_MAX_CACHED_DAYS = 400;
+    private static final int DEFAULT_MAX_RANGE_DAYS = 92;
+
+    private static ReportQueryService instance = null;
+
+    private final TransactionStatusAggregationService aggregationService;
+    // null when no daily aggregate cache table is configured
+    private final DailyAggregateCacheService dailyAggregateCache;
+    private final Clock clock;
+    private final Duration closedDayTtl;
+    private final Duration openDayTtl;
+    private final int maxCachedDays;
+    private final int maxRangeDays;
+    private final ForkJoinPool aggregationPool = WorkerPool.getAggregationPool();
+    private final Map<LocalDate, CachedDay> days = new ConcurrentHashMap<>();
+
+    public ReportQueryService(
+            TransactionStatusAggregationService aggregationService,
+            DailyAggregateCacheService dailyAggregateCache,
+            Clock clock,
+            Duration closedDayTtl,
+            Duration openDayTtl,
+            int maxCachedDays,
+            int maxRangeDays
+    ) {
+        this.aggregationService = aggregationService;
+        this.dailyAggregateCache = dailyAggregateCache;
+        this.clock = clock;
+        this.closedDayTtl = closedDayTtl;
+        this.openDayTtl = openDayTtl;
+        this.maxCachedDays = maxCachedDays;
+        this.maxRangeDays = maxRangeDays;
+    }
+
+    /**
+     * Returns the service shared by the invocations of the worker process, so
+     * the days read by an invocation are reused by the next ones.
+     *
+     * @return the shared service
+     */
+    public static synchronized ReportQueryService getInstance() {
+        if (instance == null) {
+            instance = new ReportQueryService(
+                    new TransactionStatusAggregationService(),
+                    DailyAggregateCacheService.fromEnvironment().orElse(null),
+                    Clock.systemUTC(),
+                    Duration.ofSeconds(
+                            positiveInteger(
+                                    "ECOMMERCE_REPORT_QUERY_CLOSED_DAY_TTL_SECONDS",
+                                    DEFAULT_CLOSED_DAY_TTL_SECONDS
+                            )
+                    ),
+                    Duration.ofSeconds(
+                            positiveInteger("ECOMMERCE_REPORT_QUERY_OPEN_DAY_TTL_SECONDS", DEFAULT_OPEN_DAY_TTL_SECONDS)
+                    ),
+                    positiveInteger("ECOMMERCE_REPORT_QUERY_MAX_CACHED_DAYS", DEFAULT_MAX_CACHED_DAYS),
+                    positiveInteger("ECOMMERCE_REPORT_QUERY_MAX_RANGE_DAYS", DEFAULT_MAX_RANGE_DAYS)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * @return the max number of days of a queried range
+     */
+    public int getMaxRangeDays() {
+        return maxRangeDays;
+    }
+
+    /**
+     * The status counts of a group.
+     *
+     * @param dimensions the values of the dimensions of the group, by dimension
+     *                   name
+     * @param total      the sum of the category counts
+     * @param categories the non-zero category counts
+     * @param statuses   the non-zero raw status counts
+     */
+    public record Row(
+            Map<String, String> dimensions,
+            long total,
+            Map<StatusCategory, Long> categories,
+            Map<String, Long> statuses
+    ) {
+    }
+
+    /**
+     * The answer to a query.
+     *
+     * @param startDate the inclusive start date, as {@code yyyy-MM-dd}
+     * @param endDate   the inclusive end date, as {@code yyyy-MM-dd}
+     * @param clientId  the client of the query, or null for every client
+     * @param grouping  the names of the dimensions of the groups
+     * @param closed    true if every day of the range is over, i.e. the answer
+     *                  only changes with late writes
+     * @param groups    the non-empty groups, sorted by dimension values
+     */
+    public record Result(
+            String startDate,
+            String endDate,
+            String clientId,
+            List<String> grouping,
+            boolean closed,
+            List<Row> groups
+    ) {
+    }
+
+    /**
+     * Aggregates the status counts of a date range.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param clientId  the client to report, or null for every client
+     * @param grouping  the grouping of the counts, using {@link #DIMENSIONS} only
+     * @param logger    the logger used to record execution progress
+     * @return the groups of the range
+     * @throws IllegalArgumentException if the grouping uses other dimensions, or
+     *                                  the range is longer than
+     *                                  {@link #getMaxRangeDays()}
+     */
+    public Result query(
+                        LocalDate startDate,
+                        LocalDate endDate,
+                        String clientId,
+                        Grouping grouping,
+                        Logger logger
+    ) {
+        if (!DIMENSIONS.containsAll(grouping.dimensions())) {
+            throw new IllegalArgumentException("Unsupported grouping " + grouping.name() + ", use " + DIMENSIONS);
+        }
+        long rangeDays = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        if (rangeDays > maxRangeDays) {
+            throw new IllegalArgumentException(
+                    "Range of " + rangeDays + " days longer than the maximum of " + maxRangeDays + " days"
+            );
+        }
+        LocalDate today = LocalDate.now(clock);
+        Map<List<String>, AggregatedStatusGroup> groups = new HashMap<>();
+        for (Map.Entry<LocalDate, List<AggregatedStatusGroup>> day : loadDays(startDate, endDate, today, logger)
+                .entrySet()) {
+            for (AggregatedStatusGroup group : day.getValue()) {
+                if (clientId == null || clientId.equals(group.getClientId())) {
+                    List<String> key = grouping.dimensions().stream()
+                            .map(dimension -> valueOf(dimension, group))
+                            .toList();
+                    groups.computeIfAbsent(key, k -> new AggregatedStatusGroup(null, null, null, null))
+                            .merge(group);
+                }
+            }
+        }
+
+        List<Row> rows = groups.entrySet().stream()
+                .filter(group -> !group.getValue().isEmpty())
+                .sorted(Map.Entry.comparingByKey(ReportQueryService::compareKeys))
+                .map(group -> toRow(grouping, group.getKey(), group.getValue()))
+                .toList();
+        return new Result(
+                startDate.toString(),
+                endDate.toString(),
+                clientId,
+                grouping.dimensions().stream().map(dimension -> dimension.name().toLowerCase(Locale.ROOT)).toList(),
+                endDate.isBefore(today),
+                rows
+        );
+    }
+
+    /**
+     * Returns the groups of each day of a range, reading the days that are not
+     * cached or whose cache has expired.
+     */
+    private Map<LocalDate, List<AggregatedStatusGroup>> loadDays(
+                                                                 LocalDate startDate,
+                                                                 LocalDate endDate,
+                                                                 LocalDate today,
+                                                                 Logger logger
+    ) {
+        Instant now = clock.instant();
+        Map<LocalDate, List<AggregatedStatusGroup>> loaded = new TreeMap<>();
+        List<LocalDate> missingClosed = new ArrayList<>();
+        List<LocalDate> missingOpen = new ArrayList<>();
+        startDate.datesUntil(endDate.plusDays(1)).forEach(day -> {
+            boolean closed = day.isBefore(today);
+            CachedDay cached = days.get(day);
+            if (cached != null && cached.closed() == closed
+                    && now.isBefore(cached.loadedAt().plus(closed ? closedDayTtl : openDayTtl))) {
+                loaded.put(day, cached.groups());
+            } else if (closed) {
+                missingClosed.add(day);
+            } else if (!day.isAfter(today)) {
+                missingOpen.add(day);
+            }
+        });
+        logger.info(
+                "[query] Days in memory {}, closed days to read {}, open days to read {}",
+                loaded.size(),
+                missingClosed.size(),
+                missingOpen.size()
+        );
+
+        Map<LocalDate, List<AggregatedStatusGroup>> read = new HashMap<>();
+        if (!missingClosed.isEmpty()) {
+            read.putAll(
+                    dailyAggregateCache != null
+                            ? readFromDailyCache(missingClosed)
+                            : readFromHourlyRows(missingClosed, logger)
+            );
+        }
+        if (!missingOpen.isEmpty()) {
+            read.putAll(readFromHourlyRows(missingOpen, logger));
+        }
+        read.forEach((day, groups) -> {
+            days.put(day, new CachedDay(List.copyOf(groups), day.isBefore(today), now));
+            loaded.put(day, groups);
+        });
+        evict();
+        return loaded;
+    }
+
+    /**
+     * Reads closed days from the daily aggregate cache, aggregating and caching
+     * the missing ones in parallel on the aggregation pool.
+     */
+    private Map<LocalDate, List<AggregatedStatusGroup>> readFromDailyCache(List<LocalDate> missing) {
+        Map<LocalDate, List<AggregatedStatusGroup>> read = new HashMap<>(
+                dailyAggregateCache.load(missing.get(0), missing.get(missing.size() - 1))
+        );
+        read.keySet().retainAll(missing);
+        Map<LocalDate, ForkJoinTask<List<AggregatedStatusGroup>>> tasks = new HashMap<>();
+        for (LocalDate day : missing) {
+            if (!read.containsKey(day)) {
+                tasks.put(day, aggregationPool.submit(() -> dailyAggregateCache.aggregateDay(day)));
+            }
+        }
+        tasks.forEach((day, task) -> read.put(day, task.join()));
+        return read;
+    }
+
+    /**
+     * Reads days from their hourly rows with a single scan of the range they
+     * span.
+     */
+    private Map<LocalDate, List<AggregatedStatusGroup>> readFromHourlyRows(
+                                                                           List<LocalDate> missing,
+                                                                           Logger logger
+    ) {
+        Map<LocalDate, List<AggregatedStatusGroup>> read = new HashMap<>();
+        missing.forEach(day -> read.put(day, new ArrayList<>()));
+        List<DimensionalGroup> groups = aggregationService.aggregateByDimensions(
+                missing.get(0),
+                missing.get(missing.size() - 1),
+                List.of(DAY_GROUPING),
+                logger
+        ).getOrDefault(DAY_GROUPING, List.of());
+        for (DimensionalGroup group : groups) {
+            List<AggregatedStatusGroup> dayGroups = read.get(LocalDate.parse(group.get(AggregationDimension.DAY)));
+            if (dayGroups != null) {
+                dayGroups.add(group.getCounts());
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Keeps at most {@code maxCachedDays} days in memory, dropping the oldest.
+     */
+    private void evict() {
+        int excess = days.size() - maxCachedDays;
+        if (excess > 0) {
+            days.keySet().stream()
+                    .sorted()
+                    .limit(excess)
+                    .toList()
+                    .forEach(days::remove);
+        }
+    }
+
+    static Row toRow(
+                             Grouping grouping,
+                             List<String> key,
+                             AggregatedStatusGroup counts
+    ) {
+        Map<String, String> dimensions = new LinkedHashMap<>();
+        for (int i = 0; i < key.size(); i++) {
+            dimensions.put(grouping.dimensions().get(i).name().toLowerCase(Locale.ROOT), key.get(i));
+        }
+        Map<String, Long> statuses = new LinkedHashMap<>();
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (counts.getStatusCount(i) != 0) {
+                statuses.put(StatusStorageFields.values.get(i), counts.getStatusCount(i));
+            }
+        }
+        return new Row(dimensions, counts.getTotal(), counts.getCategoryCounts(), statuses);
+    }
+
+    private static String valueOf(
+                                  AggregationDimension dimension,
+                                  AggregatedStatusGroup group
+    ) {
+        return switch (dimension) {
+            case CLIENT -> group.getClientId();
+            case PAYMENT_TYPE -> group.getPaymentTypeCode();
+            case PSP -> group.getPspId();
+            case DAY -> group.getDate();
+            default -> throw new IllegalArgumentException("Unsupported dimension " + dimension);
+        };
+    }
+
+    static int compareKeys(
+                                   List<String> first,
+                                   List<String> second
+    ) {
+        for (int i = 0; i < first.size(); i++) {
+            int comparison = Objects.compare(
+                    first.get(i),
+                    second.get(i),
+                    Comparator.nullsFirst(Comparator.naturalOrder())
+            );
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private static int positiveInteger(
+                                       String variable,
+                                       int defaultValue
+    ) {
+        return MapParametersUtils.parsePositiveInteger(System.getenv(variable), defaultValue)
+                .fold(exception -> {
+                    throw exception;
+                }, Function.identity());
+    }
+
+    /**
+     * The groups of a day, as read at a given time.
+     */
+    private record CachedDay(
+            List<AggregatedStatusGroup> groups,
+            boolean closed,
+            Instant loadedAt
+    ) {
+    }
+}
@@ -0,0 +1,162 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+
+import it.pagopa.ecommerce.reporting.entity.ReportSnapshotEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StateMetricQueryBuilder;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Snapshots of the reported periods, stored in a dedicated table.
+ * <p>
+ * Each report stores the counts of its period by (client, paymentTypeCode), so
+ * the report of the following period compares against them with a single
+ * partition query instead of aggregating the previous period again.
+ */
+public class ReportSnapshotService {
+
+    private static final Logger logger = Logger.getLogger(ReportSnapshotService.class.getName());
+
+    private final TableClient tableClient;
+    private final TableBatchWriter snapshotWriter;
+
+    public ReportSnapshotService(TableClient tableClient) {
+        this.tableClient = tableClient;
+        this.snapshotWriter = new TableBatchWriter(tableClient);
+    }
+
+    /**
+     * Creates the service on the table named by
+     * {@code ECOMMERCE_REPORTING_REPORT_SNAPSHOTS_TABLE}.
+     *
+     * @return the service, or an empty optional if no table is configured
+     */
+    public static Optional<ReportSnapshotService> fromEnvironment() {
+        String snapshotTable = System.getenv("ECOMMERCE_REPORTING_REPORT_SNAPSHOTS_TABLE");
+        if (snapshotTable == null || snapshotTable.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new ReportSnapshotService(
+                        new TableClientBuilder()
+                                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                                .tableName(snapshotTable)
+                                .buildClient()
+                )
+        );
+    }
+
+    /**
+     * @param startDate the inclusive start date of a period
+     * @param endDate   the inclusive end date of a period
+     * @return the start date of the period of the same length ending the day
+     *         before the period
+     */
+    public static LocalDate previousStartDate(
+                                              LocalDate startDate,
+                                              LocalDate endDate
+    ) {
+        return startDate.minusDays(ChronoUnit.DAYS.between(startDate, endDate) + 1);
+    }
+
+    /**
+     * Reads the snapshot of the period preceding a period, e.g. the previous
+     * week of a weekly report.
+     *
+     * @param startDate the inclusive start date of the current period
+     * @param endDate   the inclusive end date of the current period
+     * @return the groups of the previous period, or an empty optional if it has
+     *         no complete snapshot
+     */
+    public Optional<List<AggregatedStatusGroup>> loadPrevious(
+                                                              LocalDate startDate,
+                                                              LocalDate endDate
+    ) {
+        return load(previousStartDate(startDate, endDate), startDate.minusDays(1));
+    }
+
+    /**
+     * Reads the snapshot of a period.
+     *
+     * @param startDate the inclusive start date of the period
+     * @param endDate   the inclusive end date of the period
+     * @return the groups of the period, or an empty optional if it has no
+     *         complete snapshot
+     */
+    public Optional<List<AggregatedStatusGroup>> load(
+                                                      LocalDate startDate,
+                                                      LocalDate endDate
+    ) {
+        try {
+            TableEntity manifest = null;
+            List<AggregatedStatusGroup> groups = new ArrayList<>();
+            ListEntitiesOptions query = new ListEntitiesOptions()
+                    .setFilter(ReportSnapshotEntity.filter(startDate, endDate))
+                    .setTop(StateMetricQueryBuilder.MAX_PAGE_SIZE);
+            for (TableEntity entity : tableClient.listEntities(query, null, null)) {
+                if (ReportSnapshotEntity.isManifest(entity)) {
+                    manifest = entity;
+                } else {
+                    groups.add(ReportSnapshotEntity.toGroup(entity));
+                }
+            }
+            if (manifest == null) {
+                logger.info("No report snapshot for " + ReportSnapshotEntity.partitionKey(startDate, endDate));
+                return Optional.empty();
+            }
+            Object expectedGroups = manifest.getProperty(ReportSnapshotEntity.GROUPS);
+            if (!(expectedGroups instanceof Number count) || count.intValue() != groups.size()) {
+                logger.warning("Incomplete report snapshot for " + ReportSnapshotEntity.partitionKey(startDate, endDate));
+                return Optional.empty();
+            }
+            return Optional.of(groups);
+        } catch (Exception e) {
+            // the report does not depend on the snapshot
+            logger.warning("Failed to read report snapshot. Error: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the snapshot of a period, then its manifest. The manifest is only
+     * written when every group has been stored, so a partially written snapshot
+     * is never read back.
+     *
+     * @param startDate the inclusive start date of the period
+     * @param endDate   the inclusive end date of the period
+     * @param groups    the groups of the period, by (client, paymentTypeCode)
+     * @return true if the snapshot has been stored
+     */
+    public boolean store(
+                         LocalDate startDate,
+                         LocalDate endDate,
+                         List<AggregatedStatusGroup> groups
+    ) {
+        try {
+            List<TableEntity> entities = groups.stream()
+                    .map(group -> ReportSnapshotEntity.createEntity(startDate, endDate, group))
+                    .toList();
+            int written = snapshotWriter.upsertEntities(entities, logger);
+            if (written != entities.size()) {
+                logger.warning(
+                        "Report snapshot not stored for " + ReportSnapshotEntity.partitionKey(startDate, endDate)
+                                + ": " + written + "/" + entities.size()
+                );
+                return false;
+            }
+            tableClient.upsertEntity(ReportSnapshotEntity.createManifest(startDate, endDate, groups.size()));
+            return true;
+        } catch (Exception e) {
+            logger.warning("Failed to store report snapshot. Error: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import com.azure.data.tables.models.TableTransactionFailedException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Writes entities through entity group transactions.
+ * <p>
+ * Actions are grouped by PartitionKey and submitted in transactions of at
+ * most {@value #MAX_TRANSACTION_SIZE} actions each, so a batch of entities is
+ * written with one request per group instead of one request per entity. When
+ * a transaction is rejected because of a single action, that action is set
+ * aside and the rest of the group is resubmitted; only the rejected actions
+ * are then retried, one by one.
+ */
+public class TableBatchWriter {
+
+    public static final int MAX_TRANSACTION_SIZE = 100;
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
+    private final TableClient tableClient;
+
+    public TableBatchWriter(TableClient tableClient) {
+        this.tableClient = tableClient;
+    }
+
+    /**
+     * Upserts entities, replacing the stored ones with the same keys.
+     *
+     * @param entities the entities to store
+     * @param log      the logger
+     * @return the number of entities that have been written
+     */
+    public int upsertEntities(
+                              List<TableEntity> entities,
+                              Logger log
+    ) {
+        Map<TableTransactionAction, TableEntity> actions = new LinkedHashMap<>();
+        for (TableEntity entity : entities) {
+            actions.put(new TableTransactionAction(TableTransactionActionType.UPSERT_REPLACE, entity), entity);
+        }
+        return submit(actions, entity -> upsertEntity(entity, log), log).size();
+    }
+
+    /**
+     * Submits actions grouped by PartitionKey, in the order they are given.
+     *
+     * @param actions the actions to submit, each with the entity it stores
+     * @param retry   the write of the entity of a rejected action on its own
+     * @param log     the logger
+     * @return the entities that have been written
+     */
+    List<TableEntity> submit(
+                             Map<TableTransactionAction, TableEntity> actions,
+                             Predicate<TableEntity> retry,
+                             Logger log
+    ) {
+        Map<String, List<TableTransactionAction>> actionsByPartition = new LinkedHashMap<>();
+        actions.forEach(
+                (action, entity) -> actionsByPartition
+                        .computeIfAbsent(entity.getPartitionKey(), k -> new ArrayList<>())
+                        .add(action)
+        );
+        List<TableEntity> written = new ArrayList<>();
+        for (List<TableTransactionAction> partitionActions : actionsByPartition.values()) {
+            for (int from = 0; from < partitionActions.size(); from += MAX_TRANSACTION_SIZE) {
+                List<TableTransactionAction> group = partitionActions
+                        .subList(from, Math.min(from + MAX_TRANSACTION_SIZE, partitionActions.size()));
+                submitTransaction(group, actions, written, retry, log);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Submits a group of actions, then retries the rejected ones one by one.
+     *
+     * @param group   the actions of the group
+     * @param actions the entities to store, by action
+     * @param written the written entities, updated
+     * @param retry   the write of a rejected entity on its own
+     */
+    private void submitTransaction(
+                                   List<TableTransactionAction> group,
+                                   Map<TableTransactionAction, TableEntity> actions,
+                                   List<TableEntity> written,
+                                   Predicate<TableEntity> retry,
+                                   Logger log
+    ) {
+        List<TableTransactionAction> pending = new ArrayList<>(group);
+        List<TableTransactionAction> rejected = new ArrayList<>();
+        int failedAttempts = 0;
+        while (!pending.isEmpty()) {
+            try {
+                tableClient.submitTransaction(List.copyOf(pending));
+                pending.forEach(action -> written.add(actions.get(action)));
+                pending.clear();
+            } catch (Exception e) {
+                // the whole group is rolled back: when the service reports the action
+                // that caused the failure only that one is set aside, otherwise the
+                // group is resubmitted a bounded number of times
+                TableTransactionAction failedAction = e instanceof TableTransactionFailedException transactionException
+                        ? transactionException.getFailedTransactionAction()
+                        : null;
+                if (failedAction != null && pending.remove(failedAction)) {
+                    rejected.add(failedAction);
+                } else if (++failedAttempts >= MAX_TRANSACTION_ATTEMPTS) {
+                    log.warning("Failed to write transaction to Azure Table Storage. Error: " + e.getMessage());
+                    rejected.addAll(pending);
+                    pending.clear();
+                }
+            }
+        }
+        for (TableTransactionAction action : rejected) {
+            TableEntity entity = actions.get(action);
+            if (retry.test(entity)) {
+                written.add(entity);
+            }
+        }
+    }
+
+    private boolean upsertEntity(
+                                 TableEntity entity,
+                                 Logger log
+    ) {
+        try {
+            tableClient.upsertEntityWithResponse(entity, TableEntityUpdateMode.REPLACE, null, null);
+            return true;
+        } catch (Exception e) {
+            log.warning(
+                    "Failed to write entity to Azure Table Storage. Error: " + e.getMessage() +
+                            " | Entity: " + entity.getPartitionKey() + "/" + entity.getRowKey()
+            );
+            return false;
+        }
+    }
+}
@@ -1,17 +1,37 @@
 package it.pagopa.ecommerce.reporting.services;
 
 import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.TableClientBuilder;
 import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableServiceException;
 
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
 import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.MapParametersUtils;
+import it.pagopa.ecommerce.reporting.utils.PagePrefetcher;
+import it.pagopa.ecommerce.reporting.utils.StateMetricQueryBuilder;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
 import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StorageLayout;
+import it.pagopa.ecommerce.reporting.utils.WorkerPool;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.slf4j.Logger;
 
 /**
@@ -32,57 +52,183 @@ import org.slf4j.Logger;
  */
 public class TransactionStatusAggregationService {
 
-    public static final String ABANDONED = "ABBANDONATO";
-    public static final String TO_BE_ANALYZED = "DA ANALIZZARE";
-    public static final String KO = "KO";
-    public static final String OK = "OK";
-    public static final String IN_PROGRESS = "IN CORSO";
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int NO_PREFETCH = 0;
     private final String CONNECTION_STRING = System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING");
     private final String TRANSACTIONS_STATUS_TABLE = System.getenv("ECOMMERCE_REPORTING_TABLE");
 
     private final TableClient tableClient;
 
+    // null when no daily aggregate cache table is configured
+    private final DailyAggregateCacheService dailyAggregateCache;
+
+    // null when no weekly aggregates table is configured
+    private final WeeklyAggregateService weeklyAggregates;
+
+    private final ForkJoinPool aggregationPool = WorkerPool.getAggregationPool();
+
+    // by default the range is split into one sub-range per aggregation worker
+    private final int querySubRanges = MapParametersUtils
+            .parsePositiveInteger(
+                    System.getenv("ECOMMERCE_REPORTING_QUERY_SUB_RANGES"),
+                    aggregationPool.getParallelism()
+            )
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    private final int queryPageSize = MapParametersUtils
+            .parsePositiveInteger(
+                    System.getenv("ECOMMERCE_REPORTING_QUERY_PAGE_SIZE"),
+                    StateMetricQueryBuilder.MAX_PAGE_SIZE
+            )
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    // pages read ahead of the aggregation by each query, 0 reads pages on demand
+    private final int queryPrefetchPages = MapParametersUtils
+            .parsePositiveInteger(
+                    System.getenv("ECOMMERCE_REPORTING_QUERY_PREFETCH_PAGES"),
+                    NO_PREFETCH
+            )
+            .fold(exception -> {
+                throw exception;
+            }, Function.identity());
+
+    private final StorageLayout storageLayout = StorageLayout.fromEnvironment();
+
+    private final PagePrefetcher pagePrefetcher = queryPrefetchPages > NO_PREFETCH
+            ? new PagePrefetcher(queryPageSize, queryPrefetchPages, WorkerPool.getPrefetchExecutor())
+            : null;
+
     public TransactionStatusAggregationService() {
         this.tableClient = new TableClientBuilder()
                 .connectionString(CONNECTION_STRING)
                 .tableName(TRANSACTIONS_STATUS_TABLE)
                 .buildClient();
+        this.dailyAggregateCache = DailyAggregateCacheService.fromEnvironment(tableClient).orElse(null);
+        this.weeklyAggregates = WeeklyAggregateService.fromEnvironment().orElse(null);
     }
 
     public TransactionStatusAggregationService(TableClient tableClient) {
-        this.tableClient = tableClient;
+        this(tableClient, null);
     }
 
-    private static final Map<String, String> STATUS_TO_CATEGORY = Map.ofEntries(
-            Map.entry("EXPIRED_NOT_AUTHORIZED", ABANDONED),
-            Map.entry("CANCELLATION_EXPIRED", ABANDONED),
-            Map.entry("CANCELED", ABANDONED),
+    public TransactionStatusAggregationService(
+            TableClient tableClient,
+            DailyAggregateCacheService dailyAggregateCache
+    ) {
+        this(tableClient, dailyAggregateCache, null);
+    }
 
-            Map.entry("CLOSURE_ERROR", TO_BE_ANALYZED),
-            Map.entry("EXPIRED", TO_BE_ANALYZED),
-            Map.entry("REFUND_ERROR", TO_BE_ANALYZED),
+    public TransactionStatusAggregationService(
+            TableClient tableClient,
+            DailyAggregateCacheService dailyAggregateCache,
+            WeeklyAggregateService weeklyAggregates
+    ) {
+        this.tableClient = tableClient;
+        this.dailyAggregateCache = dailyAggregateCache;
+        this.weeklyAggregates = weeklyAggregates;
+    }
 
-            Map.entry("REFUNDED", KO),
-            Map.entry("UNAUTHORIZED", KO),
+    /**
+     * Reads the metrics collected for a single (client, paymentTypeCode, psp)
+     * triple in an hourly window with a point read on its PartitionKey and
+     * RowKey, then on the wide row of the client for the window if there is no
+     * narrow row. With the wide layout the wide row is read first, since it
+     * holds the narrow rows folded into it until they are deleted.
+     *
+     * @param clientId        the client ID
+     * @param paymentTypeCode the payment type code
+     * @param pspId           the PSP ID
+     * @param windowStart     the start of the collected window
+     * @return the stored metrics, or an empty optional if the window has not been
+     *         collected
+     */
+    public Optional<TableEntity> getStateMetric(
+                                                String clientId,
+                                                String paymentTypeCode,
+                                                String pspId,
+                                                OffsetDateTime windowStart
+    ) {
+        String partitionKey = StateMetricEntity.partitionKey(windowStart);
+        String rowKey = StateMetricEntity.rowKey(clientId, paymentTypeCode, pspId, windowStart);
+        if (storageLayout == StorageLayout.WIDE) {
+            Optional<TableEntity> packed = getPackedRow(partitionKey, rowKey, clientId, windowStart);
+            return packed.isPresent() ? packed : getEntity(partitionKey, rowKey);
+        }
+        Optional<TableEntity> narrow = getEntity(partitionKey, rowKey);
+        if (narrow.isPresent()) {
+            return narrow;
+        }
+        // the metrics may be packed in the wide row of the client for the window
+        return getPackedRow(partitionKey, rowKey, clientId, windowStart);
+    }
 
-            Map.entry("NOTIFIED_OK", OK),
+    private Optional<TableEntity> getPackedRow(
+                                               String partitionKey,
+                                               String rowKey,
+                                               String clientId,
+                                               OffsetDateTime windowStart
+    ) {
+        List<TableEntity> rows = new ArrayList<>(1);
+        getEntity(partitionKey, StateMetricEntity.wideRowKey(clientId, windowStart)).ifPresent(
+                wide -> StateMetricEntity.forEachRow(wide, row -> {
+                    if (row.getRowKey().equals(rowKey)) {
+                        rows.add(row);
+                    }
+                })
+        );
+        return rows.stream().findFirst();
+    }
 
-            Map.entry("ACTIVATED", IN_PROGRESS),
-            Map.entry("AUTHORIZATION_REQUESTED", IN_PROGRESS),
-            Map.entry("AUTHORIZATION_COMPLETED", IN_PROGRESS),
-            Map.entry("CLOSED", IN_PROGRESS),
-            Map.entry("REFUND_REQUESTED", IN_PROGRESS),
-            Map.entry("CANCELLATION_REQUESTED", IN_PROGRESS),
-            Map.entry("CLOSURE_REQUESTED", IN_PROGRESS)
-    );
+    private Optional<TableEntity> getEntity(
+                                            String partitionKey,
+                                            String rowKey
+    ) {
+        try {
+            return Optional.of(tableClient.getEntity(partitionKey, rowKey));
+        } catch (TableServiceException e) {
+            if (e.getResponse() != null && e.getResponse().getStatusCode() == HTTP_NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
 
     /**
      * Aggregates transaction status counts from Azure Table Storage, grouped by
      * {@param clientId} and {@param paymentType}, over a given date range.
      * <p>
-     * For each day between {@param startDate} and {@param endDate} (inclusive),
-     * this method queries the table storage for entities matching the daily
-     * partition key. For each entity, the method extracts the {@param clientId} and
+     * The date partitions between {@param startDate} and {@param endDate}
+     * (inclusive) are split into {@code ECOMMERCE_REPORTING_QUERY_SUB_RANGES}
+     * contiguous sub-ranges, by default one per worker of the aggregation pool
+     * (see {@link WorkerPool#getAggregationPool()}), so long ranges scale with the
+     * number of cores instead of the number of days. Each sub-range is read with a
+     * single {@code PartitionKey} range query selecting only the properties used
+     * by the aggregation (see {@link StateMetricQueryBuilder}) and aggregated into
+     * a partial result owned by its fork-join task; partials are merged once their
+     * tasks complete.
+     * <p>
+     * When {@code ECOMMERCE_REPORTING_QUERY_PREFETCH_PAGES} is set, each query is
+     * streamed through a {@link PagePrefetcher}: up to that many pages are
+     * fetched ahead while the previous ones are being aggregated, so the
+     * aggregation of large ranges overlaps with the network round trips.
+     * <p>
+     * When a {@link DailyAggregateCacheService} is configured, closed days are
+     * read from the daily aggregate cache instead: only the days missing from the
+     * cache are summed from their hourly rows, in parallel on the aggregation
+     * pool, and then cached. Days that are not over yet are always read from the
+     * hourly rows.
+     * <p>
+     * When a {@link WeeklyAggregateService} is configured and the range is a
+     * whole ISO week that is over, the groups are read from the running weekly
+     * aggregates with a single partition query. Weeks whose aggregates do not
+     * cover every window fall back to the other paths.
+     * <p>
+     * For each entity, the method extracts the
+     * {@param clientId} and
      * {@param paymentTypeCode}, then accumulates status counts into an
      * {@link AggregatedStatusGroup}. Groups are keyed by {@param clientId} +
      * {@param paymentType}, and include the following status categories:
@@ -95,7 +241,7 @@ public class TransactionStatusAggregationService {
      * </ul>
      * <p>
      * Status counts are normalized into categories using the
-     * {@code STATUS_TO_CATEGORY} mapping. If an entity property for a given status
+     * {@link StatusCategory} mapping. If an entity property for a given status
      * is non-null and greater than zero, its count is added to the corresponding
      * category total in the aggregated group.
      *
@@ -111,26 +257,23 @@ public class TransactionStatusAggregationService {
                                                                                   Logger logger
     ) {
         logger.info("[aggregateStatusCountByClientAndPaymentType] Execution started.");
-
-        Map<String, AggregatedStatusGroup> aggregatedMap = new HashMap<>();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-            String partitionKey = formatter.format(date);
-            PagedIterable<TableEntity> entities = tableClient.listEntities(
-                    new ListEntitiesOptions().setFilter(String.format("PartitionKey eq '%s'", partitionKey)),
-                    null,
-                    null
-            );
-            processEntitiesForDate(entities, aggregatedMap);
+        if (isInvertedRange(startDate, endDate, "aggregateStatusCountByClientAndPaymentType", logger)) {
+            return List.of();
         }
 
-        List<AggregatedStatusGroup> aggregated = new ArrayList<>(aggregatedMap.values());
-        aggregated.forEach(AggregatedStatusGroup::filterZeroCountStatuses);
+        Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap = aggregateWeek(startDate, endDate, logger)
+                .orElseGet(
+                        () -> dailyAggregateCache != null
+                                ? aggregateWithDailyCache(startDate, endDate, logger)
+                                : aggregateRange(startDate, endDate)
+                );
+
+        List<AggregatedStatusGroup> aggregated = new ArrayList<>();
+        aggregatedMap.values().forEach(groups -> aggregated.addAll(groups.values()));
 
         logger.info("[aggregateStatusCountByClientAndPaymentType] Aggregation completed {}", aggregated.size());
         List<AggregatedStatusGroup> filteredAggregated = aggregated.stream()
-                .filter(aggregatedStatusGroup -> !aggregatedStatusGroup.getStatusCounts().isEmpty())
+                .filter(aggregatedStatusGroup -> !aggregatedStatusGroup.isEmpty())
                 .toList();
 
         logger.info("[aggregateStatusCountByClientAndPaymentType] Aggregation filtered {}", filteredAggregated.size());
@@ -138,23 +281,413 @@ public class TransactionStatusAggregationService {
     }
 
     /**
-     * Processes all table entities for a specific date and updates the aggregated
-     * status map.
+     * Reads a date range from the hourly rows.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @return the aggregated status groups of the range, keyed by clientId and
+     *         then by paymentType
+     */
+    private Map<String, Map<String, AggregatedStatusGroup>> aggregateRange(
+                                                                           LocalDate startDate,
+                                                                           LocalDate endDate
+    ) {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(startDate, endDate)
+                .layout(storageLayout)
+                .subRanges(querySubRanges)
+                .pageSize(queryPageSize)
+                .build();
+        return queries.size() == 1
+                ? aggregateQuery(queries.get(0))
+                : aggregationPool.invoke(
+                        new RangeAggregationTask<>(
+                                queries,
+                                this::aggregateQuery,
+                                TransactionStatusAggregationService::merge
+                        )
+                );
+    }
+
+    /**
+     * Aggregates the hourly rows of a date range by several groupings in a single
+     * scan, e.g. the weekly report by client and paymentType together with a
+     * breakdown by PSP and an hourly heatmap.
      * <p>
-     * This method iterates through all entities retrieved for a given date
-     * partition and delegates the processing of each individual entity to
-     * {@link #processEntity(TableEntity, Map)}.
+     * The range is read as in
+     * {@link #aggregateStatusCountByClientAndPaymentType(LocalDate, LocalDate, Logger)},
+     * with parallel sub-range queries selecting the properties of the dimensions
+     * used by the groupings, but always from the hourly rows: the daily and weekly
+     * aggregates do not keep every dimension. Groups without any count are left
+     * out.
      *
-     * @param entities      the collection of table entities to process for the date
-     * @param aggregatedMap the map containing aggregated status groups, keyed by
-     *                      clientId|paymentType
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param groupings the groupings to compute
+     * @param logger    the logger used to record execution progress
+     * @return the groups of each grouping
+     */
+    public Map<Grouping, List<DimensionalGroup>> aggregateByDimensions(
+                                                                      LocalDate startDate,
+                                                                      LocalDate endDate,
+                                                                      List<Grouping> groupings,
+                                                                      Logger logger
+    ) {
+        return aggregateByDimensions(startDate, endDate, groupings, null, logger);
+    }
+
+    /**
+     * Aggregates the hourly rows of a date range by several groupings as in
+     * {@link #aggregateByDimensions(LocalDate, LocalDate, List, Logger)}, also
+     * passing every scanned row to a listener, e.g. to export the raw rows from
+     * the same scan. The rows are read with all the properties of
+     * {@link StateMetricQueryBuilder#ROW_PROJECTION}.
+     *
+     * @param startDate   the inclusive start date
+     * @param endDate     the inclusive end date
+     * @param groupings   the groupings to compute
+     * @param rowListener the listener of the scanned rows, called concurrently by
+     *                    the parallel sub-range readers, or null
+     * @param logger      the logger used to record execution progress
+     * @return the groups of each grouping
+     */
+    public Map<Grouping, List<DimensionalGroup>> aggregateByDimensions(
+                                                                      LocalDate startDate,
+                                                                      LocalDate endDate,
+                                                                      List<Grouping> groupings,
+                                                                      Consumer<TableEntity> rowListener,
+                                                                      Logger logger
+    ) {
+        logger.info("[aggregateByDimensions] Execution started for {}", groupings);
+        DimensionalAggregator aggregator = new DimensionalAggregator(groupings);
+        if (isInvertedRange(startDate, endDate, "aggregateByDimensions", logger)) {
+            return aggregator.results();
+        }
+        Set<String> projection = new LinkedHashSet<>(DimensionalAggregator.projection(groupings));
+        if (rowListener != null) {
+            projection.addAll(StateMetricQueryBuilder.ROW_PROJECTION);
+        }
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(startDate, endDate)
+                .layout(storageLayout)
+                .subRanges(querySubRanges)
+                .pageSize(queryPageSize)
+                .select(List.copyOf(projection))
+                .build();
+        Function<ListEntitiesOptions, DimensionalAggregator> aggregateQuery = query -> {
+            DimensionalAggregator partial = aggregator.newPartial();
+            forEachEntity(query, rowListener == null ? partial::add : entity -> {
+                partial.add(entity);
+                rowListener.accept(entity);
+            });
+            return partial;
+        };
+        DimensionalAggregator aggregated = queries.size() == 1
+                ? aggregateQuery.apply(queries.get(0))
+                : aggregationPool.invoke(
+                        new RangeAggregationTask<>(queries, aggregateQuery, DimensionalAggregator::merge)
+                );
+        Map<Grouping, List<DimensionalGroup>> results = aggregated.results();
+        results.forEach(
+                (grouping, groups) -> logger
+                        .info("[aggregateByDimensions] Grouping {} completed {}", grouping.name(), groups.size())
+        );
+        return results;
+    }
+
+    /**
+     * Aggregates a slice of the hourly rows of a date range, so that ranges too
+     * long for a single invocation can be aggregated over several ones.
+     * <p>
+     * The range is read with a single range query, resumed from a continuation
+     * token: at most {@code maxPages} pages are added to the aggregator, and the
+     * token of the next page is returned. Callers checkpoint the aggregator
+     * together with the token, and resume from both after a restart.
+     *
+     * @param startDate         the inclusive start date
+     * @param endDate           the inclusive end date
+     * @param aggregator        the aggregator of the range, holding the counts of
+     *                          the slices already read
+     * @param continuationToken the token returned by the previous slice, or null
+     *                          to start from the beginning of the range
+     * @param maxPages          the maximum number of pages to read
+     * @return the token to resume from, or null if the range has been read
+     */
+    public String aggregateByDimensionsSlice(
+                                             LocalDate startDate,
+                                             LocalDate endDate,
+                                             DimensionalAggregator aggregator,
+                                             String continuationToken,
+                                             int maxPages
+    ) {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(startDate, endDate)
+                .layout(storageLayout)
+                .pageSize(queryPageSize)
+                .select(DimensionalAggregator.projection(aggregator.getGroupings()))
+                .build();
+        if (queries.isEmpty()) {
+            return null;
+        }
+        ListEntitiesOptions query = queries.get(0);
+        StateMetricEntity.RowReader reader = new StateMetricEntity.RowReader(aggregator::add);
+        boolean resumed = continuationToken != null && storageLayout == StorageLayout.WIDE;
+        int pages = 0;
+        for (PagedResponse<TableEntity> page : tableClient.listEntities(query, null, null)
+                .iterableByPage(continuationToken)) {
+            if (resumed && !page.getValue().isEmpty()) {
+                // the wide row of the first window may have been read by the previous slice
+                resumed = false;
+                TableEntity first = page.getValue().get(0);
+                if (!StateMetricEntity.isWide(first)) {
+                    getEntity(first.getPartitionKey(), StateMetricEntity.windowPrefix(first.getRowKey()))
+                            .ifPresent(reader::skipRowsOf);
+                }
+            }
+            page.getValue().forEach(reader);
+            String nextToken = page.getContinuationToken();
+            if (nextToken == null || ++pages >= maxPages) {
+                return nextToken;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a date range ends before it starts, which reads no rows as
+     * when the range was read one day at a time.
+     *
+     * @return true if the end date is before the start date
      */
-    private void processEntitiesForDate(
-                                        PagedIterable<TableEntity> entities,
-                                        Map<String, AggregatedStatusGroup> aggregatedMap
+    private static boolean isInvertedRange(
+                                           LocalDate startDate,
+                                           LocalDate endDate,
+                                           String method,
+                                           Logger logger
     ) {
+        if (!endDate.isBefore(startDate)) {
+            return false;
+        }
+        logger.warn("[{}] End date {} is before start date {}, no rows are read", method, endDate, startDate);
+        return true;
+    }
+
+    /**
+     * Reads a whole ISO week from the weekly aggregates.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param logger    the logger used to record execution progress
+     * @return the aggregated status groups of the week, keyed by clientId and
+     *         then by paymentType, or an empty optional if the range is not a
+     *         closed week with complete aggregates
+     */
+    private Optional<Map<String, Map<String, AggregatedStatusGroup>>> aggregateWeek(
+                                                                                   LocalDate startDate,
+                                                                                   LocalDate endDate,
+                                                                                   Logger logger
+    ) {
+        if (weeklyAggregates == null
+                || startDate.getDayOfWeek() != DayOfWeek.MONDAY
+                || !endDate.equals(startDate.plusDays(6))
+                || !endDate.isBefore(LocalDate.now(ZoneOffset.UTC))) {
+            return Optional.empty();
+        }
+        Optional<List<AggregatedStatusGroup>> week = weeklyAggregates.load(startDate);
+        logger.info(
+                "[aggregateStatusCountByClientAndPaymentType] Weekly aggregates available {}",
+                week.isPresent()
+        );
+        return week.map(groups -> {
+            Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap = new HashMap<>();
+            groups.forEach(group -> fold(aggregatedMap, group));
+            return aggregatedMap;
+        });
+    }
+
+    /**
+     * Reads the closed days of a date range from the daily aggregate cache,
+     * aggregating and caching the missing ones, and the other days from the
+     * hourly rows.
+     *
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @param logger    the logger used to record execution progress
+     * @return the aggregated status groups of the range, keyed by clientId and
+     *         then by paymentType
+     */
+    private Map<String, Map<String, AggregatedStatusGroup>> aggregateWithDailyCache(
+                                                                                    LocalDate startDate,
+                                                                                    LocalDate endDate,
+                                                                                    Logger logger
+    ) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate lastClosedDay = endDate.isBefore(today) ? endDate : today.minusDays(1);
+        Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap = new HashMap<>();
+
+        if (!lastClosedDay.isBefore(startDate)) {
+            Map<LocalDate, List<AggregatedStatusGroup>> cached = dailyAggregateCache.load(startDate, lastClosedDay);
+            List<ForkJoinTask<List<AggregatedStatusGroup>>> missing = startDate.datesUntil(lastClosedDay.plusDays(1))
+                    .filter(day -> !cached.containsKey(day))
+                    .map(day -> aggregationPool.submit(() -> dailyAggregateCache.aggregateDay(day)))
+                    .toList();
+            logger.info(
+                    "[aggregateStatusCountByClientAndPaymentType] Daily aggregates cached {}, missing {}",
+                    cached.size(),
+                    missing.size()
+            );
+            cached.values().forEach(groups -> groups.forEach(group -> fold(aggregatedMap, group)));
+            for (ForkJoinTask<List<AggregatedStatusGroup>> task : missing) {
+                task.join().forEach(group -> fold(aggregatedMap, group));
+            }
+        }
+        if (endDate.isAfter(lastClosedDay)) {
+            LocalDate firstOpenDay = startDate.isAfter(lastClosedDay) ? startDate : lastClosedDay.plusDays(1);
+            merge(aggregatedMap, aggregateRange(firstOpenDay, endDate));
+        }
+        return aggregatedMap;
+    }
+
+    /**
+     * Adds the counts of a finer-grained group, e.g. a cached daily group of a
+     * single psp, to the group of its client and paymentType.
+     */
+    private static void fold(
+                             Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap,
+                             AggregatedStatusGroup group
+    ) {
+        groupOf(aggregatedMap, group.getClientId(), group.getPaymentTypeCode()).merge(group);
+    }
+
+    /**
+     * Returns the group of a client and paymentType, creating it if missing.
+     */
+    private static AggregatedStatusGroup groupOf(
+                                                 Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap,
+                                                 String clientId,
+                                                 String paymentType
+    ) {
+        Map<String, AggregatedStatusGroup> clientGroups = aggregatedMap.get(clientId);
+        if (clientGroups == null) {
+            clientGroups = new HashMap<>();
+            aggregatedMap.put(clientId, clientGroups);
+        }
+        AggregatedStatusGroup group = clientGroups.get(paymentType);
+        if (group == null) {
+            group = new AggregatedStatusGroup(
+                    null, // no longer grouping by date
+                    clientId,
+                    null, // pspId not needed anymore
+                    paymentType
+            );
+            clientGroups.put(paymentType, group);
+        }
+        return group;
+    }
+
+    /**
+     * Runs a single range query and aggregates its entities.
+     * <p>
+     * This method iterates through all entities returned by the query and
+     * delegates the processing of each individual entity to
+     * {@link #processEntity(TableEntity, Map)}. With page prefetching enabled,
+     * entities are handed over one page at a time by the prefetcher.
+     *
+     * @param query the query reading a range of date partitions
+     * @return the aggregated status groups of the range, keyed by clientId and
+     *         then by paymentType
+     */
+    private Map<String, Map<String, AggregatedStatusGroup>> aggregateQuery(ListEntitiesOptions query) {
+        Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap = new HashMap<>();
+        forEachEntity(query, entity -> processEntity(entity, aggregatedMap));
+        return aggregatedMap;
+    }
+
+    /**
+     * Runs a single range query and passes its entities to an action, through
+     * the page prefetcher when enabled. Wide rows are passed as the narrow rows
+     * they hold, and narrow rows already packed in a wide row are skipped, see
+     * {@link StateMetricEntity.RowReader}.
+     *
+     * @param query  the query reading a range of date partitions
+     * @param action the action run on each entity
+     */
+    private void forEachEntity(
+                               ListEntitiesOptions query,
+                               Consumer<TableEntity> action
+    ) {
+        PagedIterable<TableEntity> entities = tableClient.listEntities(query, null, null);
+        StateMetricEntity.RowReader reader = new StateMetricEntity.RowReader(action);
+        if (pagePrefetcher != null) {
+            pagePrefetcher.forEachChunk(entities, page -> page.forEach(reader));
+            return;
+        }
         for (TableEntity entity : entities) {
-            processEntity(entity, aggregatedMap);
+            reader.accept(entity);
+        }
+    }
+
+    /**
+     * Merges the groups of a partial aggregation into another one. Partials are
+     * owned by the task that produced them, so no locking is needed.
+     *
+     * @param aggregatedMap the partial to update, keyed by clientId and then by
+     *                      paymentType
+     * @param partial       the partial to merge
+     * @return the updated partial
+     */
+    private static Map<String, Map<String, AggregatedStatusGroup>> merge(
+                                                                         Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap,
+                                                                         Map<String, Map<String, AggregatedStatusGroup>> partial
+    ) {
+        partial.forEach(
+                (clientId, groups) -> groups.forEach(
+                        (paymentType, group) -> aggregatedMap.computeIfAbsent(clientId, k -> new HashMap<>())
+                                .merge(paymentType, group, AggregatedStatusGroup::merge)
+                )
+        );
+        return aggregatedMap;
+    }
+
+    /**
+     * Fork-join task aggregating a list of range queries: the list is split in
+     * halves until a single query is left, then the partial results of the two
+     * halves are merged.
+     *
+     * @param <R> the type of the partial results
+     */
+    private static class RangeAggregationTask<R> extends RecursiveTask<R> {
+
+        private final transient List<ListEntitiesOptions> queries;
+        private final transient Function<ListEntitiesOptions, R> aggregateQuery;
+        private final transient BinaryOperator<R> merge;
+
+        RangeAggregationTask(
+                List<ListEntitiesOptions> queries,
+                Function<ListEntitiesOptions, R> aggregateQuery,
+                BinaryOperator<R> merge
+        ) {
+            this.queries = queries;
+            this.aggregateQuery = aggregateQuery;
+            this.merge = merge;
+        }
+
+        @Override
+        protected R compute() {
+            if (queries.size() == 1) {
+                return aggregateQuery.apply(queries.get(0));
+            }
+            int middle = queries.size() / 2;
+            RangeAggregationTask<R> left = new RangeAggregationTask<>(
+                    queries.subList(0, middle),
+                    aggregateQuery,
+                    merge
+            );
+            RangeAggregationTask<R> right = new RangeAggregationTask<>(
+                    queries.subList(middle, queries.size()),
+                    aggregateQuery,
+                    merge
+            );
+            left.fork();
+            R rightResult = right.compute();
+            return merge.apply(left.join(), rightResult);
         }
     }
 
@@ -162,33 +695,24 @@ public class TransactionStatusAggregationService {
      * Processes a single table entity and updates the corresponding aggregated
      * status group.
      * <p>
-     * Extracts the clientId and paymentTypeCode from the entity to create a unique
-     * key. If no aggregated group exists for this key, creates a new one with
-     * default status categories. Then processes all status fields for this entity
-     * using {@link #processStatusFields(TableEntity, AggregatedStatusGroup)}.
+     * Looks up the group by clientId and then by paymentTypeCode, so no composite
+     * key is built per entity. If no aggregated group exists yet, a new one is
+     * created (see {@link #groupOf(Map, String, String)}). Then processes all
+     * status fields for this entity using
+     * {@link #processStatusFields(TableEntity, AggregatedStatusGroup)}.
      *
      * @param entity        the table entity to process
      * @param aggregatedMap the map containing aggregated status groups, keyed by
-     *                      clientId|paymentType
+     *                      clientId and then by paymentType
      */
     private void processEntity(
                                TableEntity entity,
-                               Map<String, AggregatedStatusGroup> aggregatedMap
+                               Map<String, Map<String, AggregatedStatusGroup>> aggregatedMap
     ) {
         String clientId = String.valueOf(entity.getProperty("clientId"));
         String paymentType = String.valueOf(entity.getProperty("paymentTypeCode"));
-        String key = String.join("|", clientId, paymentType);
-
-        AggregatedStatusGroup group = aggregatedMap.computeIfAbsent(
-                key,
-                k -> new AggregatedStatusGroup(
-                        null, // no longer grouping by date
-                        clientId,
-                        null, // pspId not needed anymore
-                        paymentType,
-                        new ArrayList<>(Set.of(ABANDONED, TO_BE_ANALYZED, KO, OK, IN_PROGRESS))
-                )
-        );
+
+        AggregatedStatusGroup group = groupOf(aggregatedMap, clientId, paymentType);
 
         processStatusFields(entity, group);
     }
@@ -198,13 +722,10 @@ public class TransactionStatusAggregationService {
      * status group.
      * <p>
      * Iterates through all status fields defined in
-     * {@link StatusStorageFields#values} and extracts the count for each status. If
-     * the count is greater than zero, maps the raw status to its corresponding
-     * category using {@link #STATUS_TO_CATEGORY} and increments the aggregated
-     * group's status count.
-     * <p>
-     * Raw status values that are not found in the mapping default to
-     * {@link #IN_PROGRESS}.
+     * {@link StatusStorageFields#values} and reads the count of each status, as
+     * stored by the collection. If the count is greater than zero, it is added to
+     * the group by status index, which also adds it to the
+     * {@link StatusCategory} of the status.
      *
      * @param entity the table entity containing status field data
      * @param group  the aggregated status group to update with status counts
@@ -213,13 +734,13 @@ public class TransactionStatusAggregationService {
                                      TableEntity entity,
                                      AggregatedStatusGroup group
     ) {
-        for (String rawStatus : StatusStorageFields.values) {
-            Object raw = entity.getProperty(rawStatus);
-            int count = raw != null ? Integer.parseInt(raw.toString()) : 0;
+        List<String> statusFields = StatusStorageFields.values;
+        for (int i = 0; i < statusFields.size(); i++) {
+            Object raw = entity.getProperty(statusFields.get(i));
+            long count = raw instanceof Number number ? number.longValue() : 0;
 
             if (count > 0) {
-                String category = STATUS_TO_CATEGORY.getOrDefault(rawStatus, IN_PROGRESS);
-                group.incrementStatus(category, count);
+                group.addStatus(i, count);
             }
         }
     }
@@ -0,0 +1,315 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.entity.WeeklyAggregateEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Running weekly aggregates of the hourly metrics, stored in a dedicated table.
+ * <p>
+ * Every time hourly metrics are written, their counts are merged into the row
+ * of the ISO week for each (client, paymentTypeCode) pair, so the report of a
+ * week is read with a single partition query instead of a scan of the hourly
+ * rows of seven days.
+ * <p>
+ * Rows are updated concurrently by the collection runs of the different
+ * clients, so each merge is a read-modify-write guarded by the ETag of the row
+ * and retried on conflict. Hourly rows may be written again for the same
+ * window: only the difference with the previously stored values is merged, so
+ * the aggregate is not counted twice.
+ * <p>
+ * When some changes of a week cannot be merged, its marker row is flagged as
+ * invalidated: the aggregates of the week are not loaded anymore, and its
+ * reports fall back to the hourly rows.
+ */
+public class WeeklyAggregateService {
+
+    static final int MAX_MERGE_ATTEMPTS = 5;
+
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final TableClient tableClient;
+
+    public WeeklyAggregateService(TableClient tableClient) {
+        this.tableClient = tableClient;
+    }
+
+    /**
+     * Creates the service on the table named by
+     * {@code ECOMMERCE_REPORTING_WEEKLY_AGGREGATES_TABLE}.
+     *
+     * @return the service, or an empty optional if no table is configured
+     */
+    public static Optional<WeeklyAggregateService> fromEnvironment() {
+        String weeklyTable = System.getenv("ECOMMERCE_REPORTING_WEEKLY_AGGREGATES_TABLE");
+        if (weeklyTable == null || weeklyTable.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.of(
+                new WeeklyAggregateService(
+                        new TableClientBuilder()
+                                .connectionString(System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING"))
+                                .tableName(weeklyTable)
+                                .buildClient()
+                )
+        );
+    }
+
+    /**
+     * Merges written hourly rows into the weekly aggregates.
+     *
+     * @param written  the hourly rows that have been written
+     * @param previous the rows previously stored with the same keys, by RowKey
+     * @param log      the logger
+     * @return the number of weekly rows that could not be updated
+     */
+    public int merge(
+                     List<TableEntity> written,
+                     Map<String, TableEntity> previous,
+                     Logger log
+    ) {
+        Map<String, Map<String, AggregatedStatusGroup>> deltasByWeek = new LinkedHashMap<>();
+        Map<String, OffsetDateTime> firstWindowByWeek = new HashMap<>();
+        for (TableEntity entity : written) {
+            OffsetDateTime windowStart = OffsetDateTime
+                    .parse(String.valueOf(entity.getProperty(StateMetricEntity.WINDOW_START)));
+            String week = WeeklyAggregateEntity.partitionKey(windowStart);
+            firstWindowByWeek.merge(week, windowStart, (a, b) -> a.isBefore(b) ? a : b);
+            String clientId = String.valueOf(entity.getProperty("clientId"));
+            String paymentType = String.valueOf(entity.getProperty("paymentTypeCode"));
+            AggregatedStatusGroup delta = deltasByWeek.computeIfAbsent(week, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(
+                            WeeklyAggregateEntity.rowKey(clientId, paymentType),
+                            k -> new AggregatedStatusGroup(null, clientId, null, paymentType)
+                    );
+            TableEntity replaced = previous.get(entity.getRowKey());
+            for (int i = 0; i < StatusStorageFields.size(); i++) {
+                String status = StatusStorageFields.values.get(i);
+                long count = countOf(entity, status);
+                if (replaced != null) {
+                    count -= countOf(replaced, status);
+                }
+                if (count != 0) {
+                    delta.addStatus(i, count);
+                }
+            }
+        }
+
+        int failed = 0;
+        for (Map.Entry<String, Map<String, AggregatedStatusGroup>> week : deltasByWeek.entrySet()) {
+            OffsetDateTime windowStart = firstWindowByWeek.get(week.getKey());
+            // the marker is moved back before the counts, so a failure can only make a
+            // week look incomplete and never complete with missing windows
+            if (!update(
+                    WeeklyAggregateEntity.createMarker(week.getKey(), windowStart),
+                    marker -> {
+                        OffsetDateTime first = WeeklyAggregateEntity.firstWindowStart(marker);
+                        if (first == null || windowStart.isBefore(first)) {
+                            WeeklyAggregateEntity.setFirstWindowStart(marker, windowStart);
+                        }
+                    },
+                    log
+            )) {
+                failed += week.getValue().size();
+                invalidate(week.getKey(), log);
+                continue;
+            }
+            int weekFailed = 0;
+            for (AggregatedStatusGroup delta : week.getValue().values()) {
+                if (!hasChanges(delta)) {
+                    continue;
+                }
+                TableEntity created = WeeklyAggregateEntity
+                        .createEntity(week.getKey(), delta.getClientId(), delta.getPaymentTypeCode());
+                WeeklyAggregateEntity.addCounts(created, delta);
+                if (!update(created, row -> WeeklyAggregateEntity.addCounts(row, delta), log)) {
+                    weekFailed++;
+                }
+            }
+            if (weekFailed > 0) {
+                failed += weekFailed;
+                invalidate(week.getKey(), log);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Invalidates the weeks of hourly rows whose changes cannot be merged, so
+     * that their reports fall back to the hourly rows.
+     *
+     * @param rows the hourly rows
+     * @param log  the logger
+     * @return true if all the weeks have been invalidated
+     */
+    public boolean invalidate(
+                              List<TableEntity> rows,
+                              Logger log
+    ) {
+        Set<String> weeks = new LinkedHashSet<>();
+        for (TableEntity row : rows) {
+            weeks.add(
+                    WeeklyAggregateEntity.partitionKey(
+                            OffsetDateTime.parse(String.valueOf(row.getProperty(StateMetricEntity.WINDOW_START)))
+                    )
+            );
+        }
+        boolean invalidated = true;
+        for (String week : weeks) {
+            invalidated &= invalidate(week, log);
+        }
+        return invalidated;
+    }
+
+    /**
+     * Reads the aggregates of a whole ISO week with a single partition query.
+     *
+     * @param monday the first day of the week
+     * @return the groups of the week, or an empty optional if the week has not
+     *         been aggregated since its beginning
+     */
+    public Optional<List<AggregatedStatusGroup>> load(LocalDate monday) {
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter("PartitionKey eq '" + WeeklyAggregateEntity.partitionKey(monday) + "'");
+        OffsetDateTime firstWindowStart = null;
+        List<AggregatedStatusGroup> groups = new ArrayList<>();
+        for (TableEntity entity : tableClient.listEntities(query, null, null)) {
+            if (WeeklyAggregateEntity.MARKER_ROW_KEY.equals(entity.getRowKey())) {
+                if (WeeklyAggregateEntity.isInvalidated(entity)) {
+                    return Optional.empty();
+                }
+                firstWindowStart = WeeklyAggregateEntity.firstWindowStart(entity);
+            } else {
+                groups.add(WeeklyAggregateEntity.toGroup(entity));
+            }
+        }
+        if (firstWindowStart == null || firstWindowStart.isAfter(monday.atStartOfDay().atOffset(ZoneOffset.UTC))) {
+            return Optional.empty();
+        }
+        return Optional.of(groups);
+    }
+
+    /**
+     * Applies a change to a weekly row: the row is created if missing, otherwise
+     * it is read, changed and replaced only if its ETag is unchanged. Conflicts
+     * with concurrent writers are retried up to {@value #MAX_MERGE_ATTEMPTS}
+     * times.
+     */
+    private boolean update(
+                           TableEntity created,
+                           Consumer<TableEntity> change,
+                           Logger log
+    ) {
+        for (int attempt = 1; attempt <= MAX_MERGE_ATTEMPTS; attempt++) {
+            try {
+                TableEntity current = read(created.getPartitionKey(), created.getRowKey());
+                if (current == null) {
+                    tableClient.createEntity(created);
+                } else {
+                    change.accept(current);
+                    tableClient.updateEntityWithResponse(current, TableEntityUpdateMode.REPLACE, true, null, null);
+                }
+                return true;
+            } catch (TableServiceException e) {
+                int status = statusCode(e);
+                if (status != CONFLICT && status != PRECONDITION_FAILED) {
+                    log.warning(failureMessage(created, e));
+                    return false;
+                }
+            } catch (Exception e) {
+                log.warning(failureMessage(created, e));
+                return false;
+            }
+        }
+        log.warning(
+                "Weekly aggregate " + created.getPartitionKey() + "/" + created.getRowKey()
+                        + " not updated after " + MAX_MERGE_ATTEMPTS + " conflicting attempts"
+        );
+        return false;
+    }
+
+    /**
+     * Flags the marker row of a week as invalidated. The flag is merged into the
+     * row, so it is kept by the conditional updates of concurrent merges, which
+     * read the row again when it changes.
+     */
+    private boolean invalidate(
+                               String week,
+                               Logger log
+    ) {
+        try {
+            tableClient.upsertEntityWithResponse(
+                    WeeklyAggregateEntity.createInvalidatedMarker(week),
+                    TableEntityUpdateMode.MERGE,
+                    null,
+                    null
+            );
+            log.warning("Weekly aggregates of " + week + " invalidated, reports fall back to the hourly rows");
+            return true;
+        } catch (Exception e) {
+            log.severe("Failed to invalidate weekly aggregates of " + week + ". Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private TableEntity read(
+                             String partitionKey,
+                             String rowKey
+    ) {
+        try {
+            return tableClient.getEntity(partitionKey, rowKey);
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static int statusCode(TableServiceException e) {
+        HttpResponse response = e.getResponse();
+        return response != null ? response.getStatusCode() : 0;
+    }
+
+    private static String failureMessage(
+                                         TableEntity entity,
+                                         Exception e
+    ) {
+        return "Failed to update weekly aggregate " + entity.getPartitionKey() + "/" + entity.getRowKey()
+                + ". Error: " + e.getMessage();
+    }
+
+    private static long countOf(
+                                TableEntity entity,
+                                String status
+    ) {
+        return entity.getProperty(status) instanceof Number number ? number.longValue() : 0;
+    }
+
+    private static boolean hasChanges(AggregatedStatusGroup delta) {
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            if (delta.getStatusCount(i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -2,32 +2,73 @@ package it.pagopa.ecommerce.reporting.services;
 
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+
 import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
 import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StorageLayout;
 
-import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 public class WriteDataService {
 
+    public static final int MAX_TRANSACTION_SIZE = TableBatchWriter.MAX_TRANSACTION_SIZE;
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+    private static final int NOT_FOUND = 404;
+    private static final int CONFLICT = 409;
+    private static final int PRECONDITION_FAILED = 412;
     private static WriteDataService instance = null;
     private final String storageConnectionString = System.getenv("ECOMMERCE_REPORTING_CONNECTION_STRING");
     private final String tableName = System.getenv("ECOMMERCE_REPORTING_TABLE");
     private final TableClient tableClient;
+    private final TableBatchWriter batchWriter;
+    private final WeeklyAggregateService weeklyAggregates;
+    private final StorageLayout storageLayout;
 
     private WriteDataService() {
         tableClient = new TableClientBuilder()
                 .connectionString(storageConnectionString)
                 .tableName(tableName)
                 .buildClient();
+        batchWriter = new TableBatchWriter(tableClient);
+        weeklyAggregates = WeeklyAggregateService.fromEnvironment().orElse(null);
+        storageLayout = StorageLayout.fromEnvironment();
     }
 
     public WriteDataService(TableClient tableClient) {
+        this(tableClient, null);
+    }
+
+    public WriteDataService(
+            TableClient tableClient,
+            WeeklyAggregateService weeklyAggregates
+    ) {
+        this(tableClient, weeklyAggregates, StorageLayout.NARROW);
+    }
+
+    public WriteDataService(
+            TableClient tableClient,
+            WeeklyAggregateService weeklyAggregates,
+            StorageLayout storageLayout
+    ) {
         this.tableClient = tableClient;
+        this.batchWriter = new TableBatchWriter(tableClient);
+        this.weeklyAggregates = weeklyAggregates;
+        this.storageLayout = storageLayout;
     }
 
     public static WriteDataService getInstance() {
@@ -37,37 +78,444 @@ public class WriteDataService {
         return instance;
     }
 
-    public void writeStateMetricsInTableStorage(
-                                                JsonNode jsonNode,
-                                                Logger log,
-                                                String clientId,
-                                                String paymentTypeCode,
-                                                String pspId
+    /**
+     * Stores the metrics collected during a run.
+     * <p>
+     * Entities are upserted: their keys identify the collected window, so
+     * storing the metrics of a window again replaces the previous values instead
+     * of adding duplicated rows.
+     * <p>
+     * Entities are grouped by PartitionKey and written through entity group
+     * transactions, so a whole run is stored with one request per group instead
+     * of one request per entity, see {@link TableBatchWriter}.
+     * <p>
+     * When {@code ECOMMERCE_REPORTING_WEEKLY_AGGREGATES_TABLE} is set, the
+     * written entities are also merged into the running weekly aggregates, see
+     * {@link WeeklyAggregateService}. The rows about to be replaced are read
+     * first, with one RowKey range query per client and window, so that only
+     * the changed counts are merged; they are then replaced only if unchanged
+     * since, so concurrent writers of a window cannot merge the same change
+     * twice, and a row changed in between is read again and retried on its
+     * own. When the rows cannot be read or the changes cannot be merged, the
+     * weeks of the entities are invalidated and their reports fall back to the
+     * hourly rows.
+     * <p>
+     * When {@code ECOMMERCE_REPORTING_STORAGE_LAYOUT} is {@code wide}, the
+     * entities are packed into one wide row per client and window instead, see
+     * {@link StorageLayout#WIDE}.
+     *
+     * @param entities the entities to store
+     * @param log      the logger
+     * @return the number of entities that have been written
+     */
+    public int writeStateMetricsInTableStorage(
+                                               List<TableEntity> entities,
+                                               Logger log
     ) {
-        try {
-            Map<String, Integer> statusCounts = new HashMap<>();
-            for (String status : StatusStorageFields.values) {
-                JsonNode valueNode = jsonNode.get(status);
-                if (valueNode != null && valueNode.isInt()) {
-                    statusCounts.put(status, valueNode.asInt());
+        return writeStateMetrics(entities, log).size();
+    }
+
+    /**
+     * Stores the metrics collected during a run, as
+     * {@link #writeStateMetricsInTableStorage(List, Logger)}.
+     *
+     * @param entities the entities to store
+     * @param log      the logger
+     * @return the entities that have been written
+     */
+    public List<TableEntity> writeStateMetrics(
+                                               List<TableEntity> entities,
+                                               Logger log
+    ) {
+        return writeStateMetrics(entities, List.of(), log);
+    }
+
+    /**
+     * Stores the metrics collected during a run, as
+     * {@link #writeStateMetricsInTableStorage(List, Logger)}, except for the
+     * given empty rows of windows never stored, which are not written: they
+     * are only merged into the weekly aggregates, where they mark their week
+     * as collected from their window on.
+     *
+     * @param entities the entities to store
+     * @param empty    the empty entities not to store
+     * @param log      the logger
+     * @return the entities that have been written
+     */
+    public List<TableEntity> writeStateMetrics(
+                                               List<TableEntity> entities,
+                                               List<TableEntity> empty,
+                                               Logger log
+    ) {
+        if (storageLayout == StorageLayout.WIDE) {
+            return writeWideRows(entities, empty, log);
+        }
+        Map<String, TableEntity> stored = weeklyAggregates != null ? readPrevious(entities, log) : null;
+        Map<String, TableEntity> previous = stored != null ? new HashMap<>() : null;
+        Map<TableTransactionAction, TableEntity> actions = new LinkedHashMap<>();
+        for (TableEntity entity : entities) {
+            TableTransactionAction action;
+            if (previous == null) {
+                action = new TableTransactionAction(TableTransactionActionType.UPSERT_REPLACE, entity);
+            } else if (stored.containsKey(entity.getRowKey())) {
+                TableEntity replaced = stored.get(entity.getRowKey());
+                previous.put(entity.getRowKey(), counts(replaced));
+                action = new TableTransactionAction(
+                        TableTransactionActionType.UPDATE_REPLACE,
+                        StateMetricEntity.overwrite(replaced, entity),
+                        true
+                );
+            } else {
+                action = new TableTransactionAction(TableTransactionActionType.CREATE, entity);
+            }
+            actions.put(action, entity);
+        }
+        if (weeklyAggregates != null && previous == null) {
+            // the changes cannot be merged without counting them twice
+            List<TableEntity> invalidated = new ArrayList<>(entities);
+            invalidated.addAll(empty);
+            weeklyAggregates.invalidate(invalidated, log);
+        }
+        Predicate<TableEntity> retry = previous == null ? entity -> writeEntity(entity, log)
+                : entity -> writeEntityIfUnchanged(entity, previous, log);
+        List<TableEntity> written = batchWriter.submit(actions, retry, log);
+        int writtenEntities = written.size();
+        log.info(
+                () -> String.format(
+                        "Successfully stored %d/%d state metrics entities",
+                        writtenEntities,
+                        entities.size()
+                )
+        );
+        if (previous != null && !(written.isEmpty() && empty.isEmpty())) {
+            List<TableEntity> merged = new ArrayList<>(written);
+            merged.addAll(empty);
+            mergeWeeklyAggregates(merged, previous, log);
+        }
+        return written;
+    }
+
+    /**
+     * Stores the metrics of a run as wide rows: the entities of each client and
+     * window are packed into its wide row, together with the ones the row
+     * already holds and the narrow rows of the window stored before the layout
+     * was switched. The wide row is created, or replaced only if unchanged
+     * since it was read; on a concurrent write the window is read again. The
+     * narrow rows folded into it are then deleted in entity group transactions,
+     * each only if unchanged since it was read: until then readers skip them,
+     * see {@link StateMetricEntity.RowReader}, and the ones left are deleted by
+     * the next write of the window.
+     */
+    private List<TableEntity> writeWideRows(
+                                            List<TableEntity> entities,
+                                            List<TableEntity> empty,
+                                            Logger log
+    ) {
+        Map<String, List<TableEntity>> entitiesByWindow = new LinkedHashMap<>();
+        for (TableEntity entity : entities) {
+            entitiesByWindow.computeIfAbsent(
+                    entity.getPartitionKey() + "/" + StateMetricEntity.windowPrefix(entity.getRowKey()),
+                    k -> new ArrayList<>()
+            ).add(entity);
+        }
+        Map<String, TableEntity> previous = new HashMap<>();
+        List<TableEntity> written = new ArrayList<>();
+        for (List<TableEntity> windowEntities : entitiesByWindow.values()) {
+            if (writeWideRow(windowEntities, previous, log)) {
+                written.addAll(windowEntities);
+            }
+        }
+        int writtenEntities = written.size();
+        log.info(
+                () -> String.format(
+                        "Successfully stored %d/%d state metrics entities in %d wide rows",
+                        writtenEntities,
+                        entities.size(),
+                        entitiesByWindow.size()
+                )
+        );
+        if (weeklyAggregates != null && !(written.isEmpty() && empty.isEmpty())) {
+            List<TableEntity> merged = new ArrayList<>(written);
+            merged.addAll(empty);
+            mergeWeeklyAggregates(merged, previous, log);
+        }
+        return written;
+    }
+
+    /**
+     * Packs the entities of a client and window into its wide row.
+     *
+     * @param entities the entities of the window
+     * @param previous the stored rows replaced by the entities, by RowKey
+     * @return whether the wide row has been written
+     */
+    private boolean writeWideRow(
+                                 List<TableEntity> entities,
+                                 Map<String, TableEntity> previous,
+                                 Logger log
+    ) {
+        TableEntity first = entities.get(0);
+        String prefix = StateMetricEntity.windowPrefix(first.getRowKey());
+        ListEntitiesOptions query = new ListEntitiesOptions()
+                .setFilter(
+                        String.format(
+                                "PartitionKey eq '%s' and RowKey ge '%s' and RowKey lt '%s'",
+                                first.getPartitionKey(),
+                                prefix,
+                                StateMetricEntity.windowPrefixUpperBound(prefix)
+                        )
+                );
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            try {
+                TableEntity wide = null;
+                Map<String, TableEntity> stored = new LinkedHashMap<>();
+                List<TableEntity> narrow = new ArrayList<>();
+                for (TableEntity entity : tableClient.listEntities(query, null, null)) {
+                    if (StateMetricEntity.isWide(entity)) {
+                        wide = entity;
+                        StateMetricEntity.forEachRow(entity, row -> stored.put(row.getRowKey(), row));
+                    } else {
+                        narrow.add(entity);
+                    }
+                }
+                narrow.forEach(row -> stored.putIfAbsent(row.getRowKey(), row));
+                Map<String, TableEntity> rows = new LinkedHashMap<>(stored);
+                entities.forEach(entity -> rows.put(entity.getRowKey(), entity));
+                if (wide == null) {
+                    wide = StateMetricEntity.createWideEntity(
+                            OffsetDateTime.parse(String.valueOf(first.getProperty(StateMetricEntity.WINDOW_START))),
+                            String.valueOf(first.getProperty("clientId"))
+                    );
+                    StateMetricEntity.setRows(wide, rows.values());
+                    tableClient.createEntity(wide);
+                } else {
+                    StateMetricEntity.setRows(wide, rows.values());
+                    tableClient.updateEntityWithResponse(wide, TableEntityUpdateMode.REPLACE, true, null, null);
                 }
+                previous.putAll(stored);
+                deleteFolded(narrow, prefix, log);
+                return true;
+            } catch (TableServiceException e) {
+                int status = statusCode(e);
+                if (status != NOT_FOUND && status != CONFLICT && status != PRECONDITION_FAILED) {
+                    log.warning("Failed to write the wide row " + prefix + ". Error: " + e.getMessage());
+                    return false;
+                }
+                // the window has been written by another run since it was read
+            } catch (Exception e) {
+                log.warning("Failed to write the wide row " + prefix + ". Error: " + e.getMessage());
+                return false;
             }
+        }
+        log.warning("Failed to write the wide row " + prefix + " after " + MAX_TRANSACTION_ATTEMPTS + " attempts");
+        return false;
+    }
 
-            TableEntity entity = StateMetricEntity.createEntity(
-                    LocalDate.now(),
-                    clientId,
-                    paymentTypeCode,
-                    pspId,
-                    statusCounts
+    /**
+     * Deletes the narrow rows folded into a written wide row, each only if
+     * unchanged since it was read.
+     */
+    private void deleteFolded(
+                              List<TableEntity> narrow,
+                              String prefix,
+                              Logger log
+    ) {
+        if (narrow.isEmpty()) {
+            return;
+        }
+        Map<TableTransactionAction, TableEntity> deletes = new LinkedHashMap<>();
+        narrow.forEach(
+                row -> deletes.put(new TableTransactionAction(TableTransactionActionType.DELETE, row, true), row)
+        );
+        int deleted = batchWriter.submit(deletes, row -> deleteIfUnchanged(row, log), log).size();
+        if (deleted < narrow.size()) {
+            log.warning(
+                    "Failed to delete " + (narrow.size() - deleted) + " narrow rows folded into the wide row " + prefix
             );
+        }
+    }
 
-            tableClient.createEntity(entity);
-            log.info("Successfully inserted state metrics for clientId: " + clientId + ", pspId: " + pspId);
+    private boolean deleteIfUnchanged(
+                                      TableEntity row,
+                                      Logger log
+    ) {
+        try {
+            tableClient.deleteEntityWithResponse(row, true, null, null);
+            return true;
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return true;
+            }
+            log.warning("Failed to delete the narrow row " + row.getRowKey() + ". Error: " + e.getMessage());
+            return false;
         } catch (Exception e) {
-            log.warning(
-                    "Failed to write state metrics to Azure Table Storage. Error: " + e.getMessage() +
-                            " | JSON content: " + jsonNode.toString()
-            );
+            log.warning("Failed to delete the narrow row " + row.getRowKey() + ". Error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean writeEntity(
+                                TableEntity entity,
+                                Logger log
+    ) {
+        try {
+            tableClient.upsertEntityWithResponse(entity, TableEntityUpdateMode.REPLACE, null, null);
+            return true;
+        } catch (Exception e) {
+            return writeFailed(entity, e, log);
+        }
+    }
+
+    /**
+     * Writes an entity only if the stored row with its keys is unchanged since
+     * it is read, recording the replaced counts to merge. A row changed in
+     * between is read again, up to {@value #MAX_TRANSACTION_ATTEMPTS} times.
+     *
+     * @param entity   the entity to store
+     * @param previous the stored rows replaced by the written entities, by
+     *                 RowKey, updated
+     * @return whether the entity has been written
+     */
+    private boolean writeEntityIfUnchanged(
+                                           TableEntity entity,
+                                           Map<String, TableEntity> previous,
+                                           Logger log
+    ) {
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS; attempt++) {
+            try {
+                TableEntity stored = readEntity(entity.getPartitionKey(), entity.getRowKey());
+                if (stored == null) {
+                    tableClient.createEntity(entity);
+                    previous.remove(entity.getRowKey());
+                } else {
+                    TableEntity replaced = counts(stored);
+                    tableClient.updateEntityWithResponse(
+                            StateMetricEntity.overwrite(stored, entity),
+                            TableEntityUpdateMode.REPLACE,
+                            true,
+                            null,
+                            null
+                    );
+                    previous.put(entity.getRowKey(), replaced);
+                }
+                return true;
+            } catch (TableServiceException e) {
+                if (statusCode(e) != CONFLICT && statusCode(e) != PRECONDITION_FAILED) {
+                    return writeFailed(entity, e, log);
+                }
+                // the row has been written by another run since it was read
+            } catch (Exception e) {
+                return writeFailed(entity, e, log);
+            }
+        }
+        log.warning(
+                "Failed to write state metrics " + entity.getPartitionKey() + "/" + entity.getRowKey() + " after "
+                        + MAX_TRANSACTION_ATTEMPTS + " conflicting attempts"
+        );
+        return false;
+    }
+
+    private TableEntity readEntity(
+                                   String partitionKey,
+                                   String rowKey
+    ) {
+        try {
+            return tableClient.getEntity(partitionKey, rowKey);
+        } catch (TableServiceException e) {
+            if (statusCode(e) == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean writeFailed(
+                                       TableEntity entity,
+                                       Exception e,
+                                       Logger log
+    ) {
+        log.warning(
+                "Failed to write state metrics to Azure Table Storage. Error: " + e.getMessage() +
+                        " | Entity: " + entity.getPartitionKey() + "/" + entity.getRowKey()
+                        + " " + entity.getProperties()
+        );
+        return false;
+    }
+
+    private static int statusCode(TableServiceException e) {
+        return e.getResponse() != null ? e.getResponse().getStatusCode() : 0;
+    }
+
+    /**
+     * @param row a stored metrics row
+     * @return a copy of the status counts of the row, with its keys
+     */
+    private static TableEntity counts(TableEntity row) {
+        TableEntity counts = new TableEntity(row.getPartitionKey(), row.getRowKey());
+        for (String status : StatusStorageFields.values) {
+            if (row.getProperty(status) instanceof Number count) {
+                counts.addProperty(status, count.longValue());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Reads the stored rows sharing the keys of the entities about to be
+     * written. Hourly RowKeys start with {@code clientId|window|}, so the rows
+     * of a run are read with one range query per prefix.
+     *
+     * @return the stored rows by RowKey, with the ETag they have been read
+     *         with, or null if they could not be read and the changes cannot be
+     *         merged without counting them twice
+     */
+    private Map<String, TableEntity> readPrevious(
+                                                  List<TableEntity> entities,
+                                                  Logger log
+    ) {
+        Set<String> prefixes = new LinkedHashSet<>();
+        Map<String, TableEntity> previous = new HashMap<>();
+        for (TableEntity entity : entities) {
+            String prefix = StateMetricEntity.windowPrefix(entity.getRowKey());
+            if (prefixes.add(entity.getPartitionKey() + "/" + prefix)) {
+                ListEntitiesOptions query = new ListEntitiesOptions()
+                        .setFilter(
+                                String.format(
+                                        "PartitionKey eq '%s' and RowKey ge '%s' and RowKey lt '%s'",
+                                        entity.getPartitionKey(),
+                                        prefix,
+                                        StateMetricEntity.windowPrefixUpperBound(prefix)
+                                )
+                        );
+                try {
+                    tableClient.listEntities(query, null, null)
+                            .forEach(stored -> previous.put(stored.getRowKey(), stored));
+                } catch (Exception e) {
+                    log.warning(
+                            "Failed to read stored state metrics " + prefix
+                                    + ", weekly aggregates invalidated. Error: " + e.getMessage()
+                    );
+                    return null;
+                }
+            }
+        }
+        return previous;
+    }
+
+    private void mergeWeeklyAggregates(
+                                       List<TableEntity> written,
+                                       Map<String, TableEntity> previous,
+                                       Logger log
+    ) {
+        try {
+            // the weeks whose changes are not all merged are invalidated by the merge
+            int failed = weeklyAggregates.merge(written, previous, log);
+            if (failed > 0) {
+                log.warning("Failed to merge " + failed + " weekly aggregates");
+            }
+        } catch (Exception e) {
+            log.warning("Failed to merge weekly aggregates. Error: " + e.getMessage());
+            weeklyAggregates.invalidate(written, log);
         }
     }
 
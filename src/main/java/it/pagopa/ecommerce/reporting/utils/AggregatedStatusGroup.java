@@ -1,65 +1,169 @@
 package it.pagopa.ecommerce.reporting.utils;
 
-import java.util.HashMap;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
-import lombok.Getter;
-
-@Getter
+import java.util.StringJoiner;
+
+/**
+ * Status counts of a group of transactions. Counts are kept in two primitive
+ * vectors: the raw statuses, indexed as {@link StatusStorageFields#values}, and
+ * the report categories, indexed by {@link StatusCategory} ordinal. Adding a
+ * raw status count also adds it to the category of the status.
+ */
 public class AggregatedStatusGroup {
     private String date;
     private String clientId;
     private String pspId;
     private String paymentTypeCode;
-    private Map<String, Integer> statusCounts = new HashMap<>();
+    private final long[] statusCounts = new long[StatusStorageFields.size()];
+    private final long[] categoryCounts = new long[StatusCategory.size()];
 
     public AggregatedStatusGroup(
             String date,
             String clientId,
             String pspId,
-            String paymentTypeCode,
-            List<String> statusFields
+            String paymentTypeCode
     ) {
         this.date = date;
         this.clientId = clientId;
         this.pspId = pspId;
         this.paymentTypeCode = paymentTypeCode;
-        for (String status : statusFields) {
-            statusCounts.put(status, 0);
-        }
     }
 
+    /**
+     * Adds a count to a raw status and to its category.
+     *
+     * @param statusIndex the index of the status in
+     *                    {@link StatusStorageFields#values}
+     * @param value       the count to add
+     */
+    public void addStatus(
+                          int statusIndex,
+                          long value
+    ) {
+        statusCounts[statusIndex] += value;
+        categoryCounts[StatusCategory.ordinalOf(statusIndex)] += value;
+    }
+
+    /**
+     * Adds a count to a raw status and to its category.
+     *
+     * @param status the status name
+     * @param value  the count to add
+     * @throws IllegalArgumentException if the status is not a stored status
+     */
     public void incrementStatus(
                                 String status,
-                                int value
+                                long value
     ) {
-        statusCounts.put(status, statusCounts.getOrDefault(status, 0) + value);
+        int statusIndex = StatusStorageFields.indexOf(status);
+        if (statusIndex < 0) {
+            throw new IllegalArgumentException("Unknown status: " + status);
+        }
+        addStatus(statusIndex, value);
+    }
+
+    /**
+     * Adds a count to a category only, e.g. for counts that are already
+     * aggregated by category.
+     *
+     * @param category the category
+     * @param value    the count to add
+     */
+    public void incrementCategory(
+                                  StatusCategory category,
+                                  long value
+    ) {
+        categoryCounts[category.ordinal()] += value;
+    }
+
+    /**
+     * Adds the counts of another group of the same key to this group, e.g. to
+     * combine the partial results of different date ranges.
+     *
+     * @param other the group to merge into this one
+     * @return this group
+     */
+    public AggregatedStatusGroup merge(AggregatedStatusGroup other) {
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] += other.statusCounts[i];
+        }
+        for (int i = 0; i < categoryCounts.length; i++) {
+            categoryCounts[i] += other.categoryCounts[i];
+        }
+        return this;
+    }
+
+    public long getStatusCount(int statusIndex) {
+        return statusCounts[statusIndex];
+    }
+
+    public long getCategoryCount(StatusCategory category) {
+        return categoryCounts[category.ordinal()];
+    }
+
+    /**
+     * @return the sum of the category counts
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : categoryCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return true if no category has a count
+     */
+    public boolean isEmpty() {
+        for (long count : categoryCounts) {
+            if (count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the categories with a non-zero count, in report order
+     */
+    public Map<StatusCategory, Long> getCategoryCounts() {
+        Map<StatusCategory, Long> counts = new EnumMap<>(StatusCategory.class);
+        for (StatusCategory category : StatusCategory.values()) {
+            long count = categoryCounts[category.ordinal()];
+            if (count != 0) {
+                counts.put(category, count);
+            }
+        }
+        return counts;
     }
 
     @Override
     public String toString() {
+        StringJoiner categories = new StringJoiner(", ", "{", "}");
+        for (StatusCategory category : StatusCategory.values()) {
+            if (categoryCounts[category.ordinal()] != 0) {
+                categories.add(category.getLabel() + "=" + categoryCounts[category.ordinal()]);
+            }
+        }
+        StringJoiner statuses = new StringJoiner(", ", "{", "}");
+        for (int i = 0; i < statusCounts.length; i++) {
+            if (statusCounts[i] != 0) {
+                statuses.add(StatusStorageFields.values.get(i) + "=" + statusCounts[i]);
+            }
+        }
         return String.format(
-                "Date: %s | ClientId: %s | PspId: %s | PaymentType: %s | Counts: %s",
+                "Date: %s | ClientId: %s | PspId: %s | PaymentType: %s | Counts: %s | Statuses: %s",
                 date,
                 clientId,
                 pspId,
                 paymentTypeCode,
-                statusCounts
+                categories,
+                statuses
         );
     }
 
-    public void filterZeroCountStatuses() {
-        Map<String, Integer> filteredCounts = new HashMap<>();
-
-        for (Map.Entry<String, Integer> entry : statusCounts.entrySet()) {
-            if (entry.getValue() > 0) {
-                filteredCounts.put(entry.getKey(), entry.getValue());
-            }
-        }
-
-        this.statusCounts = filteredCounts;
-    }
-
     public String getDate() {
         return date;
     }
@@ -91,12 +195,4 @@ public class AggregatedStatusGroup {
     public void setPaymentTypeCode(String paymentTypeCode) {
         this.paymentTypeCode = paymentTypeCode;
     }
-
-    public Map<String, Integer> getStatusCounts() {
-        return statusCounts;
-    }
-
-    public void setStatusCounts(Map<String, Integer> statusCounts) {
-        this.statusCounts = statusCounts;
-    }
 }
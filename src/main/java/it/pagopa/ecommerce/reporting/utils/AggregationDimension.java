@@ -0,0 +1,80 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.entity.WeeklyAggregateEntity;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Dimensions the stored hourly metrics can be grouped by.
+ * <p>
+ * Values are dictionary-encoded while aggregating, and the codes of the
+ * dimensions of a grouping are packed into a single {@code long} key: each
+ * dimension has a fixed number of bits, which bounds the number of distinct
+ * values it can take in a single aggregation.
+ */
+public enum AggregationDimension {
+
+    CLIENT(10, List.of("clientId")),
+    PAYMENT_TYPE(8, List.of("paymentTypeCode")),
+    PSP(14, List.of("pspId")),
+    DAY(12, List.of("PartitionKey")),
+    HOUR_OF_DAY(5, List.of("RowKey")),
+    ISO_WEEK(10, List.of("PartitionKey"));
+
+    /**
+     * The hour of day of rows whose RowKey has no window, such as the UUIDs of
+     * legacy rows.
+     */
+    public static final String NO_HOUR = "n/a";
+
+    private final int bits;
+    private final List<String> properties;
+
+    AggregationDimension(
+            int bits,
+            List<String> properties
+    ) {
+        this.bits = bits;
+        this.properties = properties;
+    }
+
+    /**
+     * @return the number of bits of the codes of the dimension in a packed key
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return the properties to select to read the dimension
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Reads the value of the dimension from an hourly row.
+     *
+     * @param entity an hourly row
+     * @return the value of the dimension
+     */
+    public String valueOf(TableEntity entity) {
+        return switch (this) {
+            case CLIENT -> String.valueOf(entity.getProperty("clientId"));
+            case PAYMENT_TYPE -> String.valueOf(entity.getProperty("paymentTypeCode"));
+            case PSP -> String.valueOf(entity.getProperty("pspId"));
+            case DAY -> entity.getPartitionKey();
+            case HOUR_OF_DAY -> hourOf(entity.getRowKey());
+            // same week keys as the running weekly aggregates, e.g. 2025-W37
+            case ISO_WEEK -> WeeklyAggregateEntity.partitionKey(LocalDate.parse(entity.getPartitionKey()));
+        };
+    }
+
+    private static String hourOf(String rowKey) {
+        int hour = StateMetricEntity.windowHour(rowKey);
+        return hour != StateMetricEntity.NO_WINDOW_HOUR ? String.format("%02d", hour) : NO_HOUR;
+    }
+}
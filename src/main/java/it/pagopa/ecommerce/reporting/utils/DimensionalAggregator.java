@@ -0,0 +1,237 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.azure.data.tables.models.TableEntity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregates the hourly metrics by several {@link Grouping}s in a single scan.
+ * <p>
+ * For each row, the values of the dimensions used by any grouping are read and
+ * dictionary-encoded once, and the status counts are read once into a primitive
+ * vector. Each grouping then packs the codes of its dimensions into a
+ * {@code long} key and adds the vector to the counts of the key, so no string
+ * key is built per row and grouping.
+ * <p>
+ * Parallel scans use one partial aggregator per task, created with
+ * {@link #newPartial()}: partials share the dictionaries of their root, so
+ * their keys are comparable and they are merged by adding the counts of equal
+ * keys.
+ */
+public class DimensionalAggregator {
+
+    private final List<Grouping> groupings;
+    private final Map<AggregationDimension, Dictionary> dictionaries;
+    private final AggregationDimension[] dimensions;
+    private final List<Map<Long, long[]>> countsByGrouping;
+    private final int[] codes = new int[AggregationDimension.values().length];
+    private final long[] rowCounts = new long[StatusStorageFields.size()];
+
+    /**
+     * @param groupings the groupings to compute
+     */
+    public DimensionalAggregator(List<Grouping> groupings) {
+        this(groupings, new EnumMap<>(AggregationDimension.class));
+        groupings.forEach(
+                grouping -> grouping.dimensions()
+                        .forEach(dimension -> dictionaries.computeIfAbsent(dimension, Dictionary::new))
+        );
+    }
+
+    private DimensionalAggregator(
+            List<Grouping> groupings,
+            Map<AggregationDimension, Dictionary> dictionaries
+    ) {
+        this.groupings = List.copyOf(groupings);
+        this.dictionaries = dictionaries;
+        this.dimensions = groupings.stream()
+                .flatMap(grouping -> grouping.dimensions().stream())
+                .distinct()
+                .toArray(AggregationDimension[]::new);
+        this.countsByGrouping = new ArrayList<>(groupings.size());
+        groupings.forEach(grouping -> countsByGrouping.add(new HashMap<>()));
+    }
+
+    /**
+     * @return an empty aggregator of the same groupings, sharing the dictionaries
+     *         of this one
+     */
+    public DimensionalAggregator newPartial() {
+        return new DimensionalAggregator(groupings, dictionaries);
+    }
+
+    /**
+     * @return the groupings computed by this aggregator
+     */
+    public List<Grouping> getGroupings() {
+        return groupings;
+    }
+
+    /**
+     * @param groupings the groupings to compute
+     * @return the properties to select to compute the groupings
+     */
+    public static List<String> projection(List<Grouping> groupings) {
+        Set<String> projection = new LinkedHashSet<>();
+        groupings.forEach(
+                grouping -> grouping.dimensions().forEach(dimension -> projection.addAll(dimension.getProperties()))
+        );
+        projection.addAll(StatusStorageFields.values);
+        return List.copyOf(projection);
+    }
+
+    /**
+     * Adds an hourly row to every grouping. A row without any transaction is
+     * skipped, as are the windows stored without a row: groups only exist for
+     * the values with at least one transaction in the range.
+     *
+     * @param entity the hourly row
+     */
+    public void add(TableEntity entity) {
+        boolean empty = true;
+        for (int i = 0; i < rowCounts.length; i++) {
+            long count = entity.getProperty(StatusStorageFields.values.get(i)) instanceof Number number
+                    ? number.longValue()
+                    : 0;
+            rowCounts[i] = count;
+            empty &= count == 0;
+        }
+        if (empty) {
+            return;
+        }
+        for (AggregationDimension dimension : dimensions) {
+            codes[dimension.ordinal()] = dictionaries.get(dimension).encode(dimension.valueOf(entity));
+        }
+        for (int g = 0; g < groupings.size(); g++) {
+            long[] counts = countsByGrouping.get(g)
+                    .computeIfAbsent(pack(groupings.get(g)), k -> new long[rowCounts.length]);
+            for (int i = 0; i < rowCounts.length; i++) {
+                counts[i] += rowCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of an already decoded group, e.g. restored from a
+     * checkpoint of a previous aggregation.
+     *
+     * @param grouping the grouping of the group, one of this aggregator
+     * @param values   the values of the dimensions of the grouping
+     * @param counts   the status counts, indexed as
+     *                 {@link StatusStorageFields#values}
+     * @throws IllegalArgumentException if the grouping is not computed here
+     */
+    public void add(
+                    Grouping grouping,
+                    Map<AggregationDimension, String> values,
+                    long[] counts
+    ) {
+        int g = groupings.indexOf(grouping);
+        if (g < 0) {
+            throw new IllegalArgumentException("Grouping not aggregated: " + grouping.name());
+        }
+        for (AggregationDimension dimension : grouping.dimensions()) {
+            codes[dimension.ordinal()] = dictionaries.get(dimension).encode(values.get(dimension));
+        }
+        long[] groupCounts = countsByGrouping.get(g).computeIfAbsent(pack(grouping), k -> new long[rowCounts.length]);
+        for (int i = 0; i < groupCounts.length; i++) {
+            groupCounts[i] += counts[i];
+        }
+    }
+
+    /**
+     * Adds the counts of a partial aggregator of the same root to this one.
+     *
+     * @param other the partial to merge
+     * @return this aggregator
+     */
+    public DimensionalAggregator merge(DimensionalAggregator other) {
+        for (int g = 0; g < groupings.size(); g++) {
+            Map<Long, long[]> counts = countsByGrouping.get(g);
+            other.countsByGrouping.get(g).forEach((key, otherCounts) -> counts.merge(key, otherCounts, (a, b) -> {
+                for (int i = 0; i < a.length; i++) {
+                    a[i] += b[i];
+                }
+                return a;
+            }));
+        }
+        return this;
+    }
+
+    /**
+     * Decodes the groups of each grouping.
+     *
+     * @return the groups of each grouping, in the order of the groupings
+     */
+    public Map<Grouping, List<DimensionalGroup>> results() {
+        Map<Grouping, List<DimensionalGroup>> results = new LinkedHashMap<>();
+        for (int g = 0; g < groupings.size(); g++) {
+            Grouping grouping = groupings.get(g);
+            List<DimensionalGroup> groups = new ArrayList<>(countsByGrouping.get(g).size());
+            countsByGrouping.get(g).forEach((key, counts) -> groups.add(unpack(grouping, key, counts)));
+            results.put(grouping, groups);
+        }
+        return results;
+    }
+
+    private long pack(Grouping grouping) {
+        long key = 0;
+        for (AggregationDimension dimension : grouping.dimensions()) {
+            key = (key << dimension.getBits()) | codes[dimension.ordinal()];
+        }
+        return key;
+    }
+
+    private DimensionalGroup unpack(
+                                    Grouping grouping,
+                                    long key,
+                                    long[] counts
+    ) {
+        List<AggregationDimension> groupingDimensions = grouping.dimensions();
+        Map<AggregationDimension, String> values = new EnumMap<>(AggregationDimension.class);
+        for (int d = groupingDimensions.size() - 1; d >= 0; d--) {
+            AggregationDimension dimension = groupingDimensions.get(d);
+            values.put(dimension, dictionaries.get(dimension).decode((int) (key & ((1L << dimension.getBits()) - 1))));
+            key >>>= dimension.getBits();
+        }
+        return new DimensionalGroup(grouping, values, counts);
+    }
+
+    /**
+     * Codes of the values of a dimension, shared by the partials of an
+     * aggregation.
+     */
+    private static class Dictionary {
+
+        private final AggregationDimension dimension;
+        private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+        private final Map<Integer, String> values = new ConcurrentHashMap<>();
+        private final AtomicInteger nextCode = new AtomicInteger();
+
+        Dictionary(AggregationDimension dimension) {
+            this.dimension = dimension;
+        }
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : codes.computeIfAbsent(value, this::newCode);
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        private int newCode(String value) {
+            int code = nextCode.getAndIncrement();
+            if (code >= 1 << dimension.getBits()) {
+                throw new IllegalStateException(
+                        "Too many distinct values of " + dimension + ", max " + (1 << dimension.getBits())
+                );
+            }
+            values.put(code, value);
+            return code;
+        }
+    }
+}
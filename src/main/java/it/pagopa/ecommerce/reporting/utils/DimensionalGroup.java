@@ -0,0 +1,59 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.Map;
+
+/**
+ * The status counts of a group of a {@link Grouping}, with the values of its
+ * dimensions.
+ */
+public class DimensionalGroup {
+
+    private final Grouping grouping;
+    private final Map<AggregationDimension, String> values;
+    private final AggregatedStatusGroup counts;
+
+    DimensionalGroup(
+            Grouping grouping,
+            Map<AggregationDimension, String> values,
+            long[] statusCounts
+    ) {
+        this.grouping = grouping;
+        this.values = values;
+        this.counts = new AggregatedStatusGroup(
+                values.get(AggregationDimension.DAY),
+                values.get(AggregationDimension.CLIENT),
+                values.get(AggregationDimension.PSP),
+                values.get(AggregationDimension.PAYMENT_TYPE)
+        );
+        for (int i = 0; i < statusCounts.length; i++) {
+            if (statusCounts[i] != 0) {
+                counts.addStatus(i, statusCounts[i]);
+            }
+        }
+    }
+
+    public Grouping getGrouping() {
+        return grouping;
+    }
+
+    /**
+     * @param dimension a dimension of the grouping
+     * @return the value of the dimension, or null if the grouping does not use it
+     */
+    public String get(AggregationDimension dimension) {
+        return values.get(dimension);
+    }
+
+    /**
+     * @return the counts of the group, with the client, paymentType, psp and day
+     *         of the group when the grouping uses them
+     */
+    public AggregatedStatusGroup getCounts() {
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return grouping.name() + " " + values + " | " + counts;
+    }
+}
@@ -0,0 +1,86 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * A grouping of the hourly metrics by an ordered list of dimensions.
+ *
+ * @param name       the name of the grouping, used to tell the results apart
+ * @param dimensions the dimensions, in the order of the packed keys
+ */
+public record Grouping(
+        String name,
+        List<AggregationDimension> dimensions
+) {
+
+    /**
+     * The grouping of the weekly report.
+     */
+    public static final Grouping CLIENT_PAYMENT_TYPE = of(
+            "clientPaymentType",
+            AggregationDimension.CLIENT,
+            AggregationDimension.PAYMENT_TYPE
+    );
+
+    /**
+     * The breakdown of each payment type by PSP.
+     */
+    public static final Grouping PSP = of(
+            "psp",
+            AggregationDimension.PAYMENT_TYPE,
+            AggregationDimension.PSP
+    );
+
+    /**
+     * The hourly heatmap of each client over the days of the range. Hours
+     * without transactions have no group, whether they were collected or not.
+     */
+    public static final Grouping HOURLY_HEATMAP = of(
+            "hourlyHeatmap",
+            AggregationDimension.CLIENT,
+            AggregationDimension.DAY,
+            AggregationDimension.HOUR_OF_DAY
+    );
+
+    public Grouping {
+        if (dimensions.isEmpty() || dimensions.size() != dimensions.stream().distinct().count()) {
+            throw new IllegalArgumentException("Grouping " + name + " needs distinct dimensions: " + dimensions);
+        }
+        int bits = dimensions.stream().mapToInt(AggregationDimension::getBits).sum();
+        if (bits > Long.SIZE) {
+            throw new IllegalArgumentException("Grouping " + name + " does not fit a packed key: " + bits + " bits");
+        }
+        dimensions = List.copyOf(dimensions);
+    }
+
+    public static Grouping of(
+                              String name,
+                              AggregationDimension... dimensions
+    ) {
+        return new Grouping(name, List.of(dimensions));
+    }
+
+    /**
+     * Parses a grouping from a comma-separated list of dimension names, e.g.
+     * {@code client,payment_type}. The name of the grouping is the list itself,
+     * normalized.
+     *
+     * @param dimensions the dimension names, case-insensitive
+     * @return the grouping
+     * @throws IllegalArgumentException if a dimension is unknown or repeated
+     */
+    public static Grouping parse(String dimensions) {
+        List<AggregationDimension> parsed = Arrays.stream(dimensions.split(","))
+                .map(String::trim)
+                .filter(dimension -> !dimension.isEmpty())
+                .map(dimension -> AggregationDimension.valueOf(dimension.toUpperCase(Locale.ROOT)))
+                .toList();
+        String name = parsed.stream()
+                .map(dimension -> dimension.name().toLowerCase(Locale.ROOT))
+                .collect(Collectors.joining(","));
+        return new Grouping(name, parsed);
+    }
+}
@@ -45,4 +45,26 @@ public class MapParametersUtils {
         }
     }
 
+    public static Either<JobConfigurationException, Integer> parsePositiveInteger(
+                                                                                  String inputParam,
+                                                                                  int defaultValue
+    ) {
+        if (inputParam == null || inputParam.isBlank()) {
+            return Either.right(defaultValue);
+        }
+        try {
+            int value = Integer.parseInt(inputParam.trim());
+            if (value <= 0) {
+                return Either.left(
+                        new JobConfigurationException("Invalid positive integer parameter: %s".formatted(inputParam))
+                );
+            }
+            return Either.right(value);
+        } catch (NumberFormatException ignored) {
+            return Either.left(
+                    new JobConfigurationException("Invalid positive integer parameter: %s".formatted(inputParam))
+            );
+        }
+    }
+
 }
@@ -0,0 +1,182 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Reads the results of a paged query ahead of their consumer.
+ * <p>
+ * Paged iterables fetch the next page only when the current one has been
+ * consumed, so the network round trip of each page and the processing of the
+ * previous one never overlap. A prefetcher moves the iteration onto a producer
+ * thread, which hands the entities over in chunks of one page through a queue
+ * of at most {@code prefetchDepth} chunks: the producer keeps fetching while
+ * the consumer folds the previous pages, and blocks once it is
+ * {@code prefetchDepth} pages ahead, so memory stays bounded whatever the size
+ * of the result.
+ */
+public class PagePrefetcher {
+
+    private static final Object END = new Object();
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final int chunkSize;
+    private final int prefetchDepth;
+    private final Executor executor;
+
+    /**
+     * @param chunkSize     the number of entities handed over at a time, usually
+     *                      the page size of the query
+     * @param prefetchDepth the maximum number of chunks read ahead
+     * @param executor      the executor running the producers
+     */
+    public PagePrefetcher(
+            int chunkSize,
+            int prefetchDepth,
+            Executor executor
+    ) {
+        this.chunkSize = chunkSize;
+        this.prefetchDepth = prefetchDepth;
+        this.executor = executor;
+    }
+
+    /**
+     * Iterates the source on a producer thread and passes its elements to the
+     * consumer, in order, one chunk at a time. Failures of the source are
+     * rethrown to the caller; when the consumer fails the producer is stopped.
+     *
+     * @param source   the paged source
+     * @param consumer the consumer of each chunk
+     * @param <T>      the type of the elements
+     */
+    public <T> void forEachChunk(
+                                 Iterable<T> source,
+                                 Consumer<List<T>> consumer
+    ) {
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(prefetchDepth);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        executor.execute(() -> produce(source, queue, cancelled));
+        try {
+            while (true) {
+                Object item = take(queue);
+                if (item == END) {
+                    return;
+                }
+                if (item instanceof Failure failure) {
+                    throw failure.rethrow();
+                }
+                @SuppressWarnings("unchecked")
+                List<T> chunk = (List<T>) item;
+                consumer.accept(chunk);
+            }
+        } finally {
+            cancelled.set(true);
+            queue.clear();
+        }
+    }
+
+    private <T> void produce(
+                             Iterable<T> source,
+                             BlockingQueue<Object> queue,
+                             AtomicBoolean cancelled
+    ) {
+        try {
+            Iterator<T> iterator = source.iterator();
+            List<T> chunk = new ArrayList<>(chunkSize);
+            while (!cancelled.get() && iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == chunkSize) {
+                    put(queue, chunk, cancelled);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                put(queue, chunk, cancelled);
+            }
+            put(queue, END, cancelled);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            try {
+                put(queue, new Failure(e), cancelled);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hands an item over to the consumer, waiting for room in the queue until
+     * the consumer gives up.
+     */
+    private static void put(
+                            BlockingQueue<Object> queue,
+                            Object item,
+                            AtomicBoolean cancelled
+    ) throws InterruptedException {
+        while (!cancelled.get()) {
+            if (queue.offer(item, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for the next item. The wait is signalled to the fork-join pool, if
+     * any, so that it can compensate for the blocked worker.
+     */
+    private static Object take(BlockingQueue<Object> queue) {
+        QueueBlocker blocker = new QueueBlocker(queue);
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the next page", e);
+        }
+        return blocker.item;
+    }
+
+    private static class QueueBlocker implements ForkJoinPool.ManagedBlocker {
+
+        private final BlockingQueue<Object> queue;
+        private Object item;
+
+        QueueBlocker(BlockingQueue<Object> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (item == null) {
+                item = queue.take();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            if (item == null) {
+                item = queue.poll();
+            }
+            return item != null;
+        }
+    }
+
+    private record Failure(Throwable cause) {
+
+        RuntimeException rethrow() {
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            return (RuntimeException) cause;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.*;
+
+/**
+ * In-memory view of the counts of a report period by client and
+ * paymentTypeCode, loaded once per run and shared by the report of every
+ * client.
+ * <p>
+ * The period is loaded from the groups of
+ * {@code TransactionStatusAggregationService#aggregateStatusCountByClientAndPaymentType}
+ * or from the snapshot of a previous report: groups of the same client and
+ * paymentTypeCode, e.g. of different days, are merged once when the dataset is
+ * created, so the report of each client reads its groups without aggregating
+ * the period again.
+ */
+public class ReportDataset {
+
+    private final int size;
+    private final List<AggregatedStatusGroup> groups;
+    private final Map<String, List<AggregatedStatusGroup>> groupsByClient;
+
+    private ReportDataset(
+            int size,
+            List<AggregatedStatusGroup> groups
+    ) {
+        this.size = size;
+        this.groups = List.copyOf(groups);
+        Map<String, List<AggregatedStatusGroup>> byClient = new LinkedHashMap<>();
+        for (AggregatedStatusGroup group : this.groups) {
+            byClient.computeIfAbsent(group.getClientId(), clientId -> new ArrayList<>()).add(group);
+        }
+        byClient.replaceAll((clientId, clientGroups) -> List.copyOf(clientGroups));
+        this.groupsByClient = byClient;
+    }
+
+    /**
+     * Loads pre-aggregated groups, merging the ones of the same client and
+     * paymentTypeCode. Groups without any count are left out.
+     *
+     * @param groups the groups to load
+     * @return the dataset of the groups
+     */
+    public static ReportDataset fromGroups(List<AggregatedStatusGroup> groups) {
+        Map<List<String>, AggregatedStatusGroup> merged = new LinkedHashMap<>();
+        for (AggregatedStatusGroup group : groups) {
+            merged.computeIfAbsent(
+                    Arrays.asList(group.getClientId(), group.getPaymentTypeCode()),
+                    key -> new AggregatedStatusGroup(null, key.get(0), null, key.get(1))
+            ).merge(group);
+        }
+        return new ReportDataset(
+                groups.size(),
+                merged.values().stream().filter(group -> !group.isEmpty()).toList()
+        );
+    }
+
+    /**
+     * @return the number of loaded groups
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the distinct clients of the dataset
+     */
+    public List<String> getClients() {
+        return groupsByClient.keySet().stream().filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * @return the groups by client and paymentTypeCode, in order of first
+     *         appearance
+     */
+    public List<AggregatedStatusGroup> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Returns the groups of a client, by paymentTypeCode.
+     *
+     * @param clientId the client
+     * @return the groups of the client
+     */
+    public List<AggregatedStatusGroup> groupsOfClient(String clientId) {
+        return groupsByClient.getOrDefault(clientId, List.of());
+    }
+}
@@ -0,0 +1,39 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request pacer that spreads outgoing requests evenly over time so that no more
+ * than the configured number of requests per second is started.
+ * <p>
+ * Callers reserve a slot with {@link #reserve()} and get back the delay to wait
+ * before issuing their request, so the limiter can be used both to schedule
+ * tasks on a {@link java.util.concurrent.ScheduledExecutorService} and to pace
+ * requests without blocking any thread.
+ */
+public class RequestRateLimiter {
+
+    private final long intervalNanos;
+    private long nextFreeSlotNanos;
+
+    public RequestRateLimiter(int maxRequestsPerSecond) {
+        if (maxRequestsPerSecond <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerSecond must be positive");
+        }
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond;
+        this.nextFreeSlotNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves the next free request slot.
+     *
+     * @return the delay, in nanoseconds, to wait before the reserved request can
+     *         be started (0 if it can be started immediately)
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextFreeSlotNanos);
+        nextFreeSlotNanos = slot + intervalNanos;
+        return slot - now;
+    }
+}
@@ -0,0 +1,54 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.time.Duration;
+
+/**
+ * Outcome of a run made of several work items executed on the
+ * {@link WorkerPool}.
+ *
+ * @param runName   name of the run, used for logging
+ * @param submitted number of submitted work items
+ * @param done      number of work items completed successfully
+ * @param failed    number of work items that failed or reported a failure
+ * @param timedOut  number of work items cancelled because the run deadline
+ *                  elapsed
+ * @param elapsed   wall-clock time spent waiting for the run
+ */
+public record RunSummary(
+        String runName,
+        int submitted,
+        int done,
+        int failed,
+        int timedOut,
+        Duration elapsed
+) {
+
+    /**
+     * Returns a copy of this summary where the given number of completed work
+     * items is counted as failed, e.g. because their result could not be stored.
+     *
+     * @param failures the number of completed work items that failed afterwards
+     * @return the updated summary
+     */
+    public RunSummary withFailures(int failures) {
+        int moved = Math.min(Math.max(failures, 0), done);
+        return new RunSummary(runName, submitted, done - moved, failed + moved, timedOut, elapsed);
+    }
+
+    public boolean isSuccessful() {
+        return failed == 0 && timedOut == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "[%s] submitted: %d, done: %d, failed: %d, timed out: %d, elapsed: %d ms",
+                runName,
+                submitted,
+                done,
+                failed,
+                timedOut,
+                elapsed.toMillis()
+        );
+    }
+}
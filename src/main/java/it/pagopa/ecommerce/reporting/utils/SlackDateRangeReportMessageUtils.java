@@ -50,10 +50,90 @@ public class SlackDateRangeReportMessageUtils {
             };
         }
 
-        List<AggregatedStatusGroup> sortedGroups = sortAggregatedGroups(aggregatedGroups, clientId);
+        return createTableReport(sortAggregatedGroups(aggregatedGroups, clientId), logger, clientId);
+    }
+
+    /**
+     * Creates an aggregated weekly report message for Slack from the dataset of
+     * the report period, grouped by client and payment type.
+     *
+     * @param dataset   Dataset of the report period
+     * @param startDate Report start date
+     * @param endDate   Report end date
+     * @param logger    Logger instance
+     * @param clientId  Client ID
+     * @return Array of formatted Slack messages in JSON format
+     * @throws JsonProcessingException If JSON conversion fails
+     */
+    public static String[] createAggregatedTableWeeklyReport(
+                                                             ReportDataset dataset,
+                                                             LocalDate startDate,
+                                                             LocalDate endDate,
+                                                             Logger logger,
+                                                             String clientId
+    ) throws JsonProcessingException {
+        return createAggregatedTableWeeklyReport(dataset, null, startDate, endDate, logger, clientId);
+    }
+
+    /**
+     * Creates an aggregated weekly report message for Slack from the dataset of
+     * the report period, with the change of the OK, KO and abandoned percentages
+     * of each payment type against the previous period.
+     *
+     * @param dataset   Dataset of the report period
+     * @param previous  Dataset of the previous period, or null if not available
+     * @param startDate Report start date
+     * @param endDate   Report end date
+     * @param logger    Logger instance
+     * @param clientId  Client ID
+     * @return Array of formatted Slack messages in JSON format
+     * @throws JsonProcessingException If JSON conversion fails
+     */
+    public static String[] createAggregatedTableWeeklyReport(
+                                                             ReportDataset dataset,
+                                                             ReportDataset previous,
+                                                             LocalDate startDate,
+                                                             LocalDate endDate,
+                                                             Logger logger,
+                                                             String clientId
+    ) throws JsonProcessingException {
+
+        if (dataset == null || dataset.size() == 0) {
+            logger.info("No aggregated groups to report");
+            return new String[] {
+                    createEmptyReportMessage(startDate, endDate)
+            };
+        }
 
+        Map<String, AggregatedStatusGroup> previousGroups = new HashMap<>();
+        if (previous != null) {
+            previous.groupsOfClient(clientId)
+                    .forEach(group -> previousGroups.put(group.getPaymentTypeCode(), group));
+        }
+        return createTableReport(
+                sortAggregatedGroups(dataset.groupsOfClient(clientId), clientId),
+                previousGroups,
+                logger,
+                clientId
+        );
+    }
+
+    private static String[] createTableReport(
+                                              List<AggregatedStatusGroup> sortedGroups,
+                                              Logger logger,
+                                              String clientId
+    ) throws JsonProcessingException {
+        return createTableReport(sortedGroups, Map.of(), logger, clientId);
+    }
+
+    private static String[] createTableReport(
+                                              List<AggregatedStatusGroup> sortedGroups,
+                                              Map<String, AggregatedStatusGroup> previousGroups,
+                                              Logger logger,
+                                              String clientId
+    ) throws JsonProcessingException {
         // Build table blocks
-        List<Map<String, Object>> tableBlocks = createTableBlocks(sortedGroups);
+        List<Map<String, Object>> tableBlocks = createTableBlocks(sortedGroups, previousGroups);
 
         // Split blocks into multiple messages if needed
         List<String> messages = new ArrayList<>();
@@ -279,6 +359,21 @@ public class SlackDateRangeReportMessageUtils {
      * @return List of table block maps
      */
     static List<Map<String, Object>> createTableBlocks(List<AggregatedStatusGroup> groups) {
+        return createTableBlocks(groups, Map.of());
+    }
+
+    /**
+     * Creates table blocks with header and data rows, comparing each row with the
+     * group of the same payment type in the previous period.
+     *
+     * @param groups         List of aggregated status groups
+     * @param previousGroups Groups of the previous period, by payment type code
+     * @return List of table block maps
+     */
+    static List<Map<String, Object>> createTableBlocks(
+                                                       List<AggregatedStatusGroup> groups,
+                                                       Map<String, AggregatedStatusGroup> previousGroups
+    ) {
         List<Map<String, Object>> blocks = new ArrayList<>();
 
         List<List<Map<String, Object>>> rows = new ArrayList<>();
@@ -286,7 +381,7 @@ public class SlackDateRangeReportMessageUtils {
         rows.add(createHeaderRow());
 
         for (AggregatedStatusGroup group : groups) {
-            rows.add(createDataRow(group));
+            rows.add(createDataRow(group, previousGroups.get(group.getPaymentTypeCode())));
         }
 
         // Table block
@@ -322,17 +417,32 @@ public class SlackDateRangeReportMessageUtils {
      * @return List of data cell maps
      */
     private static List<Map<String, Object>> createDataRow(AggregatedStatusGroup group) {
+        return createDataRow(group, null);
+    }
+
+    /**
+     * Creates table data row with status percentages and counts, followed for
+     * OK, KO and abandoned by their change against the previous period.
+     *
+     * @param group    Aggregated status group
+     * @param previous Group of the previous period, or null if not available
+     * @return List of data cell maps
+     */
+    private static List<Map<String, Object>> createDataRow(
+                                                           AggregatedStatusGroup group,
+                                                           AggregatedStatusGroup previous
+    ) {
         List<Map<String, Object>> cells = new ArrayList<>();
 
         String paymentMethod = group.getPaymentTypeCode();
-        int total = group.getStatusCounts().values().stream().mapToInt(Integer::intValue).sum();
+        long total = group.getTotal();
 
-        Integer inProgressCount = group.getStatusCounts().get("IN CORSO");
-        Integer toAnalyzeCount = group.getStatusCounts().get("DA ANALIZZARE");
+        long inProgressCount = group.getCategoryCount(StatusCategory.IN_PROGRESS);
+        long toAnalyzeCount = group.getCategoryCount(StatusCategory.TO_BE_ANALYZED);
 
-        String ok = formatPercentCount(group.getStatusCounts().get("OK"), total);
-        String ko = formatPercentCount(group.getStatusCounts().get("KO"), total);
-        String abandoned = formatPercentCount(group.getStatusCounts().get("ABBANDONATO"), total);
+        String ok = formatPercentCount(group, previous, StatusCategory.OK);
+        String ko = formatPercentCount(group, previous, StatusCategory.KO);
+        String abandoned = formatPercentCount(group, previous, StatusCategory.ABANDONED);
         String inProgress = formatPercentCount(inProgressCount, total);
         String toAnalyze = formatPercentCount(toAnalyzeCount, total);
 
@@ -340,8 +450,8 @@ public class SlackDateRangeReportMessageUtils {
         cells.add(createTextCell(ok));
         cells.add(createTextCell(ko));
         cells.add(createTextCell(abandoned));
-        cells.add(createStyledCell(inProgress, (inProgressCount != null && inProgressCount > 0) ? "warning" : ""));
-        cells.add(createStyledCell(toAnalyze, (toAnalyzeCount != null && toAnalyzeCount > 0) ? "warning" : ""));
+        cells.add(createStyledCell(inProgress, inProgressCount > 0 ? "warning" : ""));
+        cells.add(createStyledCell(toAnalyze, toAnalyzeCount > 0 ? "warning" : ""));
 
         return cells;
     }
@@ -439,18 +549,41 @@ public class SlackDateRangeReportMessageUtils {
         return createRichTextCell(elements);
     }
 
+    /**
+     * Formats the percentage and count of a category, followed by the change of
+     * the percentage in percentage points against the previous period.
+     *
+     * @param group    Aggregated status group
+     * @param previous Group of the previous period, or null if not available
+     * @param category Status category
+     * @return Formatted string like "12,345% (123) +1,500 pp"
+     */
+    private static String formatPercentCount(
+                                             AggregatedStatusGroup group,
+                                             AggregatedStatusGroup previous,
+                                             StatusCategory category
+    ) {
+        String percentCount = formatPercentCount(group.getCategoryCount(category), group.getTotal());
+        if (previous == null || previous.getTotal() == 0 || group.getTotal() == 0) {
+            return percentCount;
+        }
+        double delta = (group.getCategoryCount(category) * 100.0) / group.getTotal()
+                - (previous.getCategoryCount(category) * 100.0) / previous.getTotal();
+        return percentCount + String.format(Locale.ITALIAN, " %+.3f pp", delta);
+    }
+
     /**
      * Formats percentage and count with Italian locale (3 decimal places).
      *
      * @param count Status count
      * @param total Total count
-     * @return Formatted string like "12,345% (123)" or "0,000% (0)" if null/zero
+     * @return Formatted string like "12,345% (123)" or "0,000% (0)" if zero
      */
     private static String formatPercentCount(
-                                             Integer count,
-                                             int total
+                                             long count,
+                                             long total
     ) {
-        if (count == null || total == 0)
+        if (count == 0 || total == 0)
             return "0,000% (0)";
         double percent = (count * 100.0) / total;
         return String.format(Locale.ITALIAN, "%.3f%% (%d)", percent, count);
@@ -0,0 +1,157 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.azure.data.tables.models.ListEntitiesOptions;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the queries used to read the stored state metrics over a date range.
+ * <p>
+ * Metrics are partitioned by date, so a date range is read with a
+ * {@code PartitionKey ge/le} range filter instead of one query per day. The
+ * range can be split into contiguous sub-ranges to be read in parallel. Only
+ * the properties needed by the aggregation are selected, which keeps entities
+ * small enough to always request the largest page allowed by the service.
+ */
+public class StateMetricQueryBuilder {
+
+    /**
+     * Max number of entities returned by Table Storage in a single page.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    public static final List<String> PROJECTION;
+
+    static {
+        List<String> projection = new ArrayList<>();
+        projection.add("clientId");
+        projection.add("paymentTypeCode");
+        projection.addAll(StatusStorageFields.values);
+        PROJECTION = Collections.unmodifiableList(projection);
+    }
+
+    /**
+     * The properties to select to read whole hourly rows, e.g. to export them.
+     */
+    public static final List<String> ROW_PROJECTION;
+
+    static {
+        List<String> projection = new ArrayList<>(
+                List.of("PartitionKey", "RowKey", "clientId", "paymentTypeCode", "pspId")
+        );
+        projection.addAll(StatusStorageFields.values);
+        ROW_PROJECTION = Collections.unmodifiableList(projection);
+    }
+
+    private static final DateTimeFormatter PARTITION_KEY_FORMATTER = DateTimeFormatter.ISO_DATE;
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private int subRanges = 1;
+    private int pageSize = MAX_PAGE_SIZE;
+    private List<String> select = PROJECTION;
+    private StorageLayout layout = StorageLayout.NARROW;
+
+    private StateMetricQueryBuilder(
+            LocalDate startDate,
+            LocalDate endDate
+    ) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * @param startDate the inclusive start date
+     * @param endDate   the inclusive end date
+     * @return a builder reading the given date range
+     */
+    public static StateMetricQueryBuilder forDateRange(
+                                                       LocalDate startDate,
+                                                       LocalDate endDate
+    ) {
+        return new StateMetricQueryBuilder(startDate, endDate);
+    }
+
+    /**
+     * Sets the number of contiguous sub-ranges the date range is split into. The
+     * number of queries never exceeds the number of days in the range.
+     */
+    public StateMetricQueryBuilder subRanges(int subRanges) {
+        this.subRanges = Math.max(1, subRanges);
+        return this;
+    }
+
+    /**
+     * Sets the page size, capped to {@link #MAX_PAGE_SIZE}.
+     */
+    public StateMetricQueryBuilder pageSize(int pageSize) {
+        this.pageSize = Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE);
+        return this;
+    }
+
+    /**
+     * Sets the selected properties, {@link #PROJECTION} by default.
+     */
+    public StateMetricQueryBuilder select(List<String> select) {
+        this.select = select;
+        return this;
+    }
+
+    /**
+     * Sets the layout of the rows, {@link StorageLayout#NARROW} by default: the
+     * properties it needs are added to the selected ones.
+     */
+    public StateMetricQueryBuilder layout(StorageLayout layout) {
+        this.layout = layout;
+        return this;
+    }
+
+    /**
+     * @return one query per sub-range, ordered by date, or none if the end date
+     *         is before the start date
+     */
+    public List<ListEntitiesOptions> build() {
+        if (endDate.isBefore(startDate)) {
+            return List.of();
+        }
+        long days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        int queries = (int) Math.min(subRanges, days);
+        List<ListEntitiesOptions> options = new ArrayList<>(queries);
+        List<String> projection = layout.projection(select);
+        LocalDate from = startDate;
+        for (int i = 0; i < queries; i++) {
+            // spread the remainder over the first sub-ranges
+            long length = days / queries + (i < days % queries ? 1 : 0);
+            LocalDate to = from.plusDays(length - 1);
+            options.add(
+                    new ListEntitiesOptions()
+                            .setFilter(partitionRangeFilter(from, to))
+                            .setSelect(projection)
+                            .setTop(pageSize)
+            );
+            from = to.plusDays(1);
+        }
+        return options;
+    }
+
+    /**
+     * @param from the inclusive first partition date
+     * @param to   the inclusive last partition date
+     * @return the filter matching every partition between the two dates
+     */
+    public static String partitionRangeFilter(
+                                              LocalDate from,
+                                              LocalDate to
+    ) {
+        return String.format(
+                "PartitionKey ge '%s' and PartitionKey le '%s'",
+                PARTITION_KEY_FORMATTER.format(from),
+                PARTITION_KEY_FORMATTER.format(to)
+        );
+    }
+}
@@ -0,0 +1,85 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Report categories the raw transaction statuses are grouped into, in the order
+ * of the report columns.
+ */
+public enum StatusCategory {
+    OK("OK"),
+    KO("KO"),
+    ABANDONED("ABBANDONATO"),
+    IN_PROGRESS("IN CORSO"),
+    TO_BE_ANALYZED("DA ANALIZZARE");
+
+    private static final Map<String, StatusCategory> STATUS_TO_CATEGORY = Map.ofEntries(
+            Map.entry("EXPIRED_NOT_AUTHORIZED", ABANDONED),
+            Map.entry("CANCELLATION_EXPIRED", ABANDONED),
+            Map.entry("CANCELED", ABANDONED),
+
+            Map.entry("CLOSURE_ERROR", TO_BE_ANALYZED),
+            Map.entry("EXPIRED", TO_BE_ANALYZED),
+            Map.entry("REFUND_ERROR", TO_BE_ANALYZED),
+
+            Map.entry("REFUNDED", KO),
+            Map.entry("UNAUTHORIZED", KO),
+
+            Map.entry("NOTIFIED_OK", OK),
+
+            Map.entry("ACTIVATED", IN_PROGRESS),
+            Map.entry("AUTHORIZATION_REQUESTED", IN_PROGRESS),
+            Map.entry("AUTHORIZATION_COMPLETED", IN_PROGRESS),
+            Map.entry("CLOSED", IN_PROGRESS),
+            Map.entry("REFUND_REQUESTED", IN_PROGRESS),
+            Map.entry("CANCELLATION_REQUESTED", IN_PROGRESS),
+            Map.entry("CLOSURE_REQUESTED", IN_PROGRESS)
+    );
+
+    // category ordinal of each status, indexed as StatusStorageFields.values
+    private static final int[] CATEGORY_ORDINALS = new int[StatusStorageFields.size()];
+
+    private static final StatusCategory[] VALUES = values();
+
+    static {
+        // statuses without a mapping are reported as in progress
+        Arrays.fill(CATEGORY_ORDINALS, IN_PROGRESS.ordinal());
+        STATUS_TO_CATEGORY.forEach((status, category) -> {
+            int index = StatusStorageFields.indexOf(status);
+            if (index >= 0) {
+                CATEGORY_ORDINALS[index] = category.ordinal();
+            }
+        });
+    }
+
+    private final String label;
+
+    StatusCategory(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @param statusIndex the index of a status in {@link StatusStorageFields#values}
+     * @return the ordinal of the category of the status
+     */
+    public static int ordinalOf(int statusIndex) {
+        return CATEGORY_ORDINALS[statusIndex];
+    }
+
+    /**
+     * @param statusIndex the index of a status in {@link StatusStorageFields#values}
+     * @return the category of the status
+     */
+    public static StatusCategory of(int statusIndex) {
+        return VALUES[CATEGORY_ORDINALS[statusIndex]];
+    }
+
+    public static int size() {
+        return VALUES.length;
+    }
+}
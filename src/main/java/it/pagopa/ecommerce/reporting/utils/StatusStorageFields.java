@@ -1,7 +1,9 @@
 package it.pagopa.ecommerce.reporting.utils;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class StatusStorageFields {
 
@@ -23,4 +25,27 @@ public class StatusStorageFields {
             "CLOSURE_REQUESTED",
             "CLOSURE_ERROR"
     );
+
+    private static final Map<String, Integer> INDEXES = new HashMap<>();
+
+    static {
+        for (int i = 0; i < values.size(); i++) {
+            INDEXES.put(values.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the position of a status in {@link #values}.
+     *
+     * @param status the status name
+     * @return the index of the status, or -1 if it is not a stored status
+     */
+    public static int indexOf(String status) {
+        Integer index = status != null ? INDEXES.get(status) : null;
+        return index != null ? index : -1;
+    }
+
+    public static int size() {
+        return values.size();
+    }
 }
@@ -0,0 +1,104 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * Fixed-size vector of transaction status counts, indexed by the position of
+ * each status in {@link StatusStorageFields#values}.
+ * <p>
+ * Counts are kept in a primitive array together with a bitmask of the statuses
+ * actually set, so that a status reported as {@code 0} can be told apart from a
+ * status missing from the source.
+ */
+public class StatusVector {
+
+    private final long[] counts = new long[StatusStorageFields.size()];
+    private long presentMask;
+
+    /**
+     * Reads a status vector from a JSON object, consuming the parser token by
+     * token. Integer fields named after a status in {@link StatusStorageFields}
+     * are stored, every other field is skipped without being materialized.
+     *
+     * @param parser the parser, positioned before or on the object start token
+     * @return the parsed status vector
+     * @throws IOException if the content is not a valid JSON object
+     */
+    public static StatusVector readFrom(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found: " + token);
+        }
+        StatusVector statusVector = new StatusVector();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int index = StatusStorageFields.indexOf(parser.currentName());
+            JsonToken valueToken = parser.nextToken();
+            if (index >= 0 && valueToken == JsonToken.VALUE_NUMBER_INT
+                    && parser.getNumberType() == JsonParser.NumberType.INT) {
+                statusVector.set(index, parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return statusVector;
+    }
+
+    public void set(
+                    int index,
+                    long count
+    ) {
+        counts[index] = count;
+        presentMask |= 1L << index;
+    }
+
+    public long get(int index) {
+        return counts[index];
+    }
+
+    public boolean isPresent(int index) {
+        return (presentMask & (1L << index)) != 0;
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    /**
+     * @return true if no status has been set
+     */
+    public boolean isEmpty() {
+        return presentMask == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StatusVector that)) {
+            return false;
+        }
+        return presentMask == that.presentMask && Arrays.equals(counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(presentMask) + Arrays.hashCode(counts);
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ", "{", "}");
+        for (int i = 0; i < counts.length; i++) {
+            if (isPresent(i)) {
+                joiner.add(StatusStorageFields.values.get(i) + "=" + counts[i]);
+            }
+        }
+        return joiner.toString();
+    }
+}
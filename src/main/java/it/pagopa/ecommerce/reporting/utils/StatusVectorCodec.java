@@ -0,0 +1,186 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary codec of the status vectors of every (paymentTypeCode, psp)
+ * pair of a client in an hourly window, stored as a single property of a wide
+ * row.
+ * <p>
+ * Version {@value #VERSION_1} is laid out as:
+ * <ul>
+ * <li>the version byte;</li>
+ * <li>the dictionary header: the payment type codes, then the PSPs, each as a
+ * count followed by the length and the UTF-8 bytes of every value;</li>
+ * <li>the cells: their count, then for every cell the dictionary codes of its
+ * payment type code and PSP, the bitmask of its statuses and the count of each
+ * of them, in the order of {@link StatusStorageFields#values}.</li>
+ * </ul>
+ * Every number is an unsigned LEB128 varint, so most counts take a single byte.
+ * Status bits follow the indexes of {@link StatusStorageFields}: statuses can
+ * be appended, while any other change of the list needs a new version.
+ */
+public final class StatusVectorCodec {
+
+    public static final byte VERSION_1 = 1;
+
+    private StatusVectorCodec() {
+    }
+
+    /**
+     * The status vector of a (paymentTypeCode, psp) pair.
+     *
+     * @param paymentTypeCode the payment type code
+     * @param pspId           the PSP ID
+     * @param statusVector    the status counts
+     */
+    public record Cell(
+            String paymentTypeCode,
+            String pspId,
+            StatusVector statusVector
+    ) {
+    }
+
+    /**
+     * Encodes cells with the latest version.
+     *
+     * @param cells the cells to encode
+     * @return the packed cells
+     */
+    public static byte[] encode(List<Cell> cells) {
+        Map<String, Integer> paymentTypes = new LinkedHashMap<>();
+        Map<String, Integer> psps = new LinkedHashMap<>();
+        for (Cell cell : cells) {
+            paymentTypes.putIfAbsent(cell.paymentTypeCode(), paymentTypes.size());
+            psps.putIfAbsent(cell.pspId(), psps.size());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION_1);
+        writeDictionary(out, paymentTypes);
+        writeDictionary(out, psps);
+        writeVarint(out, cells.size());
+        for (Cell cell : cells) {
+            StatusVector statusVector = cell.statusVector();
+            long presentMask = 0;
+            for (int i = 0; i < statusVector.size(); i++) {
+                if (statusVector.isPresent(i)) {
+                    presentMask |= 1L << i;
+                }
+            }
+            writeVarint(out, paymentTypes.get(cell.paymentTypeCode()));
+            writeVarint(out, psps.get(cell.pspId()));
+            writeVarint(out, presentMask);
+            for (int i = 0; i < statusVector.size(); i++) {
+                if (statusVector.isPresent(i)) {
+                    writeVarint(out, statusVector.get(i));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes cells packed by any supported version.
+     *
+     * @param packed the packed cells
+     * @return the cells, in the order they were encoded
+     * @throws IllegalArgumentException if the version is not supported or the
+     *                                  content is malformed
+     */
+    public static List<Cell> decode(byte[] packed) {
+        ByteBuffer in = ByteBuffer.wrap(packed);
+        try {
+            byte version = in.get();
+            if (version != VERSION_1) {
+                throw new IllegalArgumentException("Unsupported status vector codec version: " + version);
+            }
+            List<String> paymentTypes = readDictionary(in);
+            List<String> psps = readDictionary(in);
+            int cellCount = readLength(in);
+            List<Cell> cells = new ArrayList<>(cellCount);
+            for (int c = 0; c < cellCount; c++) {
+                String paymentTypeCode = paymentTypes.get(readLength(in));
+                String pspId = psps.get(readLength(in));
+                long presentMask = readVarint(in);
+                if (presentMask >>> StatusStorageFields.size() != 0) {
+                    throw new IllegalArgumentException("Unknown statuses in mask: " + Long.toHexString(presentMask));
+                }
+                StatusVector statusVector = new StatusVector();
+                for (int i = 0; i < StatusStorageFields.size(); i++) {
+                    if ((presentMask & (1L << i)) != 0) {
+                        statusVector.set(i, readVarint(in));
+                    }
+                }
+                cells.add(new Cell(paymentTypeCode, pspId, statusVector));
+            }
+            return cells;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed status vectors", e);
+        }
+    }
+
+    private static void writeDictionary(
+                                        ByteArrayOutputStream out,
+                                        Map<String, Integer> dictionary
+    ) {
+        writeVarint(out, dictionary.size());
+        for (String value : dictionary.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static List<String> readDictionary(ByteBuffer in) {
+        int size = readLength(in);
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[readLength(in)];
+            in.get(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static void writeVarint(
+                                    ByteArrayOutputStream out,
+                                    long value
+    ) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Reads a count, length or dictionary code, none of which can exceed the
+     * size of the content, so a malformed header cannot allocate large arrays.
+     */
+    private static int readLength(ByteBuffer in) {
+        long length = readVarint(in);
+        if (length < 0 || length > in.capacity()) {
+            throw new IllegalArgumentException("Malformed length: " + length);
+        }
+        return (int) length;
+    }
+}
@@ -0,0 +1,53 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Layouts of the hourly metrics table, see {@link StateMetricEntity}.
+ * <p>
+ * The layout is set by {@code ECOMMERCE_REPORTING_STORAGE_LAYOUT}: rows are
+ * written with it, and read with the properties it needs. With the
+ * {@link #WIDE} layout the narrow rows stored before are still read, and are
+ * folded into the wide row of their window when it is written; switching back
+ * to {@link #NARROW} is not supported once wide rows are stored.
+ */
+public enum StorageLayout {
+
+    /**
+     * One row per (client, paymentTypeCode, psp, window).
+     */
+    NARROW,
+    /**
+     * One row per (client, window), with the packed vectors of every pair.
+     */
+    WIDE;
+
+    /**
+     * @return the layout set by {@code ECOMMERCE_REPORTING_STORAGE_LAYOUT},
+     *         {@link #NARROW} by default
+     */
+    public static StorageLayout fromEnvironment() {
+        String layout = System.getenv("ECOMMERCE_REPORTING_STORAGE_LAYOUT");
+        return layout == null || layout.isBlank() ? NARROW : valueOf(layout.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param select the properties read from the narrow rows
+     * @return the properties to select to read the rows of the layout
+     */
+    public List<String> projection(List<String> select) {
+        if (this == NARROW) {
+            return select;
+        }
+        Set<String> projection = new LinkedHashSet<>(select);
+        projection.add("PartitionKey");
+        projection.add("RowKey");
+        projection.add(StateMetricEntity.VECTORS);
+        return List.copyOf(projection);
+    }
+}
@@ -0,0 +1,213 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Shared, bounded executor used by all the functions of this application.
+ * <p>
+ * The pool is created once per worker process with
+ * {@code ECOMMERCE_WORKER_POOL_SIZE} daemon threads, so function invocations
+ * never leak executor threads. Invocations submit their work items and then
+ * wait for them with {@link #awaitAll(String, List, Duration)}, which cancels
+ * whatever is still pending once the run deadline
+ * ({@code ECOMMERCE_RUN_DEADLINE_SECONDS}) elapses.
+ */
+public class WorkerPool {
+
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final int DEFAULT_RUN_DEADLINE_SECONDS = 240;
+    private static final long PREFETCH_KEEP_ALIVE_SECONDS = 30;
+
+    private WorkerPool() {
+    }
+
+    private static class Holder {
+        private static final ScheduledExecutorService EXECUTOR = createExecutor(
+                MapParametersUtils
+                        .parsePositiveInteger(System.getenv("ECOMMERCE_WORKER_POOL_SIZE"), DEFAULT_POOL_SIZE)
+                        .fold(exception -> {
+                            throw exception;
+                        }, Function.identity())
+        );
+    }
+
+    private static class AggregationPoolHolder {
+        private static final ForkJoinPool POOL = createAggregationPool(
+                MapParametersUtils
+                        .parsePositiveInteger(
+                                System.getenv("ECOMMERCE_AGGREGATION_PARALLELISM"),
+                                Runtime.getRuntime().availableProcessors()
+                        )
+                        .fold(exception -> {
+                            throw exception;
+                        }, Function.identity())
+        );
+    }
+
+    private static class PrefetchExecutorHolder {
+        private static final ExecutorService EXECUTOR = createPrefetchExecutor();
+    }
+
+    /**
+     * Returns the fork-join pool used to aggregate stored metrics. Its
+     * parallelism is {@code ECOMMERCE_AGGREGATION_PARALLELISM}, by default the
+     * number of available processors.
+     *
+     * @return the shared aggregation pool
+     */
+    public static ForkJoinPool getAggregationPool() {
+        return AggregationPoolHolder.POOL;
+    }
+
+    /**
+     * Returns the executor running the producers of {@link PagePrefetcher}.
+     * Producers block while they wait for the next page or for room in their
+     * queue, so they do not run on the shared executor or on the aggregation
+     * pool: threads are created on demand, one per running query, and released
+     * when idle.
+     *
+     * @return the shared prefetch executor
+     */
+    public static ExecutorService getPrefetchExecutor() {
+        return PrefetchExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Returns the executor shared by all the function invocations.
+     *
+     * @return the shared executor
+     */
+    public static ScheduledExecutorService getExecutor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Returns the maximum time an invocation waits for its work items.
+     *
+     * @return the configured run deadline
+     */
+    public static Duration getRunDeadline() {
+        return Duration.ofSeconds(
+                MapParametersUtils
+                        .parsePositiveInteger(
+                                System.getenv("ECOMMERCE_RUN_DEADLINE_SECONDS"),
+                                DEFAULT_RUN_DEADLINE_SECONDS
+                        )
+                        .fold(exception -> {
+                            throw exception;
+                        }, Function.identity())
+        );
+    }
+
+    static ForkJoinPool createAggregationPool(int parallelism) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("reporting-aggregation-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, threadFactory, null, false);
+    }
+
+    static ExecutorService createPrefetchExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "reporting-prefetch-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                PREFETCH_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                threadFactory
+        );
+    }
+
+    static ScheduledExecutorService createExecutor(int poolSize) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "reporting-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(poolSize, threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Waits for the given work items until the deadline elapses, cancelling the
+     * ones that are still pending at that point.
+     * <p>
+     * A work item is considered failed when it completes exceptionally or returns
+     * {@link Boolean#FALSE}; any other outcome counts as done.
+     *
+     * @param runName   name of the run, used for logging
+     * @param workItems the submitted work items
+     * @param deadline  maximum time to wait for the whole run
+     * @return the summary of the run
+     */
+    public static RunSummary awaitAll(
+                                      String runName,
+                                      List<? extends Future<Boolean>> workItems,
+                                      Duration deadline
+    ) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + deadline.toNanos();
+        int done = 0;
+        int failed = 0;
+        int timedOut = 0;
+        for (int i = 0; i < workItems.size(); i++) {
+            Future<Boolean> workItem = workItems.get(i);
+            try {
+                long remainingNanos = Math.max(deadlineNanos - System.nanoTime(), 0);
+                Boolean result = workItem.get(remainingNanos, TimeUnit.NANOSECONDS);
+                if (Boolean.FALSE.equals(result)) {
+                    failed++;
+                } else {
+                    done++;
+                }
+            } catch (TimeoutException e) {
+                workItem.cancel(true);
+                timedOut++;
+            } catch (ExecutionException | CancellationException e) {
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < workItems.size(); j++) {
+                    workItems.get(j).cancel(true);
+                }
+                timedOut += workItems.size() - i;
+                break;
+            }
+        }
+        return new RunSummary(
+                runName,
+                workItems.size(),
+                done,
+                failed,
+                timedOut,
+                Duration.ofNanos(System.nanoTime() - startNanos)
+        );
+    }
+}
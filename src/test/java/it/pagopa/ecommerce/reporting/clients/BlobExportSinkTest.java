@@ -0,0 +1,100 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BlobExportSinkTest {
+
+    private static final String CONTAINER_URL = "http://127.0.0.1:10000/devstoreaccount1/reports";
+    private static final String SAS_TOKEN = "sv=2021-08-06&sig=signature";
+
+    @Mock
+    private CloseableHttpClient httpClientMock;
+
+    @Mock
+    private CloseableHttpResponse httpResponseMock;
+
+    @Mock
+    private StatusLine statusLineMock;
+
+    private BlobExportSink sink;
+
+    @BeforeEach
+    void setUp() {
+        sink = new BlobExportSink(CONTAINER_URL + "/?" + SAS_TOKEN, httpClientMock);
+    }
+
+    @Test
+    void shouldStageBlocksAndCommitBlockList() throws IOException {
+        mockResponses(201);
+        byte[] contents = new byte[BlobExportSink.BLOCK_SIZE + 10];
+
+        try (ExportSink.ExportFile file = sink.create("2025-09-15_2025-09-21/client payment.csv")) {
+            file.getOutputStream().write(contents);
+            file.commit();
+            assertEquals(CONTAINER_URL + "/2025-09-15_2025-09-21/client%20payment.csv", file.getLocation());
+        }
+
+        ArgumentCaptor<HttpPut> putCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock, times(3)).execute(putCaptor.capture());
+        List<HttpPut> puts = putCaptor.getAllValues();
+        String blobUrl = CONTAINER_URL + "/2025-09-15_2025-09-21/client%20payment.csv?" + SAS_TOKEN;
+        assertTrue(puts.get(0).getURI().toString().startsWith(blobUrl + "&comp=block&blockid="));
+        assertEquals(BlobExportSink.BLOCK_SIZE, puts.get(0).getEntity().getContentLength());
+        assertEquals(10, puts.get(1).getEntity().getContentLength());
+        assertEquals(blobUrl + "&comp=blocklist", puts.get(2).getURI().toString());
+        assertEquals("text/csv", puts.get(2).getFirstHeader("x-ms-blob-content-type").getValue());
+        String blockList = EntityUtils.toString(puts.get(2).getEntity(), StandardCharsets.UTF_8);
+        assertEquals(2, blockList.split("<Latest>").length - 1);
+    }
+
+    @Test
+    void shouldNotCommitBlockListWhenClosedWithoutCommit() throws IOException {
+        mockResponses(201);
+
+        try (ExportSink.ExportFile file = sink.create("partial.csv")) {
+            file.getOutputStream().write(new byte[BlobExportSink.BLOCK_SIZE + 1]);
+        }
+
+        ArgumentCaptor<HttpPut> putCaptor = ArgumentCaptor.forClass(HttpPut.class);
+        verify(httpClientMock).execute(putCaptor.capture());
+        assertTrue(putCaptor.getValue().getURI().toString().contains("comp=block&"));
+    }
+
+    @Test
+    void shouldFailWhenUploadIsRejected() throws IOException {
+        mockResponses(403);
+
+        try (ExportSink.ExportFile file = sink.create("rejected.csv")) {
+            file.getOutputStream().write(1);
+            IOException exception = assertThrows(IOException.class, file::commit);
+            assertTrue(exception.getMessage().contains("403"));
+        }
+    }
+
+    private void mockResponses(int statusCode) throws IOException {
+        when(httpClientMock.execute(any(HttpPut.class))).thenReturn(httpResponseMock);
+        when(httpResponseMock.getStatusLine()).thenReturn(statusLineMock);
+        when(statusLineMock.getStatusCode()).thenReturn(statusCode);
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("", StandardCharsets.UTF_8));
+    }
+}
@@ -1,12 +1,12 @@
 package it.pagopa.ecommerce.reporting.clients;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,8 +19,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,7 +50,10 @@ public class EcommerceHelpdeskServiceClientTest {
     @Mock
     private StatusLine statusLineMock;
 
-    private MockedStatic<HttpClients> mockStatic;
+    @Mock
+    private HttpTransport httpTransportMock;
+
+    private MockedStatic<HttpTransport> mockStatic;
 
     private static final String TEST_CLIENT_ID = "clientId";
     private static final String TEST_PSP_ID = "psp123";
@@ -55,13 +62,14 @@ public class EcommerceHelpdeskServiceClientTest {
     private static final String TEST_PSP_ALTERNATIVE = "testPsp";
     private static final String TEST_PAYMENT_TYPE_CARD = "CARD";
     private static final String EMPTY_STRING = "";
+    private static final String THROTTLED_BODY = "{\"statusCode\":429,\"message\":\"Rate limit is exceeded.\"}";
 
     EcommerceHelpdeskServiceClient ecommerceHelpdeskServiceClient;
 
     @BeforeEach
     void setUp() {
         resetSingleton();
-        reset(mockLogger, httpClientMock, httpResponseMock, statusLineMock);
+        reset(mockLogger, httpClientMock, httpResponseMock, statusLineMock, httpTransportMock);
     }
 
     @AfterEach
@@ -91,6 +99,14 @@ public class EcommerceHelpdeskServiceClientTest {
         }
     }
 
+    private void mockHttpTransport() {
+        mockStatic = mockStatic(HttpTransport.class);
+        when(HttpTransport.getInstance()).thenReturn(httpTransportMock);
+        lenient().when(httpTransportMock.getHttpClient()).thenReturn(httpClientMock);
+        lenient().when(httpResponseMock.getStatusLine()).thenReturn(statusLineMock);
+        lenient().when(statusLineMock.getStatusCode()).thenReturn(200);
+    }
+
     @Test
     public void instanceTest() {
         assertNotNull(EcommerceHelpdeskServiceClient.getInstance(mockLogger));
@@ -99,7 +115,7 @@ public class EcommerceHelpdeskServiceClientTest {
     @Test
     public void fetchTransactionMetricsTestNoClientHttp() {
         ecommerceHelpdeskServiceClient = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
-        JsonNode node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+        Optional<StatusVector> node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 "pspId",
                 "paymentTypeCode",
@@ -112,10 +128,9 @@ public class EcommerceHelpdeskServiceClientTest {
 
     @Test
     public void fetchTransactionMetricsTestNoValidData() {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         ecommerceHelpdeskServiceClient = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
-        JsonNode node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+        Optional<StatusVector> node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
                 null,
                 "pspId",
                 "paymentTypeCode",
@@ -128,16 +143,15 @@ public class EcommerceHelpdeskServiceClientTest {
 
     @Test
     public void testNodeFetch() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
 
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(
                 httpResponseMock
         );
-        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"field\":\"1\"}", StandardCharsets.UTF_8));
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"field\":\"1\",\"ACTIVATED\":1}", StandardCharsets.UTF_8));
 
         ecommerceHelpdeskServiceClient = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
-        JsonNode node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+        Optional<StatusVector> node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 "pspId",
                 "paymentTypeCode",
@@ -145,7 +159,8 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now().minusHours(1)
         );
         assertNotNull(node);
-        assertFalse(node.isEmpty());
+        assertTrue(node.isPresent());
+        assertEquals(1, node.get().get(StatusStorageFields.indexOf("ACTIVATED")));
     }
 
     @Test
@@ -155,7 +170,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testInvalidParametersReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 EMPTY_STRING,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -163,7 +178,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -172,17 +187,17 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testHttpPostLinesCovered() throws Exception {
-        // Mock static HttpClients
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        // Mock the shared http transport
+        mockHttpTransport();
 
         // Mock HTTP response
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
-        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"status\":\"ok\"}", StandardCharsets.UTF_8));
+        when(httpResponseMock.getEntity())
+                .thenReturn(new StringEntity("{\"status\":\"ok\",\"CLOSED\":7}", StandardCharsets.UTF_8));
 
         ecommerceHelpdeskServiceClient = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
+        Optional<StatusVector> node = ecommerceHelpdeskServiceClient.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 "pspId",
                 "paymentTypeCode",
@@ -192,7 +207,7 @@ public class EcommerceHelpdeskServiceClientTest {
 
         // Verify response
         assertNotNull(node);
-        assertEquals("ok", node.get("status").asText());
+        assertEquals(7, node.orElseThrow().get(StatusStorageFields.indexOf("CLOSED")));
 
         // Capture the HttpPost to verify URI and header
         ArgumentCaptor<HttpPost> httpPostCaptor = ArgumentCaptor.forClass(HttpPost.class);
@@ -210,7 +225,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testMissingApiKeyReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -218,7 +233,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -246,7 +261,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testEmptyPspIdReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 EMPTY_STRING,
                 TEST_PAYMENT_TYPE,
@@ -254,7 +269,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -265,7 +280,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testEmptyPaymentTypeCodeReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 EMPTY_STRING,
@@ -273,7 +288,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -284,7 +299,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testNullStartDateReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -292,7 +307,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -303,7 +318,7 @@ public class EcommerceHelpdeskServiceClientTest {
     void testNullEndDateReturnEmptyJson() {
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -311,7 +326,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 null
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
 
@@ -320,13 +335,12 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testHttpExecutionExceptionReturnsEmptyJson() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         when(httpClientMock.execute(any(HttpPost.class))).thenThrow(new IOException("Connection failed"));
 
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -334,7 +348,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger).log(eq(Level.SEVERE), eq("Failed to fetch transaction details"), any(IOException.class));
     }
 
@@ -343,14 +357,13 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testJsonParsingExceptionReturnsEmptyJson() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
         when(httpResponseMock.getEntity()).thenReturn(new StringEntity("invalid-json", StandardCharsets.UTF_8));
 
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -358,7 +371,7 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        assertEquals("{}", result.toString());
+        assertTrue(result.isEmpty());
         verify(mockLogger).log(eq(Level.SEVERE), eq("Failed to fetch transaction details"), any(Exception.class));
     }
 
@@ -367,14 +380,14 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testResponseStatusLineLogging() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
-        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"status\":\"ok\"}", StandardCharsets.UTF_8));
+        when(httpResponseMock.getEntity())
+                .thenReturn(new StringEntity("{\"status\":\"ok\",\"CLOSED\":7}", StandardCharsets.UTF_8));
 
         EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ID,
                 TEST_PSP_ID,
                 TEST_PAYMENT_TYPE,
@@ -383,7 +396,7 @@ public class EcommerceHelpdeskServiceClientTest {
         );
 
         assertNotNull(result);
-        assertEquals("ok", result.get("status").asText());
+        assertEquals(7, result.orElseThrow().get(StatusStorageFields.indexOf("CLOSED")));
 
         verify(mockLogger, atLeastOnce()).warning(any(Supplier.class));
     }
@@ -401,8 +414,7 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testJsonPayloadFormatting() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
         when(httpResponseMock.getEntity())
                 .thenReturn(new StringEntity("{\"result\":\"success\"}", StandardCharsets.UTF_8));
@@ -412,7 +424,7 @@ public class EcommerceHelpdeskServiceClientTest {
         OffsetDateTime startDate = OffsetDateTime.parse("2023-01-01T00:00:00Z");
         OffsetDateTime endDate = OffsetDateTime.parse("2023-01-02T00:00:00Z");
 
-        JsonNode result = client.fetchTransactionMetrics(
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
                 TEST_CLIENT_ALTERNATIVE,
                 TEST_PSP_ALTERNATIVE,
                 TEST_PAYMENT_TYPE_CARD,
@@ -436,8 +448,7 @@ public class EcommerceHelpdeskServiceClientTest {
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
     @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
     void testHttpClientResourceCleanup() throws IOException {
-        mockStatic = mockStatic(HttpClients.class);
-        when(HttpClients.createDefault()).thenReturn(httpClientMock);
+        mockHttpTransport();
         when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
         when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"data\":\"test\"}", StandardCharsets.UTF_8));
 
@@ -451,7 +462,203 @@ public class EcommerceHelpdeskServiceClientTest {
                 OffsetDateTime.now()
         );
 
-        verify(httpClientMock).close();
+        // the pooled client is shared and must stay open, only the response is closed
+        verify(httpClientMock, never()).close();
+        verify(httpResponseMock).close();
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testAsyncInvalidParametersReturnEmptyJson() {
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        CompletableFuture<Optional<StatusVector>> result = client.fetchTransactionMetricsAsync(
+                EMPTY_STRING,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
+
+        assertTrue(result.isDone());
+        assertTrue(result.join().isEmpty());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testAsyncFetch() {
+        mockHttpTransport();
+        java.net.http.HttpClient asyncHttpClientMock = mock(java.net.http.HttpClient.class);
+        HttpResponse<byte[]> asyncResponseMock = mock(HttpResponse.class);
+        when(httpTransportMock.getAsyncHttpClient()).thenReturn(asyncHttpClientMock);
+        when(asyncResponseMock.statusCode()).thenReturn(200);
+        when(asyncResponseMock.body()).thenReturn("{\"status\":\"ok\",\"CLOSED\":7}".getBytes(StandardCharsets.UTF_8));
+        doReturn(CompletableFuture.completedFuture(asyncResponseMock)).when(asyncHttpClientMock)
+                .sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetricsAsync(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        ).join();
+
+        assertEquals(7, result.orElseThrow().get(StatusStorageFields.indexOf("CLOSED")));
+        ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(asyncHttpClientMock).sendAsync(requestCaptor.capture(), any(HttpResponse.BodyHandler.class));
+        HttpRequest capturedRequest = requestCaptor.getValue();
+        assertEquals("http://localhost:8080/transactions", capturedRequest.uri().toString());
+        assertEquals("test-key", capturedRequest.headers().firstValue("ocp-apim-subscription-key").orElse(null));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testAsyncFailureReturnsEmptyJson() {
+        mockHttpTransport();
+        java.net.http.HttpClient asyncHttpClientMock = mock(java.net.http.HttpClient.class);
+        when(httpTransportMock.getAsyncHttpClient()).thenReturn(asyncHttpClientMock);
+        doReturn(CompletableFuture.failedFuture(new IOException("Connection failed"))).when(asyncHttpClientMock)
+                .sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetricsAsync(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        ).join();
+
+        assertTrue(result.isEmpty());
+        verify(mockLogger).log(eq(Level.SEVERE), eq("Failed to fetch transaction details"), any(Throwable.class));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testThrottledResponseReturnsEmptyJson() throws IOException {
+        mockHttpTransport();
+        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
+        when(statusLineMock.getStatusCode()).thenReturn(429);
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity(THROTTLED_BODY, StandardCharsets.UTF_8));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
+
+        assertTrue(result.isEmpty());
         verify(httpResponseMock).close();
     }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testResponseWithoutStatusesReturnsEmptyJson() throws IOException {
+        mockHttpTransport();
+        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity(THROTTLED_BODY, StandardCharsets.UTF_8));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testAsyncThrottledResponseReturnsEmptyJson() {
+        mockHttpTransport();
+        java.net.http.HttpClient asyncHttpClientMock = mock(java.net.http.HttpClient.class);
+        HttpResponse<byte[]> asyncResponseMock = mock(HttpResponse.class);
+        when(httpTransportMock.getAsyncHttpClient()).thenReturn(asyncHttpClientMock);
+        when(asyncResponseMock.statusCode()).thenReturn(429);
+        when(asyncResponseMock.body()).thenReturn(THROTTLED_BODY.getBytes(StandardCharsets.UTF_8));
+        doReturn(CompletableFuture.completedFuture(asyncResponseMock)).when(asyncHttpClientMock)
+                .sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetricsAsync(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        ).join();
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    void testResponseBodyNotLoggedByDefault() throws IOException {
+        mockHttpTransport();
+        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"CLOSED\":7}", StandardCharsets.UTF_8));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        client.fetchTransactionMetrics(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
+
+        verify(mockLogger, never()).log(any(Level.class), any(Supplier.class));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_URI", value = "http://localhost:8080")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_ENDPOINT", value = "/transactions")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_API_KEY", value = "test-key")
+    @SetEnvironmentVariable(key = "HELPDESK_SERVICE_RESPONSE_LOG_SAMPLING_RATE", value = "1")
+    void testSampledResponseBodyIsLogged() throws IOException {
+        mockHttpTransport();
+        when(httpClientMock.execute(any(HttpPost.class))).thenReturn(httpResponseMock);
+        when(httpResponseMock.getEntity()).thenReturn(new StringEntity("{\"CLOSED\":7}", StandardCharsets.UTF_8));
+
+        EcommerceHelpdeskServiceClient client = EcommerceHelpdeskServiceClient.getInstance(mockLogger);
+
+        Optional<StatusVector> result = client.fetchTransactionMetrics(
+                TEST_CLIENT_ID,
+                TEST_PSP_ID,
+                TEST_PAYMENT_TYPE,
+                OffsetDateTime.now(),
+                OffsetDateTime.now()
+        );
+
+        assertEquals(7, result.orElseThrow().get(StatusStorageFields.indexOf("CLOSED")));
+        verify(mockLogger).log(eq(Level.INFO), any(Supplier.class));
+    }
 }
@@ -0,0 +1,45 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.pool.PoolStats;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpTransportTest {
+
+    @Test
+    void shouldShareTheSamePooledClient() {
+        HttpTransport first = HttpTransport.getInstance();
+        HttpTransport second = HttpTransport.getInstance();
+
+        assertSame(first, second);
+        assertSame(first.getHttpClient(), second.getHttpClient());
+    }
+
+    @Test
+    void shouldBuildRequestConfigWithCustomTimeouts() {
+        RequestConfig requestConfig = HttpTransport.getInstance().requestConfig(1000, 3000);
+
+        assertEquals(1000, requestConfig.getConnectTimeout());
+        assertEquals(3000, requestConfig.getSocketTimeout());
+        assertEquals(2000, requestConfig.getConnectionRequestTimeout());
+    }
+
+    @Test
+    void shouldUseDefaultTimeouts() {
+        RequestConfig requestConfig = HttpTransport.getInstance().getDefaultRequestConfig();
+
+        assertEquals(5000, requestConfig.getConnectTimeout());
+        assertEquals(10000, requestConfig.getSocketTimeout());
+    }
+
+    @Test
+    void shouldExposePoolStatistics() {
+        PoolStats stats = HttpTransport.getInstance().getPoolStats();
+
+        assertEquals(20, stats.getMax());
+        assertEquals(0, stats.getLeased());
+        assertTrue(HttpTransport.getInstance().describePoolStats().contains("max: 20"));
+    }
+}
@@ -0,0 +1,62 @@
+package it.pagopa.ecommerce.reporting.clients;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalDirectoryExportSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldMakeFileVisibleOnlyOnCommit() throws IOException {
+        LocalDirectoryExportSink sink = new LocalDirectoryExportSink(directory);
+        Path target = directory.resolve("2025-09-15_2025-09-21/hourly.csv");
+
+        try (ExportSink.ExportFile file = sink.create("2025-09-15_2025-09-21/hourly.csv")) {
+            file.getOutputStream().write("a,b\r\n".getBytes(StandardCharsets.UTF_8));
+            assertFalse(Files.exists(target));
+            file.commit();
+            assertEquals(target.toString(), file.getLocation());
+        }
+
+        assertEquals("a,b\r\n", Files.readString(target));
+        assertFalse(Files.exists(directory.resolve("2025-09-15_2025-09-21/hourly.csv.part")));
+    }
+
+    @Test
+    void shouldDiscardFileClosedWithoutCommit() throws IOException {
+        LocalDirectoryExportSink sink = new LocalDirectoryExportSink(directory);
+
+        try (ExportSink.ExportFile file = sink.create("partial.csv")) {
+            file.getOutputStream().write("a,b\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void shouldRejectFilesOutsideOfTheDirectory() {
+        LocalDirectoryExportSink sink = new LocalDirectoryExportSink(directory.resolve("exports"));
+
+        assertThrows(IOException.class, () -> sink.create("../escaped.csv"));
+    }
+
+    @Test
+    void shouldCreateSinkFromTarget() {
+        assertInstanceOf(LocalDirectoryExportSink.class, ExportSink.fromTarget(directory.toString()));
+        assertInstanceOf(
+                BlobExportSink.class,
+                ExportSink.fromTarget("http://127.0.0.1:10000/devstoreaccount1/reports?sv=2021-08-06&sig=x")
+        );
+    }
+}
@@ -68,7 +68,7 @@ class SlackWebhookClientTest {
         when(statusLineMock.getStatusCode()).thenReturn(200);
         when(httpResponseMock.getEntity()).thenReturn(new StringEntity("ok", StandardCharsets.UTF_8));
 
-        slackWebhookClient.postRawJsonToWebhook(validJson);
+        assertTrue(slackWebhookClient.postRawJsonToWebhook(validJson));
 
         ArgumentCaptor<HttpPost> httpPostCaptor = ArgumentCaptor.forClass(HttpPost.class);
         verify(httpClientMock).execute(httpPostCaptor.capture());
@@ -98,7 +98,7 @@ class SlackWebhookClientTest {
         );
         String validJson = "{\"text\":\"Test message\"}";
 
-        clientWithNullEndpoint.postRawJsonToWebhook(validJson);
+        assertFalse(clientWithNullEndpoint.postRawJsonToWebhook(validJson));
 
         // Verify that no HTTP client is created and an error is logged
         verify(httpClientFactoryMock, never()).createHttpClient();
@@ -125,7 +125,7 @@ class SlackWebhookClientTest {
 
     @Test
     void testPostRawJsonToWebhookWithInvalidJson() {
-        slackWebhookClient.postRawJsonToWebhook("Invalid JSON");
+        assertFalse(slackWebhookClient.postRawJsonToWebhook("Invalid JSON"));
 
         // Verify no HTTP client is created and error is logged
         verify(httpClientFactoryMock, never()).createHttpClient();
@@ -161,10 +161,10 @@ class SlackWebhookClientTest {
                 new StringEntity("invalid_payload", StandardCharsets.UTF_8)
         );
 
-        slackWebhookClient.postRawJsonToWebhook(validJson);
+        assertFalse(slackWebhookClient.postRawJsonToWebhook(validJson));
 
         verify(httpClientMock).execute(any(HttpPost.class));
-        verify(loggerMock).info("Error response from Slack: invalid_payload, " + validJson);
+        verify(loggerMock).warning("Error response from Slack: invalid_payload, " + validJson);
     }
 
     @Test
@@ -174,7 +174,7 @@ class SlackWebhookClientTest {
         when(httpClientFactoryMock.createHttpClient()).thenReturn(httpClientMock);
         when(httpClientMock.execute(any(HttpPost.class))).thenThrow(exception);
 
-        slackWebhookClient.postRawJsonToWebhook(validJson);
+        assertFalse(slackWebhookClient.postRawJsonToWebhook(validJson));
 
         verify(httpClientMock).execute(any(HttpPost.class));
         verify(loggerMock).log(Level.SEVERE, "Error posting to Slack webhook", exception);
@@ -0,0 +1,47 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.azure.data.tables.models.TableEntity;
+import org.junit.jupiter.api.Test;
+
+class BackfillEntityTest {
+
+    @Test
+    void shouldCreatePendingBackfillFromStartOfRange() {
+        TableEntity entity = BackfillEntity.createEntity(
+                "b1",
+                LocalDate.of(2025, 7, 1),
+                LocalDate.of(2025, 9, 30),
+                "IO",
+                null,
+                "pspX"
+        );
+
+        assertEquals(BackfillEntity.PARTITION_KEY, entity.getPartitionKey());
+        assertEquals("b1", entity.getRowKey());
+        assertEquals(BackfillEntity.Status.PENDING, BackfillEntity.status(entity));
+        assertEquals(OffsetDateTime.of(2025, 7, 1, 0, 0, 0, 0, ZoneOffset.UTC), BackfillEntity.nextWindow(entity));
+        assertNull(entity.getProperty(BackfillEntity.PAYMENT_TYPE_CODE));
+        assertEquals("pspX", entity.getProperty(BackfillEntity.PSP_ID));
+        assertEquals(0, BackfillEntity.count(entity, BackfillEntity.COLLECTED_WINDOWS));
+        assertNull(BackfillEntity.leaseUntil(entity));
+    }
+
+    @Test
+    void shouldStoreCheckpointAndLeaseInUtc() {
+        TableEntity entity = BackfillEntity.createEntity("b1", LocalDate.now(), LocalDate.now(), "IO", null, null);
+        OffsetDateTime time = OffsetDateTime.of(2025, 9, 1, 12, 0, 0, 0, ZoneOffset.ofHours(2));
+
+        BackfillEntity.setNextWindow(entity, time);
+        BackfillEntity.setLeaseUntil(entity, time);
+
+        assertEquals("2025-09-01T10:00Z", entity.getProperty(BackfillEntity.NEXT_WINDOW));
+        assertTrue(time.isEqual(BackfillEntity.nextWindow(entity)));
+        assertTrue(time.isEqual(BackfillEntity.leaseUntil(entity)));
+    }
+}
@@ -0,0 +1,63 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.azure.data.tables.models.TableEntity;
+import org.junit.jupiter.api.Test;
+
+class CollectionCoverageEntityTest {
+
+    @Test
+    void shouldCreateCoverageRowOfClient() {
+        TableEntity entity = CollectionCoverageEntity
+                .createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b101);
+
+        assertEquals("IO", entity.getPartitionKey());
+        assertEquals("2025-09-02|CP|pspX", entity.getRowKey());
+        assertEquals(0b101, CollectionCoverageEntity.hours(entity));
+        assertEquals(LocalDate.of(2025, 9, 2), CollectionCoverageEntity.date(entity));
+        assertEquals("CP", CollectionCoverageEntity.paymentTypeCode(entity));
+        assertEquals("pspX", CollectionCoverageEntity.pspId(entity));
+    }
+
+    @Test
+    void shouldMapWindowsToUtcDayAndHour() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 2, 1, 0, 0, 0, ZoneOffset.ofHours(2));
+
+        assertEquals(LocalDate.of(2025, 9, 1), CollectionCoverageEntity.day(windowStart));
+        assertEquals(1 << 23, CollectionCoverageEntity.hourBit(windowStart));
+    }
+
+    @Test
+    void shouldFilterRowsOfDays() {
+        assertEquals(
+                "RowKey ge '2025-09-01' and RowKey lt '2025-09-03'",
+                CollectionCoverageEntity.rowKeyRangeFilter(LocalDate.of(2025, 9, 1), LocalDate.of(2025, 9, 2))
+        );
+        assertEquals(0, CollectionCoverageEntity.hours(new TableEntity("IO", "2025-09-01|CP|pspX")));
+    }
+
+    @Test
+    void shouldStoreSettlingOfUnsettledWindows() {
+        TableEntity entity = CollectionCoverageEntity
+                .createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b101);
+        CollectionCoverageEntity.Settling settling = new CollectionCoverageEntity.Settling(
+                -42L,
+                1,
+                OffsetDateTime.of(2025, 9, 2, 5, 0, 0, 0, ZoneOffset.UTC)
+        );
+
+        CollectionCoverageEntity.setSettling(entity, 2, settling);
+
+        assertEquals(0b100, CollectionCoverageEntity.unsettled(entity));
+        assertEquals(settling, CollectionCoverageEntity.settling(entity, 2));
+        assertNull(CollectionCoverageEntity.settling(entity, 0));
+
+        entity.addProperty(CollectionCoverageEntity.UNSETTLED, 0);
+        assertNull(CollectionCoverageEntity.settling(entity, 2));
+    }
+}
@@ -0,0 +1,72 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import org.junit.jupiter.api.Test;
+
+class DailyAggregateEntityTest {
+
+    @Test
+    void shouldStoreAndReadBackGroupCounts() {
+        LocalDate date = LocalDate.of(2025, 9, 1);
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "IO", "pspX", "CP");
+        group.incrementStatus("NOTIFIED_OK", 40);
+        group.incrementStatus("EXPIRED", 2);
+
+        TableEntity entity = DailyAggregateEntity.createEntity(date, group);
+
+        assertEquals("2025-09-01", entity.getPartitionKey());
+        assertEquals("v" + DailyAggregateEntity.SCHEMA_VERSION + "|IO|CP|pspX", entity.getRowKey());
+        assertEquals(40L, entity.getProperty("NOTIFIED_OK"));
+        assertFalse(entity.getProperties().containsKey("ACTIVATED"));
+        assertFalse(DailyAggregateEntity.isManifest(entity));
+
+        AggregatedStatusGroup readBack = DailyAggregateEntity.toGroup(entity);
+        assertEquals("2025-09-01", readBack.getDate());
+        assertEquals("IO", readBack.getClientId());
+        assertEquals("pspX", readBack.getPspId());
+        assertEquals("CP", readBack.getPaymentTypeCode());
+        assertEquals(40, readBack.getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        assertEquals(2, readBack.getCategoryCount(StatusCategory.TO_BE_ANALYZED));
+        assertEquals(42, readBack.getTotal());
+    }
+
+    @Test
+    void shouldCreateManifestWithWatermark() {
+        LocalDate date = LocalDate.of(2025, 9, 1);
+        OffsetDateTime watermark = OffsetDateTime.of(2025, 9, 2, 1, 30, 0, 0, ZoneOffset.ofHours(2));
+
+        TableEntity manifest = DailyAggregateEntity.createManifest(date, watermark, 3);
+
+        assertTrue(DailyAggregateEntity.isManifest(manifest));
+        assertEquals("2025-09-01", manifest.getPartitionKey());
+        assertEquals(3, manifest.getProperty(DailyAggregateEntity.GROUPS));
+        assertEquals("2025-09-01T23:30:00Z", manifest.getProperty(DailyAggregateEntity.WATERMARK));
+        assertTrue(watermark.isEqual(DailyAggregateEntity.watermark(manifest)));
+    }
+
+    @Test
+    void shouldCreateManifestOfEmptyDay() {
+        TableEntity manifest = DailyAggregateEntity.createManifest(LocalDate.of(2025, 9, 1), null, 0);
+
+        assertNull(DailyAggregateEntity.watermark(manifest));
+        assertEquals(0, manifest.getProperty(DailyAggregateEntity.GROUPS));
+    }
+
+    @Test
+    void shouldMatchOnlyRowsOfTheCurrentVersion() {
+        int version = DailyAggregateEntity.SCHEMA_VERSION;
+        assertEquals(
+                "RowKey ge 'v" + version + "|' and RowKey lt 'v" + version + "}'",
+                DailyAggregateEntity.rowKeyFilter()
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.azure.data.tables.models.TableEntity;
+import org.junit.jupiter.api.Test;
+
+class ReportJobEntityTest {
+
+    @Test
+    void shouldCreatePendingJob() {
+        TableEntity entity = ReportJobEntity.createEntity(
+                "job1",
+                LocalDate.of(2025, 7, 1),
+                LocalDate.of(2025, 9, 30),
+                "client,psp"
+        );
+
+        assertEquals(ReportJobEntity.PARTITION_KEY, entity.getPartitionKey());
+        assertEquals("job1", entity.getRowKey());
+        assertEquals(ReportJobEntity.Status.PENDING, ReportJobEntity.status(entity));
+        assertEquals("2025-07-01", entity.getProperty(ReportJobEntity.START_DATE));
+        assertEquals("client,psp", entity.getProperty(ReportJobEntity.GROUPING));
+        assertNull(ReportJobEntity.leaseUntil(entity));
+        assertNull(ReportJobEntity.state(entity));
+    }
+
+    @Test
+    void shouldSplitStateInChunks() {
+        TableEntity entity = ReportJobEntity.createEntity("job1", LocalDate.now(), LocalDate.now(), "client");
+        String state = "x".repeat(ReportJobEntity.STATE_CHUNK_LENGTH * 2 + 10);
+
+        ReportJobEntity.setState(entity, state);
+        assertEquals(3, entity.getProperty(ReportJobEntity.STATE_CHUNKS));
+        assertEquals(state, ReportJobEntity.state(entity));
+
+        ReportJobEntity.setState(entity, "[]");
+        assertEquals(1, entity.getProperty(ReportJobEntity.STATE_CHUNKS));
+        assertEquals("", entity.getProperty("state2"));
+        assertEquals("[]", ReportJobEntity.state(entity));
+    }
+
+    @Test
+    void shouldRejectStateLargerThanARow() {
+        TableEntity entity = ReportJobEntity.createEntity("job1", LocalDate.now(), LocalDate.now(), "client");
+        String state = "x".repeat(ReportJobEntity.STATE_CHUNK_LENGTH * ReportJobEntity.MAX_STATE_CHUNKS + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> ReportJobEntity.setState(entity, state));
+    }
+
+    @Test
+    void shouldStoreLeaseInUtc() {
+        TableEntity entity = ReportJobEntity.createEntity("job1", LocalDate.now(), LocalDate.now(), "client");
+        OffsetDateTime leaseUntil = OffsetDateTime.of(2025, 9, 1, 12, 0, 0, 0, ZoneOffset.ofHours(2));
+
+        ReportJobEntity.setLeaseUntil(entity, leaseUntil);
+
+        assertEquals("2025-09-01T10:00Z", entity.getProperty(ReportJobEntity.LEASE_UNTIL));
+        assertTrue(leaseUntil.isEqual(ReportJobEntity.leaseUntil(entity)));
+    }
+}
@@ -0,0 +1,48 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import org.junit.jupiter.api.Test;
+
+class ReportSnapshotEntityTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 9, 15);
+    private static final LocalDate END = LocalDate.of(2025, 9, 21);
+
+    @Test
+    void shouldStoreAndReadBackGroupCounts() {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "IO", null, "CP");
+        group.incrementStatus("NOTIFIED_OK", 40);
+        group.incrementStatus("UNAUTHORIZED", 2);
+
+        TableEntity entity = ReportSnapshotEntity.createEntity(START, END, group);
+
+        assertEquals("2025-09-15_2025-09-21", entity.getPartitionKey());
+        assertEquals("v" + ReportSnapshotEntity.SCHEMA_VERSION + "|IO|CP", entity.getRowKey());
+        assertFalse(entity.getProperties().containsKey("ACTIVATED"));
+        assertFalse(ReportSnapshotEntity.isManifest(entity));
+
+        AggregatedStatusGroup readBack = ReportSnapshotEntity.toGroup(entity);
+        assertEquals("IO", readBack.getClientId());
+        assertEquals("CP", readBack.getPaymentTypeCode());
+        assertEquals(40, readBack.getCategoryCount(StatusCategory.OK));
+        assertEquals(2, readBack.getCategoryCount(StatusCategory.KO));
+    }
+
+    @Test
+    void shouldCreateManifestMatchedByTheFilter() {
+        TableEntity manifest = ReportSnapshotEntity.createManifest(START, END, 3);
+
+        assertTrue(ReportSnapshotEntity.isManifest(manifest));
+        assertEquals(3, manifest.getProperty(ReportSnapshotEntity.GROUPS));
+        assertEquals(
+                "PartitionKey eq '2025-09-15_2025-09-21' and RowKey ge 'v1|' and RowKey lt 'v1}'",
+                ReportSnapshotEntity.filter(START, END)
+        );
+    }
+}
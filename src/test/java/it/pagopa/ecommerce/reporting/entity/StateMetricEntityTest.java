@@ -2,11 +2,14 @@ package it.pagopa.ecommerce.reporting.entity;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
 import org.junit.jupiter.api.Test;
 
 public class StateMetricEntityTest {
@@ -14,33 +17,171 @@ public class StateMetricEntityTest {
     @Test
     void shouldCreateEntityWithAllProperties() {
 
-        LocalDate date = LocalDate.of(2025, 4, 22);
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 10, 0, 0, 0, ZoneOffset.UTC);
         String clientId = "client-xyz";
         String paymentTypeCode = "PTC001";
         String pspId = "psp-abc";
 
-        Map<String, Integer> statusCounts = new HashMap<>();
-        statusCounts.put("ACTIVATED", 10);
-        statusCounts.put("CLOSED", 5);
-        statusCounts.put("NOTIFIED_OK", 3);
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("ACTIVATED"), 10);
+        statusVector.set(StatusStorageFields.indexOf("CLOSED"), 5);
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
 
-        TableEntity entity = StateMetricEntity.createEntity(date, clientId, paymentTypeCode, pspId, statusCounts);
+        TableEntity entity = StateMetricEntity
+                .createEntity(windowStart, clientId, paymentTypeCode, pspId, statusVector);
 
         assertEquals("2025-04-22", entity.getPartitionKey());
-        assertNotNull(entity.getRowKey());
+        assertEquals("client-xyz|2025-04-22T10|PTC001|psp-abc", entity.getRowKey());
         assertEquals(clientId, entity.getProperty("clientId"));
         assertEquals(paymentTypeCode, entity.getProperty("paymentTypeCode"));
         assertEquals(pspId, entity.getProperty("pspId"));
+        assertEquals("2025-04-22T10:00:00Z", entity.getProperty(StateMetricEntity.WINDOW_START));
 
         assertTrue(entity.getProperties().containsKey("createdAt"));
         assertTrue(entity.getProperty("createdAt") instanceof String);
-        assertTrue(
-                ((String) entity.getProperty("createdAt")).startsWith("2025")
-                        || ((String) entity.getProperty("createdAt")).contains("T")
-        );
+        assertTrue(((String) entity.getProperty("createdAt")).contains("T"));
 
         assertEquals(10, entity.getProperty("ACTIVATED"));
         assertEquals(5, entity.getProperty("CLOSED"));
         assertEquals(3, entity.getProperty("NOTIFIED_OK"));
+        assertFalse(entity.getProperties().containsKey("EXPIRED"));
+    }
+
+    @Test
+    void shouldDeriveTheSameKeysForTheSameWindow() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 1, 0, 0, 0, ZoneOffset.ofHours(2));
+        OffsetDateTime sameInstantUtc = windowStart.withOffsetSameInstant(ZoneOffset.UTC);
+
+        TableEntity first = StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", new StatusVector());
+        TableEntity second = StateMetricEntity.createEntity(sameInstantUtc, "IO", "CP", "psp", new StatusVector());
+
+        assertEquals("2025-04-21", first.getPartitionKey());
+        assertEquals("IO|2025-04-21T23|CP|psp", first.getRowKey());
+        assertEquals(first.getPartitionKey(), second.getPartitionKey());
+        assertEquals(first.getRowKey(), second.getRowKey());
+        assertEquals(first.getRowKey(), StateMetricEntity.rowKey("IO", "CP", "psp", windowStart));
+    }
+
+    @Test
+    void shouldExtractTheWindowPrefixOfRowKeys() {
+        String prefix = StateMetricEntity.windowPrefix("IO|2025-04-21T23|CP|psp");
+
+        assertEquals("IO|2025-04-21T23|", prefix);
+        assertEquals("IO|2025-04-21T23}", StateMetricEntity.windowPrefixUpperBound(prefix));
+        assertTrue("IO|2025-04-21T23|CP|psp".compareTo(StateMetricEntity.windowPrefixUpperBound(prefix)) < 0);
+    }
+
+    @Test
+    void shouldHashTheStatusCounts() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("ACTIVATED"), 10);
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        StatusVector swapped = new StatusVector();
+        swapped.set(StatusStorageFields.indexOf("ACTIVATED"), 3);
+        swapped.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 10);
+
+        TableEntity first = StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", counts);
+        TableEntity second = StateMetricEntity.createEntity(windowStart.plusHours(1), "IO", "CP", "psp", counts);
+        TableEntity other = StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", swapped);
+
+        assertEquals(StateMetricEntity.statusHash(first), StateMetricEntity.statusHash(second));
+        assertNotEquals(StateMetricEntity.statusHash(first), StateMetricEntity.statusHash(other));
+    }
+
+    @Test
+    void shouldTellEmptyRows() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector zeros = new StatusVector();
+        zeros.set(StatusStorageFields.indexOf("ACTIVATED"), 0);
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 1);
+
+        assertTrue(StateMetricEntity.isEmpty(StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", zeros)));
+        assertFalse(
+                StateMetricEntity
+                        .isEmpty(StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", new StatusVector()))
+        );
+        assertFalse(StateMetricEntity.isEmpty(StateMetricEntity.createEntity(windowStart, "IO", "CP", "psp", counts)));
+    }
+
+    @Test
+    void shouldPackRowsIntoWideRowAndExpandThemBack() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 1, 0, 0, 0, ZoneOffset.ofHours(2));
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("ACTIVATED"), 10);
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        List<TableEntity> rows = List.of(
+                StateMetricEntity.createEntity(windowStart, "IO", "CP", "pspX", counts),
+                StateMetricEntity.createEntity(windowStart, "IO", "PPAL", "pspY", new StatusVector())
+        );
+
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "IO");
+        StateMetricEntity.setRows(wide, rows);
+        List<TableEntity> expanded = new ArrayList<>();
+        StateMetricEntity.forEachRow(wide, expanded::add);
+
+        assertTrue(StateMetricEntity.isWide(wide));
+        assertEquals("2025-04-21", wide.getPartitionKey());
+        assertEquals("IO|2025-04-21T23|", wide.getRowKey());
+        assertEquals(StateMetricEntity.windowPrefix(rows.get(0).getRowKey()), wide.getRowKey());
+        assertEquals(2, expanded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            TableEntity row = rows.get(i);
+            TableEntity decoded = expanded.get(i);
+            assertEquals(row.getPartitionKey(), decoded.getPartitionKey());
+            assertEquals(row.getRowKey(), decoded.getRowKey());
+            assertEquals(
+                    row.getProperty(StateMetricEntity.WINDOW_START),
+                    decoded.getProperty(StateMetricEntity.WINDOW_START)
+            );
+            assertEquals(StateMetricEntity.statusHash(row), StateMetricEntity.statusHash(decoded));
+        }
+        assertEquals(10, expanded.get(0).getProperty("ACTIVATED"));
+        assertEquals("pspY", expanded.get(1).getProperty("pspId"));
+    }
+
+    @Test
+    void shouldPassNarrowRowsAsTheyAre() {
+        TableEntity narrow = StateMetricEntity.createEntity(
+                OffsetDateTime.of(2025, 4, 22, 10, 0, 0, 0, ZoneOffset.UTC),
+                "IO",
+                "CP",
+                "psp",
+                new StatusVector()
+        );
+        List<TableEntity> rows = new ArrayList<>();
+
+        StateMetricEntity.forEachRow(narrow, rows::add);
+
+        assertFalse(StateMetricEntity.isWide(narrow));
+        assertEquals(1, rows.size());
+        assertSame(narrow, rows.get(0));
+    }
+
+    @Test
+    void shouldSkipNarrowRowsPackedInTheWideRowOfTheirWindow() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 4, 22, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        TableEntity folded = StateMetricEntity.createEntity(windowStart, "IO", "CP", "pspX", counts);
+        TableEntity notFolded = StateMetricEntity.createEntity(windowStart, "IO", "CP", "pspY", counts);
+        TableEntity nextWindow = StateMetricEntity.createEntity(windowStart.plusHours(1), "IO", "CP", "pspX", counts);
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "IO");
+        StateMetricEntity.setRows(wide, List.of(folded));
+        List<String> rows = new ArrayList<>();
+        StateMetricEntity.RowReader reader = new StateMetricEntity.RowReader(row -> rows.add(row.getRowKey()));
+
+        // in RowKey order, the wide row comes right before the narrow rows of its window
+        List.of(wide, folded, notFolded, nextWindow).forEach(reader);
+
+        assertEquals(List.of(folded.getRowKey(), notFolded.getRowKey(), nextWindow.getRowKey()), rows);
+
+        rows.clear();
+        StateMetricEntity.RowReader resumed = new StateMetricEntity.RowReader(row -> rows.add(row.getRowKey()));
+        resumed.skipRowsOf(wide);
+        List.of(folded, notFolded).forEach(resumed);
+
+        assertEquals(List.of(notFolded.getRowKey()), rows);
     }
 }
@@ -0,0 +1,59 @@
+package it.pagopa.ecommerce.reporting.entity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import org.junit.jupiter.api.Test;
+
+class WeeklyAggregateEntityTest {
+
+    @Test
+    void shouldKeyRowsByIsoWeek() {
+        // 2024-12-30 is the Monday of the first ISO week of 2025
+        assertEquals("2025-W01", WeeklyAggregateEntity.partitionKey(LocalDate.of(2024, 12, 30)));
+        assertEquals("2025-W36", WeeklyAggregateEntity.partitionKey(LocalDate.of(2025, 9, 7)));
+        // the first hour of Monday in Rome is still Sunday in UTC
+        assertEquals(
+                "2025-W36",
+                WeeklyAggregateEntity.partitionKey(OffsetDateTime.of(2025, 9, 8, 1, 0, 0, 0, ZoneOffset.ofHours(2)))
+        );
+    }
+
+    @Test
+    void shouldAddAndReadBackCounts() {
+        TableEntity entity = WeeklyAggregateEntity.createEntity("2025-W36", "IO", "CP");
+        AggregatedStatusGroup counts = new AggregatedStatusGroup(null, "IO", null, "CP");
+        counts.incrementStatus("NOTIFIED_OK", 10);
+        WeeklyAggregateEntity.addCounts(entity, counts);
+        AggregatedStatusGroup change = new AggregatedStatusGroup(null, "IO", null, "CP");
+        change.addStatus(StatusStorageFields.indexOf("NOTIFIED_OK"), -3);
+        change.incrementStatus("EXPIRED", 2);
+        WeeklyAggregateEntity.addCounts(entity, change);
+
+        assertEquals("IO|CP", entity.getRowKey());
+        assertEquals(7L, entity.getProperty("NOTIFIED_OK"));
+        assertFalse(entity.getProperties().containsKey("ACTIVATED"));
+
+        AggregatedStatusGroup readBack = WeeklyAggregateEntity.toGroup(entity);
+        assertEquals("IO", readBack.getClientId());
+        assertEquals("CP", readBack.getPaymentTypeCode());
+        assertEquals(9, readBack.getTotal());
+    }
+
+    @Test
+    void shouldStoreFirstWindowStartInUtc() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 2, 0, 0, 0, ZoneOffset.ofHours(2));
+
+        TableEntity marker = WeeklyAggregateEntity.createMarker("2025-W36", windowStart);
+
+        assertEquals(WeeklyAggregateEntity.MARKER_ROW_KEY, marker.getRowKey());
+        assertEquals("2025-09-01T00:00:00Z", marker.getProperty(WeeklyAggregateEntity.FIRST_WINDOW_START));
+        assertTrue(windowStart.isEqual(WeeklyAggregateEntity.firstWindowStart(marker)));
+    }
+}
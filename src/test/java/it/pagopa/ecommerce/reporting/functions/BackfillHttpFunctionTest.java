@@ -0,0 +1,138 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import it.pagopa.ecommerce.reporting.HttpResponseMessageMock;
+import it.pagopa.ecommerce.reporting.entity.BackfillEntity;
+import it.pagopa.ecommerce.reporting.services.BackfillService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BackfillHttpFunctionTest {
+
+    @Mock
+    private HttpRequestMessage<Optional<String>> request;
+
+    @Mock
+    private ExecutionContext context;
+
+    @Mock
+    private BackfillService backfillService;
+
+    /**
+     * Test class that extends the original class to allow for mocking
+     */
+    private static class TestableBackfillHttpFunction extends BackfillHttpFunction {
+        private final Optional<BackfillService> backfillService;
+
+        TestableBackfillHttpFunction(Optional<BackfillService> backfillService) {
+            this.backfillService = backfillService;
+        }
+
+        @Override
+        protected Optional<BackfillService> getBackfillService() {
+            return backfillService;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(request.createResponseBuilder(any(HttpStatus.class)))
+                .thenAnswer(invocation -> new HttpResponseMessageMock.HttpResponseMessageBuilderMock()
+                        .status((HttpStatus) invocation.getArgument(0)));
+    }
+
+    @Test
+    void shouldSubmitBackfill() throws Exception {
+        when(request.getQueryParameters()).thenReturn(
+                Map.of("startDate", "2025-07-01", "endDate", "2025-09-30", "clientId", "IO", "pspId", "pspX")
+        );
+        when(backfillService.submit(any(), any(), any(), any(), any())).thenReturn("b1");
+
+        HttpResponseMessage response = new TestableBackfillHttpFunction(Optional.of(backfillService))
+                .submit(request, context);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+        assertEquals("/backfills/b1", response.getHeader("Location"));
+        assertEquals("{\"backfillId\":\"b1\"}", response.getBody());
+        verify(backfillService).submit(LocalDate.of(2025, 7, 1), LocalDate.of(2025, 9, 30), "IO", null, "pspX");
+    }
+
+    @Test
+    void shouldRejectInvalidSubmission() throws Exception {
+        BackfillHttpFunction function = new TestableBackfillHttpFunction(Optional.of(backfillService));
+
+        when(request.getQueryParameters()).thenReturn(Map.of("startDate", "2025-07-01", "endDate", "2025-09-30"));
+        HttpResponseMessage response = function.submit(request, context);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.getBody().toString().contains("Missing clientId"));
+
+        when(request.getQueryParameters()).thenReturn(
+                Map.of("startDate", "2025-07-01", "endDate", "2025-09-30", "clientId", "IO", "pspId", "pspZ")
+        );
+        when(backfillService.submit(any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalArgumentException("No configured PSP matches"));
+        assertEquals(HttpStatus.BAD_REQUEST, function.submit(request, context).getStatus());
+    }
+
+    @Test
+    void shouldReturnBackfillProgress() throws Exception {
+        when(backfillService.get("b1")).thenReturn(
+                Optional.of(
+                        new BackfillService.Backfill(
+                                "b1",
+                                BackfillEntity.Status.RUNNING,
+                                "2025-07-01",
+                                "2025-09-30",
+                                "IO",
+                                null,
+                                "pspX",
+                                "2025-07-02T00:00Z",
+                                48,
+                                0,
+                                List.of(),
+                                null
+                        )
+                )
+        );
+
+        HttpResponseMessage response = new TestableBackfillHttpFunction(Optional.of(backfillService))
+                .status(request, "b1", context);
+
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertTrue(response.getBody().toString().contains("\"collectedWindows\":48"));
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownBackfill() throws Exception {
+        when(backfillService.get("missing")).thenReturn(Optional.empty());
+
+        HttpResponseMessage response = new TestableBackfillHttpFunction(Optional.of(backfillService))
+                .status(request, "missing", context);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+    }
+
+    @Test
+    void shouldFailWhenBackfillsAreNotConfigured() throws Exception {
+        BackfillHttpFunction function = new TestableBackfillHttpFunction(Optional.empty());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, function.submit(request, context).getStatus());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, function.status(request, "b1", context).getStatus());
+    }
+}
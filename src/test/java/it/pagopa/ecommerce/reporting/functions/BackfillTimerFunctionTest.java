@@ -0,0 +1,52 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.pagopa.ecommerce.reporting.services.BackfillService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BackfillTimerFunctionTest {
+
+    @Mock
+    ExecutionContext context;
+
+    @Mock
+    BackfillService backfillService;
+
+    private BackfillTimerFunction function(Optional<BackfillService> service) {
+        BackfillTimerFunction function = spy(new BackfillTimerFunction());
+        doReturn(service).when(function).getBackfillService();
+        lenient().doReturn(Duration.ofMinutes(8)).when(function).getRunDeadline();
+        when(context.getLogger()).thenReturn(Logger.getLogger("BackfillTimerFunctionTest"));
+        return function;
+    }
+
+    @Test
+    void shouldRunPendingBackfillsWithinRunDeadline() {
+        BackfillTimerFunction function = function(Optional.of(backfillService));
+        when(backfillService.runPending(Duration.ofMinutes(8))).thenReturn(1);
+
+        function.run("timerInfo", context);
+
+        verify(backfillService).runPending(Duration.ofMinutes(8));
+    }
+
+    @Test
+    void shouldSkipRunWithoutBackfillsTable() {
+        BackfillTimerFunction function = function(Optional.empty());
+
+        function.run("timerInfo", context);
+
+        verify(function, never()).getRunDeadline();
+        verifyNoInteractions(backfillService);
+    }
+}
@@ -0,0 +1,65 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.pagopa.ecommerce.reporting.services.DailyAggregateCacheService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DailyRollupTimerFunctionTest {
+
+    @Mock
+    ExecutionContext context;
+
+    @Mock
+    DailyAggregateCacheService dailyAggregateCache;
+
+    private DailyRollupTimerFunction function(Optional<DailyAggregateCacheService> cache) {
+        DailyRollupTimerFunction function = spy(new DailyRollupTimerFunction());
+        doReturn(cache).when(function).getDailyAggregateCacheService();
+        lenient().doReturn(LocalDate.of(2025, 9, 10)).when(function).getCurrentDate();
+        when(context.getLogger()).thenReturn(Logger.getLogger("DailyRollupTimerFunctionTest"));
+        return function;
+    }
+
+    @Test
+    void shouldCompactLastClosedDays() {
+        DailyRollupTimerFunction function = function(Optional.of(dailyAggregateCache));
+        when(dailyAggregateCache.compact(any(), any())).thenReturn(1);
+
+        function.run("timerInfo", context);
+
+        verify(dailyAggregateCache).compact(LocalDate.of(2025, 9, 7), LocalDate.of(2025, 9, 9));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_DAILY_ROLLUP_LOOKBACK_DAYS", value = "1")
+    void shouldCompactConfiguredNumberOfDays() {
+        DailyRollupTimerFunction function = function(Optional.of(dailyAggregateCache));
+        when(dailyAggregateCache.compact(any(), any())).thenReturn(0);
+
+        function.run("timerInfo", context);
+
+        verify(dailyAggregateCache).compact(LocalDate.of(2025, 9, 9), LocalDate.of(2025, 9, 9));
+    }
+
+    @Test
+    void shouldSkipRollupWithoutDailyAggregatesTable() {
+        DailyRollupTimerFunction function = function(Optional.empty());
+
+        function.run("timerInfo", context);
+
+        verify(function, never()).getCurrentDate();
+        verifyNoInteractions(dailyAggregateCache);
+    }
+}
@@ -0,0 +1,156 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import it.pagopa.ecommerce.reporting.HttpResponseMessageMock;
+import it.pagopa.ecommerce.reporting.clients.ExportSink;
+import it.pagopa.ecommerce.reporting.services.ReportExportService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportExportHttpFunctionTest {
+
+    private static final String TARGET = "/exports";
+
+    @Mock
+    private HttpRequestMessage<Optional<String>> request;
+
+    @Mock
+    private ExecutionContext context;
+
+    @Mock
+    private ReportExportService exportService;
+
+    @Mock
+    private ExportSink exportSink;
+
+    /**
+     * Test class that extends the original class to allow for mocking
+     */
+    private class TestableReportExportHttpFunction extends ReportExportHttpFunction {
+        private final String target;
+
+        TestableReportExportHttpFunction(String target) {
+            this.target = target;
+        }
+
+        @Override
+        protected String getEnvVariable(String name) {
+            return "ECOMMERCE_REPORTING_EXPORT_TARGET".equals(name) ? target : null;
+        }
+
+        @Override
+        protected ReportExportService createExportService() {
+            return exportService;
+        }
+
+        @Override
+        protected ExportSink createExportSink(String target) {
+            assertEquals(TARGET, target);
+            return exportSink;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(request.createResponseBuilder(any(HttpStatus.class)))
+                .thenAnswer(invocation -> new HttpResponseMessageMock.HttpResponseMessageBuilderMock()
+                        .status((HttpStatus) invocation.getArgument(0)));
+    }
+
+    @Test
+    void shouldExportRequestedGroupings() throws Exception {
+        when(request.getQueryParameters()).thenReturn(
+                Map.of(
+                        "startDate",
+                        "2025-09-15",
+                        "endDate",
+                        "2025-09-21",
+                        "groupings",
+                        "client,payment_type;psp",
+                        "hourly",
+                        "false"
+                )
+        );
+        when(exportService.export(any(), any(), any(), anyBoolean(), any(), any()))
+                .thenReturn(new ReportExportService.Result(0, List.of("/exports/2025-09-15_2025-09-21/psp.csv")));
+
+        HttpResponseMessage response = new TestableReportExportHttpFunction(TARGET).run(request, context);
+
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals("application/json", response.getHeader("Content-Type"));
+        assertTrue(response.getBody().toString().contains("\"files\":[\"/exports/2025-09-15_2025-09-21/psp.csv\"]"));
+        verify(exportService).export(
+                eq(LocalDate.of(2025, 9, 15)),
+                eq(LocalDate.of(2025, 9, 21)),
+                eq(List.of(Grouping.parse("client,payment_type"), Grouping.parse("psp"))),
+                eq(false),
+                eq(exportSink),
+                any()
+        );
+    }
+
+    @Test
+    void shouldRejectInvalidParameters() throws Exception {
+        ReportExportHttpFunction function = new TestableReportExportHttpFunction(TARGET);
+
+        when(request.getQueryParameters()).thenReturn(Map.of("startDate", "2025-09-15"));
+        assertEquals(HttpStatus.BAD_REQUEST, function.run(request, context).getStatus());
+
+        when(request.getQueryParameters())
+                .thenReturn(Map.of("startDate", "2025-09-21", "endDate", "2025-09-15"));
+        assertEquals(HttpStatus.BAD_REQUEST, function.run(request, context).getStatus());
+
+        when(request.getQueryParameters())
+                .thenReturn(Map.of("startDate", "2025-09-15", "endDate", "2025-09-21", "groupings", "merchant"));
+        HttpResponseMessage response = function.run(request, context);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.getBody().toString().contains("Invalid groupings"));
+
+        verifyNoInteractions(exportService);
+    }
+
+    @Test
+    void shouldDefaultToWeeklyReportGroupingAndHourlyRows() {
+        assertEquals(List.of(Grouping.CLIENT_PAYMENT_TYPE), ReportExportHttpFunction.parseGroupings(null));
+        assertEquals(List.of(Grouping.CLIENT_PAYMENT_TYPE), ReportExportHttpFunction.parseGroupings(" "));
+    }
+
+    @Test
+    void shouldFailWhenTargetIsNotConfigured() throws Exception {
+        HttpResponseMessage response = new TestableReportExportHttpFunction(null).run(request, context);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatus());
+        verifyNoInteractions(exportService);
+    }
+
+    @Test
+    void shouldReturnServerErrorWhenExportFails() throws Exception {
+        when(request.getQueryParameters()).thenReturn(Map.of("startDate", "2025-09-15", "endDate", "2025-09-21"));
+        when(exportService.export(any(), any(), any(), anyBoolean(), any(), any()))
+                .thenThrow(new IOException("disk full"));
+
+        HttpResponseMessage response = new TestableReportExportHttpFunction(TARGET).run(request, context);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatus());
+        assertTrue(response.getBody().toString().contains("disk full"));
+        verify(exportService).export(any(), any(), eq(List.of(Grouping.CLIENT_PAYMENT_TYPE)), eq(true), any(), any());
+    }
+}
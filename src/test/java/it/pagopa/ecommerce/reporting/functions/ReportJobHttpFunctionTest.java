@@ -0,0 +1,158 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import it.pagopa.ecommerce.reporting.HttpResponseMessageMock;
+import it.pagopa.ecommerce.reporting.entity.ReportJobEntity;
+import it.pagopa.ecommerce.reporting.exceptions.InvalidRequestException;
+import it.pagopa.ecommerce.reporting.services.ReportJobService;
+import it.pagopa.ecommerce.reporting.services.ReportQueryService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportJobHttpFunctionTest {
+
+    @Mock
+    private HttpRequestMessage<Optional<String>> request;
+
+    @Mock
+    private ExecutionContext context;
+
+    @Mock
+    private ReportJobService jobService;
+
+    /**
+     * Test class that extends the original class to allow for mocking
+     */
+    private static class TestableReportJobHttpFunction extends ReportJobHttpFunction {
+        private final Optional<ReportJobService> jobService;
+
+        TestableReportJobHttpFunction(Optional<ReportJobService> jobService) {
+            this.jobService = jobService;
+        }
+
+        @Override
+        protected Optional<ReportJobService> getJobService() {
+            return jobService;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(request.createResponseBuilder(any(HttpStatus.class)))
+                .thenAnswer(invocation -> new HttpResponseMessageMock.HttpResponseMessageBuilderMock()
+                        .status((HttpStatus) invocation.getArgument(0)));
+    }
+
+    @Test
+    void shouldSubmitJob() throws Exception {
+        when(request.getQueryParameters()).thenReturn(
+                Map.of("startDate", "2025-07-01", "endDate", "2025-09-30", "grouping", "client,hour_of_day")
+        );
+        when(jobService.submit(any(), any(), any())).thenReturn("job1");
+
+        HttpResponseMessage response = new TestableReportJobHttpFunction(Optional.of(jobService))
+                .submit(request, context);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+        assertEquals("/reports/jobs/job1", response.getHeader("Location"));
+        assertEquals("{\"jobId\":\"job1\"}", response.getBody());
+        verify(jobService).submit(
+                LocalDate.of(2025, 7, 1),
+                LocalDate.of(2025, 9, 30),
+                Grouping.parse("client,hour_of_day")
+        );
+    }
+
+    @Test
+    void shouldRejectInvalidSubmission() throws Exception {
+        ReportJobHttpFunction function = new TestableReportJobHttpFunction(Optional.of(jobService));
+
+        when(request.getQueryParameters())
+                .thenReturn(Map.of("startDate", "2025-09-30", "endDate", "2025-07-01"));
+        assertEquals(HttpStatus.BAD_REQUEST, function.submit(request, context).getStatus());
+
+        when(request.getQueryParameters())
+                .thenReturn(Map.of("startDate", "2025-07-01", "endDate", "2025-09-30", "grouping", "merchant"));
+        HttpResponseMessage response = function.submit(request, context);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.getBody().toString().contains("Invalid grouping"));
+
+        verifyNoInteractions(jobService);
+    }
+
+    @Test
+    void shouldReturnCompletedJob() throws Exception {
+        when(jobService.get("job1")).thenReturn(
+                Optional.of(
+                        new ReportJobService.Job(
+                                "job1",
+                                ReportJobEntity.Status.COMPLETED,
+                                "2025-07-01",
+                                "2025-09-30",
+                                List.of("client"),
+                                3,
+                                null,
+                                List.of(
+                                        new ReportQueryService.Row(
+                                                Map.of("client", "IO"),
+                                                5,
+                                                Map.of(StatusCategory.OK, 5L),
+                                                Map.of("NOTIFIED_OK", 5L)
+                                        )
+                                )
+                        )
+                )
+        );
+
+        HttpResponseMessage response = new TestableReportJobHttpFunction(Optional.of(jobService))
+                .status(request, "job1", context);
+
+        assertEquals(HttpStatus.OK, response.getStatus());
+        String body = response.getBody().toString();
+        assertTrue(body.contains("\"status\":\"COMPLETED\""));
+        assertTrue(body.contains("\"client\":\"IO\""));
+    }
+
+    @Test
+    void shouldReturnNotFoundForUnknownJob() throws Exception {
+        when(jobService.get("missing")).thenReturn(Optional.empty());
+
+        HttpResponseMessage response = new TestableReportJobHttpFunction(Optional.of(jobService))
+                .status(request, "missing", context);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+    }
+
+    @Test
+    void shouldFailWhenJobsAreNotConfigured() throws Exception {
+        ReportJobHttpFunction function = new TestableReportJobHttpFunction(Optional.empty());
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, function.submit(request, context).getStatus());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, function.status(request, "job1", context).getStatus());
+    }
+
+    @Test
+    void shouldParseAnyGrouping() {
+        assertEquals(Grouping.CLIENT_PAYMENT_TYPE, ReportJobHttpFunction.parseGrouping(null));
+        assertEquals(Grouping.parse("iso_week,psp"), ReportJobHttpFunction.parseGrouping("iso_week,psp"));
+        assertThrows(InvalidRequestException.class, () -> ReportJobHttpFunction.parseGrouping("client,merchant"));
+    }
+}
@@ -0,0 +1,52 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.pagopa.ecommerce.reporting.services.ReportJobService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportJobTimerFunctionTest {
+
+    @Mock
+    ExecutionContext context;
+
+    @Mock
+    ReportJobService jobService;
+
+    private ReportJobTimerFunction function(Optional<ReportJobService> service) {
+        ReportJobTimerFunction function = spy(new ReportJobTimerFunction());
+        doReturn(service).when(function).getJobService();
+        lenient().doReturn(Duration.ofMinutes(8)).when(function).getRunDeadline();
+        when(context.getLogger()).thenReturn(Logger.getLogger("ReportJobTimerFunctionTest"));
+        return function;
+    }
+
+    @Test
+    void shouldRunPendingJobsWithinRunDeadline() {
+        ReportJobTimerFunction function = function(Optional.of(jobService));
+        when(jobService.runPending(Duration.ofMinutes(8))).thenReturn(1);
+
+        function.run("timerInfo", context);
+
+        verify(jobService).runPending(Duration.ofMinutes(8));
+    }
+
+    @Test
+    void shouldSkipRunWithoutJobsTable() {
+        ReportJobTimerFunction function = function(Optional.empty());
+
+        function.run("timerInfo", context);
+
+        verify(function, never()).getRunDeadline();
+        verifyNoInteractions(jobService);
+    }
+}
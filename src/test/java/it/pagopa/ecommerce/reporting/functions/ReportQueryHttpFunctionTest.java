@@ -0,0 +1,153 @@
+package it.pagopa.ecommerce.reporting.functions;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import it.pagopa.ecommerce.reporting.HttpResponseMessageMock;
+import it.pagopa.ecommerce.reporting.services.ReportQueryService;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportQueryHttpFunctionTest {
+
+    private static final Map<String, String> PARAMETERS = Map.of(
+            "startDate",
+            "2025-09-15",
+            "endDate",
+            "2025-09-21",
+            "clientId",
+            "IO",
+            "grouping",
+            "payment_type"
+    );
+
+    private static final ReportQueryService.Result RESULT = new ReportQueryService.Result(
+            "2025-09-15",
+            "2025-09-21",
+            "IO",
+            List.of("payment_type"),
+            true,
+            List.of(
+                    new ReportQueryService.Row(
+                            Map.of("payment_type", "CP"),
+                            7,
+                            Map.of(StatusCategory.OK, 7L),
+                            Map.of("NOTIFIED_OK", 7L)
+                    )
+            )
+    );
+
+    @Mock
+    private HttpRequestMessage<Optional<String>> request;
+
+    @Mock
+    private ExecutionContext context;
+
+    @Mock
+    private ReportQueryService queryService;
+
+    /**
+     * Test class that extends the original class to allow for mocking
+     */
+    private class TestableReportQueryHttpFunction extends ReportQueryHttpFunction {
+        @Override
+        protected ReportQueryService getQueryService() {
+            return queryService;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(request.createResponseBuilder(any(HttpStatus.class)))
+                .thenAnswer(invocation -> new HttpResponseMessageMock.HttpResponseMessageBuilderMock()
+                        .status((HttpStatus) invocation.getArgument(0)));
+        lenient().when(queryService.getMaxRangeDays()).thenReturn(92);
+    }
+
+    @Test
+    void shouldReturnGroupsWithEtag() throws Exception {
+        when(request.getQueryParameters()).thenReturn(PARAMETERS);
+        when(queryService.query(any(), any(), any(), any(), any())).thenReturn(RESULT);
+
+        HttpResponseMessage response = new TestableReportQueryHttpFunction().run(request, context);
+
+        assertEquals(HttpStatus.OK, response.getStatus());
+        assertEquals("application/json", response.getHeader("Content-Type"));
+        assertEquals(ReportQueryHttpFunction.etagOf(response.getBody().toString()), response.getHeader("ETag"));
+        assertTrue(response.getBody().toString().contains("\"dimensions\":{\"payment_type\":\"CP\"}"));
+        verify(queryService).query(
+                eq(LocalDate.of(2025, 9, 15)),
+                eq(LocalDate.of(2025, 9, 21)),
+                eq("IO"),
+                eq(Grouping.parse("payment_type")),
+                any()
+        );
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenEtagMatches() throws Exception {
+        when(request.getQueryParameters()).thenReturn(PARAMETERS);
+        when(queryService.query(any(), any(), any(), any(), any())).thenReturn(RESULT);
+        ReportQueryHttpFunction function = new TestableReportQueryHttpFunction();
+        String etag = function.run(request, context).getHeader("ETag");
+
+        when(request.getHeaders()).thenReturn(Map.of("if-none-match", "W/" + etag));
+        HttpResponseMessage response = function.run(request, context);
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatus());
+        assertEquals(etag, response.getHeader("ETag"));
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void shouldRejectInvalidParameters() throws Exception {
+        ReportQueryHttpFunction function = new TestableReportQueryHttpFunction();
+
+        when(request.getQueryParameters()).thenReturn(Map.of("endDate", "2025-09-21"));
+        assertEquals(HttpStatus.BAD_REQUEST, function.run(request, context).getStatus());
+
+        when(request.getQueryParameters())
+                .thenReturn(Map.of("startDate", "2025-09-15", "endDate", "2025-09-21", "grouping", "client,hour_of_day"));
+        HttpResponseMessage response = function.run(request, context);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.getBody().toString().contains("Invalid grouping"));
+
+        verifyNoInteractions(queryService);
+    }
+
+    @Test
+    void shouldRejectRangesLongerThanTheMaximum() throws Exception {
+        when(request.getQueryParameters()).thenReturn(Map.of("startDate", "2025-01-01", "endDate", "2025-12-31"));
+
+        HttpResponseMessage response = new TestableReportQueryHttpFunction().run(request, context);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+        assertTrue(response.getBody().toString().contains("maximum of 92 days"));
+        assertTrue(response.getBody().toString().contains("POST reports/jobs"));
+        verify(queryService, never()).query(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldMatchIfNoneMatchTags() {
+        assertTrue(ReportQueryHttpFunction.matches("\"a\", \"b\"", "\"b\""));
+        assertTrue(ReportQueryHttpFunction.matches("*", "\"b\""));
+        assertFalse(ReportQueryHttpFunction.matches("\"a\"", "\"b\""));
+        assertFalse(ReportQueryHttpFunction.matches(null, "\"b\""));
+    }
+}
@@ -2,8 +2,10 @@ package it.pagopa.ecommerce.reporting.functions;
 
 import com.microsoft.azure.functions.ExecutionContext;
 import it.pagopa.ecommerce.reporting.clients.SlackWebhookClient;
+import it.pagopa.ecommerce.reporting.services.ReportSnapshotService;
 import it.pagopa.ecommerce.reporting.services.TransactionStatusAggregationService;
 import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.ReportDataset;
 import it.pagopa.ecommerce.reporting.utils.SlackDateRangeReportMessageUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,10 +13,12 @@ import org.junitpioneer.jupiter.SetEnvironmentVariable;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 
@@ -42,17 +46,40 @@ class SlackReportingTimerTriggeredTest {
         private final LocalDate fixedDate;
         private final TransactionStatusAggregationService aggregationService;
         private final SlackWebhookClient slackWebhookClient;
+        private final ScheduledExecutorService executorService;
+        private Optional<ReportSnapshotService> reportSnapshotService = Optional.empty();
 
         public TestableSlackReportingTimerTriggered(
                 String webhookEndpoint,
                 LocalDate fixedDate,
                 TransactionStatusAggregationService aggregationService,
                 SlackWebhookClient slackWebhookClient
+        ) {
+            this(webhookEndpoint, fixedDate, aggregationService, slackWebhookClient, null);
+        }
+
+        public TestableSlackReportingTimerTriggered(
+                String webhookEndpoint,
+                LocalDate fixedDate,
+                TransactionStatusAggregationService aggregationService,
+                SlackWebhookClient slackWebhookClient,
+                ScheduledExecutorService executorService
         ) {
             this.webhookEndpoint = webhookEndpoint;
             this.fixedDate = fixedDate;
             this.aggregationService = aggregationService;
             this.slackWebhookClient = slackWebhookClient;
+            this.executorService = executorService;
+        }
+
+        @Override
+        protected ScheduledExecutorService getExecutorService() {
+            return executorService != null ? executorService : super.getExecutorService();
+        }
+
+        @Override
+        protected Duration getRunDeadline() {
+            return Duration.ofSeconds(5);
         }
 
         @Override
@@ -73,6 +100,11 @@ class SlackReportingTimerTriggeredTest {
             return aggregationService;
         }
 
+        @Override
+        protected Optional<ReportSnapshotService> createReportSnapshotService() {
+            return reportSnapshotService;
+        }
+
         @Override
         protected SlackWebhookClient createSlackWebhookClient(String endpoint) {
             return slackWebhookClient;
@@ -92,8 +124,7 @@ class SlackReportingTimerTriggeredTest {
                         "2025-09-16",
                         "clientA",
                         "pspX",
-                        "CP",
-                        List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                        "CP"
                 )
         );
 
@@ -115,7 +146,8 @@ class SlackReportingTimerTriggeredTest {
             );
             mockedUtils.when(
                     () -> SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
-                            anyList(),
+                            any(ReportDataset.class),
+                            any(),
                             any(LocalDate.class),
                             any(LocalDate.class),
                             any(Logger.class),
@@ -127,27 +159,94 @@ class SlackReportingTimerTriggeredTest {
                     }
             );
 
-            try (MockedStatic<Executors> executorsMock = Mockito.mockStatic(Executors.class)) {
-                ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
-                executorsMock.when(Executors::newSingleThreadScheduledExecutor).thenReturn(mockScheduler);
+            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
+            ScheduledFuture<?> completedDelivery = mock(ScheduledFuture.class);
+
+            doAnswer(invocation -> {
+                Callable<?> task = invocation.getArgument(0);
+                task.call(); // execute immediately
+                return completedDelivery;
+            }).when(mockScheduler).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
+
+            TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
+                    mockEndpoint,
+                    fixedToday,
+                    mockAggregationService,
+                    mockSlackWebhookClient,
+                    mockScheduler
+            );
 
-                doAnswer(invocation -> {
-                    Runnable task = invocation.getArgument(0);
-                    task.run(); // execute immediately
-                    return null;
-                }).when(mockScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+            function.run("timerInfo", mockContext);
 
-                TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
-                        mockEndpoint,
-                        fixedToday,
-                        mockAggregationService,
-                        mockSlackWebhookClient
-                );
+            verify(mockSlackWebhookClient, atLeastOnce()).postMessageToWebhook("Test message");
+        }
+    }
 
-                function.run("timerInfo", mockContext);
+    @SetEnvironmentVariable(key = "ECOMMERCE_CLIENTS_LIST", value = "[\"clientA\"]")
+    @Test
+    void shouldCompareWithPreviousPeriodSnapshotAndStoreTheCurrentOne() throws Exception {
+        LocalDate fixedToday = LocalDate.of(2025, 9, 23);
+        String mockEndpoint = "https://hooks.slack-mock.com/services/test/webhook";
 
-                verify(mockSlackWebhookClient, atLeastOnce()).postMessageToWebhook("Test message");
-            }
+        AggregatedStatusGroup current = new AggregatedStatusGroup("2025-09-16", "clientA", "pspX", "CP");
+        current.incrementStatus("NOTIFIED_OK", 3);
+        AggregatedStatusGroup previous = new AggregatedStatusGroup(null, "clientA", null, "CP");
+        previous.incrementStatus("NOTIFIED_OK", 1);
+        when(mockAggregationService.aggregateStatusCountByClientAndPaymentType(any(), any(), any()))
+                .thenReturn(List.of(current));
+        ReportSnapshotService mockSnapshots = mock(ReportSnapshotService.class);
+        when(mockSnapshots.loadPrevious(LocalDate.of(2025, 9, 15), LocalDate.of(2025, 9, 21)))
+                .thenReturn(Optional.of(List.of(previous)));
+
+        try (MockedStatic<SlackDateRangeReportMessageUtils> mockedUtils = Mockito
+                .mockStatic(SlackDateRangeReportMessageUtils.class)) {
+            mockedUtils.when(
+                    () -> SlackDateRangeReportMessageUtils.createInitialBlock(
+                            any(LocalDate.class),
+                            any(LocalDate.class),
+                            any(Logger.class)
+                    )
+            ).thenReturn(new String[0]);
+            mockedUtils.when(
+                    () -> SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
+                            any(ReportDataset.class),
+                            argThat((ReportDataset dataset) -> dataset != null && dataset.size() == 1),
+                            any(LocalDate.class),
+                            any(LocalDate.class),
+                            any(Logger.class),
+                            eq("clientA")
+                    )
+            ).thenReturn(
+                    new String[] {
+                            "Message with deltas"
+                    }
+            );
+
+            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
+            ScheduledFuture<?> completedDelivery = mock(ScheduledFuture.class);
+            doAnswer(invocation -> {
+                Callable<?> task = invocation.getArgument(0);
+                task.call(); // execute immediately
+                return completedDelivery;
+            }).when(mockScheduler).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
+
+            TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
+                    mockEndpoint,
+                    fixedToday,
+                    mockAggregationService,
+                    mockSlackWebhookClient,
+                    mockScheduler
+            );
+            function.reportSnapshotService = Optional.of(mockSnapshots);
+
+            function.run("timerInfo", mockContext);
+
+            verify(mockSlackWebhookClient).postMessageToWebhook("Message with deltas");
+            verify(mockSnapshots).store(
+                    eq(LocalDate.of(2025, 9, 15)),
+                    eq(LocalDate.of(2025, 9, 21)),
+                    argThat(groups -> groups.size() == 1 && groups.get(0).getTotal() == 3)
+            );
         }
     }
 
@@ -164,15 +263,13 @@ class SlackReportingTimerTriggeredTest {
                         "2025-09-16",
                         "clientA",
                         "pspX",
-                        "CP",
-                        List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                        "CP"
                 ),
                 new AggregatedStatusGroup(
                         "2025-09-16",
                         "clientB",
                         "pspY",
-                        "SATY",
-                        List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                        "SATY"
                 )
         );
 
@@ -195,7 +292,8 @@ class SlackReportingTimerTriggeredTest {
 
             mockedUtils.when(
                     () -> SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
-                            anyList(),
+                            any(ReportDataset.class),
+                            any(),
                             any(LocalDate.class),
                             any(LocalDate.class),
                             any(Logger.class),
@@ -209,7 +307,8 @@ class SlackReportingTimerTriggeredTest {
 
             mockedUtils.when(
                     () -> SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
-                            anyList(),
+                            any(ReportDataset.class),
+                            any(),
                             any(LocalDate.class),
                             any(LocalDate.class),
                             any(Logger.class),
@@ -221,29 +320,91 @@ class SlackReportingTimerTriggeredTest {
                     }
             );
 
-            try (MockedStatic<Executors> executorsMock = Mockito.mockStatic(Executors.class)) {
-                ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
-                executorsMock.when(Executors::newSingleThreadScheduledExecutor).thenReturn(mockScheduler);
+            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
+            ScheduledFuture<?> completedDelivery = mock(ScheduledFuture.class);
+
+            doAnswer(invocation -> {
+                Callable<?> task = invocation.getArgument(0);
+                task.call(); // execute immediately
+                return completedDelivery;
+            }).when(mockScheduler).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
+
+            TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
+                    mockEndpoint,
+                    fixedToday,
+                    mockAggregationService,
+                    mockSlackWebhookClient,
+                    mockScheduler
+            );
 
-                doAnswer(invocation -> {
-                    Runnable task = invocation.getArgument(0);
-                    task.run(); // execute immediately
-                    return null;
-                }).when(mockScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+            function.run("timerInfo", mockContext);
 
-                TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
-                        mockEndpoint,
-                        fixedToday,
-                        mockAggregationService,
-                        mockSlackWebhookClient
-                );
+            // Verify that webhook client was called for both clients
+            verify(mockSlackWebhookClient, times(1)).postMessageToWebhook("Message for clientA");
+            verify(mockSlackWebhookClient, times(1)).postMessageToWebhook("Message for clientB");
+        }
+    }
 
-                function.run("timerInfo", mockContext);
+    @SetEnvironmentVariable(key = "ECOMMERCE_CLIENTS_LIST", value = "[\"clientA\"]")
+    @Test
+    void shouldReportMessagesRejectedBySlackAsFailedDeliveries() throws Exception {
+        LocalDate fixedToday = LocalDate.of(2025, 9, 23);
+        String mockEndpoint = "https://hooks.slack-mock.com/services/test/webhook";
 
-                // Verify that webhook client was called for both clients
-                verify(mockSlackWebhookClient, times(1)).postMessageToWebhook("Message for clientA");
-                verify(mockSlackWebhookClient, times(1)).postMessageToWebhook("Message for clientB");
-            }
+        when(mockAggregationService.aggregateStatusCountByClientAndPaymentType(any(), any(), any()))
+                .thenReturn(List.of(new AggregatedStatusGroup("2025-09-16", "clientA", "pspX", "CP")));
+        when(mockSlackWebhookClient.postMessageToWebhook("Initial block message")).thenReturn(true);
+        when(mockSlackWebhookClient.postMessageToWebhook("Rejected message")).thenReturn(false);
+
+        try (MockedStatic<SlackDateRangeReportMessageUtils> mockedUtils = Mockito
+                .mockStatic(SlackDateRangeReportMessageUtils.class)) {
+            mockedUtils.when(
+                    () -> SlackDateRangeReportMessageUtils.createInitialBlock(
+                            any(LocalDate.class),
+                            any(LocalDate.class),
+                            any(Logger.class)
+                    )
+            ).thenReturn(
+                    new String[] {
+                            "Initial block message"
+                    }
+            );
+            mockedUtils.when(
+                    () -> SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
+                            any(ReportDataset.class),
+                            any(),
+                            any(LocalDate.class),
+                            any(LocalDate.class),
+                            any(Logger.class),
+                            any()
+                    )
+            ).thenReturn(
+                    new String[] {
+                            "Rejected message"
+                    }
+            );
+
+            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
+            ScheduledFuture<?> completedDelivery = mock(ScheduledFuture.class);
+            List<Object> deliveries = new ArrayList<>();
+            doAnswer(invocation -> {
+                Callable<?> task = invocation.getArgument(0);
+                deliveries.add(task.call()); // execute immediately
+                return completedDelivery;
+            }).when(mockScheduler).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
+
+            TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
+                    mockEndpoint,
+                    fixedToday,
+                    mockAggregationService,
+                    mockSlackWebhookClient,
+                    mockScheduler
+            );
+
+            function.run("timerInfo", mockContext);
+
+            // the outcome of each delivery is what the run summary counts
+            assertEquals(List.of(true, false), deliveries);
         }
     }
 
@@ -254,22 +415,19 @@ class SlackReportingTimerTriggeredTest {
         LocalDate fixedToday = LocalDate.of(2025, 9, 23);
         String mockEndpoint = "https://hooks.slack-mock.com/services/test/webhook";
 
+        ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
         TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
                 mockEndpoint,
                 fixedToday,
                 mockAggregationService,
-                mockSlackWebhookClient
+                mockSlackWebhookClient,
+                mockScheduler
         );
 
-        try (MockedStatic<Executors> executorsMock = Mockito.mockStatic(Executors.class)) {
-            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
-            executorsMock.when(Executors::newSingleThreadScheduledExecutor).thenReturn(mockScheduler);
-
-            assertThrows(RuntimeException.class, () -> function.run("timerInfo", mockContext));
+        assertThrows(RuntimeException.class, () -> function.run("timerInfo", mockContext));
 
-            verify(mockSlackWebhookClient, never()).postMessageToWebhook(anyString());
-            verify(mockScheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
-        }
+        verify(mockSlackWebhookClient, never()).postMessageToWebhook(anyString());
+        verify(mockScheduler, never()).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
     }
 
     @Test
@@ -302,7 +460,14 @@ class SlackReportingTimerTriggeredTest {
             mockedUtils
                     .when(
                             () -> SlackDateRangeReportMessageUtils
-                                    .createAggregatedTableWeeklyReport(anyList(), any(), any(), any(), any())
+                                    .createAggregatedTableWeeklyReport(
+                                            any(ReportDataset.class),
+                                            any(),
+                                            any(),
+                                            any(),
+                                            any(),
+                                            any()
+                                    )
                     )
                     .thenReturn(
                             new String[] {
@@ -323,35 +488,34 @@ class SlackReportingTimerTriggeredTest {
                     }
             );
 
-            try (MockedStatic<Executors> executorsMock = Mockito.mockStatic(Executors.class)) {
-                ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
-                executorsMock.when(Executors::newSingleThreadScheduledExecutor).thenReturn(mockScheduler);
-
-                ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
-
-                doAnswer(invocation -> {
-                    Runnable task = invocation.getArgument(0);
-                    task.run();
-                    return null;
-                }).when(mockScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
-
-                TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
-                        mockEndpoint,
-                        fixedToday,
-                        mockAggregationService,
-                        mockSlackWebhookClient
-                );
+            ScheduledExecutorService mockScheduler = mock(ScheduledExecutorService.class);
+            ScheduledFuture<?> completedDelivery = mock(ScheduledFuture.class);
+
+            ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+
+            doAnswer(invocation -> {
+                Callable<?> task = invocation.getArgument(0);
+                task.call();
+                return completedDelivery;
+            }).when(mockScheduler).schedule(any(Callable.class), anyLong(), any(TimeUnit.class));
+
+            TestableSlackReportingTimerTriggered function = new TestableSlackReportingTimerTriggered(
+                    mockEndpoint,
+                    fixedToday,
+                    mockAggregationService,
+                    mockSlackWebhookClient,
+                    mockScheduler
+            );
 
-                function.run("timerInfo", mockContext);
+            function.run("timerInfo", mockContext);
 
-                verify(mockScheduler, times(7))
-                        .schedule(any(Runnable.class), delayCaptor.capture(), eq(TimeUnit.SECONDS));
+            verify(mockScheduler, times(7))
+                    .schedule(any(Callable.class), delayCaptor.capture(), eq(TimeUnit.SECONDS));
 
-                List<Long> capturedDelays = delayCaptor.getAllValues();
-                assertEquals(1L, capturedDelays.get(0));
-                assertEquals(2L, capturedDelays.get(1));
-                assertEquals(3L, capturedDelays.get(2));
-            }
+            List<Long> capturedDelays = delayCaptor.getAllValues();
+            assertEquals(1L, capturedDelays.get(0));
+            assertEquals(2L, capturedDelays.get(1));
+            assertEquals(3L, capturedDelays.get(2));
         }
     }
 
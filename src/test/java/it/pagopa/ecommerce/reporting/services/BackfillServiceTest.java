@@ -0,0 +1,245 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableServiceException;
+import it.pagopa.ecommerce.reporting.entity.BackfillEntity;
+import it.pagopa.ecommerce.reporting.utils.RunSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BackfillServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-10-01T10:00:00Z");
+    private static final LocalDate DAY = LocalDate.of(2025, 9, 1);
+
+    @Mock
+    private TableClient tableClient;
+
+    @Mock
+    private ReadDataService readDataService;
+
+    private final AtomicReference<TableEntity> stored = new AtomicReference<>();
+
+    private BackfillService backfillService;
+
+    @BeforeEach
+    void setUp() {
+        backfillService = new BackfillService(
+                tableClient,
+                readDataService,
+                Set.of("IO", "CHECKOUT"),
+                Clock.fixed(NOW, ZoneOffset.UTC),
+                12,
+                Duration.ofMinutes(5)
+        );
+        Map<String, Set<String>> psps = new LinkedHashMap<>();
+        psps.put("CP", new LinkedHashSet<>(List.of("pspX", "pspY")));
+        psps.put("PPAL", new LinkedHashSet<>(List.of("pspX")));
+        lenient().when(readDataService.getPspsByPaymentType()).thenReturn(psps);
+        lenient().when(readDataService.latestWindow())
+                .thenReturn(OffsetDateTime.of(2025, 10, 1, 8, 0, 0, 0, ZoneOffset.UTC));
+        lenient().doAnswer(invocation -> {
+            stored.set(invocation.getArgument(0));
+            return null;
+        }).when(tableClient).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+        lenient().when(tableClient.getEntity(eq(BackfillEntity.PARTITION_KEY), any()))
+                .thenAnswer(invocation -> stored.get());
+    }
+
+    private static RunSummary summary(
+                                      int done,
+                                      int failed
+    ) {
+        return new RunSummary("backfill", done + failed, done, failed, 0, Duration.ZERO);
+    }
+
+    @Test
+    void shouldSubmitBackfillOfConfiguredPsps() {
+        String backfillId = backfillService.submit(DAY, DAY, "IO", "CP", null);
+
+        ArgumentCaptor<TableEntity> captor = ArgumentCaptor.forClass(TableEntity.class);
+        verify(tableClient).createEntity(captor.capture());
+        assertEquals(backfillId, captor.getValue().getRowKey());
+        assertEquals("2025-09-01T00:00Z", captor.getValue().getProperty(BackfillEntity.NEXT_WINDOW));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> backfillService.submit(DAY, DAY, "IO", "PPAL", "pspY")
+        );
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> backfillService.submit(DAY, DAY, "UNKNOWN", "CP", null)
+        );
+        verify(tableClient).createEntity(any());
+    }
+
+    @Test
+    void shouldCollectRangeInCheckpointedChunks() {
+        TableEntity backfill = BackfillEntity.createEntity("b1", DAY, DAY, "IO", null, "pspX");
+        stored.set(backfill);
+        when(readDataService.readAndWriteWindows(eq("IO"), any())).thenAnswer(
+                invocation -> summary(invocation.<List<CollectionCoverageService.Window>>getArgument(1).size(), 0)
+        );
+
+        assertTrue(backfillService.run(backfill, NOW.plusSeconds(60)));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CollectionCoverageService.Window>> windows = ArgumentCaptor.forClass(List.class);
+        verify(readDataService, times(2)).readAndWriteWindows(eq("IO"), windows.capture());
+        OffsetDateTime midnight = DAY.atStartOfDay().atOffset(ZoneOffset.UTC);
+        List<CollectionCoverageService.Window> firstChunk = windows.getAllValues().get(0);
+        // 12 hours of (CP, pspX) and (PPAL, pspX)
+        assertEquals(24, firstChunk.size());
+        assertEquals(new CollectionCoverageService.Window("CP", "pspX", midnight), firstChunk.get(0));
+        assertEquals(new CollectionCoverageService.Window("PPAL", "pspX", midnight), firstChunk.get(1));
+        assertEquals(midnight.plusHours(12), windows.getAllValues().get(1).get(0).start());
+        BackfillService.Backfill completed = backfillService.get("b1").orElseThrow();
+        assertEquals(BackfillEntity.Status.COMPLETED, completed.status());
+        assertEquals(48, completed.collectedWindows());
+        assertEquals("2025-09-02T00:00Z", completed.nextWindow());
+    }
+
+    @Test
+    void shouldRetryChunkWithFailuresThenRecordIt() {
+        TableEntity backfill = BackfillEntity.createEntity("b1", DAY, DAY, "IO", "PPAL", null);
+        stored.set(backfill);
+        when(readDataService.readAndWriteWindows(eq("IO"), any())).thenReturn(summary(11, 1));
+
+        assertFalse(backfillService.run(backfill, NOW.plusSeconds(60)));
+
+        // each of the two chunks is collected MAX_CHUNK_ATTEMPTS times, then left to the next runs
+        verify(readDataService, times(2 * BackfillService.MAX_CHUNK_ATTEMPTS)).readAndWriteWindows(any(), any());
+        BackfillService.Backfill running = backfillService.get("b1").orElseThrow();
+        assertEquals(BackfillEntity.Status.RUNNING, running.status());
+        assertEquals("2025-09-02T00:00Z", running.nextWindow());
+        assertEquals(22, running.collectedWindows());
+        assertEquals(2, running.failedWindows());
+        assertEquals(
+                List.of("2025-09-01T00:00Z/2025-09-01T11:00Z", "2025-09-01T12:00Z/2025-09-01T23:00Z"),
+                running.failedChunks()
+        );
+        assertEquals(NOW, BackfillEntity.leaseUntil(stored.get()).toInstant());
+    }
+
+    @Test
+    void shouldCollectFailedChunksAgainInLaterRuns() {
+        TableEntity backfill = BackfillEntity.createEntity("b1", DAY, DAY, "IO", "PPAL", null);
+        OffsetDateTime midnight = DAY.atStartOfDay().atOffset(ZoneOffset.UTC);
+        BackfillEntity.setNextWindow(backfill, midnight.plusDays(1));
+        BackfillEntity.setFailedChunks(
+                backfill,
+                List.of(
+                        new BackfillEntity.FailedChunk(midnight, midnight.plusHours(11), 1, 0),
+                        new BackfillEntity.FailedChunk(midnight.plusHours(12), midnight.plusHours(23), 2, 0)
+                )
+        );
+        backfill.addProperty(BackfillEntity.COLLECTED_WINDOWS, 21L);
+        backfill.addProperty(BackfillEntity.FAILED_WINDOWS, 3L);
+        stored.set(backfill);
+        // the first chunk is recovered, one window of the second one keeps failing
+        when(readDataService.readAndWriteWindows(eq("IO"), any())).thenAnswer(
+                invocation -> invocation.<List<CollectionCoverageService.Window>>getArgument(1).get(0).start()
+                        .equals(midnight) ? summary(12, 0) : summary(11, 1)
+        );
+
+        assertFalse(backfillService.run(backfill, NOW.plusSeconds(60)));
+
+        // one retry of each chunk per run
+        verify(readDataService, times(2)).readAndWriteWindows(any(), any());
+        BackfillService.Backfill retried = backfillService.get("b1").orElseThrow();
+        assertEquals(BackfillEntity.Status.RUNNING, retried.status());
+        assertEquals(List.of("2025-09-01T12:00Z/2025-09-01T23:00Z"), retried.failedChunks());
+        assertEquals(23, retried.collectedWindows());
+        assertEquals(1, retried.failedWindows());
+
+        for (int run = 1; run < BackfillService.MAX_CHUNK_RETRIES; run++) {
+            backfillService.run(stored.get(), NOW.plusSeconds(60));
+        }
+
+        BackfillService.Backfill completed = backfillService.get("b1").orElseThrow();
+        assertEquals(BackfillEntity.Status.COMPLETED, completed.status());
+        assertEquals(List.of("2025-09-01T12:00Z/2025-09-01T23:00Z"), completed.failedChunks());
+        assertEquals(1, completed.failedWindows());
+        verify(readDataService, times(1 + BackfillService.MAX_CHUNK_RETRIES)).readAndWriteWindows(any(), any());
+    }
+
+    @Test
+    void shouldCheckpointAtDeadlineAndStopAtLatestCollectedWindow() {
+        when(readDataService.latestWindow()).thenReturn(DAY.atTime(17, 0).atOffset(ZoneOffset.UTC));
+        TableEntity backfill = BackfillEntity.createEntity("b1", DAY, DAY.plusDays(3), "IO", "PPAL", null);
+        stored.set(backfill);
+        when(readDataService.readAndWriteWindows(eq("IO"), any())).thenAnswer(
+                invocation -> summary(invocation.<List<CollectionCoverageService.Window>>getArgument(1).size(), 0)
+        );
+
+        assertFalse(backfillService.run(backfill, NOW));
+
+        TableEntity checkpoint = stored.get();
+        assertEquals(BackfillEntity.Status.RUNNING, BackfillEntity.status(checkpoint));
+        assertEquals("2025-09-01T12:00Z", checkpoint.getProperty(BackfillEntity.NEXT_WINDOW));
+        assertEquals(NOW, BackfillEntity.leaseUntil(checkpoint).toInstant());
+
+        assertTrue(backfillService.run(checkpoint, NOW.plusSeconds(60)));
+
+        BackfillService.Backfill completed = backfillService.get("b1").orElseThrow();
+        // windows from 00:00 to 17:00 only, later ones are left to the regular collection
+        assertEquals(18, completed.collectedWindows());
+        assertEquals("2025-09-01T18:00Z", completed.nextWindow());
+    }
+
+    @Test
+    void shouldSkipLeasedBackfillAndStopWhenLeaseIsTaken() {
+        TableEntity leased = BackfillEntity.createEntity("b1", DAY, DAY, "IO", null, null);
+        BackfillEntity.setLeaseUntil(leased, NOW.plusSeconds(30).atOffset(ZoneOffset.UTC));
+        assertFalse(backfillService.run(leased, NOW.plusSeconds(60)));
+
+        TableServiceException preconditionFailed = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(412);
+        when(preconditionFailed.getResponse()).thenReturn(response);
+        doThrow(preconditionFailed).when(tableClient).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+        assertFalse(
+                backfillService.run(BackfillEntity.createEntity("b2", DAY, DAY, "IO", null, null), NOW.plusSeconds(60))
+        );
+
+        verify(readDataService, never()).readAndWriteWindows(any(), any());
+    }
+
+    @Test
+    void shouldRecordFailure() {
+        TableEntity backfill = BackfillEntity.createEntity("b1", DAY, DAY, "IO", null, null);
+        stored.set(backfill);
+        when(readDataService.readAndWriteWindows(any(), any())).thenThrow(new IllegalStateException("pool closed"));
+
+        assertFalse(backfillService.run(backfill, NOW.plusSeconds(60)));
+
+        BackfillService.Backfill failed = backfillService.get("b1").orElseThrow();
+        assertEquals(BackfillEntity.Status.FAILED, failed.status());
+        assertEquals("pool closed", failed.error());
+    }
+}
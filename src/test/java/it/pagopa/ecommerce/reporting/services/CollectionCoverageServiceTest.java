@@ -0,0 +1,296 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import com.azure.data.tables.models.TableTransactionFailedException;
+import it.pagopa.ecommerce.reporting.entity.CollectionCoverageEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class CollectionCoverageServiceTest {
+
+    private static final OffsetDateTime LATEST_WINDOW = OffsetDateTime.of(2025, 9, 2, 1, 0, 0, 0, ZoneOffset.UTC);
+    private static final OffsetDateTime NOW = OffsetDateTime.of(2025, 9, 2, 4, 0, 0, 0, ZoneOffset.UTC);
+    private static final Logger LOGGER = Logger.getLogger("CollectionCoverageServiceTest");
+
+    private TableClient coverageTableClient;
+    private CollectionCoverageService coverageService;
+
+    @BeforeEach
+    void setUp() {
+        coverageTableClient = mock(TableClient.class);
+        coverageService = new CollectionCoverageService(
+                coverageTableClient,
+                Clock.fixed(NOW.toInstant(), ZoneOffset.UTC),
+                5,
+                4,
+                Duration.ofHours(1)
+        );
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PagedIterable<TableEntity> page(TableEntity... entities) {
+        PagedIterable<TableEntity> page = mock(PagedIterable.class);
+        doAnswer(invocation -> {
+            List.of(entities).forEach(invocation.getArgument(0));
+            return null;
+        }).when(page).forEach(any());
+        return page;
+    }
+
+    @Test
+    void shouldListMissingWindowsFromLatest() {
+        // 2025-09-01 22:00 collected for pspX, 2025-09-02 00:00 and 01:00 for both
+        PagedIterable<TableEntity> coverage = page(
+                CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 1), "CP", "pspX", 1 << 22),
+                CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b11),
+                CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspY", 0b11)
+        );
+        ArgumentCaptor<ListEntitiesOptions> query = ArgumentCaptor.forClass(ListEntitiesOptions.class);
+        when(coverageTableClient.listEntities(query.capture(), isNull(), isNull())).thenReturn(coverage);
+        Map<String, Set<String>> psps = new LinkedHashMap<>();
+        psps.put("CP", new LinkedHashSet<>(List.of("pspX", "pspY")));
+
+        List<CollectionCoverageService.Window> missing = coverageService
+                .missingWindows("IO", psps, LATEST_WINDOW, 4);
+
+        assertEquals(
+                "PartitionKey eq 'IO' and RowKey ge '2025-09-01' and RowKey lt '2025-09-03'",
+                query.getValue().getFilter()
+        );
+        assertEquals(
+                List.of(
+                        new CollectionCoverageService.Window("CP", "pspX", LATEST_WINDOW.minusHours(2)),
+                        new CollectionCoverageService.Window("CP", "pspY", LATEST_WINDOW.minusHours(2)),
+                        new CollectionCoverageService.Window("CP", "pspY", LATEST_WINDOW.minusHours(3))
+                ),
+                missing
+        );
+    }
+
+    @Test
+    void shouldListUnsettledWindowsDueForPoll() {
+        TableEntity row = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b11);
+        CollectionCoverageEntity.setSettling(row, 0, new CollectionCoverageEntity.Settling(1, 0, NOW.minusMinutes(1)));
+        CollectionCoverageEntity.setSettling(row, 1, new CollectionCoverageEntity.Settling(1, 0, NOW.plusMinutes(1)));
+        PagedIterable<TableEntity> coverage = page(row);
+        when(coverageTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(coverage);
+
+        List<CollectionCoverageService.Window> missing = coverageService
+                .missingWindows("IO", Map.of("CP", Set.of("pspX")), LATEST_WINDOW, 2);
+
+        assertEquals(List.of(new CollectionCoverageService.Window("CP", "pspX", LATEST_WINDOW.minusHours(1))), missing);
+    }
+
+    @Test
+    void shouldMarkStoredWindowsKeepingPreviousOnes() {
+        Map<String, TableEntity> coverage = Map.of(
+                "2025-09-02|CP|pspX",
+                CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 1 << 5)
+        );
+        List<TableEntity> stored = List.of(
+                metrics(LATEST_WINDOW, "pspX", 10, 0),
+                metrics(LATEST_WINDOW.minusHours(1), "pspX", 10, 0),
+                metrics(LATEST_WINDOW.minusHours(2), "pspY", 10, 0)
+        );
+
+        int failed = coverageService.markCollected("IO", stored, coverage, LOGGER);
+
+        assertEquals(0, failed);
+        Map<String, TableEntity> written = written();
+        assertEquals(1 << 5 | 0b11, CollectionCoverageEntity.hours(written.get("2025-09-02|CP|pspX")));
+        assertEquals(1 << 23, CollectionCoverageEntity.hours(written.get("2025-09-01|CP|pspY")));
+        assertEquals(0, CollectionCoverageEntity.unsettled(written.get("2025-09-02|CP|pspX")));
+    }
+
+    @Test
+    void shouldReplaceReadRowsOnlyIfUnchanged() {
+        TableEntity read = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 1 << 5)
+                .addProperty("odata.etag", "W/\"1\"");
+        List<TableEntity> stored = List.of(
+                metrics(LATEST_WINDOW, "pspX", 10, 0),
+                metrics(LATEST_WINDOW.minusHours(2), "pspY", 10, 0)
+        );
+
+        coverageService.markCollected("IO", stored, Map.of(read.getRowKey(), read), LOGGER);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TableTransactionAction>> transaction = ArgumentCaptor.forClass(List.class);
+        verify(coverageTableClient).submitTransaction(transaction.capture());
+        TableTransactionAction update = transaction.getValue().get(0);
+        assertEquals(TableTransactionActionType.UPDATE_REPLACE, update.getActionType());
+        assertTrue(update.getIfUnchanged());
+        assertEquals("W/\"1\"", update.getEntity().getETag());
+        assertEquals(TableTransactionActionType.CREATE, transaction.getValue().get(1).getActionType());
+    }
+
+    @Test
+    void shouldReadRowAgainWhenChangedSinceRead() {
+        TableEntity read = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 1 << 5)
+                .addProperty("odata.etag", "W/\"1\"");
+        TableEntity concurrent = CollectionCoverageEntity
+                .createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 1 << 5 | 1 << 7)
+                .addProperty("odata.etag", "W/\"2\"");
+        doAnswer(invocation -> {
+            TableTransactionFailedException exception = mock(TableTransactionFailedException.class);
+            when(exception.getFailedTransactionAction())
+                    .thenReturn(invocation.<List<TableTransactionAction>>getArgument(0).get(0));
+            throw exception;
+        }).when(coverageTableClient).submitTransaction(anyList());
+        when(coverageTableClient.getEntity("IO", read.getRowKey())).thenReturn(concurrent);
+
+        int failed = coverageService.markCollected(
+                "IO",
+                List.of(metrics(LATEST_WINDOW, "pspX", 10, 0)),
+                Map.of(read.getRowKey(), read),
+                LOGGER
+        );
+
+        assertEquals(0, failed);
+        ArgumentCaptor<TableEntity> updated = ArgumentCaptor.forClass(TableEntity.class);
+        verify(coverageTableClient).updateEntityWithResponse(
+                updated.capture(),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
+        // the windows recorded by the other run are kept
+        assertEquals(1 << 5 | 1 << 7 | 1 << 1, CollectionCoverageEntity.hours(updated.getValue()));
+        assertEquals("W/\"2\"", updated.getValue().getETag());
+    }
+
+    @Test
+    void shouldPollInProgressWindowsAgainWithGrowingDelay() {
+        TableEntity row = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b10);
+        CollectionCoverageEntity.setSettling(row, 1, new CollectionCoverageEntity.Settling(1, 1, NOW));
+        Map<String, TableEntity> coverage = Map.of(row.getRowKey(), row);
+        List<TableEntity> stored = List.of(
+                // first poll, 20% in progress
+                metrics(LATEST_WINDOW.minusHours(1), "pspX", 8, 2),
+                // second re-poll with new counts
+                metrics(LATEST_WINDOW, "pspX", 9, 1)
+        );
+
+        coverageService.markCollected("IO", stored, coverage, LOGGER);
+
+        TableEntity written = written().get("2025-09-02|CP|pspX");
+        assertEquals(0b11, CollectionCoverageEntity.unsettled(written));
+        CollectionCoverageEntity.Settling firstPoll = CollectionCoverageEntity.settling(written, 0);
+        assertEquals(0, firstPoll.repolls());
+        assertEquals(NOW.plusHours(1), firstPoll.nextPoll());
+        assertEquals(StateMetricEntity.statusHash(stored.get(0)), firstPoll.statusHash());
+        CollectionCoverageEntity.Settling secondRepoll = CollectionCoverageEntity.settling(written, 1);
+        assertEquals(2, secondRepoll.repolls());
+        assertEquals(NOW.plusHours(4), secondRepoll.nextPoll());
+    }
+
+    @Test
+    void shouldSettleWindowsWithUnchangedCounts() {
+        TableEntity unchanged = metrics(LATEST_WINDOW, "pspX", 8, 2);
+        TableEntity changed = metrics(LATEST_WINDOW, "pspY", 8, 2);
+        TableEntity rowX = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b10);
+        CollectionCoverageEntity.setSettling(
+                rowX,
+                1,
+                new CollectionCoverageEntity.Settling(StateMetricEntity.statusHash(unchanged), 0, NOW)
+        );
+        TableEntity rowY = CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspY", 0b10);
+        CollectionCoverageEntity.setSettling(rowY, 1, new CollectionCoverageEntity.Settling(42, 0, NOW));
+        Map<String, TableEntity> coverage = Map.of(rowX.getRowKey(), rowX, rowY.getRowKey(), rowY);
+
+        assertEquals(List.of(changed), coverageService.changed(List.of(unchanged, changed), coverage));
+
+        coverageService.markCollected("IO", List.of(unchanged, changed), coverage, LOGGER);
+
+        Map<String, TableEntity> written = written();
+        assertEquals(0, CollectionCoverageEntity.unsettled(written.get(rowX.getRowKey())));
+        assertEquals(1, CollectionCoverageEntity.settling(written.get(rowY.getRowKey()), 1).repolls());
+    }
+
+    @Test
+    void shouldNeverStoreWindowsWithoutStatuses() {
+        TableEntity unreported = StateMetricEntity.createEntity(LATEST_WINDOW, "IO", "CP", "pspX", new StatusVector());
+        TableEntity reported = metrics(LATEST_WINDOW, "pspY", 0, 0);
+
+        assertEquals(List.of(reported), coverageService.changed(List.of(unreported, reported), Map.of()));
+    }
+
+    @Test
+    void shouldSkipOnlyEmptyWindowsNotCollectedYet() {
+        TableEntity emptyNew = metrics(LATEST_WINDOW, "pspY", 0, 0);
+        TableEntity emptyCollected = metrics(LATEST_WINDOW, "pspX", 0, 0);
+        TableEntity notEmpty = metrics(LATEST_WINDOW.minusHours(1), "pspY", 1, 0);
+        TableEntity unreported = StateMetricEntity
+                .createEntity(LATEST_WINDOW, "IO", "CP", "pspZ", new StatusVector());
+        Map<String, TableEntity> coverage = Map.of(
+                "2025-09-02|CP|pspX",
+                CollectionCoverageEntity.createEntity("IO", LocalDate.of(2025, 9, 2), "CP", "pspX", 0b10)
+        );
+
+        assertEquals(
+                List.of(emptyNew),
+                coverageService.empty(List.of(emptyNew, emptyCollected, notEmpty, unreported), coverage)
+        );
+
+        coverageService.markCollected("IO", List.of(emptyNew), coverage, LOGGER);
+
+        assertEquals(0b10, CollectionCoverageEntity.hours(written().get("2025-09-02|CP|pspY")));
+    }
+
+    @Test
+    void shouldNotTouchTableWithoutStoredWindows() {
+        assertEquals(0, coverageService.markCollected("IO", List.of(), Map.of(), LOGGER));
+
+        verifyNoInteractions(coverageTableClient);
+    }
+
+    private Map<String, TableEntity> written() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<TableTransactionAction>> transaction = ArgumentCaptor.forClass(List.class);
+        verify(coverageTableClient).submitTransaction(transaction.capture());
+        Map<String, TableEntity> written = new LinkedHashMap<>();
+        transaction.getValue().forEach(action -> written.put(action.getEntity().getRowKey(), action.getEntity()));
+        return written;
+    }
+
+    private static TableEntity metrics(
+                                       OffsetDateTime windowStart,
+                                       String pspId,
+                                       int notifiedOk,
+                                       int activated
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        statusVector.set(StatusStorageFields.indexOf("ACTIVATED"), activated);
+        return StateMetricEntity.createEntity(windowStart, "IO", "CP", pspId, statusVector);
+    }
+}
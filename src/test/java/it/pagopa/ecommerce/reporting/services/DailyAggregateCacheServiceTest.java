@@ -0,0 +1,216 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.entity.DailyAggregateEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class DailyAggregateCacheServiceTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2025, 9, 1);
+    private static final LocalDate DAY_2 = LocalDate.of(2025, 9, 2);
+    private static final LocalDate DAY_3 = LocalDate.of(2025, 9, 3);
+
+    private TableClient cacheTableClient;
+    private TableClient metricsTableClient;
+    private DailyAggregateCacheService cacheService;
+
+    @BeforeEach
+    void setUp() {
+        cacheTableClient = mock(TableClient.class);
+        metricsTableClient = mock(TableClient.class);
+        cacheService = new DailyAggregateCacheService(cacheTableClient, metricsTableClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PagedIterable<TableEntity> page(TableEntity... entities) {
+        PagedIterable<TableEntity> page = mock(PagedIterable.class);
+        when(page.iterator()).thenReturn(List.of(entities).iterator());
+        return page;
+    }
+
+    private static AggregatedStatusGroup group(
+                                               String pspId,
+                                               String status,
+                                               long count
+    ) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "IO", pspId, "CP");
+        group.incrementStatus(status, count);
+        return group;
+    }
+
+    private static TableEntity hourlyRow(
+                                         String pspId,
+                                         int notifiedOk
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        return StateMetricEntity
+                .createEntity(DAY_1.atTime(10, 0).atOffset(ZoneOffset.UTC), "IO", "CP", pspId, statusVector);
+    }
+
+    @Test
+    void shouldLoadCachedDaysWithoutLateWrites() {
+        OffsetDateTime watermark = OffsetDateTime.of(2025, 9, 1, 23, 59, 0, 0, ZoneOffset.UTC);
+        PagedIterable<TableEntity> cachedRows = page(
+                DailyAggregateEntity.createManifest(DAY_1, watermark, 1),
+                DailyAggregateEntity.createEntity(DAY_1, group("pspX", "NOTIFIED_OK", 40)),
+                DailyAggregateEntity.createManifest(DAY_2, null, 0),
+                // no manifest: the day has not been completely stored
+                DailyAggregateEntity.createEntity(DAY_3, group("pspX", "NOTIFIED_OK", 1))
+        );
+        when(cacheTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(cachedRows);
+        PagedIterable<TableEntity> noLateWrites = page();
+        when(
+                metricsTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().contains("'2025-09-01'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(noLateWrites);
+        PagedIterable<TableEntity> lateWrites = page(new TableEntity("2025-09-02", "row"));
+        when(
+                metricsTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().contains("'2025-09-02'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(lateWrites);
+
+        Map<LocalDate, List<AggregatedStatusGroup>> cached = cacheService.load(DAY_1, DAY_3);
+
+        assertEquals(1, cached.size());
+        assertEquals(1, cached.get(DAY_1).size());
+        assertEquals(40, cached.get(DAY_1).get(0).getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        verify(cacheTableClient).listEntities(
+                argThat(
+                        query -> query.getFilter().startsWith(
+                                "PartitionKey ge '2025-09-01' and PartitionKey le '2025-09-03' and RowKey ge 'v"
+                        )
+                ),
+                isNull(),
+                isNull()
+        );
+        verify(metricsTableClient).listEntities(
+                argThat(
+                        query -> query.getFilter().equals(
+                                "PartitionKey eq '2025-09-01' and Timestamp gt datetime'2025-09-01T23:59:00Z'"
+                        ) && query.getTop() == 1
+                ),
+                isNull(),
+                isNull()
+        );
+        verify(metricsTableClient, times(2)).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+    }
+
+    @Test
+    void shouldSkipDaysWithMissingGroups() {
+        PagedIterable<TableEntity> cachedRows = page(
+                DailyAggregateEntity.createManifest(DAY_1, null, 2),
+                DailyAggregateEntity.createEntity(DAY_1, group("pspX", "NOTIFIED_OK", 40))
+        );
+        when(cacheTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(cachedRows);
+
+        Map<LocalDate, List<AggregatedStatusGroup>> cached = cacheService.load(DAY_1, DAY_1);
+
+        assertTrue(cached.isEmpty());
+        verify(metricsTableClient, never()).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+    }
+
+    @Test
+    void shouldAggregateAndStoreClosedDay() {
+        OffsetDateTime watermark = OffsetDateTime.of(2025, 9, 1, 23, 10, 0, 0, ZoneOffset.UTC);
+        TableEntity latestRow = mock(TableEntity.class);
+        when(latestRow.getProperty("clientId")).thenReturn("IO");
+        when(latestRow.getProperty("paymentTypeCode")).thenReturn("CP");
+        when(latestRow.getProperty("pspId")).thenReturn("pspX");
+        when(latestRow.getProperty("NOTIFIED_OK")).thenReturn(5);
+        when(latestRow.getTimestamp()).thenReturn(watermark);
+        PagedIterable<TableEntity> hourlyRows = page(hourlyRow("pspX", 10), latestRow, hourlyRow("pspY", 1));
+        when(metricsTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(hourlyRows);
+
+        List<AggregatedStatusGroup> groups = cacheService.aggregateDay(DAY_1);
+
+        groups = groups.stream().sorted(Comparator.comparing(AggregatedStatusGroup::getPspId)).toList();
+        assertEquals(2, groups.size());
+        assertEquals("2025-09-01", groups.get(0).getDate());
+        assertEquals(15, groups.get(0).getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        assertEquals(1, groups.get(1).getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        verify(metricsTableClient).listEntities(
+                argThat(
+                        query -> query.getFilter().equals(
+                                "PartitionKey ge '2025-09-01' and PartitionKey le '2025-09-01'"
+                        ) && query.getSelect().contains("pspId") && query.getSelect().contains("Timestamp")
+                ),
+                isNull(),
+                isNull()
+        );
+        verify(cacheTableClient).submitTransaction(argThat(actions -> actions.size() == 2));
+        verify(cacheTableClient).upsertEntity(
+                argThat(
+                        manifest -> DailyAggregateEntity.isManifest(manifest)
+                                && Integer.valueOf(2).equals(manifest.getProperty(DailyAggregateEntity.GROUPS))
+                                && "2025-09-01T23:10:00Z".equals(manifest.getProperty(DailyAggregateEntity.WATERMARK))
+                )
+        );
+    }
+
+    @Test
+    void shouldNotStoreManifestWhenGroupsAreNotWritten() {
+        PagedIterable<TableEntity> hourlyRows = page(hourlyRow("pspX", 10));
+        when(metricsTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(hourlyRows);
+        doThrow(new RuntimeException("unavailable")).when(cacheTableClient).submitTransaction(anyList());
+        doThrow(new RuntimeException("unavailable")).when(cacheTableClient)
+                .upsertEntityWithResponse(any(), any(), isNull(), isNull());
+
+        List<AggregatedStatusGroup> groups = cacheService.aggregateDay(DAY_1);
+
+        // the report still gets the aggregated groups
+        assertEquals(1, groups.size());
+        verify(cacheTableClient, never()).upsertEntity(any());
+    }
+
+    @Test
+    void shouldCompactOnlyDaysWithoutValidCache() {
+        PagedIterable<TableEntity> cachedRows = page(
+                DailyAggregateEntity.createManifest(DAY_2, null, 0)
+        );
+        when(cacheTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(cachedRows);
+        PagedIterable<TableEntity> noLateWrites = page();
+        PagedIterable<TableEntity> firstDayRows = page();
+        PagedIterable<TableEntity> thirdDayRows = page();
+        when(metricsTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(noLateWrites, firstDayRows, thirdDayRows);
+
+        int compacted = cacheService.compact(DAY_1, DAY_3);
+
+        assertEquals(2, compacted);
+        // one late write check for the cached day, one read for each compacted day
+        verify(metricsTableClient, times(3)).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+        verify(cacheTableClient).upsertEntity(argThat(manifest -> "2025-09-01".equals(manifest.getPartitionKey())));
+        verify(cacheTableClient).upsertEntity(argThat(manifest -> "2025-09-03".equals(manifest.getPartitionKey())));
+    }
+}
@@ -1,8 +1,9 @@
 package it.pagopa.ecommerce.reporting.services;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.TextNode;
+import com.azure.data.tables.models.TableEntity;
 import it.pagopa.ecommerce.reporting.clients.EcommerceHelpdeskServiceClient;
+import it.pagopa.ecommerce.reporting.utils.RunSummary;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,9 +17,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -39,6 +44,9 @@ public class ReadDataServiceTest {
     @Mock
     private WriteDataService writeDataService;
 
+    @Mock
+    private CollectionCoverageService collectionCoverage;
+
     @Captor
     private ArgumentCaptor<String> clientIdCaptor;
 
@@ -54,6 +62,9 @@ public class ReadDataServiceTest {
     @Captor
     private ArgumentCaptor<OffsetDateTime> endDate;
 
+    @Captor
+    private ArgumentCaptor<List<TableEntity>> entitiesCaptor;
+
     private MockedStatic<EcommerceHelpdeskServiceClient> ecommerceHelpdeskServiceClientMockedStatic;
     private MockedStatic<WriteDataService> writeDataServiceMockedStatic;
 
@@ -61,8 +72,10 @@ public class ReadDataServiceTest {
     public void setUp() {
         ecommerceHelpdeskServiceClientMockedStatic = mockStatic(EcommerceHelpdeskServiceClient.class);
         writeDataServiceMockedStatic = mockStatic(WriteDataService.class);
-        when(EcommerceHelpdeskServiceClient.getInstance(any(Logger.class))).thenReturn(ecommerceHelpdeskServiceClient);
-        when(WriteDataService.getInstance()).thenReturn(writeDataService);
+        // not used by the tests building the service with its dependencies
+        lenient().when(EcommerceHelpdeskServiceClient.getInstance(any(Logger.class)))
+                .thenReturn(ecommerceHelpdeskServiceClient);
+        lenient().when(WriteDataService.getInstance()).thenReturn(writeDataService);
     }
 
     @AfterEach
@@ -74,7 +87,9 @@ public class ReadDataServiceTest {
     @Test
     public void readTest() {
         ReadDataService readDataService = ReadDataService.getInstance(mockLogger);
-        JsonNode result = new TextNode("mockedValue");
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(0, 1);
+        Optional<StatusVector> result = Optional.of(statusVector);
         doReturn(result).when(
                 ecommerceHelpdeskServiceClient
         )
@@ -85,7 +100,9 @@ public class ReadDataServiceTest {
                         startDate.capture(),
                         endDate.capture()
                 );
-        readDataService.readAndWriteData("IO");
+        doAnswer(invocation -> invocation.<List<TableEntity>>getArgument(0)).when(writeDataService)
+                .writeStateMetrics(anyList(), anyList(), any(Logger.class));
+        RunSummary summary = readDataService.readAndWriteData("IO");
         try {
             TimeUnit.SECONDS.sleep(5);
         } catch (InterruptedException e) {
@@ -104,16 +121,147 @@ public class ReadDataServiceTest {
                     startDateValues.get(i),
                     endDateValues.get(i)
             );
-            verify(writeDataService, times(1))
-                    .writeStateMetricsInTableStorage(
-                            result,
-                            mockLogger,
-                            clientIdValues.get(i),
-                            paymentTypeCodeValues.get(i),
-                            pspIdValues.get(i)
-                    );
         }
+        verify(writeDataService, times(1))
+                .writeStateMetrics(entitiesCaptor.capture(), eq(List.of()), eq(mockLogger));
+        assertEquals(clientIdValues.size(), entitiesCaptor.getValue().size());
+        assertEquals(clientIdValues.size(), summary.done());
+        assertTrue(summary.isSuccessful());
+    }
+
+    @Test
+    public void shouldCollectMissingWindowsAndRecordThem() {
+        OffsetDateTime latestWindow = OffsetDateTime.now().minusHours(2).withSecond(0).withMinute(0).withNano(0);
+        OffsetDateTime missedWindow = latestWindow.minusHours(3);
+        ReadDataService readDataService = new ReadDataService(
+                mockLogger,
+                writeDataService,
+                ecommerceHelpdeskServiceClient,
+                collectionCoverage
+        );
+        when(collectionCoverage.missingWindows(eq("IO"), anyMap(), any(), eq(24))).thenReturn(
+                List.of(
+                        new CollectionCoverageService.Window("PAY_1", "PSP_1", latestWindow),
+                        new CollectionCoverageService.Window("PAY_2", "PSP_3", missedWindow)
+                )
+        );
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(0, 1);
+        when(ecommerceHelpdeskServiceClient.fetchTransactionMetrics(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(statusVector));
+        doAnswer(invocation -> invocation.<List<TableEntity>>getArgument(0)).when(writeDataService)
+                .writeStateMetrics(anyList(), anyList(), any(Logger.class));
+        when(collectionCoverage.read(eq("IO"), anyList())).thenReturn(Map.of());
+        when(collectionCoverage.changed(anyList(), anyMap())).thenAnswer(invocation -> invocation.getArgument(0));
 
+        RunSummary summary = readDataService.readAndWriteData("IO");
+
+        verify(ecommerceHelpdeskServiceClient)
+                .fetchTransactionMetrics("IO", "PSP_1", "PAY_1", latestWindow, latestWindow.plusHours(1).minusNanos(1));
+        verify(ecommerceHelpdeskServiceClient)
+                .fetchTransactionMetrics("IO", "PSP_3", "PAY_2", missedWindow, missedWindow.plusHours(1).minusNanos(1));
+        verify(collectionCoverage).markCollected(eq("IO"), entitiesCaptor.capture(), eq(Map.of()), eq(mockLogger));
+        assertEquals(2, entitiesCaptor.getValue().size());
+        assertEquals(2, summary.done());
+        assertTrue(summary.isSuccessful());
     }
 
+    @Test
+    public void shouldCollectLatestWindowWhenCoverageCannotBeRead() {
+        ReadDataService readDataService = new ReadDataService(
+                mockLogger,
+                writeDataService,
+                ecommerceHelpdeskServiceClient,
+                collectionCoverage
+        );
+        when(collectionCoverage.missingWindows(any(), anyMap(), any(), anyInt()))
+                .thenThrow(new IllegalStateException("table unavailable"));
+        when(ecommerceHelpdeskServiceClient.fetchTransactionMetrics(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.empty());
+        when(writeDataService.writeStateMetrics(anyList(), anyList(), any(Logger.class))).thenReturn(List.of());
+
+        RunSummary summary = readDataService.readAndWriteData("IO");
+
+        // one request for each configured (paymentTypeCode, psp) pair
+        verify(ecommerceHelpdeskServiceClient, times(4)).fetchTransactionMetrics(any(), any(), any(), any(), any());
+        verify(collectionCoverage).markCollected("IO", List.of(), Map.of(), mockLogger);
+        assertEquals(4, summary.failed());
+    }
+
+    @Test
+    public void shouldNotRewriteUnchangedPollsButSettleThem() {
+        OffsetDateTime window = OffsetDateTime.now().minusHours(5).withSecond(0).withMinute(0).withNano(0);
+        ReadDataService readDataService = new ReadDataService(
+                mockLogger,
+                writeDataService,
+                ecommerceHelpdeskServiceClient,
+                collectionCoverage
+        );
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(0, 1);
+        when(ecommerceHelpdeskServiceClient.fetchTransactionMetrics(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(statusVector));
+        when(collectionCoverage.read(eq("IO"), anyList())).thenReturn(Map.of());
+        when(collectionCoverage.changed(anyList(), anyMap())).thenReturn(List.of());
+        when(writeDataService.writeStateMetrics(List.of(), List.of(), mockLogger)).thenReturn(List.of());
+
+        RunSummary summary = readDataService
+                .readAndWriteWindows("IO", List.of(new CollectionCoverageService.Window("PAY_1", "PSP_1", window)));
+
+        verify(collectionCoverage).markCollected(eq("IO"), entitiesCaptor.capture(), eq(Map.of()), eq(mockLogger));
+        assertEquals(1, entitiesCaptor.getValue().size());
+        assertTrue(summary.isSuccessful());
+    }
+
+    @Test
+    public void shouldOnlyRecordWindowsWithoutTransactions() {
+        OffsetDateTime window = OffsetDateTime.now().minusHours(5).withSecond(0).withMinute(0).withNano(0);
+        ReadDataService readDataService = new ReadDataService(
+                mockLogger,
+                writeDataService,
+                ecommerceHelpdeskServiceClient,
+                collectionCoverage
+        );
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(0, 0);
+        when(ecommerceHelpdeskServiceClient.fetchTransactionMetrics(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(statusVector));
+        when(collectionCoverage.read(eq("IO"), anyList())).thenReturn(Map.of());
+        when(collectionCoverage.changed(anyList(), anyMap())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(collectionCoverage.empty(anyList(), anyMap())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(writeDataService.writeStateMetrics(eq(List.of()), anyList(), eq(mockLogger))).thenReturn(List.of());
+
+        RunSummary summary = readDataService
+                .readAndWriteWindows("IO", List.of(new CollectionCoverageService.Window("PAY_1", "PSP_1", window)));
+
+        verify(writeDataService).writeStateMetrics(eq(List.of()), entitiesCaptor.capture(), eq(mockLogger));
+        assertEquals(1, entitiesCaptor.getValue().size());
+        verify(collectionCoverage).markCollected(eq("IO"), entitiesCaptor.capture(), eq(Map.of()), eq(mockLogger));
+        assertEquals(1, entitiesCaptor.getValue().size());
+        assertTrue(summary.isSuccessful());
+    }
+
+    @Test
+    public void shouldCountPollsWithoutStatusesAsFailed() {
+        OffsetDateTime window = OffsetDateTime.now().minusHours(5).withSecond(0).withMinute(0).withNano(0);
+        ReadDataService readDataService = new ReadDataService(
+                mockLogger,
+                writeDataService,
+                ecommerceHelpdeskServiceClient,
+                collectionCoverage
+        );
+        when(ecommerceHelpdeskServiceClient.fetchTransactionMetrics(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(new StatusVector()));
+        when(collectionCoverage.read(eq("IO"), anyList())).thenReturn(Map.of());
+        when(collectionCoverage.changed(anyList(), anyMap())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(collectionCoverage.empty(anyList(), anyMap())).thenReturn(List.of());
+        when(writeDataService.writeStateMetrics(List.of(), List.of(), mockLogger)).thenReturn(List.of());
+
+        RunSummary summary = readDataService
+                .readAndWriteWindows("IO", List.of(new CollectionCoverageService.Window("PAY_1", "PSP_1", window)));
+
+        verify(writeDataService).writeStateMetrics(List.of(), List.of(), mockLogger);
+        verify(collectionCoverage).markCollected("IO", List.of(), Map.of(), mockLogger);
+        assertEquals(1, summary.failed());
+    }
 }
@@ -0,0 +1,200 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.clients.LocalDirectoryExportSink;
+import it.pagopa.ecommerce.reporting.entity.CollectionCoverageEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportExportServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 9, 15);
+    private static final LocalDate END = LocalDate.of(2025, 9, 21);
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private TransactionStatusAggregationService aggregationService;
+
+    @Mock
+    private Logger logger;
+
+    private ReportExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new ReportExportService(aggregationService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldWriteHourlyRowsAndGroupingsFromOneScan() throws IOException {
+        List<TableEntity> rows = List.of(
+                hourlyRow("2025-09-15", 10, "IO", "CP", "psp,1", 3),
+                hourlyRow("2025-09-16", 11, "IO", "CP", "psp2", 4)
+        );
+        Grouping grouping = Grouping.parse("client,payment_type");
+        when(aggregationService.aggregateByDimensions(eq(START), eq(END), eq(List.of(grouping)), any(), eq(logger)))
+                .thenAnswer(invocation -> {
+                    Consumer<TableEntity> listener = invocation.getArgument(3);
+                    DimensionalAggregator aggregator = new DimensionalAggregator(List.of(grouping));
+                    rows.forEach(row -> {
+                        aggregator.add(row);
+                        listener.accept(row);
+                    });
+                    return aggregator.results();
+                });
+
+        ReportExportService.Result result = exportService
+                .export(START, END, List.of(grouping), true, new LocalDirectoryExportSink(directory), logger);
+
+        assertEquals(2, result.hourlyRows());
+        Path folder = directory.resolve("2025-09-15_2025-09-21");
+        assertEquals(
+                List.of(folder.resolve("hourly.csv").toString(), folder.resolve("client-payment_type.csv").toString()),
+                result.files()
+        );
+        List<String> hourly = Files.readAllLines(folder.resolve("hourly.csv"));
+        assertEquals(3, hourly.size());
+        assertTrue(hourly.get(0).startsWith("date,window,clientId,paymentTypeCode,pspId,"));
+        assertTrue(hourly.get(1).startsWith("2025-09-15,2025-09-15T10,IO,CP,\"psp,1\",0,0,3,"));
+        List<String> grouped = Files.readAllLines(folder.resolve("client-payment_type.csv"));
+        assertEquals(2, grouped.size());
+        assertTrue(grouped.get(0).startsWith("client,payment_type,OK,KO,"));
+        assertTrue(grouped.get(1).startsWith("IO,CP,7,0,"));
+    }
+
+    @Test
+    void shouldWriteZeroRowsOfWindowsCollectedWithoutTransactions() throws IOException {
+        CollectionCoverageService collectionCoverage = mock(CollectionCoverageService.class);
+        Grouping grouping = Grouping.HOURLY_HEATMAP;
+        when(aggregationService.aggregateByDimensions(eq(START), eq(END), eq(List.of(grouping)), any(), eq(logger)))
+                .thenAnswer(invocation -> {
+                    Consumer<TableEntity> listener = invocation.getArgument(3);
+                    listener.accept(hourlyRow("2025-09-15", 10, "IO", "CP", "psp,1", 3));
+                    return Map.of(grouping, List.of());
+                });
+        // 10:00 is stored, 12:00 was collected without transactions, 11:00 was never collected
+        doAnswer(invocation -> {
+            invocation.<Consumer<TableEntity>>getArgument(2).accept(
+                    CollectionCoverageEntity
+                            .createEntity("IO", START, "CP", "psp,1", (1 << 10) | (1 << 12))
+            );
+            return null;
+        }).when(collectionCoverage).forEachRow(eq(START), eq(END), any());
+
+        ReportExportService.Result result = new ReportExportService(aggregationService, collectionCoverage)
+                .export(START, END, List.of(grouping), true, new LocalDirectoryExportSink(directory), logger);
+
+        assertEquals(2, result.hourlyRows());
+        List<String> hourly = Files.readAllLines(directory.resolve("2025-09-15_2025-09-21/hourly.csv"));
+        assertEquals(3, hourly.size());
+        assertTrue(hourly.get(1).startsWith("2025-09-15,2025-09-15T10,IO,CP,\"psp,1\",0,0,3,"));
+        assertTrue(hourly.get(2).matches("2025-09-15,2025-09-15T12,IO,CP,\"psp,1\"(,0)+"));
+    }
+
+    @Test
+    void shouldExportLegacyRowsWithoutCoverageBit() throws IOException {
+        CollectionCoverageService collectionCoverage = mock(CollectionCoverageService.class);
+        Grouping grouping = Grouping.HOURLY_HEATMAP;
+        TableEntity legacyRow = new TableEntity("2025-09-15", "0f8fad5b-d9cb-469f-a165-70867728950e")
+                .addProperty("clientId", "IO")
+                .addProperty("paymentTypeCode", "CP")
+                .addProperty("pspId", "psp1")
+                .addProperty("NOTIFIED_OK", 2);
+        when(aggregationService.aggregateByDimensions(eq(START), eq(END), eq(List.of(grouping)), any(), eq(logger)))
+                .thenAnswer(invocation -> {
+                    invocation.<Consumer<TableEntity>>getArgument(3).accept(legacyRow);
+                    return Map.of(grouping, List.of());
+                });
+        doAnswer(invocation -> {
+            invocation.<Consumer<TableEntity>>getArgument(2)
+                    .accept(CollectionCoverageEntity.createEntity("IO", START, "CP", "psp1", 1 << 10));
+            return null;
+        }).when(collectionCoverage).forEachRow(eq(START), eq(END), any());
+
+        ReportExportService.Result result = new ReportExportService(aggregationService, collectionCoverage)
+                .export(START, END, List.of(grouping), true, new LocalDirectoryExportSink(directory), logger);
+
+        assertEquals(2, result.hourlyRows());
+        List<String> hourly = Files.readAllLines(directory.resolve("2025-09-15_2025-09-21/hourly.csv"));
+        assertTrue(hourly.get(1).startsWith("2025-09-15,,IO,CP,psp1,0,0,2,"));
+        assertTrue(hourly.get(2).matches("2025-09-15,2025-09-15T10,IO,CP,psp1(,0)+"));
+    }
+
+    @Test
+    void shouldSkipHourlyFileWhenNotRequested() throws IOException {
+        Map<Grouping, List<DimensionalGroup>> groups = Map.of(Grouping.PSP, List.of());
+        when(aggregationService.aggregateByDimensions(START, END, List.of(Grouping.PSP), logger)).thenReturn(groups);
+
+        ReportExportService.Result result = exportService
+                .export(START, END, List.of(Grouping.PSP), false, new LocalDirectoryExportSink(directory), logger);
+
+        assertEquals(0, result.hourlyRows());
+        assertEquals(1, result.files().size());
+        assertFalse(Files.exists(directory.resolve("2025-09-15_2025-09-21/hourly.csv")));
+        List<String> psp = Files.readAllLines(directory.resolve("2025-09-15_2025-09-21/psp.csv"));
+        assertEquals(1, psp.size());
+        assertTrue(psp.get(0).startsWith("payment_type,psp,"));
+    }
+
+    @Test
+    void shouldNotCommitHourlyFileWhenScanFails() {
+        when(aggregationService.aggregateByDimensions(any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("scan failed"));
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> exportService
+                        .export(START, END, List.of(Grouping.PSP), true, new LocalDirectoryExportSink(directory), logger)
+        );
+        assertFalse(Files.exists(directory.resolve("2025-09-15_2025-09-21/hourly.csv")));
+        assertFalse(Files.exists(directory.resolve("2025-09-15_2025-09-21/hourly.csv.part")));
+    }
+
+    private static TableEntity hourlyRow(
+                                         String day,
+                                         int hour,
+                                         String clientId,
+                                         String paymentTypeCode,
+                                         String pspId,
+                                         int notifiedOk
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        return StateMetricEntity.createEntity(
+                LocalDate.parse(day).atTime(hour, 0).atOffset(ZoneOffset.UTC),
+                clientId,
+                paymentTypeCode,
+                pspId,
+                statusVector
+        );
+    }
+}
@@ -0,0 +1,256 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import it.pagopa.ecommerce.reporting.entity.ReportJobEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportJobServiceTest {
+
+    private static final Instant NOW = Instant.parse("2025-10-01T10:00:00Z");
+    private static final LocalDate START = LocalDate.of(2025, 7, 1);
+    private static final LocalDate END = LocalDate.of(2025, 9, 30);
+
+    @Mock
+    private TableClient tableClient;
+
+    @Mock
+    private TransactionStatusAggregationService aggregationService;
+
+    @Mock
+    private PagedIterable<TableEntity> pagedIterable;
+
+    private final AtomicReference<TableEntity> stored = new AtomicReference<>();
+
+    private ReportJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        jobService = new ReportJobService(
+                tableClient,
+                aggregationService,
+                Clock.fixed(NOW, ZoneOffset.UTC),
+                10,
+                Duration.ofMinutes(5)
+        );
+        lenient().doAnswer(invocation -> {
+            stored.set(invocation.getArgument(0));
+            return null;
+        }).when(tableClient).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+        lenient().when(tableClient.getEntity(eq(ReportJobEntity.PARTITION_KEY), any()))
+                .thenAnswer(invocation -> stored.get());
+    }
+
+    @Test
+    void shouldSubmitPendingJob() {
+        String jobId = jobService.submit(START, END, Grouping.CLIENT_PAYMENT_TYPE);
+
+        ArgumentCaptor<TableEntity> captor = ArgumentCaptor.forClass(TableEntity.class);
+        verify(tableClient).createEntity(captor.capture());
+        assertEquals(jobId, captor.getValue().getRowKey());
+        assertEquals(ReportJobEntity.Status.PENDING, ReportJobEntity.status(captor.getValue()));
+        assertEquals("client,payment_type", captor.getValue().getProperty(ReportJobEntity.GROUPING));
+    }
+
+    @Test
+    void shouldRunJobSliceBySliceUntilCompleted() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client,payment_type");
+        stored.set(job);
+        when(aggregationService.aggregateByDimensionsSlice(eq(START), eq(END), any(), any(), eq(10)))
+                .thenAnswer(invocation -> {
+                    invocation.<DimensionalAggregator>getArgument(2)
+                            .add(hourlyRow("IO", "CP", 2));
+                    return invocation.getArgument(3) == null ? "token1" : null;
+                });
+
+        assertTrue(jobService.run(job, NOW.plusSeconds(60)));
+
+        verify(aggregationService).aggregateByDimensionsSlice(any(), any(), any(), isNull(), anyInt());
+        verify(aggregationService).aggregateByDimensionsSlice(any(), any(), any(), eq("token1"), anyInt());
+        verify(tableClient, times(3))
+                .updateEntityWithResponse(any(), eq(TableEntityUpdateMode.REPLACE), eq(true), any(), any());
+        ReportJobService.Job completed = jobService.get("job1").orElseThrow();
+        assertEquals(ReportJobEntity.Status.COMPLETED, completed.status());
+        assertEquals(2, completed.slices());
+        assertEquals(List.of("client", "payment_type"), completed.grouping());
+        assertEquals(1, completed.groups().size());
+        assertEquals(Map.of("client", "IO", "payment_type", "CP"), completed.groups().get(0).dimensions());
+        assertEquals(Map.of(StatusCategory.OK, 4L), completed.groups().get(0).categories());
+    }
+
+    @Test
+    void shouldCheckpointAtDeadlineAndResumeFromIt() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        stored.set(job);
+        when(aggregationService.aggregateByDimensionsSlice(any(), any(), any(), isNull(), anyInt()))
+                .thenAnswer(invocation -> {
+                    invocation.<DimensionalAggregator>getArgument(2).add(hourlyRow("IO", "CP", 3));
+                    return "token1";
+                });
+
+        assertFalse(jobService.run(job, NOW));
+
+        TableEntity checkpoint = stored.get();
+        assertEquals(ReportJobEntity.Status.RUNNING, ReportJobEntity.status(checkpoint));
+        assertEquals("token1", checkpoint.getProperty(ReportJobEntity.CONTINUATION_TOKEN));
+        // released for the next run
+        assertEquals(NOW, ReportJobEntity.leaseUntil(checkpoint).toInstant());
+
+        // stubbed with doAnswer, which does not call the slice already stubbed
+        doAnswer(invocation -> {
+            invocation.<DimensionalAggregator>getArgument(2).add(hourlyRow("IO", "CP", 1));
+            return null;
+        }).when(aggregationService).aggregateByDimensionsSlice(any(), any(), any(), eq("token1"), anyInt());
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(pagedIterable);
+        doAnswer(invocation -> {
+            invocation.<java.util.function.Consumer<TableEntity>>getArgument(0).accept(stored.get());
+            return null;
+        }).when(pagedIterable).forEach(any());
+
+        assertEquals(1, jobService.runPending(Duration.ofMinutes(1)));
+
+        ReportJobService.Job completed = jobService.get("job1").orElseThrow();
+        assertEquals(ReportJobEntity.Status.COMPLETED, completed.status());
+        assertEquals(Map.of(StatusCategory.OK, 4L), completed.groups().get(0).categories());
+    }
+
+    @Test
+    void shouldSkipJobLeasedByAnotherRunner() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        ReportJobEntity.setLeaseUntil(job, NOW.plusSeconds(30).atOffset(ZoneOffset.UTC));
+
+        assertFalse(jobService.run(job, NOW.plusSeconds(60)));
+
+        verifyNoInteractions(aggregationService);
+        verify(tableClient, never()).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void shouldStopWhenLeaseIsTakenConcurrently() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        TableServiceException preconditionFailed = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(412);
+        when(preconditionFailed.getResponse()).thenReturn(response);
+        doThrow(preconditionFailed).when(tableClient).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+
+        assertFalse(jobService.run(job, NOW.plusSeconds(60)));
+
+        verifyNoInteractions(aggregationService);
+    }
+
+    @Test
+    void shouldRecordFailure() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        stored.set(job);
+        when(aggregationService.aggregateByDimensionsSlice(any(), any(), any(), any(), anyInt()))
+                .thenThrow(new IllegalStateException("Invalid report job checkpoint"));
+
+        assertFalse(jobService.run(job, NOW.plusSeconds(60)));
+
+        ReportJobService.Job failed = jobService.get("job1").orElseThrow();
+        assertEquals(ReportJobEntity.Status.FAILED, failed.status());
+        assertEquals("Invalid report job checkpoint", failed.error());
+        assertNull(failed.groups());
+        // the lease and the failure are both written only if the row is unchanged
+        verify(tableClient, times(2))
+                .updateEntityWithResponse(any(), eq(TableEntityUpdateMode.REPLACE), eq(true), any(), any());
+    }
+
+    @Test
+    void shouldLeaveJobToNextRunOnTransientFailure() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        stored.set(job);
+        TableServiceException serverBusy = serviceException(503);
+        when(aggregationService.aggregateByDimensionsSlice(any(), any(), any(), any(), anyInt()))
+                .thenThrow(serverBusy);
+
+        assertFalse(jobService.run(job, NOW.plusSeconds(60)));
+
+        TableEntity leased = stored.get();
+        assertEquals(ReportJobEntity.Status.RUNNING, ReportJobEntity.status(leased));
+        assertNull(leased.getProperty(ReportJobEntity.ERROR));
+        // picked up again once the lease expires
+        assertEquals(NOW.plus(Duration.ofMinutes(5)), ReportJobEntity.leaseUntil(leased).toInstant());
+        verify(tableClient, times(1)).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void shouldNotRecordFailureOfJobTakenOverByAnotherRunner() {
+        TableEntity job = ReportJobEntity.createEntity("job1", START, END, "client");
+        stored.set(job);
+        TableServiceException badRequest = serviceException(400);
+        when(aggregationService.aggregateByDimensionsSlice(any(), any(), any(), any(), anyInt()))
+                .thenAnswer(invocation -> {
+                    stored.set(
+                            ReportJobEntity.createEntity("job1", START, END, "client")
+                                    .addProperty("odata.etag", "W/\"other\"")
+                    );
+                    throw badRequest;
+                });
+
+        assertFalse(jobService.run(job, NOW.plusSeconds(60)));
+
+        assertEquals(ReportJobEntity.Status.PENDING, ReportJobEntity.status(stored.get()));
+        verify(tableClient, times(1)).updateEntityWithResponse(any(), any(), anyBoolean(), any(), any());
+    }
+
+    private static TableServiceException serviceException(int statusCode) {
+        TableServiceException exception = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(statusCode);
+        when(exception.getResponse()).thenReturn(response);
+        return exception;
+    }
+
+    private static TableEntity hourlyRow(
+                                         String clientId,
+                                         String paymentTypeCode,
+                                         int notifiedOk
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        return StateMetricEntity.createEntity(
+                OffsetDateTime.of(2025, 7, 1, 10, 0, 0, 0, ZoneOffset.UTC),
+                clientId,
+                paymentTypeCode,
+                "pspX",
+                statusVector
+        );
+    }
+}
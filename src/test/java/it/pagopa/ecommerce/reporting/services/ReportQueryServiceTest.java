@@ -0,0 +1,208 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportQueryServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2025, 9, 17);
+
+    @Mock
+    private TransactionStatusAggregationService aggregationService;
+
+    @Mock
+    private DailyAggregateCacheService dailyAggregateCache;
+
+    @Mock
+    private Logger logger;
+
+    private final MutableClock clock = new MutableClock(TODAY.atTime(12, 0).toInstant(ZoneOffset.UTC));
+
+    @Test
+    void shouldServeClosedDaysFromMemoryAfterTheFirstQuery() {
+        ReportQueryService service = newService(dailyAggregateCache);
+        LocalDate monday = TODAY.minusDays(2);
+        LocalDate tuesday = TODAY.minusDays(1);
+        when(dailyAggregateCache.load(monday, tuesday)).thenReturn(
+                Map.of(
+                        monday,
+                        List.of(group(monday, "IO", "CP", "psp1", 3), group(monday, "CHECKOUT", "CP", "psp1", 5))
+                )
+        );
+        when(dailyAggregateCache.aggregateDay(tuesday)).thenReturn(List.of(group(tuesday, "IO", "CP", "psp2", 4)));
+
+        ReportQueryService.Result first = service
+                .query(monday, tuesday, "IO", Grouping.parse("payment_type"), logger);
+        ReportQueryService.Result second = service
+                .query(monday, tuesday, "IO", Grouping.parse("payment_type"), logger);
+
+        assertEquals(first, second);
+        assertTrue(first.closed());
+        assertEquals(List.of("payment_type"), first.grouping());
+        assertEquals(1, first.groups().size());
+        ReportQueryService.Row row = first.groups().get(0);
+        assertEquals(Map.of("payment_type", "CP"), row.dimensions());
+        assertEquals(7, row.total());
+        assertEquals(Map.of(StatusCategory.OK, 7L), row.categories());
+        assertEquals(Map.of("NOTIFIED_OK", 7L), row.statuses());
+        verify(dailyAggregateCache, times(1)).load(any(), any());
+        verify(dailyAggregateCache, times(1)).aggregateDay(any());
+        verifyNoInteractions(aggregationService);
+    }
+
+    @Test
+    void shouldReadOpenDayOnceEveryTtl() {
+        ReportQueryService service = newService(null);
+        when(aggregationService.aggregateByDimensions(any(), any(), any(), eq(logger)))
+                .thenAnswer(
+                        invocation -> aggregate(
+                                invocation.getArgument(2),
+                                hourlyRow(invocation.getArgument(0), 10, "IO", "CP", "psp1", 2)
+                        )
+                );
+
+        ReportQueryService.Result result = service
+                .query(TODAY.minusDays(1), TODAY, null, Grouping.parse("day"), logger);
+        service.query(TODAY, TODAY, null, Grouping.parse("day"), logger);
+        clock.advance(Duration.ofSeconds(61));
+        service.query(TODAY, TODAY, null, Grouping.parse("day"), logger);
+
+        assertFalse(result.closed());
+        assertEquals(
+                List.of(Map.of("day", TODAY.minusDays(1).toString()), Map.of("day", TODAY.toString())),
+                result.groups().stream().map(ReportQueryService.Row::dimensions).toList()
+        );
+        verify(aggregationService).aggregateByDimensions(eq(TODAY.minusDays(1)), eq(TODAY.minusDays(1)), any(), any());
+        verify(aggregationService, times(2)).aggregateByDimensions(eq(TODAY), eq(TODAY), any(), any());
+    }
+
+    @Test
+    void shouldRejectRangesLongerThanTheMaximum() {
+        ReportQueryService service = newService(null);
+
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> service.query(TODAY.minusDays(31), TODAY, null, Grouping.CLIENT_PAYMENT_TYPE, logger)
+        );
+        assertTrue(exception.getMessage().contains("32 days"));
+        verifyNoInteractions(aggregationService);
+    }
+
+    @Test
+    void shouldRejectUnsupportedDimensions() {
+        ReportQueryService service = newService(null);
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> service.query(TODAY, TODAY, null, Grouping.HOURLY_HEATMAP, logger)
+        );
+        verifyNoInteractions(aggregationService);
+    }
+
+    private ReportQueryService newService(DailyAggregateCacheService cache) {
+        return new ReportQueryService(
+                aggregationService,
+                cache,
+                clock,
+                Duration.ofHours(1),
+                Duration.ofSeconds(60),
+                10,
+                31
+        );
+    }
+
+    private static Map<Grouping, List<DimensionalGroup>> aggregate(
+                                                                   List<Grouping> groupings,
+                                                                   TableEntity row
+    ) {
+        DimensionalAggregator aggregator = new DimensionalAggregator(groupings);
+        aggregator.add(row);
+        return aggregator.results();
+    }
+
+    private static AggregatedStatusGroup group(
+                                               LocalDate day,
+                                               String clientId,
+                                               String paymentTypeCode,
+                                               String pspId,
+                                               int notifiedOk
+    ) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(day.toString(), clientId, pspId, paymentTypeCode);
+        group.incrementStatus("NOTIFIED_OK", notifiedOk);
+        return group;
+    }
+
+    private static TableEntity hourlyRow(
+                                         LocalDate day,
+                                         int hour,
+                                         String clientId,
+                                         String paymentTypeCode,
+                                         String pspId,
+                                         int notifiedOk
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        return StateMetricEntity.createEntity(
+                day.atTime(hour, 0).atOffset(ZoneOffset.UTC),
+                clientId,
+                paymentTypeCode,
+                pspId,
+                statusVector
+        );
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
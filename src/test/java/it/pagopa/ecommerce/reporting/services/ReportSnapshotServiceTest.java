@@ -0,0 +1,128 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.entity.ReportSnapshotEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ReportSnapshotServiceTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 9, 15);
+    private static final LocalDate END = LocalDate.of(2025, 9, 21);
+    private static final LocalDate PREVIOUS_START = LocalDate.of(2025, 9, 8);
+    private static final LocalDate PREVIOUS_END = LocalDate.of(2025, 9, 14);
+
+    private TableClient tableClient;
+    private ReportSnapshotService snapshotService;
+
+    @BeforeEach
+    void setUp() {
+        tableClient = mock(TableClient.class);
+        snapshotService = new ReportSnapshotService(tableClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PagedIterable<TableEntity> page(TableEntity... entities) {
+        PagedIterable<TableEntity> page = mock(PagedIterable.class);
+        when(page.iterator()).thenReturn(List.of(entities).iterator());
+        return page;
+    }
+
+    private static AggregatedStatusGroup group(
+                                               String paymentTypeCode,
+                                               long notifiedOk
+    ) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "IO", null, paymentTypeCode);
+        group.incrementStatus("NOTIFIED_OK", notifiedOk);
+        return group;
+    }
+
+    @Test
+    void shouldComputeThePreviousPeriodOfTheSameLength() {
+        assertEquals(PREVIOUS_START, ReportSnapshotService.previousStartDate(START, END));
+        assertEquals(LocalDate.of(2025, 9, 14), ReportSnapshotService.previousStartDate(START, START));
+    }
+
+    @Test
+    void shouldLoadThePreviousPeriodWithASingleQuery() {
+        PagedIterable<TableEntity> snapshot = page(
+                ReportSnapshotEntity.createManifest(PREVIOUS_START, PREVIOUS_END, 2),
+                ReportSnapshotEntity.createEntity(PREVIOUS_START, PREVIOUS_END, group("CP", 40)),
+                ReportSnapshotEntity.createEntity(PREVIOUS_START, PREVIOUS_END, group("PPAL", 5))
+        );
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(snapshot);
+
+        Optional<List<AggregatedStatusGroup>> previous = snapshotService.loadPrevious(START, END);
+
+        assertTrue(previous.isPresent());
+        assertEquals(2, previous.get().size());
+        assertEquals(40, previous.get().get(0).getTotal());
+        verify(tableClient).listEntities(
+                argThat(
+                        query -> query.getFilter()
+                                .equals(ReportSnapshotEntity.filter(PREVIOUS_START, PREVIOUS_END))
+                ),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void shouldIgnoreMissingOrIncompleteSnapshots() {
+        PagedIterable<TableEntity> withoutManifest = page(
+                ReportSnapshotEntity.createEntity(START, END, group("CP", 40))
+        );
+        PagedIterable<TableEntity> withMissingGroups = page(
+                ReportSnapshotEntity.createManifest(START, END, 2),
+                ReportSnapshotEntity.createEntity(START, END, group("CP", 40))
+        );
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(withoutManifest, withMissingGroups)
+                .thenThrow(new RuntimeException("unavailable"));
+
+        assertTrue(snapshotService.load(START, END).isEmpty());
+        assertTrue(snapshotService.load(START, END).isEmpty());
+        assertTrue(snapshotService.load(START, END).isEmpty());
+    }
+
+    @Test
+    void shouldStoreGroupsThenManifest() {
+        boolean stored = snapshotService.store(START, END, List.of(group("CP", 40), group("PPAL", 5)));
+
+        assertTrue(stored);
+        verify(tableClient).submitTransaction(argThat(actions -> actions.size() == 2));
+        verify(tableClient).upsertEntity(
+                argThat(
+                        manifest -> ReportSnapshotEntity.isManifest(manifest)
+                                && Integer.valueOf(2).equals(manifest.getProperty(ReportSnapshotEntity.GROUPS))
+                )
+        );
+    }
+
+    @Test
+    void shouldNotStoreManifestWhenGroupsAreNotWritten() {
+        doThrow(new RuntimeException("unavailable")).when(tableClient).submitTransaction(anyList());
+        doThrow(new RuntimeException("unavailable")).when(tableClient)
+                .upsertEntityWithResponse(any(), any(), isNull(), isNull());
+
+        boolean stored = snapshotService.store(START, END, List.of(group("CP", 40)));
+
+        assertFalse(stored);
+        verify(tableClient, never()).upsertEntity(any());
+    }
+}
@@ -0,0 +1,116 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import com.azure.data.tables.models.TableTransactionFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class TableBatchWriterTest {
+
+    private TableClient mockTableClient;
+    private Logger mockLogger;
+    private TableBatchWriter batchWriter;
+
+    @BeforeEach
+    void setUp() {
+        mockTableClient = mock(TableClient.class);
+        mockLogger = mock(Logger.class);
+        batchWriter = new TableBatchWriter(mockTableClient);
+    }
+
+    private static List<TableEntity> entities(
+                                              String partitionKey,
+                                              int count
+    ) {
+        List<TableEntity> entities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entities.add(new TableEntity(partitionKey, "RK" + i).addProperty("count", i));
+        }
+        return entities;
+    }
+
+    @Test
+    void shouldUpsertEntitiesInTransactionsByPartition() {
+        // Given
+        List<TableEntity> entities = new ArrayList<>(entities("2025-04-22", 150));
+        entities.addAll(entities("2025-04-23", 2));
+        List<List<TableTransactionAction>> transactions = new ArrayList<>();
+        doAnswer(invocation -> transactions.add(invocation.getArgument(0)))
+                .when(mockTableClient).submitTransaction(anyList());
+
+        // When
+        int written = batchWriter.upsertEntities(entities, mockLogger);
+
+        // Then
+        assertEquals(152, written);
+        assertEquals(List.of(100, 50, 2), transactions.stream().map(List::size).toList());
+        assertTrue(
+                transactions.stream()
+                        .flatMap(List::stream)
+                        .allMatch(action -> action.getActionType() == TableTransactionActionType.UPSERT_REPLACE)
+        );
+        assertEquals("2025-04-23", transactions.get(2).get(0).getEntity().getPartitionKey());
+        verify(mockTableClient, never()).upsertEntityWithResponse(any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldRetryRejectedActionOnItsOwn() {
+        // Given
+        List<TableEntity> entities = entities("2025-04-22", 3);
+        List<Integer> transactionSizes = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<TableTransactionAction> actions = invocation.getArgument(0);
+            transactionSizes.add(actions.size());
+            if (transactionSizes.size() == 1) {
+                TableTransactionFailedException exception = mock(TableTransactionFailedException.class);
+                when(exception.getFailedTransactionAction()).thenReturn(actions.get(1));
+                throw exception;
+            }
+            return null;
+        }).when(mockTableClient).submitTransaction(anyList());
+
+        // When
+        int written = batchWriter.upsertEntities(entities, mockLogger);
+
+        // Then
+        assertEquals(3, written);
+        assertEquals(List.of(3, 2), transactionSizes);
+        verify(mockTableClient)
+                .upsertEntityWithResponse(eq(entities.get(1)), eq(TableEntityUpdateMode.REPLACE), isNull(), isNull());
+    }
+
+    @Test
+    void shouldCountOnlyWrittenEntitiesWhenTransactionKeepsFailing() {
+        // Given
+        List<TableEntity> entities = entities("2025-04-22", 2);
+        doThrow(new RuntimeException("unavailable")).when(mockTableClient).submitTransaction(anyList());
+        doThrow(new RuntimeException("unavailable")).when(mockTableClient)
+                .upsertEntityWithResponse(eq(entities.get(0)), any(), isNull(), isNull());
+
+        // When
+        int written = batchWriter.upsertEntities(entities, mockLogger);
+
+        // Then
+        assertEquals(1, written);
+        verify(mockTableClient, times(3)).submitTransaction(anyList());
+        verify(mockLogger).warning(contains("Failed to write transaction"));
+        verify(mockLogger).warning(contains("Failed to write entity"));
+    }
+}
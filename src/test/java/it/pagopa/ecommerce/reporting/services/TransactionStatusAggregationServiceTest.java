@@ -3,16 +3,31 @@ package it.pagopa.ecommerce.reporting.services;
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableServiceException;
+import com.azure.core.http.HttpResponse;
 import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
 import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.AggregationDimension;
+import it.pagopa.ecommerce.reporting.utils.DimensionalAggregator;
+import it.pagopa.ecommerce.reporting.utils.DimensionalGroup;
+import it.pagopa.ecommerce.reporting.utils.Grouping;
+import it.pagopa.ecommerce.reporting.utils.StateMetricQueryBuilder;
+import it.pagopa.ecommerce.reporting.utils.StatusCategory;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junitpioneer.jupiter.SetEnvironmentVariable;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import org.slf4j.Logger;
 
@@ -71,11 +86,11 @@ class TransactionStatusAggregationServiceTest {
         assertNull(group.getDate()); // Date should be null for this aggregation
         assertNull(group.getPspId()); // PSP should be null for this aggregation
 
-        Map<String, Integer> counts = group.getStatusCounts();
-        assertEquals(5, counts.get("IN CORSO"));
-        assertEquals(2, counts.get("ABBANDONATO"));
-        assertEquals(3, counts.get("OK"));
-        assertEquals(4, counts.get("KO"));
+        Map<StatusCategory, Long> counts = group.getCategoryCounts();
+        assertEquals(5, counts.get(StatusCategory.IN_PROGRESS));
+        assertEquals(2, counts.get(StatusCategory.ABANDONED));
+        assertEquals(3, counts.get(StatusCategory.OK));
+        assertEquals(4, counts.get(StatusCategory.KO));
         assertEquals(4, counts.size());
 
         // Verify logging
@@ -84,6 +99,22 @@ class TransactionStatusAggregationServiceTest {
         verify(mockLogger).info("[aggregateStatusCountByClientAndPaymentType] Aggregation filtered {}", 1);
     }
 
+    @Test
+    void testAggregateStatusCountByClientAndPaymentTypeReadsNothingForInvertedRange() {
+        // Given
+        LocalDate startDate = LocalDate.of(2025, 9, 2);
+        LocalDate endDate = LocalDate.of(2025, 9, 1);
+
+        // When
+        List<AggregatedStatusGroup> result = service
+                .aggregateStatusCountByClientAndPaymentType(startDate, endDate, mockLogger);
+
+        // Then
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(mockTableClient);
+        verify(mockLogger).warn(anyString(), any(), any(), any());
+    }
+
     @Test
     void testAggregateStatusCountByClientAndPaymentTypeFiltersEmptyGroups() {
         // Given
@@ -124,9 +155,9 @@ class TransactionStatusAggregationServiceTest {
         assertEquals("clientActive", group.getClientId());
         assertEquals("PT2", group.getPaymentTypeCode());
 
-        Map<String, Integer> counts = group.getStatusCounts();
-        assertEquals(3, counts.get("IN CORSO"));
-        assertEquals(2, counts.get("OK"));
+        Map<StatusCategory, Long> counts = group.getCategoryCounts();
+        assertEquals(3, counts.get(StatusCategory.IN_PROGRESS));
+        assertEquals(2, counts.get(StatusCategory.OK));
         assertEquals(2, counts.size());
     }
 
@@ -156,14 +187,14 @@ class TransactionStatusAggregationServiceTest {
         // Then
         assertEquals(1, result.size());
         AggregatedStatusGroup group = result.get(0);
-        Map<String, Integer> counts = group.getStatusCounts();
+        Map<StatusCategory, Long> counts = group.getCategoryCounts();
 
         // Only ACTIVATED should be mapped to "IN CORSO"
-        assertEquals(3, counts.get("IN CORSO"));
+        assertEquals(3, counts.get(StatusCategory.IN_PROGRESS));
         assertEquals(1, counts.size());
 
-        // UNKNOWN_STATUS should be ignored since it's not in STATUS_TO_CATEGORY mapping
-        assertFalse(counts.containsKey("UNKNOWN_STATUS"));
+        // UNKNOWN_STATUS should be ignored since it's not a stored status
+        assertEquals(3, group.getTotal());
     }
 
     @Test
@@ -204,16 +235,16 @@ class TransactionStatusAggregationServiceTest {
         assertEquals("clientA", group.getClientId());
         assertEquals("PT1", group.getPaymentTypeCode());
 
-        Map<String, Integer> counts = group.getStatusCounts();
+        Map<StatusCategory, Long> counts = group.getCategoryCounts();
 
         // Verify category aggregation
-        assertEquals(5, counts.get("IN CORSO")); // ACTIVATED
-        assertEquals(2, counts.get("ABBANDONATO")); // CANCELED
-        assertEquals(3, counts.get("OK")); // NOTIFIED_OK
-        assertEquals(4, counts.get("KO")); // UNAUTHORIZED
+        assertEquals(5, counts.get(StatusCategory.IN_PROGRESS)); // ACTIVATED
+        assertEquals(2, counts.get(StatusCategory.ABANDONED)); // CANCELED
+        assertEquals(3, counts.get(StatusCategory.OK)); // NOTIFIED_OK
+        assertEquals(4, counts.get(StatusCategory.KO)); // UNAUTHORIZED
 
         // Verify that zero-count statuses are filtered out
-        assertFalse(counts.containsKey("CLOSED"));
+        assertEquals(0, group.getStatusCount(StatusStorageFields.indexOf("CLOSED")));
 
         // Verify total categories size (only the non-zero categories remain)
         assertEquals(4, counts.size());
@@ -229,4 +260,606 @@ class TransactionStatusAggregationServiceTest {
         TransactionStatusAggregationService defaultService = new TransactionStatusAggregationService();
         assertNotNull(defaultService);
     }
+
+    @Test
+    void testGetStateMetricWithPointRead() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        TableEntity entity = new TableEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX");
+        when(mockTableClient.getEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX")).thenReturn(entity);
+
+        Optional<TableEntity> result = service.getStateMetric("clientA", "PT1", "pspX", windowStart);
+
+        assertSame(entity, result.orElseThrow());
+        verify(mockTableClient, never()).listEntities(any(ListEntitiesOptions.class), any(), any());
+    }
+
+    @Test
+    void testGetStateMetricNotFound() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        TableServiceException notFound = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(404);
+        when(notFound.getResponse()).thenReturn(response);
+        when(mockTableClient.getEntity(anyString(), anyString())).thenThrow(notFound);
+
+        assertTrue(service.getStateMetric("clientA", "PT1", "pspX", windowStart).isEmpty());
+    }
+
+    @Test
+    void testGetStateMetricFromWideRow() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "clientA");
+        StateMetricEntity.setRows(
+                wide,
+                List.of(
+                        StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspX", counts),
+                        StateMetricEntity.createEntity(windowStart, "clientA", "PT2", "pspY", counts)
+                )
+        );
+        TableServiceException notFound = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(404);
+        when(notFound.getResponse()).thenReturn(response);
+        when(mockTableClient.getEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX")).thenThrow(notFound);
+        when(mockTableClient.getEntity("2025-09-01", "clientA|2025-09-01T10|")).thenReturn(wide);
+
+        TableEntity result = service.getStateMetric("clientA", "PT1", "pspX", windowStart).orElseThrow();
+
+        assertEquals("clientA|2025-09-01T10|PT1|pspX", result.getRowKey());
+        assertEquals(3L, ((Number) result.getProperty("NOTIFIED_OK")).longValue());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_STORAGE_LAYOUT", value = "wide")
+    void testGetStateMetricReadsWideRowFirstWithWideLayout() {
+        TransactionStatusAggregationService service = new TransactionStatusAggregationService(mockTableClient);
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector counts = new StatusVector();
+        counts.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "clientA");
+        StateMetricEntity.setRows(
+                wide,
+                List.of(StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspX", counts))
+        );
+        when(mockTableClient.getEntity("2025-09-01", "clientA|2025-09-01T10|")).thenReturn(wide);
+
+        TableEntity result = service.getStateMetric("clientA", "PT1", "pspX", windowStart).orElseThrow();
+
+        assertEquals(3L, ((Number) result.getProperty("NOTIFIED_OK")).longValue());
+        // the narrow row folded into the wide row is not read
+        verify(mockTableClient, never()).getEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX");
+    }
+
+    @Test
+    void testAggregateExpandsWideRowsSkippingFoldedNarrowRows() {
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector ok = new StatusVector();
+        ok.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        StatusVector ko = new StatusVector();
+        ko.set(StatusStorageFields.indexOf("UNAUTHORIZED"), 4);
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "clientA");
+        StateMetricEntity.setRows(
+                wide,
+                List.of(
+                        StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspX", ok),
+                        StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspY", ko)
+                )
+        );
+        // a narrow row folded into the wide row, not deleted yet
+        TableEntity folded = StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspX", ok);
+        when(mockPagedIterable.iterator()).thenReturn(List.of(wide, folded).iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        List<AggregatedStatusGroup> result = service
+                .aggregateStatusCountByClientAndPaymentType(
+                        LocalDate.of(2025, 9, 1),
+                        LocalDate.of(2025, 9, 1),
+                        mockLogger
+                );
+
+        assertEquals(1, result.size());
+        assertEquals("clientA", result.get(0).getClientId());
+        assertEquals(3, result.get(0).getCategoryCounts().get(StatusCategory.OK));
+        assertEquals(4, result.get(0).getCategoryCounts().get(StatusCategory.KO));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_SUB_RANGES", value = "1")
+    void testAggregateReadsWholeRangeWithSingleProjectedQuery() {
+        // Given
+        TransactionStatusAggregationService service = new TransactionStatusAggregationService(mockTableClient);
+        LocalDate startDate = LocalDate.of(2025, 9, 1);
+        LocalDate endDate = LocalDate.of(2025, 9, 7);
+        when(mockPagedIterable.iterator()).thenReturn(Collections.emptyIterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        // When
+        service.aggregateStatusCountByClientAndPaymentType(startDate, endDate, mockLogger);
+
+        // Then
+        ArgumentCaptor<ListEntitiesOptions> queryCaptor = ArgumentCaptor.forClass(ListEntitiesOptions.class);
+        verify(mockTableClient, times(1)).listEntities(queryCaptor.capture(), isNull(), isNull());
+        ListEntitiesOptions query = queryCaptor.getValue();
+        assertEquals("PartitionKey ge '2025-09-01' and PartitionKey le '2025-09-07'", query.getFilter());
+        assertEquals(StateMetricQueryBuilder.PROJECTION, query.getSelect());
+        assertEquals(StateMetricQueryBuilder.MAX_PAGE_SIZE, query.getTop());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_PREFETCH_PAGES", value = "2")
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_PAGE_SIZE", value = "2")
+    void testAggregateStreamsPrefetchedPages() {
+        // Given
+        TransactionStatusAggregationService prefetchingService = new TransactionStatusAggregationService(
+                mockTableClient
+        );
+        List<TableEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            TableEntity entity = new TableEntity("2025-09-01", "row" + i);
+            entity.addProperty("clientId", "clientA");
+            entity.addProperty("paymentTypeCode", i % 2 == 0 ? "PT1" : "PT2");
+            entity.addProperty("NOTIFIED_OK", 1);
+            entities.add(entity);
+        }
+        when(mockPagedIterable.iterator()).thenReturn(entities.iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        // When
+        List<AggregatedStatusGroup> result = prefetchingService.aggregateStatusCountByClientAndPaymentType(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 1),
+                mockLogger
+        );
+
+        // Then
+        Map<String, AggregatedStatusGroup> byPaymentType = new HashMap<>();
+        result.forEach(group -> byPaymentType.put(group.getPaymentTypeCode(), group));
+        assertEquals(3, byPaymentType.get("PT1").getCategoryCount(StatusCategory.OK));
+        assertEquals(2, byPaymentType.get("PT2").getCategoryCount(StatusCategory.OK));
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_SUB_RANGES", value = "2")
+    void testAggregateMergesParallelSubRanges() {
+        // Given
+        TransactionStatusAggregationService parallelService = new TransactionStatusAggregationService(
+                mockTableClient
+        );
+        LocalDate startDate = LocalDate.of(2025, 9, 1);
+        LocalDate endDate = LocalDate.of(2025, 9, 4);
+
+        TableEntity firstHalf = new TableEntity("2025-09-01", "row1");
+        firstHalf.addProperty("clientId", "clientA");
+        firstHalf.addProperty("paymentTypeCode", "PT1");
+        firstHalf.addProperty("NOTIFIED_OK", 3);
+        TableEntity secondHalf = new TableEntity("2025-09-04", "row2");
+        secondHalf.addProperty("clientId", "clientA");
+        secondHalf.addProperty("paymentTypeCode", "PT1");
+        secondHalf.addProperty("NOTIFIED_OK", 4);
+        secondHalf.addProperty("UNAUTHORIZED", 1);
+
+        PagedIterable<TableEntity> firstPage = mock(PagedIterable.class);
+        when(firstPage.iterator()).thenReturn(List.of(firstHalf).iterator());
+        PagedIterable<TableEntity> secondPage = mock(PagedIterable.class);
+        when(secondPage.iterator()).thenReturn(List.of(secondHalf).iterator());
+        when(
+                mockTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().startsWith("PartitionKey ge '2025-09-01'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(firstPage);
+        when(
+                mockTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().startsWith("PartitionKey ge '2025-09-03'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(secondPage);
+
+        // When
+        List<AggregatedStatusGroup> result = parallelService
+                .aggregateStatusCountByClientAndPaymentType(startDate, endDate, mockLogger);
+
+        // Then
+        assertEquals(1, result.size());
+        Map<StatusCategory, Long> counts = result.get(0).getCategoryCounts();
+        assertEquals(7, counts.get(StatusCategory.OK));
+        assertEquals(1, counts.get(StatusCategory.KO));
+        assertEquals(2, counts.size());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_SUB_RANGES", value = "4")
+    void testAggregateSplitsLongRangesIntoForkJoinTasks() {
+        // Given
+        TransactionStatusAggregationService parallelService = new TransactionStatusAggregationService(
+                mockTableClient
+        );
+        LocalDate startDate = LocalDate.of(2025, 9, 1);
+        LocalDate endDate = LocalDate.of(2025, 11, 30);
+        Map<String, PagedIterable<TableEntity>> pagesByFilter = new HashMap<>();
+        for (String from : List.of("2025-09-01", "2025-09-24", "2025-10-17", "2025-11-09")) {
+            TableEntity entity = new TableEntity(from, "row");
+            entity.addProperty("clientId", "clientA");
+            entity.addProperty("paymentTypeCode", "PT1");
+            entity.addProperty("NOTIFIED_OK", 1);
+            PagedIterable<TableEntity> page = mock(PagedIterable.class);
+            when(page.iterator()).thenReturn(List.of(entity).iterator());
+            pagesByFilter.put("PartitionKey ge '" + from + "'", page);
+        }
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenAnswer(
+                        invocation -> pagesByFilter
+                                .get(invocation.<ListEntitiesOptions>getArgument(0).getFilter().substring(0, 28))
+                );
+
+        // When
+        List<AggregatedStatusGroup> result = parallelService
+                .aggregateStatusCountByClientAndPaymentType(startDate, endDate, mockLogger);
+
+        // Then
+        verify(mockTableClient, times(4)).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+        assertEquals(1, result.size());
+        assertEquals(4, result.get(0).getCategoryCount(StatusCategory.OK));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_QUERY_SUB_RANGES", value = "2")
+    void testAggregateByDimensionsComputesGroupingsInOneScan() {
+        // Given
+        TransactionStatusAggregationService parallelService = new TransactionStatusAggregationService(
+                mockTableClient
+        );
+        TableEntity firstHalf = new TableEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX")
+                .addProperty("clientId", "clientA")
+                .addProperty("paymentTypeCode", "PT1")
+                .addProperty("pspId", "pspX")
+                .addProperty("NOTIFIED_OK", 3);
+        TableEntity secondHalf = new TableEntity("2025-09-04", "clientA|2025-09-04T10|PT1|pspY")
+                .addProperty("clientId", "clientA")
+                .addProperty("paymentTypeCode", "PT1")
+                .addProperty("pspId", "pspY")
+                .addProperty("NOTIFIED_OK", 4);
+        PagedIterable<TableEntity> firstPage = mock(PagedIterable.class);
+        when(firstPage.iterator()).thenReturn(List.of(firstHalf).iterator());
+        PagedIterable<TableEntity> secondPage = mock(PagedIterable.class);
+        when(secondPage.iterator()).thenReturn(List.of(secondHalf).iterator());
+        when(
+                mockTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().startsWith("PartitionKey ge '2025-09-01'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(firstPage);
+        when(
+                mockTableClient.listEntities(
+                        argThat(query -> query != null && query.getFilter().startsWith("PartitionKey ge '2025-09-03'")),
+                        isNull(),
+                        isNull()
+                )
+        ).thenReturn(secondPage);
+
+        // When
+        Map<Grouping, List<DimensionalGroup>> result = parallelService.aggregateByDimensions(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 4),
+                List.of(Grouping.CLIENT_PAYMENT_TYPE, Grouping.PSP, Grouping.HOURLY_HEATMAP),
+                mockLogger
+        );
+
+        // Then
+        assertEquals(1, result.get(Grouping.CLIENT_PAYMENT_TYPE).size());
+        assertEquals(7, result.get(Grouping.CLIENT_PAYMENT_TYPE).get(0).getCounts().getCategoryCount(StatusCategory.OK));
+        assertEquals(2, result.get(Grouping.PSP).size());
+        assertEquals(2, result.get(Grouping.HOURLY_HEATMAP).size());
+        assertTrue(
+                result.get(Grouping.HOURLY_HEATMAP)
+                        .stream()
+                        .allMatch(group -> "10".equals(group.get(AggregationDimension.HOUR_OF_DAY)))
+        );
+        ArgumentCaptor<ListEntitiesOptions> queryCaptor = ArgumentCaptor.forClass(ListEntitiesOptions.class);
+        verify(mockTableClient, times(2)).listEntities(queryCaptor.capture(), isNull(), isNull());
+        assertTrue(queryCaptor.getValue().getSelect().containsAll(List.of("pspId", "RowKey", "PartitionKey")));
+    }
+
+    @Test
+    void testAggregateByDimensionsPassesScannedRowsToListener() {
+        // Given
+        TableEntity row = new TableEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX")
+                .addProperty("clientId", "clientA")
+                .addProperty("paymentTypeCode", "PT1")
+                .addProperty("pspId", "pspX")
+                .addProperty("NOTIFIED_OK", 3);
+        when(mockPagedIterable.iterator()).thenReturn(List.of(row).iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+        List<TableEntity> scanned = new ArrayList<>();
+
+        // When
+        Map<Grouping, List<DimensionalGroup>> result = service.aggregateByDimensions(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 1),
+                List.of(Grouping.HOURLY_HEATMAP),
+                scanned::add,
+                mockLogger
+        );
+
+        // Then
+        assertEquals(List.of(row), scanned);
+        assertEquals(1, result.get(Grouping.HOURLY_HEATMAP).size());
+        ArgumentCaptor<ListEntitiesOptions> queryCaptor = ArgumentCaptor.forClass(ListEntitiesOptions.class);
+        verify(mockTableClient).listEntities(queryCaptor.capture(), isNull(), isNull());
+        // the listener gets every column of the raw rows, not just the grouped ones
+        assertTrue(queryCaptor.getValue().getSelect().containsAll(StateMetricQueryBuilder.ROW_PROJECTION));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAggregateByDimensionsSliceResumesFromContinuationToken() {
+        // Given
+        TableEntity row = new TableEntity("2025-09-01", "clientA|2025-09-01T10|PT1|pspX")
+                .addProperty("clientId", "clientA")
+                .addProperty("paymentTypeCode", "PT1")
+                .addProperty("NOTIFIED_OK", 3);
+        PagedResponse<TableEntity> firstPage = mock(PagedResponse.class);
+        when(firstPage.getValue()).thenReturn(List.of(row));
+        when(firstPage.getContinuationToken()).thenReturn("token2");
+        PagedResponse<TableEntity> secondPage = mock(PagedResponse.class);
+        when(mockPagedIterable.iterableByPage("token1")).thenReturn(List.of(firstPage, secondPage));
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+        DimensionalAggregator aggregator = new DimensionalAggregator(List.of(Grouping.CLIENT_PAYMENT_TYPE));
+
+        // When
+        String next = service.aggregateByDimensionsSlice(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 30),
+                aggregator,
+                "token1",
+                1
+        );
+
+        // Then
+        assertEquals("token2", next);
+        List<DimensionalGroup> groups = aggregator.results().get(Grouping.CLIENT_PAYMENT_TYPE);
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).getCounts().getCategoryCount(StatusCategory.OK));
+        verify(secondPage, never()).getValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    @SetEnvironmentVariable(key = "ECOMMERCE_REPORTING_STORAGE_LAYOUT", value = "wide")
+    void testAggregateByDimensionsSliceSkipsRowsFoldedIntoWideRowOfPreviousSlice() {
+        // Given
+        TransactionStatusAggregationService service = new TransactionStatusAggregationService(mockTableClient);
+        OffsetDateTime windowStart = OffsetDateTime.of(2025, 9, 1, 10, 0, 0, 0, ZoneOffset.UTC);
+        StatusVector ok = new StatusVector();
+        ok.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 3);
+        TableEntity folded = StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspX", ok);
+        TableEntity notFolded = StateMetricEntity.createEntity(windowStart, "clientA", "PT1", "pspY", ok);
+        // the wide row has been read by the previous slice
+        TableEntity wide = StateMetricEntity.createWideEntity(windowStart, "clientA");
+        StateMetricEntity.setRows(wide, List.of(folded));
+        when(mockTableClient.getEntity("2025-09-01", "clientA|2025-09-01T10|")).thenReturn(wide);
+        PagedResponse<TableEntity> page = mock(PagedResponse.class);
+        when(page.getValue()).thenReturn(List.of(folded, notFolded));
+        when(mockPagedIterable.iterableByPage("token1")).thenReturn(List.of(page));
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+        DimensionalAggregator aggregator = new DimensionalAggregator(List.of(Grouping.PSP));
+
+        // When
+        String next = service.aggregateByDimensionsSlice(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 30),
+                aggregator,
+                "token1",
+                1
+        );
+
+        // Then
+        assertNull(next);
+        List<DimensionalGroup> groups = aggregator.results().get(Grouping.PSP);
+        assertEquals(1, groups.size());
+        assertEquals("pspY", groups.get(0).get(AggregationDimension.PSP));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAggregateByDimensionsSliceReturnsNullAtEndOfRange() {
+        // Given
+        PagedResponse<TableEntity> lastPage = mock(PagedResponse.class);
+        when(lastPage.getValue()).thenReturn(List.of());
+        when(mockPagedIterable.iterableByPage((String) isNull())).thenReturn(List.of(lastPage));
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        // When
+        String next = service.aggregateByDimensionsSlice(
+                LocalDate.of(2025, 9, 1),
+                LocalDate.of(2025, 9, 30),
+                new DimensionalAggregator(List.of(Grouping.PSP)),
+                null,
+                10
+        );
+
+        // Then
+        assertNull(next);
+        ArgumentCaptor<ListEntitiesOptions> queryCaptor = ArgumentCaptor.forClass(ListEntitiesOptions.class);
+        verify(mockTableClient).listEntities(queryCaptor.capture(), isNull(), isNull());
+        assertTrue(queryCaptor.getValue().getSelect().contains("pspId"));
+    }
+
+    private static AggregatedStatusGroup dailyGroup(
+                                                    String paymentTypeCode,
+                                                    String pspId,
+                                                    String status,
+                                                    long count
+    ) {
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "clientA", pspId, paymentTypeCode);
+        group.incrementStatus(status, count);
+        return group;
+    }
+
+    @Test
+    void testAggregateReadsClosedDaysFromDailyCache() {
+        // Given
+        DailyAggregateCacheService dailyCache = mock(DailyAggregateCacheService.class);
+        TransactionStatusAggregationService cachedService = new TransactionStatusAggregationService(
+                mockTableClient,
+                dailyCache
+        );
+        LocalDate startDate = LocalDate.of(2025, 9, 1);
+        LocalDate endDate = LocalDate.of(2025, 9, 3);
+        when(dailyCache.load(startDate, endDate))
+                .thenReturn(Map.of(startDate, List.of(dailyGroup("PT1", "pspX", "NOTIFIED_OK", 3))));
+        when(dailyCache.aggregateDay(LocalDate.of(2025, 9, 2)))
+                .thenReturn(List.of(dailyGroup("PT1", "pspY", "NOTIFIED_OK", 2)));
+        when(dailyCache.aggregateDay(endDate))
+                .thenReturn(List.of(dailyGroup("PT2", "pspX", "UNAUTHORIZED", 1)));
+
+        // When
+        List<AggregatedStatusGroup> result = cachedService
+                .aggregateStatusCountByClientAndPaymentType(startDate, endDate, mockLogger);
+
+        // Then
+        assertEquals(2, result.size());
+        Map<String, AggregatedStatusGroup> byPaymentType = new HashMap<>();
+        result.forEach(group -> byPaymentType.put(group.getPaymentTypeCode(), group));
+        assertEquals(5, byPaymentType.get("PT1").getCategoryCount(StatusCategory.OK));
+        assertNull(byPaymentType.get("PT1").getPspId());
+        assertEquals(1, byPaymentType.get("PT2").getCategoryCount(StatusCategory.KO));
+        verify(dailyCache, never()).aggregateDay(startDate);
+        verify(mockTableClient, never()).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+        verify(mockLogger)
+                .info("[aggregateStatusCountByClientAndPaymentType] Daily aggregates cached {}, missing {}", 1, 2);
+    }
+
+    @Test
+    void testAggregateReadsOpenDaysFromHourlyRows() {
+        // Given
+        DailyAggregateCacheService dailyCache = mock(DailyAggregateCacheService.class);
+        TransactionStatusAggregationService cachedService = new TransactionStatusAggregationService(
+                mockTableClient,
+                dailyCache
+        );
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate yesterday = today.minusDays(1);
+        when(dailyCache.load(yesterday, yesterday))
+                .thenReturn(Map.of(yesterday, List.of(dailyGroup("PT1", "pspX", "NOTIFIED_OK", 3))));
+        TableEntity entity = new TableEntity(today.toString(), "row1");
+        entity.addProperty("clientId", "clientA");
+        entity.addProperty("paymentTypeCode", "PT1");
+        entity.addProperty("NOTIFIED_OK", 4);
+        when(mockPagedIterable.iterator()).thenReturn(List.of(entity).iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        // When
+        List<AggregatedStatusGroup> result = cachedService
+                .aggregateStatusCountByClientAndPaymentType(yesterday, today, mockLogger);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(7, result.get(0).getCategoryCount(StatusCategory.OK));
+        verify(dailyCache, never()).aggregateDay(any());
+        verify(mockTableClient).listEntities(
+                argThat(query -> query.getFilter().startsWith("PartitionKey ge '" + today + "'")),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void testAggregateReadsClosedWeekFromWeeklyAggregates() {
+        // Given
+        DailyAggregateCacheService dailyCache = mock(DailyAggregateCacheService.class);
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        TransactionStatusAggregationService weeklyService = new TransactionStatusAggregationService(
+                mockTableClient,
+                dailyCache,
+                weeklyAggregates
+        );
+        LocalDate monday = LocalDate.of(2025, 9, 1);
+        when(weeklyAggregates.load(monday)).thenReturn(
+                Optional.of(
+                        List.of(
+                                dailyGroup("PT1", null, "NOTIFIED_OK", 30),
+                                dailyGroup("PT2", null, "ACTIVATED", 0)
+                        )
+                )
+        );
+
+        // When
+        List<AggregatedStatusGroup> result = weeklyService
+                .aggregateStatusCountByClientAndPaymentType(monday, monday.plusDays(6), mockLogger);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(30, result.get(0).getCategoryCount(StatusCategory.OK));
+        verifyNoInteractions(dailyCache);
+        verify(mockTableClient, never()).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+    }
+
+    @Test
+    void testAggregateFallsBackWhenWeeklyAggregatesAreIncomplete() {
+        // Given
+        DailyAggregateCacheService dailyCache = mock(DailyAggregateCacheService.class);
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        TransactionStatusAggregationService weeklyService = new TransactionStatusAggregationService(
+                mockTableClient,
+                dailyCache,
+                weeklyAggregates
+        );
+        LocalDate monday = LocalDate.of(2025, 9, 1);
+        LocalDate sunday = monday.plusDays(6);
+        when(weeklyAggregates.load(monday)).thenReturn(Optional.empty());
+        when(dailyCache.load(monday, sunday)).thenReturn(
+                Map.of(
+                        monday,
+                        List.of(dailyGroup("PT1", "pspX", "NOTIFIED_OK", 3))
+                )
+        );
+
+        // When
+        List<AggregatedStatusGroup> result = weeklyService
+                .aggregateStatusCountByClientAndPaymentType(monday, sunday, mockLogger);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(3, result.get(0).getCategoryCount(StatusCategory.OK));
+        verify(dailyCache, times(6)).aggregateDay(any());
+    }
+
+    @Test
+    void testAggregateReadsOnlyWholeWeeksFromWeeklyAggregates() {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        TransactionStatusAggregationService weeklyService = new TransactionStatusAggregationService(
+                mockTableClient,
+                null,
+                weeklyAggregates
+        );
+        when(mockPagedIterable.iterator()).thenReturn(Collections.emptyIterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenReturn(mockPagedIterable);
+
+        // When
+        weeklyService.aggregateStatusCountByClientAndPaymentType(
+                LocalDate.of(2025, 9, 2),
+                LocalDate.of(2025, 9, 8),
+                mockLogger
+        );
+
+        // Then
+        verifyNoInteractions(weeklyAggregates);
+    }
 }
@@ -0,0 +1,274 @@
+package it.pagopa.ecommerce.reporting.services;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.entity.WeeklyAggregateEntity;
+import it.pagopa.ecommerce.reporting.utils.AggregatedStatusGroup;
+import it.pagopa.ecommerce.reporting.utils.StatusStorageFields;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class WeeklyAggregateServiceTest {
+
+    private static final OffsetDateTime WINDOW_START = OffsetDateTime.of(2025, 9, 3, 10, 0, 0, 0, ZoneOffset.UTC);
+
+    private TableClient tableClient;
+    private Logger logger;
+    private WeeklyAggregateService weeklyAggregates;
+
+    @BeforeEach
+    void setUp() {
+        tableClient = mock(TableClient.class);
+        logger = mock(Logger.class);
+        weeklyAggregates = new WeeklyAggregateService(tableClient);
+    }
+
+    private static TableServiceException serviceException(int statusCode) {
+        TableServiceException exception = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(statusCode);
+        when(exception.getResponse()).thenReturn(response);
+        return exception;
+    }
+
+    private static TableEntity hourlyRow(
+                                         String pspId,
+                                         long notifiedOk
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf("NOTIFIED_OK"), notifiedOk);
+        return StateMetricEntity.createEntity(WINDOW_START, "IO", "CP", pspId, statusVector);
+    }
+
+    private static TableEntity weeklyRow(long notifiedOk) {
+        AggregatedStatusGroup counts = new AggregatedStatusGroup(null, "IO", null, "CP");
+        counts.incrementStatus("NOTIFIED_OK", notifiedOk);
+        TableEntity row = WeeklyAggregateEntity.createEntity("2025-W36", "IO", "CP");
+        WeeklyAggregateEntity.addCounts(row, counts);
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PagedIterable<TableEntity> page(TableEntity... entities) {
+        PagedIterable<TableEntity> page = mock(PagedIterable.class);
+        when(page.iterator()).thenReturn(List.of(entities).iterator());
+        return page;
+    }
+
+    @Test
+    void shouldCreateMissingWeeklyRows() {
+        TableServiceException notFound = serviceException(404);
+        when(tableClient.getEntity(any(), any())).thenThrow(notFound);
+
+        int failed = weeklyAggregates.merge(List.of(hourlyRow("pspX", 4), hourlyRow("pspY", 6)), Map.of(), logger);
+
+        assertEquals(0, failed);
+        verify(tableClient).createEntity(
+                argThat(
+                        row -> WeeklyAggregateEntity.MARKER_ROW_KEY.equals(row.getRowKey())
+                                && "2025-W36".equals(row.getPartitionKey())
+                                && "2025-09-03T10:00:00Z"
+                                        .equals(row.getProperty(WeeklyAggregateEntity.FIRST_WINDOW_START))
+                )
+        );
+        verify(tableClient).createEntity(
+                argThat(row -> "IO|CP".equals(row.getRowKey()) && Long.valueOf(10).equals(row.getProperty("NOTIFIED_OK")))
+        );
+    }
+
+    @Test
+    void shouldMergeOnlyChangesOfReplacedRows() {
+        OffsetDateTime earlier = WINDOW_START.minusDays(1);
+        when(tableClient.getEntity("2025-W36", WeeklyAggregateEntity.MARKER_ROW_KEY))
+                .thenReturn(WeeklyAggregateEntity.createMarker("2025-W36", earlier));
+        when(tableClient.getEntity("2025-W36", "IO|CP")).thenReturn(weeklyRow(100));
+        TableEntity replaced = hourlyRow("pspX", 4);
+
+        int failed = weeklyAggregates.merge(
+                List.of(hourlyRow("pspX", 5)),
+                Map.of(replaced.getRowKey(), replaced),
+                logger
+        );
+
+        assertEquals(0, failed);
+        verify(tableClient).updateEntityWithResponse(
+                argThat(
+                        row -> "IO|CP".equals(row.getRowKey()) && Long.valueOf(101).equals(row.getProperty("NOTIFIED_OK"))
+                ),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
+        // the marker keeps the earlier window
+        verify(tableClient).updateEntityWithResponse(
+                argThat(
+                        row -> WeeklyAggregateEntity.MARKER_ROW_KEY.equals(row.getRowKey())
+                                && earlier.isEqual(WeeklyAggregateEntity.firstWindowStart(row))
+                ),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
+        verify(tableClient, never()).createEntity(any());
+    }
+
+    @Test
+    void shouldSkipUnchangedRows() {
+        when(tableClient.getEntity("2025-W36", WeeklyAggregateEntity.MARKER_ROW_KEY))
+                .thenReturn(WeeklyAggregateEntity.createMarker("2025-W36", WINDOW_START));
+        TableEntity replaced = hourlyRow("pspX", 4);
+
+        weeklyAggregates.merge(List.of(hourlyRow("pspX", 4)), Map.of(replaced.getRowKey(), replaced), logger);
+
+        verify(tableClient, never()).getEntity("2025-W36", "IO|CP");
+    }
+
+    @Test
+    void shouldRetryOnEtagConflict() {
+        when(tableClient.getEntity("2025-W36", WeeklyAggregateEntity.MARKER_ROW_KEY))
+                .thenReturn(WeeklyAggregateEntity.createMarker("2025-W36", WINDOW_START));
+        when(tableClient.getEntity("2025-W36", "IO|CP")).thenReturn(weeklyRow(10), weeklyRow(12));
+        TableServiceException preconditionFailed = serviceException(412);
+        doThrow(preconditionFailed).doReturn(null).when(tableClient).updateEntityWithResponse(
+                argThat(row -> "IO|CP".equals(row.getRowKey())),
+                any(),
+                anyBoolean(),
+                any(),
+                any()
+        );
+
+        int failed = weeklyAggregates.merge(List.of(hourlyRow("pspX", 3)), Map.of(), logger);
+
+        assertEquals(0, failed);
+        verify(tableClient, times(2)).getEntity("2025-W36", "IO|CP");
+        verify(tableClient).updateEntityWithResponse(
+                argThat(row -> "IO|CP".equals(row.getRowKey()) && Long.valueOf(15).equals(row.getProperty("NOTIFIED_OK"))),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxConflicts() {
+        when(tableClient.getEntity("2025-W36", WeeklyAggregateEntity.MARKER_ROW_KEY))
+                .thenReturn(WeeklyAggregateEntity.createMarker("2025-W36", WINDOW_START));
+        when(tableClient.getEntity("2025-W36", "IO|CP")).thenAnswer(invocation -> weeklyRow(10));
+        TableServiceException preconditionFailed = serviceException(412);
+        doThrow(preconditionFailed).when(tableClient).updateEntityWithResponse(
+                argThat(row -> "IO|CP".equals(row.getRowKey())),
+                any(),
+                anyBoolean(),
+                any(),
+                any()
+        );
+
+        int failed = weeklyAggregates.merge(List.of(hourlyRow("pspX", 3)), Map.of(), logger);
+
+        assertEquals(1, failed);
+        verify(tableClient, times(WeeklyAggregateService.MAX_MERGE_ATTEMPTS)).getEntity("2025-W36", "IO|CP");
+        verify(logger).warning(contains("conflicting attempts"));
+    }
+
+    @Test
+    void shouldInvalidateWeekWhenChangesCannotBeMerged() {
+        when(tableClient.getEntity("2025-W36", WeeklyAggregateEntity.MARKER_ROW_KEY))
+                .thenReturn(WeeklyAggregateEntity.createMarker("2025-W36", WINDOW_START));
+        when(tableClient.getEntity("2025-W36", "IO|CP")).thenThrow(new RuntimeException("unavailable"));
+
+        int failed = weeklyAggregates.merge(List.of(hourlyRow("pspX", 3)), Map.of(), logger);
+
+        assertEquals(1, failed);
+        verify(tableClient).upsertEntityWithResponse(
+                argThat(
+                        marker -> WeeklyAggregateEntity.MARKER_ROW_KEY.equals(marker.getRowKey())
+                                && "2025-W36".equals(marker.getPartitionKey())
+                                && WeeklyAggregateEntity.isInvalidated(marker)
+                ),
+                eq(TableEntityUpdateMode.MERGE),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void shouldInvalidateWeeksOfRows() {
+        boolean invalidated = weeklyAggregates
+                .invalidate(List.of(hourlyRow("pspX", 3), hourlyRow("pspY", 1)), logger);
+
+        assertTrue(invalidated);
+        verify(tableClient, times(1)).upsertEntityWithResponse(
+                argThat(marker -> "2025-W36".equals(marker.getPartitionKey())),
+                eq(TableEntityUpdateMode.MERGE),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void shouldLoadWeekAggregatedSinceMonday() {
+        LocalDate monday = LocalDate.of(2025, 9, 1);
+        PagedIterable<TableEntity> rows = page(
+                WeeklyAggregateEntity.createMarker("2025-W36", monday.atStartOfDay().atOffset(ZoneOffset.UTC)),
+                weeklyRow(42)
+        );
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(rows);
+
+        Optional<List<AggregatedStatusGroup>> week = weeklyAggregates.load(monday);
+
+        assertTrue(week.isPresent());
+        assertEquals(1, week.get().size());
+        assertEquals(42, week.get().get(0).getTotal());
+        verify(tableClient).listEntities(
+                argThat(query -> "PartitionKey eq '2025-W36'".equals(query.getFilter())),
+                isNull(),
+                isNull()
+        );
+    }
+
+    @Test
+    void shouldNotLoadInvalidatedWeek() {
+        LocalDate monday = LocalDate.of(2025, 9, 1);
+        TableEntity marker = WeeklyAggregateEntity
+                .createMarker("2025-W36", monday.atStartOfDay().atOffset(ZoneOffset.UTC))
+                .addProperty(WeeklyAggregateEntity.INVALIDATED, true);
+        PagedIterable<TableEntity> rows = page(marker, weeklyRow(42));
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(rows);
+
+        assertTrue(weeklyAggregates.load(monday).isEmpty());
+    }
+
+    @Test
+    void shouldNotLoadWeekAggregatedSinceMidweek() {
+        PagedIterable<TableEntity> rows = page(WeeklyAggregateEntity.createMarker("2025-W36", WINDOW_START), weeklyRow(42));
+        when(tableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(rows);
+
+        assertTrue(weeklyAggregates.load(LocalDate.of(2025, 9, 1)).isEmpty());
+    }
+}
@@ -1,16 +1,45 @@
 package it.pagopa.ecommerce.reporting.services;
 
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.rest.PagedIterable;
 import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import com.azure.data.tables.models.TableTransactionFailedException;
+import com.fasterxml.jackson.core.JsonFactory;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import it.pagopa.ecommerce.reporting.utils.StatusVector;
+import it.pagopa.ecommerce.reporting.utils.StorageLayout;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class WriteDataServiceTest {
@@ -26,9 +55,7 @@ class WriteDataServiceTest {
         writeDataService = new WriteDataService(mockTableClient);
     }
 
-    @Test
-    void testWriteStateMetricsInTableStorage_shouldInsertEntity() throws Exception {
-        // Given
+    private static StatusVector statusVector() throws Exception {
         String jsonInput = """
                 {
                     "clientId": "CHECKOUT",
@@ -55,58 +82,365 @@ class WriteDataServiceTest {
                     "NOTIFICATION_REQUESTED": 0
                 }
                 """;
+        return StatusVector.readFrom(new JsonFactory().createParser(jsonInput));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode = objectMapper.readTree(jsonInput);
+    private static List<TableEntity> entities(
+                                              LocalDate date,
+                                              int count
+    ) throws Exception {
+        StatusVector statusVector = statusVector();
+        OffsetDateTime windowStart = date.atTime(10, 0).atOffset(ZoneOffset.UTC);
+        List<TableEntity> entities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entities.add(StateMetricEntity.createEntity(windowStart, "CHECKOUT", "PT1", "psp" + i, statusVector));
+        }
+        return entities;
+    }
+
+    @Test
+    void testWriteStateMetricsInTableStorage_shouldSubmitOneTransactionPerGroup() throws Exception {
+        // Given
+        List<TableEntity> entities = new ArrayList<>(entities(LocalDate.of(2025, 4, 22), 150));
+        entities.addAll(entities(LocalDate.of(2025, 4, 23), 10));
+        List<Integer> transactionSizes = new ArrayList<>();
+        doAnswer(invocation -> {
+            transactionSizes.add(invocation.<List<TableTransactionAction>>getArgument(0).size());
+            return null;
+        }).when(mockTableClient).submitTransaction(anyList());
 
         // When
-        writeDataService.writeStateMetricsInTableStorage(jsonNode, mockLogger, "clientId", "paymentTypeCode", "pspId");
+        int written = writeDataService.writeStateMetricsInTableStorage(entities, mockLogger);
 
         // Then
-        verify(mockTableClient, times(1)).createEntity(any(TableEntity.class));
-        verify(mockLogger).info(contains("Successfully inserted state metrics"));
+        assertEquals(160, written);
+        assertEquals(List.of(100, 50, 10), transactionSizes);
+        verify(mockTableClient, never())
+                .upsertEntityWithResponse(any(TableEntity.class), eq(TableEntityUpdateMode.REPLACE), isNull(), isNull());
+        verify(mockLogger).info(any(Supplier.class));
     }
 
     @Test
-    void testWriteStateMetricsInTableStorage_shouldLogErrorOnFailure() throws Exception {
+    void testWriteStateMetricsInTableStorage_shouldRetryOnlyRejectedAction() throws Exception {
         // Given
-        String jsonInput = """
-                {
-                    "clientId": "IO",
-                    "pspId": "pspY",
-                    "paymentTypeCode": "PT2",
-                    "ACTIVATED": 12,
-                    "CLOSED": 45,
-                    "NOTIFIED_OK": 20,
-                    "EXPIRED": 0,
-                    "REFUNDED": 0,
-                    "CANCELED": 0,
-                    "EXPIRED_NOT_AUTHORIZED": 0,
-                    "UNAUTHORIZED": 0,
-                    "REFUND_ERROR": 0,
-                    "REFUND_REQUESTED": 0,
-                    "CANCELLATION_REQUESTED": 0,
-                    "CANCELLATION_EXPIRED": 0,
-                    "AUTHORIZATION_REQUESTED": 0,
-                    "AUTHORIZATION_COMPLETED": 0,
-                    "CLOSURE_REQUESTED": 0,
-                    "CLOSURE_ERROR": 0,
-                    "NOTIFIED_KO": 0,
-                    "NOTIFICATION_ERROR": 0,
-                    "NOTIFICATION_REQUESTED": 0
-                }
-                """;
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 3);
+        List<Integer> transactionSizes = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<TableTransactionAction> actions = invocation.getArgument(0);
+            transactionSizes.add(actions.size());
+            if (transactionSizes.size() == 1) {
+                TableTransactionFailedException exception = mock(TableTransactionFailedException.class);
+                when(exception.getFailedTransactionAction()).thenReturn(actions.get(1));
+                throw exception;
+            }
+            return null;
+        }).when(mockTableClient).submitTransaction(anyList());
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        JsonNode jsonNode = objectMapper.readTree(jsonInput);
+        // When
+        int written = writeDataService.writeStateMetricsInTableStorage(entities, mockLogger);
 
+        // Then
+        assertEquals(3, written);
+        assertEquals(List.of(3, 2), transactionSizes);
+        verify(mockTableClient, times(1))
+                .upsertEntityWithResponse(any(TableEntity.class), eq(TableEntityUpdateMode.REPLACE), isNull(), isNull());
+    }
+
+    @Test
+    void testWriteStateMetricsInTableStorage_shouldLogErrorOnFailure() throws Exception {
+        // Given
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 2);
+        doThrow(new RuntimeException("Simulated failure"))
+                .when(mockTableClient).submitTransaction(anyList());
         doThrow(new RuntimeException("Simulated failure"))
-                .when(mockTableClient).createEntity(any(TableEntity.class));
+                .when(mockTableClient)
+                .upsertEntityWithResponse(any(TableEntity.class), eq(TableEntityUpdateMode.REPLACE), isNull(), isNull());
+
+        // When
+        int written = writeDataService.writeStateMetricsInTableStorage(entities, mockLogger);
+
+        // Then
+        assertEquals(0, written);
+        verify(mockTableClient, times(3)).submitTransaction(anyList());
+        verify(mockTableClient, times(2))
+                .upsertEntityWithResponse(any(TableEntity.class), eq(TableEntityUpdateMode.REPLACE), isNull(), isNull());
+        verify(mockLogger, atLeastOnce()).warning(contains("Failed to write state metrics"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetricsInTableStorage_shouldMergeWrittenEntitiesIntoWeeklyAggregates() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService weeklyWriteDataService = new WriteDataService(mockTableClient, weeklyAggregates);
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 3);
+        TableEntity stored = StateMetricEntity.createEntity(
+                LocalDate.of(2025, 4, 22).atTime(10, 0).atOffset(ZoneOffset.UTC),
+                "CHECKOUT",
+                "PT1",
+                "psp0",
+                new StatusVector()
+        );
+        stored.addProperty("NOTIFIED_OK", 7);
+        PagedIterable<TableEntity> storedRows = mock(PagedIterable.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TableEntity>>getArgument(0).accept(stored);
+            return null;
+        }).when(storedRows).forEach(any());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(storedRows);
+        ArgumentCaptor<List<TableTransactionAction>> transaction = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Map<String, TableEntity>> previous = ArgumentCaptor.forClass(Map.class);
+
+        // When
+        int written = weeklyWriteDataService.writeStateMetricsInTableStorage(entities, mockLogger);
+
+        // Then
+        assertEquals(3, written);
+        verify(mockTableClient).submitTransaction(transaction.capture());
+        // the stored row is replaced only if unchanged since it was read, the others only created
+        List<TableTransactionAction> actions = transaction.getValue();
+        assertEquals(TableTransactionActionType.UPDATE_REPLACE, actions.get(0).getActionType());
+        assertTrue(actions.get(0).getIfUnchanged());
+        assertEquals(20, actions.get(0).getEntity().getProperty("NOTIFIED_OK"));
+        assertEquals(TableTransactionActionType.CREATE, actions.get(1).getActionType());
+        assertEquals(TableTransactionActionType.CREATE, actions.get(2).getActionType());
+        // all the entities share the client and window, so they are read with one query
+        verify(mockTableClient).listEntities(
+                argThat(
+                        query -> query.getFilter().equals(
+                                "PartitionKey eq '2025-04-22' and RowKey ge 'CHECKOUT|2025-04-22T10|'"
+                                        + " and RowKey lt 'CHECKOUT|2025-04-22T10}'"
+                        )
+                ),
+                isNull(),
+                isNull()
+        );
+        verify(weeklyAggregates).merge(eq(entities), previous.capture(), eq(mockLogger));
+        assertEquals(Set.of(entities.get(0).getRowKey()), previous.getValue().keySet());
+        assertEquals(7L, previous.getValue().get(entities.get(0).getRowKey()).getProperty("NOTIFIED_OK"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetricsInTableStorage_shouldReadRowAgainWhenChangedSinceRead() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService weeklyWriteDataService = new WriteDataService(mockTableClient, weeklyAggregates);
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 1);
+        PagedIterable<TableEntity> storedRows = mock(PagedIterable.class);
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(storedRows);
+        // the row is created by another writer after the window has been read
+        doAnswer(invocation -> {
+            TableTransactionFailedException exception = mock(TableTransactionFailedException.class);
+            when(exception.getFailedTransactionAction())
+                    .thenReturn(invocation.<List<TableTransactionAction>>getArgument(0).get(0));
+            throw exception;
+        }).when(mockTableClient).submitTransaction(anyList());
+        TableEntity concurrent = StateMetricEntity.createEntity(
+                LocalDate.of(2025, 4, 22).atTime(10, 0).atOffset(ZoneOffset.UTC),
+                "CHECKOUT",
+                "PT1",
+                "psp0",
+                new StatusVector()
+        );
+        concurrent.addProperty("NOTIFIED_OK", 5);
+        when(mockTableClient.getEntity("2025-04-22", entities.get(0).getRowKey())).thenReturn(concurrent);
+        ArgumentCaptor<Map<String, TableEntity>> previous = ArgumentCaptor.forClass(Map.class);
+
+        // When
+        int written = weeklyWriteDataService.writeStateMetricsInTableStorage(entities, mockLogger);
+
+        // Then
+        assertEquals(1, written);
+        verify(mockTableClient).updateEntityWithResponse(
+                argThat(row -> row == concurrent && Integer.valueOf(20).equals(row.getProperty("NOTIFIED_OK"))),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
+        verify(mockTableClient, never())
+                .upsertEntityWithResponse(any(TableEntity.class), any(), any(), any());
+        // only the change from the counts of the other writer is merged
+        verify(weeklyAggregates).merge(eq(entities), previous.capture(), eq(mockLogger));
+        assertEquals(5L, previous.getValue().get(entities.get(0).getRowKey()).getProperty("NOTIFIED_OK"));
+    }
+
+    @Test
+    void testWriteStateMetricsInTableStorage_shouldInvalidateWeeksWhenStoredRowsCannotBeRead() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService weeklyWriteDataService = new WriteDataService(mockTableClient, weeklyAggregates);
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull()))
+                .thenThrow(new RuntimeException("unavailable"));
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 2);
+
+        // When
+        int written = weeklyWriteDataService.writeStateMetricsInTableStorage(entities, mockLogger);
+
+        // Then
+        assertEquals(2, written);
+        verify(weeklyAggregates, never()).merge(anyList(), anyMap(), any());
+        verify(weeklyAggregates).invalidate(entities, mockLogger);
+        verify(mockLogger).warning(contains("weekly aggregates invalidated"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetricsInTableStorage_shouldInvalidateWeeksWhenMergeFails() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService weeklyWriteDataService = new WriteDataService(
+                mockTableClient,
+                weeklyAggregates,
+                StorageLayout.WIDE
+        );
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 1);
+        PagedIterable<TableEntity> window = mock(PagedIterable.class);
+        when(window.iterator()).thenAnswer(invocation -> List.<TableEntity>of().iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(window);
+        when(weeklyAggregates.merge(anyList(), anyMap(), any())).thenThrow(new RuntimeException("unexpected"));
+
+        // When
+        weeklyWriteDataService.writeStateMetricsInTableStorage(entities, mockLogger);
+
+        // Then
+        verify(weeklyAggregates).invalidate(entities, mockLogger);
+    }
+
+    @Test
+    void testWriteStateMetrics_shouldMergeButNotWriteEmptyEntities() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService weeklyWriteDataService = new WriteDataService(mockTableClient, weeklyAggregates);
+        TableEntity empty = StateMetricEntity.createEntity(
+                LocalDate.of(2025, 4, 21).atStartOfDay().atOffset(ZoneOffset.UTC),
+                "CHECKOUT",
+                "PT1",
+                "pspX",
+                new StatusVector()
+        );
+
+        // When
+        List<TableEntity> written = weeklyWriteDataService.writeStateMetrics(List.of(), List.of(empty), mockLogger);
+
+        // Then
+        assertEquals(List.of(), written);
+        verify(mockTableClient, never()).submitTransaction(anyList());
+        verify(weeklyAggregates).merge(eq(List.of(empty)), eq(Map.of()), eq(mockLogger));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetrics_shouldWriteWideRowThenDeleteFoldedNarrowRows() throws Exception {
+        // Given
+        WeeklyAggregateService weeklyAggregates = mock(WeeklyAggregateService.class);
+        WriteDataService wideWriteDataService = new WriteDataService(
+                mockTableClient,
+                weeklyAggregates,
+                StorageLayout.WIDE
+        );
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 2);
+        // narrow rows stored before the layout was switched, more than a transaction holds
+        List<TableEntity> narrow = entities(LocalDate.of(2025, 4, 22), 150);
+        PagedIterable<TableEntity> window = mock(PagedIterable.class);
+        when(window.iterator()).thenAnswer(invocation -> narrow.iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(window);
+        ArgumentCaptor<TableEntity> created = ArgumentCaptor.forClass(TableEntity.class);
+        List<List<TableTransactionAction>> transactions = new ArrayList<>();
+        doAnswer(invocation -> transactions.add(invocation.getArgument(0)))
+                .when(mockTableClient).submitTransaction(anyList());
+
+        // When
+        List<TableEntity> written = wideWriteDataService.writeStateMetrics(entities, List.of(), mockLogger);
+
+        // Then
+        assertEquals(entities, written);
+        InOrder inOrder = inOrder(mockTableClient);
+        inOrder.verify(mockTableClient).createEntity(created.capture());
+        inOrder.verify(mockTableClient, times(2)).submitTransaction(anyList());
+        TableEntity wide = created.getValue();
+        assertEquals("CHECKOUT|2025-04-22T10|", wide.getRowKey());
+        List<TableEntity> rows = new ArrayList<>();
+        StateMetricEntity.forEachRow(wide, rows::add);
+        assertEquals(150, rows.size());
+        assertEquals(List.of(100, 50), transactions.stream().map(List::size).toList());
+        assertTrue(
+                transactions.stream()
+                        .flatMap(List::stream)
+                        .allMatch(
+                                action -> action.getActionType() == TableTransactionActionType.DELETE
+                                        && action.getIfUnchanged()
+                        )
+        );
+        Map<String, TableEntity> previous = new HashMap<>();
+        narrow.forEach(row -> previous.put(row.getRowKey(), row));
+        verify(weeklyAggregates).merge(eq(entities), eq(previous), eq(mockLogger));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetrics_shouldKeepWideRowWhenFoldedNarrowRowsCannotBeDeleted() throws Exception {
+        // Given
+        WriteDataService wideWriteDataService = new WriteDataService(mockTableClient, null, StorageLayout.WIDE);
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 1);
+        List<TableEntity> narrow = entities(LocalDate.of(2025, 4, 22), 2);
+        PagedIterable<TableEntity> window = mock(PagedIterable.class);
+        when(window.iterator()).thenAnswer(invocation -> narrow.iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(window);
+        doThrow(new RuntimeException("unavailable")).when(mockTableClient).submitTransaction(anyList());
+        TableServiceException preconditionFailed = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(412);
+        when(preconditionFailed.getResponse()).thenReturn(response);
+        doThrow(preconditionFailed).when(mockTableClient).deleteEntityWithResponse(any(), eq(true), isNull(), isNull());
+
+        // When
+        List<TableEntity> written = wideWriteDataService.writeStateMetrics(entities, List.of(), mockLogger);
+
+        // Then
+        assertEquals(entities, written);
+        verify(mockTableClient).createEntity(any());
+        verify(mockTableClient, times(2)).deleteEntityWithResponse(any(), eq(true), isNull(), isNull());
+        verify(mockLogger).warning(contains("Failed to delete 2 narrow rows folded into the wide row"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteStateMetrics_shouldReadWideRowAgainOnConcurrentWrite() throws Exception {
+        // Given
+        WriteDataService wideWriteDataService = new WriteDataService(mockTableClient, null, StorageLayout.WIDE);
+        List<TableEntity> entities = entities(LocalDate.of(2025, 4, 22), 1);
+        TableEntity stored = StateMetricEntity.createWideEntity(
+                LocalDate.of(2025, 4, 22).atTime(10, 0).atOffset(ZoneOffset.UTC),
+                "CHECKOUT"
+        );
+        StateMetricEntity.setRows(stored, entities(LocalDate.of(2025, 4, 22), 2));
+        PagedIterable<TableEntity> window = mock(PagedIterable.class);
+        when(window.iterator()).thenAnswer(invocation -> List.of(stored).iterator());
+        when(mockTableClient.listEntities(any(ListEntitiesOptions.class), isNull(), isNull())).thenReturn(window);
+        TableServiceException preconditionFailed = mock(TableServiceException.class);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(412);
+        when(preconditionFailed.getResponse()).thenReturn(response);
+        ArgumentCaptor<TableEntity> updated = ArgumentCaptor.forClass(TableEntity.class);
+        doThrow(preconditionFailed).doReturn(null).when(mockTableClient).updateEntityWithResponse(
+                updated.capture(),
+                eq(TableEntityUpdateMode.REPLACE),
+                eq(true),
+                isNull(),
+                isNull()
+        );
 
         // When
-        writeDataService.writeStateMetricsInTableStorage(jsonNode, mockLogger, any(), any(), any());
+        List<TableEntity> written = wideWriteDataService.writeStateMetrics(entities, List.of(), mockLogger);
 
         // Then
-        verify(mockLogger).warning(contains("Failed to write state metrics to Azure Table Storage"));
+        assertEquals(entities, written);
+        verify(mockTableClient, times(2)).listEntities(any(ListEntitiesOptions.class), isNull(), isNull());
+        List<TableEntity> rows = new ArrayList<>();
+        StateMetricEntity.forEachRow(updated.getValue(), rows::add);
+        assertEquals(2, rows.size());
+        verify(mockTableClient, never()).submitTransaction(anyList());
     }
 }
@@ -0,0 +1,47 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvWriterTest {
+
+    @Test
+    void shouldWriteRowsWithCrlfLineEndings() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvWriter csv = new CsvWriter(output);
+
+        csv.writeRow(List.of("clientId", "NOTIFIED_OK"));
+        csv.writeRow(Arrays.asList("IO", 3L));
+        csv.writeRow(Arrays.asList("CHECKOUT", null));
+        csv.flush();
+
+        assertEquals("clientId,NOTIFIED_OK\r\nIO,3\r\nCHECKOUT,\r\n", output.toString(StandardCharsets.UTF_8));
+        assertEquals(3, csv.getRows());
+    }
+
+    @Test
+    void shouldQuoteValuesWithSpecialCharacters() {
+        assertEquals("plain", CsvWriter.escape("plain"));
+        assertEquals("\"a,b\"", CsvWriter.escape("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", CsvWriter.escape("say \"hi\""));
+        assertEquals("\"two\nlines\"", CsvWriter.escape("two\nlines"));
+    }
+
+    @Test
+    void shouldEncodeAsUtf8() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvWriter csv = new CsvWriter(output);
+
+        csv.writeRow(List.of("citt\u00e0"));
+        csv.flush();
+
+        assertArrayEquals("citt\u00e0\r\n".getBytes(StandardCharsets.UTF_8), output.toByteArray());
+    }
+}
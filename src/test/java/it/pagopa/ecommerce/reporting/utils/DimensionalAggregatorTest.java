@@ -0,0 +1,186 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.azure.data.tables.models.TableEntity;
+import it.pagopa.ecommerce.reporting.entity.StateMetricEntity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DimensionalAggregatorTest {
+
+    private static TableEntity hourlyRow(
+                                         String day,
+                                         int hour,
+                                         String clientId,
+                                         String paymentTypeCode,
+                                         String pspId,
+                                         String status,
+                                         int count
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf(status), count);
+        return StateMetricEntity.createEntity(
+                LocalDate.parse(day).atTime(hour, 0).atOffset(ZoneOffset.UTC),
+                clientId,
+                paymentTypeCode,
+                pspId,
+                statusVector
+        );
+    }
+
+    @Test
+    void shouldComputeSeveralGroupingsInOneScan() {
+        Grouping weekly = Grouping.of("weekly", AggregationDimension.ISO_WEEK);
+        DimensionalAggregator aggregator = new DimensionalAggregator(
+                List.of(Grouping.CLIENT_PAYMENT_TYPE, Grouping.PSP, Grouping.HOURLY_HEATMAP, weekly)
+        );
+
+        aggregator.add(hourlyRow("2025-09-01", 10, "IO", "CP", "pspX", "NOTIFIED_OK", 3));
+        aggregator.add(hourlyRow("2025-09-01", 11, "IO", "CP", "pspY", "EXPIRED", 2));
+        aggregator.add(hourlyRow("2025-09-07", 23, "CHECKOUT", "CP", "pspX", "NOTIFIED_OK", 5));
+        aggregator.add(hourlyRow("2025-09-08", 0, "CHECKOUT", "CP", "pspX", "ACTIVATED", 0));
+
+        Map<Grouping, List<DimensionalGroup>> results = aggregator.results();
+
+        List<DimensionalGroup> byClient = sorted(results.get(Grouping.CLIENT_PAYMENT_TYPE), AggregationDimension.CLIENT);
+        assertEquals(2, byClient.size());
+        assertEquals("CHECKOUT", byClient.get(0).getCounts().getClientId());
+        assertEquals(5, byClient.get(0).getCounts().getTotal());
+        assertEquals("CP", byClient.get(1).getCounts().getPaymentTypeCode());
+        assertEquals(3, byClient.get(1).getCounts().getCategoryCount(StatusCategory.OK));
+        assertEquals(2, byClient.get(1).getCounts().getCategoryCount(StatusCategory.TO_BE_ANALYZED));
+        assertNull(byClient.get(1).getCounts().getPspId());
+
+        List<DimensionalGroup> byPsp = sorted(results.get(Grouping.PSP), AggregationDimension.PSP);
+        assertEquals(2, byPsp.size());
+        assertEquals("pspX", byPsp.get(0).get(AggregationDimension.PSP));
+        assertEquals(8, byPsp.get(0).getCounts().getTotal());
+
+        List<DimensionalGroup> heatmap = results.get(Grouping.HOURLY_HEATMAP);
+        assertEquals(3, heatmap.size());
+        assertTrue(
+                heatmap.stream()
+                        .anyMatch(
+                                group -> "23".equals(group.get(AggregationDimension.HOUR_OF_DAY))
+                                        && "2025-09-07".equals(group.getCounts().getDate())
+                        )
+        );
+        // hours without transactions have no cell
+        assertTrue(heatmap.stream().noneMatch(group -> "2025-09-08".equals(group.getCounts().getDate())));
+
+        // rows without counts are skipped, so the following week has no group
+        List<DimensionalGroup> weeks = results.get(weekly);
+        assertEquals(1, weeks.size());
+        assertEquals("2025-W36", weeks.get(0).get(AggregationDimension.ISO_WEEK));
+        assertEquals(10, weeks.get(0).getCounts().getTotal());
+    }
+
+    @Test
+    void shouldMergePartialsSharingDictionaries() {
+        DimensionalAggregator root = new DimensionalAggregator(List.of(Grouping.PSP));
+        DimensionalAggregator first = root.newPartial();
+        DimensionalAggregator second = root.newPartial();
+        first.add(hourlyRow("2025-09-01", 10, "IO", "CP", "pspX", "NOTIFIED_OK", 3));
+        second.add(hourlyRow("2025-09-02", 10, "IO", "PPAL", "pspY", "NOTIFIED_OK", 1));
+        second.add(hourlyRow("2025-09-02", 11, "IO", "CP", "pspX", "NOTIFIED_OK", 4));
+
+        List<DimensionalGroup> groups = sorted(first.merge(second).results().get(Grouping.PSP), AggregationDimension.PSP);
+
+        assertEquals(2, groups.size());
+        assertEquals(7, groups.get(0).getCounts().getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        assertEquals("PPAL", groups.get(1).get(AggregationDimension.PAYMENT_TYPE));
+    }
+
+    @Test
+    void shouldSelectOnlyThePropertiesOfTheDimensions() {
+        List<String> projection = DimensionalAggregator.projection(List.of(Grouping.HOURLY_HEATMAP));
+
+        assertEquals(List.of("clientId", "PartitionKey", "RowKey"), projection.subList(0, 3));
+        assertFalse(projection.contains("pspId"));
+        assertTrue(projection.containsAll(StatusStorageFields.values));
+    }
+
+    @Test
+    void shouldRejectRepeatedDimensions() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Grouping.of("repeated", AggregationDimension.CLIENT, AggregationDimension.CLIENT)
+        );
+        // every dimension together still fits a packed key
+        assertEquals(6, Grouping.of("all", AggregationDimension.values()).dimensions().size());
+    }
+
+    @Test
+    void shouldParseGroupingFromDimensionNames() {
+        Grouping grouping = Grouping.parse("Client, payment_type");
+
+        assertEquals("client,payment_type", grouping.name());
+        assertEquals(List.of(AggregationDimension.CLIENT, AggregationDimension.PAYMENT_TYPE), grouping.dimensions());
+        assertThrows(IllegalArgumentException.class, () -> Grouping.parse("client,merchant"));
+        assertThrows(IllegalArgumentException.class, () -> Grouping.parse("psp,psp"));
+        assertThrows(IllegalArgumentException.class, () -> Grouping.parse(" , "));
+    }
+
+    @Test
+    void shouldAddRestoredGroupsToScannedRows() {
+        DimensionalAggregator aggregator = new DimensionalAggregator(List.of(Grouping.CLIENT_PAYMENT_TYPE));
+        long[] counts = new long[StatusStorageFields.size()];
+        counts[StatusStorageFields.indexOf("NOTIFIED_OK")] = 5;
+
+        aggregator.add(
+                Grouping.CLIENT_PAYMENT_TYPE,
+                Map.of(AggregationDimension.CLIENT, "IO", AggregationDimension.PAYMENT_TYPE, "CP"),
+                counts
+        );
+        aggregator.add(hourlyRow("2025-09-01", 10, "IO", "CP", "pspX", "NOTIFIED_OK", 2));
+
+        List<DimensionalGroup> groups = aggregator.results().get(Grouping.CLIENT_PAYMENT_TYPE);
+        assertEquals(1, groups.size());
+        assertEquals(7, groups.get(0).getCounts().getCategoryCount(StatusCategory.OK));
+        assertThrows(IllegalArgumentException.class, () -> aggregator.add(Grouping.PSP, Map.of(), counts));
+    }
+
+    @Test
+    void shouldGroupLegacyRowsWithoutAnHour() {
+        DimensionalAggregator aggregator = new DimensionalAggregator(List.of(Grouping.HOURLY_HEATMAP));
+
+        aggregator.add(
+                new TableEntity("2025-09-01", "0f8fad5b-d9cb-469f-a165-70867728950e")
+                        .addProperty("NOTIFIED_OK", 2)
+        );
+        aggregator.add(new TableEntity("2025-09-01", "IO|2025-09-01|CP|pspX").addProperty("NOTIFIED_OK", 1));
+
+        List<DimensionalGroup> heatmap = aggregator.results().get(Grouping.HOURLY_HEATMAP);
+        assertEquals(1, heatmap.size());
+        assertEquals(AggregationDimension.NO_HOUR, heatmap.get(0).get(AggregationDimension.HOUR_OF_DAY));
+        assertEquals(3, heatmap.get(0).getCounts().getTotal());
+    }
+
+    @Test
+    void shouldRejectTooManyDistinctValues() {
+        DimensionalAggregator aggregator = new DimensionalAggregator(
+                List.of(Grouping.of("hour", AggregationDimension.HOUR_OF_DAY, AggregationDimension.PAYMENT_TYPE))
+        );
+        for (int i = 0; i < 1 << AggregationDimension.PAYMENT_TYPE.getBits(); i++) {
+            aggregator.add(hourlyRow("2025-09-01", 10, "IO", "PT" + i, "pspX", "NOTIFIED_OK", 1));
+        }
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> aggregator.add(hourlyRow("2025-09-01", 10, "IO", "PT-overflow", "pspX", "NOTIFIED_OK", 1))
+        );
+    }
+
+    private static List<DimensionalGroup> sorted(
+                                                 List<DimensionalGroup> groups,
+                                                 AggregationDimension dimension
+    ) {
+        return groups.stream().sorted(Comparator.comparing(group -> group.get(dimension))).toList();
+    }
+}
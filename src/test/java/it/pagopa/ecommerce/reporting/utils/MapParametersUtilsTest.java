@@ -60,4 +60,25 @@ public class MapParametersUtilsTest {
         assertEquals("Misconfigured paymentMethod keys. Missing keys: [PAY_2]", val.getLeft().getMessage());
     }
 
+    @Test
+    public void parsePositiveIntegerShouldReturnDefaultForMissingValue() {
+        Either<JobConfigurationException, Integer> val = MapParametersUtils.parsePositiveInteger(null, 4);
+        assertTrue(val.isRight());
+        assertEquals(4, val.get());
+    }
+
+    @Test
+    public void parsePositiveIntegerShouldReturnEitherRight() {
+        Either<JobConfigurationException, Integer> val = MapParametersUtils.parsePositiveInteger("8", 4);
+        assertTrue(val.isRight());
+        assertEquals(8, val.get());
+    }
+
+    @Test
+    public void parsePositiveIntegerShouldReturnEitherLeftForInvalidValue() {
+        assertTrue(MapParametersUtils.parsePositiveInteger("abc", 4).isLeft());
+        assertTrue(MapParametersUtils.parsePositiveInteger("0", 4).isLeft());
+        assertTrue(MapParametersUtils.parsePositiveInteger("-2", 4).isLeft());
+    }
+
 }
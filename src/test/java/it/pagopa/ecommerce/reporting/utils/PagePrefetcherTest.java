@@ -0,0 +1,140 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagePrefetcherTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = WorkerPool.createPrefetchExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static Iterable<Integer> counting(
+                                              int size,
+                                              AtomicInteger produced
+    ) {
+        return () -> new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Integer next() {
+                produced.incrementAndGet();
+                return next++;
+            }
+        };
+    }
+
+    @Test
+    void shouldHandOverElementsInOrderByChunk() {
+        PagePrefetcher prefetcher = new PagePrefetcher(3, 2, executor);
+        List<List<Integer>> chunks = new ArrayList<>();
+
+        prefetcher.forEachChunk(IntStream.range(0, 10).boxed().toList(), chunks::add);
+
+        assertEquals(List.of(List.of(0, 1, 2), List.of(3, 4, 5), List.of(6, 7, 8), List.of(9)), chunks);
+    }
+
+    @Test
+    void shouldReadAheadAtMostPrefetchDepthChunks() {
+        PagePrefetcher prefetcher = new PagePrefetcher(10, 2, executor);
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+
+        prefetcher.forEachChunk(counting(200, produced), chunk -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            consumed.addAndGet(chunk.size());
+            maxAhead.accumulateAndGet(produced.get() - consumed.get(), Math::max);
+        });
+
+        assertEquals(200, consumed.get());
+        // the queued chunks plus the one being filled by the producer
+        assertTrue(maxAhead.get() <= 30, "read ahead " + maxAhead.get());
+    }
+
+    @Test
+    void shouldRethrowFailuresOfTheSource() {
+        PagePrefetcher prefetcher = new PagePrefetcher(3, 2, executor);
+        Iterable<Integer> failing = () -> new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                throw new IllegalStateException("page not available");
+            }
+
+            @Override
+            public Integer next() {
+                return 0;
+            }
+        };
+
+        IllegalStateException exception = assertThrows(
+                IllegalStateException.class,
+                () -> prefetcher.forEachChunk(failing, chunk -> {
+                })
+        );
+        assertEquals("page not available", exception.getMessage());
+    }
+
+    @Test
+    void shouldStopTheProducerWhenTheConsumerFails() throws InterruptedException {
+        PagePrefetcher prefetcher = new PagePrefetcher(1, 1, executor);
+        AtomicInteger produced = new AtomicInteger();
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> prefetcher.forEachChunk(counting(Integer.MAX_VALUE, produced), chunk -> {
+                    throw new IllegalArgumentException("stop");
+                })
+        );
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(produced.get() < 10);
+    }
+
+    @Test
+    void shouldConsumeFromForkJoinWorkers() throws Exception {
+        PagePrefetcher prefetcher = new PagePrefetcher(4, 1, executor);
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            int consumed = pool.submit(() -> {
+                AtomicInteger count = new AtomicInteger();
+                prefetcher.forEachChunk(IntStream.range(0, 50).boxed().toList(), chunk -> count.addAndGet(chunk.size()));
+                return count.get();
+            }).get(5, TimeUnit.SECONDS);
+
+            assertEquals(50, consumed);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
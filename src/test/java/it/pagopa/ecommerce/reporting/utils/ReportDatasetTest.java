@@ -0,0 +1,50 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportDatasetTest {
+
+    @Test
+    void shouldMergeGroupsByClientAndPaymentType() {
+        AggregatedStatusGroup monday = new AggregatedStatusGroup("2025-09-01", "IO", null, "CP");
+        monday.incrementStatus("NOTIFIED_OK", 3);
+        AggregatedStatusGroup tuesday = new AggregatedStatusGroup("2025-09-02", "IO", null, "CP");
+        tuesday.incrementStatus("UNAUTHORIZED", 2);
+        AggregatedStatusGroup other = new AggregatedStatusGroup(null, "CHECKOUT", null, "CP");
+        other.incrementStatus("NOTIFIED_OK", 1);
+
+        ReportDataset dataset = ReportDataset.fromGroups(List.of(monday, tuesday, other));
+
+        assertEquals(3, dataset.size());
+        assertEquals(List.of("IO", "CHECKOUT"), dataset.getClients());
+        List<AggregatedStatusGroup> groups = dataset.groupsOfClient("IO");
+        assertEquals(1, groups.size());
+        assertEquals(3, groups.get(0).getCategoryCount(StatusCategory.OK));
+        assertEquals(2, groups.get(0).getCategoryCount(StatusCategory.KO));
+        assertEquals("CP", groups.get(0).getPaymentTypeCode());
+        assertNull(groups.get(0).getDate());
+        assertEquals(2, dataset.getGroups().size());
+        // the loaded groups are left untouched
+        assertEquals(3, monday.getTotal());
+    }
+
+    @Test
+    void shouldLeaveOutGroupsWithoutCounts() {
+        AggregatedStatusGroup empty = new AggregatedStatusGroup(null, "IO", null, "CP");
+        AggregatedStatusGroup counted = new AggregatedStatusGroup(null, "IO", null, "PPAL");
+        counted.incrementStatus("EXPIRED", 4);
+
+        ReportDataset dataset = ReportDataset.fromGroups(List.of(empty, counted));
+
+        assertEquals(2, dataset.size());
+        assertEquals(
+                List.of("PPAL"),
+                dataset.groupsOfClient("IO").stream().map(AggregatedStatusGroup::getPaymentTypeCode).toList()
+        );
+        assertEquals(List.of(), dataset.groupsOfClient("CHECKOUT"));
+    }
+}
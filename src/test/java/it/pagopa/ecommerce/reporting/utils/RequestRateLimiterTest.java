@@ -0,0 +1,35 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestRateLimiterTest {
+
+    @Test
+    void shouldGrantFirstSlotImmediately() {
+        RequestRateLimiter rateLimiter = new RequestRateLimiter(10);
+
+        assertEquals(0L, rateLimiter.reserve());
+    }
+
+    @Test
+    void shouldSpreadSlotsEvenly() {
+        RequestRateLimiter rateLimiter = new RequestRateLimiter(10);
+        long interval = TimeUnit.MILLISECONDS.toNanos(100);
+
+        rateLimiter.reserve();
+        long secondDelay = rateLimiter.reserve();
+        long thirdDelay = rateLimiter.reserve();
+
+        assertTrue(secondDelay > 0 && secondDelay <= interval);
+        assertTrue(thirdDelay > interval && thirdDelay <= 2 * interval);
+    }
+
+    @Test
+    void shouldRejectNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new RequestRateLimiter(0));
+    }
+}
@@ -43,28 +43,25 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientA",
                 "pspX",
-                "PPAL",
-                List.of("OK", "KO")
+                "PPAL"
         );
         group1.incrementStatus("ACTIVATED", 5);
-        group1.incrementStatus("FAILED", 2);
+        group1.incrementStatus("UNAUTHORIZED", 2);
 
         AggregatedStatusGroup group2 = new AggregatedStatusGroup(
                 "2025-09-16",
                 "clientA",
                 "pspY",
-                "CP",
-                List.of("OK", "KO")
+                "CP"
         );
         group2.incrementStatus("ACTIVATED", 10);
-        group2.incrementStatus("KO", 1);
+        group2.incrementCategory(StatusCategory.KO, 1);
 
         AggregatedStatusGroup group3 = new AggregatedStatusGroup(
                 "2025-09-16",
                 "clientB",
                 "pspZ",
-                "APPL",
-                List.of("OK", "KO")
+                "APPL"
         );
         group3.incrementStatus("ACTIVATED", 7);
 
@@ -90,8 +87,7 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientB",
                 "pspX",
-                "CP",
-                List.of("OK")
+                "CP"
         );
         group.incrementStatus("ACTIVATED", 3);
 
@@ -112,8 +108,7 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2023-01-01",
                 "client1",
                 "psp1",
-                "CP",
-                Arrays.asList("ACTIVATED", "NOTIFIED_OK")
+                "CP"
         );
         group1.incrementStatus("ACTIVATED", 50);
 
@@ -121,8 +116,7 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2023-01-01",
                 "client2",
                 "psp2",
-                "PPAL",
-                Arrays.asList("NOTIFIED_OK")
+                "PPAL"
         );
         group2.incrementStatus("NOTIFIED_OK", 100);
 
@@ -213,8 +207,7 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2023-01-01",
                 "client1",
                 "psp1",
-                "CP",
-                Arrays.asList("ACTIVATED", "NOTIFIED_OK")
+                "CP"
         );
 
         // When
@@ -223,26 +216,46 @@ class SlackDateRangeReportMessageUtilsTest {
         group.incrementStatus("NOTIFIED_OK", 7);
 
         // Then
-        assertEquals(15, group.getStatusCounts().get("ACTIVATED"));
-        assertEquals(7, group.getStatusCounts().get("NOTIFIED_OK"));
+        assertEquals(15, group.getStatusCount(StatusStorageFields.indexOf("ACTIVATED")));
+        assertEquals(7, group.getStatusCount(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        assertEquals(15, group.getCategoryCount(StatusCategory.IN_PROGRESS));
+        assertEquals(7, group.getCategoryCount(StatusCategory.OK));
+        assertEquals(22, group.getTotal());
     }
 
     @Test
-    void shouldHandleNonInitializedStatus() {
+    void shouldRejectUnknownStatus() {
         // Given
         AggregatedStatusGroup group = new AggregatedStatusGroup(
                 "2023-01-01",
                 "client1",
                 "psp1",
-                "CP",
-                Arrays.asList("ACTIVATED")
+                "CP"
         );
 
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> group.incrementStatus("FAILED", 10));
+        assertTrue(group.isEmpty());
+    }
+
+    @Test
+    void shouldMergeStatusAndCategoryCounts() {
+        // Given
+        AggregatedStatusGroup group = new AggregatedStatusGroup(null, "client1", null, "CP");
+        group.incrementStatus("CANCELED", 2);
+        AggregatedStatusGroup other = new AggregatedStatusGroup(null, "client1", null, "CP");
+        other.incrementStatus("CANCELED", 3);
+        other.incrementStatus("REFUND_ERROR", 1);
+
         // When
-        group.incrementStatus("NOTIFIED_OK", 10); // Not in initial list
+        group.merge(other);
 
         // Then
-        assertEquals(10, group.getStatusCounts().get("NOTIFIED_OK"));
+        assertEquals(5, group.getStatusCount(StatusStorageFields.indexOf("CANCELED")));
+        assertEquals(
+                Map.of(StatusCategory.ABANDONED, 5L, StatusCategory.TO_BE_ANALYZED, 1L),
+                group.getCategoryCounts()
+        );
     }
 
     @Test
@@ -252,8 +265,7 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2023-01-01",
                 "client1",
                 "psp1",
-                "CP",
-                Arrays.asList("ACTIVATED", "NOTIFIED_OK")
+                "CP"
         );
         group.incrementStatus("ACTIVATED", 100);
         group.incrementStatus("NOTIFIED_OK", 80);
@@ -272,23 +284,21 @@ class SlackDateRangeReportMessageUtilsTest {
 
     @Test
     void shouldInitializeStatusCountsWithZeros() {
-        // Given
-        List<String> statusFields = Arrays.asList("ACTIVATED", "NOTIFIED_OK", "EXPIRED");
-
         // When
         AggregatedStatusGroup group = new AggregatedStatusGroup(
                 "2023-01-01",
                 "client1",
                 "psp1",
-                "CP",
-                statusFields
+                "CP"
         );
 
         // Then
-        assertEquals(0, group.getStatusCounts().get("ACTIVATED"));
-        assertEquals(0, group.getStatusCounts().get("NOTIFIED_OK"));
-        assertEquals(0, group.getStatusCounts().get("EXPIRED"));
-        assertEquals(3, group.getStatusCounts().size());
+        for (int i = 0; i < StatusStorageFields.size(); i++) {
+            assertEquals(0, group.getStatusCount(i));
+        }
+        assertEquals(0, group.getTotal());
+        assertTrue(group.isEmpty());
+        assertTrue(group.getCategoryCounts().isEmpty());
     }
 
     @Test
@@ -346,16 +356,14 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientA",
                 "pspX",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                "CP"
         );
 
         AggregatedStatusGroup group2 = new AggregatedStatusGroup(
                 "2025-09-16",
                 "clientB",
                 "pspY",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                "CP"
         );
 
         List<AggregatedStatusGroup> groups = Arrays.asList(group1, group2);
@@ -387,15 +395,13 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientA",
                 "pspX",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                "CP"
         );
         AggregatedStatusGroup group2 = new AggregatedStatusGroup(
                 "2025-09-16",
                 "clientB",
                 "pspY",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                "CP"
         );
 
         List<AggregatedStatusGroup> groups = List.of(group1, group2);
@@ -423,6 +429,85 @@ class SlackDateRangeReportMessageUtilsTest {
         verify(mockLogger).info("Created {} Slack messages", 1);
     }
 
+    @Test
+    void shouldCreateAggregatedTableWeeklyReportFromDataset() throws JsonProcessingException {
+        // Given
+        LocalDate startDate = LocalDate.of(2025, 9, 15);
+        LocalDate endDate = LocalDate.of(2025, 9, 21);
+        AggregatedStatusGroup monday = new AggregatedStatusGroup("2025-09-15", "clientA", null, "CP");
+        monday.incrementStatus("NOTIFIED_OK", 1);
+        AggregatedStatusGroup tuesday = new AggregatedStatusGroup("2025-09-16", "clientA", null, "CP");
+        tuesday.incrementStatus("EXPIRED", 1);
+        AggregatedStatusGroup otherPaymentType = new AggregatedStatusGroup("2025-09-16", "clientA", null, "PPAL");
+        otherPaymentType.incrementStatus("NOTIFIED_OK", 1);
+        AggregatedStatusGroup otherClient = new AggregatedStatusGroup("2025-09-16", "clientB", null, "CP");
+        otherClient.incrementStatus("NOTIFIED_OK", 1);
+        ReportDataset dataset = ReportDataset.fromGroups(List.of(monday, tuesday, otherPaymentType, otherClient));
+
+        // When
+        String[] messages = SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
+                dataset,
+                startDate,
+                endDate,
+                mockLogger,
+                "clientA"
+        );
+
+        // Then the days of each payment type are merged into a single row
+        assertEquals(1, messages.length);
+        JsonNode table = OBJECT_MAPPER.readTree(messages[0]).get("blocks").get(1);
+        assertEquals("table", table.get("type").asText());
+        assertEquals(3, table.get("rows").size(), "Expected 1 header row + 1 row per payment type");
+        assertTrue(table.get("rows").get(1).toString().contains("CP"), "CP comes first");
+    }
+
+    @Test
+    void shouldShowChangesAgainstThePreviousPeriod() throws JsonProcessingException {
+        // Given
+        AggregatedStatusGroup current = new AggregatedStatusGroup("2025-09-16", "clientA", null, "CP");
+        current.incrementStatus("NOTIFIED_OK", 3);
+        current.incrementStatus("UNAUTHORIZED", 1);
+        AggregatedStatusGroup previous = new AggregatedStatusGroup(null, "clientA", null, "CP");
+        previous.incrementStatus("NOTIFIED_OK", 1);
+        previous.incrementStatus("UNAUTHORIZED", 1);
+        AggregatedStatusGroup withoutPrevious = new AggregatedStatusGroup("2025-09-16", "clientA", null, "PPAL");
+        withoutPrevious.incrementStatus("NOTIFIED_OK", 1);
+
+        // When
+        String[] messages = SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
+                ReportDataset.fromGroups(List.of(current, withoutPrevious)),
+                ReportDataset.fromGroups(List.of(previous)),
+                LocalDate.of(2025, 9, 15),
+                LocalDate.of(2025, 9, 21),
+                mockLogger,
+                "clientA"
+        );
+
+        // Then OK goes from 50% to 75% and KO from 50% to 25%
+        JsonNode rows = OBJECT_MAPPER.readTree(messages[0]).get("blocks").get(1).get("rows");
+        String cpRow = rows.get(1).toString();
+        assertTrue(cpRow.contains("75,000% (3) +25,000 pp"), cpRow);
+        assertTrue(cpRow.contains("25,000% (1) -25,000 pp"), cpRow);
+        assertTrue(cpRow.contains("0,000% (0) +0,000 pp"), cpRow);
+        assertFalse(rows.get(2).toString().contains(" pp"), "No change without a previous group");
+    }
+
+    @Test
+    void shouldCreateEmptyReportFromEmptyDataset() throws JsonProcessingException {
+        // When
+        String[] messages = SlackDateRangeReportMessageUtils.createAggregatedTableWeeklyReport(
+                ReportDataset.fromGroups(List.of()),
+                LocalDate.of(2025, 9, 15),
+                LocalDate.of(2025, 9, 21),
+                mockLogger,
+                "clientA"
+        );
+
+        // Then
+        assertEquals(1, messages.length);
+        verify(mockLogger).info("No aggregated groups to report");
+    }
+
     @Test
     void shouldCreateInitialBlock() throws JsonProcessingException {
         // given
@@ -451,11 +536,10 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientA",
                 "pspX",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO")
+                "CP"
         );
-        // IN CORSO and DA ANALIZZARE are null (not initialized)
-        group.incrementStatus("OK", 10);
+        // IN CORSO and DA ANALIZZARE have no counts
+        group.incrementCategory(StatusCategory.OK, 10);
 
         // when -> we use reflection to access private createDataRow method
         Method method = SlackDateRangeReportMessageUtils.class
@@ -464,7 +548,7 @@ class SlackDateRangeReportMessageUtilsTest {
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> cells = (List<Map<String, Object>>) method.invoke(null, group);
 
-        // then - should create cells without emoji for null counts
+        // then - should create cells without emoji for missing counts
         assertNotNull(cells);
         assertEquals(6, cells.size());
     }
@@ -476,12 +560,11 @@ class SlackDateRangeReportMessageUtilsTest {
                 "2025-09-16",
                 "clientA",
                 "pspX",
-                "CP",
-                List.of("OK", "KO", "ABBANDONATO", "IN CORSO", "DA ANALIZZARE")
+                "CP"
         );
         // IN CORSO and DA ANALIZZARE are 0
-        group.incrementStatus("OK", 10);
-        group.incrementStatus("KO", 5);
+        group.incrementCategory(StatusCategory.OK, 10);
+        group.incrementCategory(StatusCategory.KO, 5);
 
         // when - use reflection to access private createDataRow method
         Method method = SlackDateRangeReportMessageUtils.class
@@ -493,6 +576,9 @@ class SlackDateRangeReportMessageUtilsTest {
         // then - should create cells without emoji for zero counts
         assertNotNull(cells);
         assertEquals(6, cells.size());
+        assertTrue(OBJECT_MAPPER.writeValueAsString(cells.get(1)).contains("66,667% (10)"));
+        assertTrue(OBJECT_MAPPER.writeValueAsString(cells.get(2)).contains("33,333% (5)"));
+        assertTrue(OBJECT_MAPPER.writeValueAsString(cells.get(4)).contains("0,000% (0)"));
     }
 
     @Test
@@ -561,14 +647,14 @@ class SlackDateRangeReportMessageUtilsTest {
     }
 
     @Test
-    void shouldFormatPercentCountWithNullCount() throws Exception {
+    void shouldFormatPercentCountWithZeroCount() throws Exception {
         // given
-        Integer count = null;
-        int total = 100;
+        long count = 0;
+        long total = 100;
 
         // when - use reflection to access private formatPercentCount method
         Method method = SlackDateRangeReportMessageUtils.class
-                .getDeclaredMethod("formatPercentCount", Integer.class, int.class);
+                .getDeclaredMethod("formatPercentCount", long.class, long.class);
         method.setAccessible(true);
         String result = (String) method.invoke(null, count, total);
 
@@ -579,12 +665,12 @@ class SlackDateRangeReportMessageUtilsTest {
     @Test
     void shouldFormatPercentCountWithZeroTotal() throws Exception {
         // given
-        Integer count = 10;
-        int total = 0;
+        long count = 10;
+        long total = 0;
 
         // when - use reflection to access private formatPercentCount method
         Method method = SlackDateRangeReportMessageUtils.class
-                .getDeclaredMethod("formatPercentCount", Integer.class, int.class);
+                .getDeclaredMethod("formatPercentCount", long.class, long.class);
         method.setAccessible(true);
         String result = (String) method.invoke(null, count, total);
 
@@ -595,12 +681,12 @@ class SlackDateRangeReportMessageUtilsTest {
     @Test
     void shouldFormatPercentCountWithValidValues() throws Exception {
         // given
-        Integer count = 25;
-        int total = 100;
+        long count = 25;
+        long total = 100;
 
         // when - use reflection to access private formatPercentCount method
         Method method = SlackDateRangeReportMessageUtils.class
-                .getDeclaredMethod("formatPercentCount", Integer.class, int.class);
+                .getDeclaredMethod("formatPercentCount", long.class, long.class);
         method.setAccessible(true);
         String result = (String) method.invoke(null, count, total);
 
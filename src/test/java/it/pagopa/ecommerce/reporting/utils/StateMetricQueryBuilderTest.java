@@ -0,0 +1,84 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.azure.data.tables.models.ListEntitiesOptions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateMetricQueryBuilderTest {
+
+    private static final LocalDate START = LocalDate.of(2025, 9, 1);
+
+    @Test
+    void shouldBuildSingleRangeQueryWithProjection() {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(START, START.plusDays(6)).build();
+
+        assertEquals(1, queries.size());
+        assertEquals("PartitionKey ge '2025-09-01' and PartitionKey le '2025-09-07'", queries.get(0).getFilter());
+        assertEquals(StateMetricQueryBuilder.PROJECTION, queries.get(0).getSelect());
+        assertEquals(StateMetricQueryBuilder.MAX_PAGE_SIZE, queries.get(0).getTop());
+    }
+
+    @Test
+    void shouldProjectOnlyAggregatedColumns() {
+        List<String> projection = StateMetricQueryBuilder.PROJECTION;
+
+        assertEquals(StatusStorageFields.size() + 2, projection.size());
+        assertTrue(projection.containsAll(List.of("clientId", "paymentTypeCode")));
+        assertTrue(projection.containsAll(StatusStorageFields.values));
+        assertFalse(projection.contains("pspId"));
+        assertFalse(projection.contains("createdAt"));
+    }
+
+    @Test
+    void shouldAlsoProjectWideRowProperties() {
+        List<String> select = StateMetricQueryBuilder.forDateRange(START, START)
+                .layout(StorageLayout.WIDE)
+                .build()
+                .get(0)
+                .getSelect();
+
+        assertTrue(select.containsAll(StateMetricQueryBuilder.PROJECTION));
+        assertTrue(select.containsAll(List.of("PartitionKey", "RowKey", "vectors")));
+    }
+
+    @Test
+    void shouldSplitRangeIntoContiguousSubRanges() {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(START, START.plusDays(6))
+                .subRanges(3)
+                .build();
+
+        assertEquals(3, queries.size());
+        assertEquals("PartitionKey ge '2025-09-01' and PartitionKey le '2025-09-03'", queries.get(0).getFilter());
+        assertEquals("PartitionKey ge '2025-09-04' and PartitionKey le '2025-09-05'", queries.get(1).getFilter());
+        assertEquals("PartitionKey ge '2025-09-06' and PartitionKey le '2025-09-07'", queries.get(2).getFilter());
+    }
+
+    @Test
+    void shouldNotSplitBeyondSingleDays() {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(START, START.plusDays(1))
+                .subRanges(8)
+                .build();
+
+        assertEquals(2, queries.size());
+        assertEquals("PartitionKey ge '2025-09-02' and PartitionKey le '2025-09-02'", queries.get(1).getFilter());
+    }
+
+    @Test
+    void shouldCapPageSize() {
+        List<ListEntitiesOptions> queries = StateMetricQueryBuilder.forDateRange(START, START)
+                .pageSize(5000)
+                .build();
+
+        assertEquals(StateMetricQueryBuilder.MAX_PAGE_SIZE, queries.get(0).getTop());
+        assertEquals(200, StateMetricQueryBuilder.forDateRange(START, START).pageSize(200).build().get(0).getTop());
+    }
+
+    @Test
+    void shouldBuildNoQueryForInvertedRange() {
+        assertTrue(StateMetricQueryBuilder.forDateRange(START, START.minusDays(1)).subRanges(4).build().isEmpty());
+    }
+}
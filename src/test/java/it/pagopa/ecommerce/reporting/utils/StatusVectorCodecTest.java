@@ -0,0 +1,63 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusVectorCodecTest {
+
+    private static StatusVector vector(
+                                       String status,
+                                       long count
+    ) {
+        StatusVector statusVector = new StatusVector();
+        statusVector.set(StatusStorageFields.indexOf(status), count);
+        return statusVector;
+    }
+
+    @Test
+    void shouldRoundTripCellsSharingTheDictionary() {
+        StatusVector zeros = vector("EXPIRED", 0);
+        zeros.set(StatusStorageFields.indexOf("NOTIFIED_OK"), 0);
+        List<StatusVectorCodec.Cell> cells = List.of(
+                new StatusVectorCodec.Cell("CP", "pspX", vector("NOTIFIED_OK", 3)),
+                new StatusVectorCodec.Cell("CP", "pspY", vector("ACTIVATED", 300_000)),
+                new StatusVectorCodec.Cell("PPAL", "pspX", zeros),
+                new StatusVectorCodec.Cell("PPAL", "pspZ", new StatusVector())
+        );
+
+        byte[] packed = StatusVectorCodec.encode(cells);
+
+        assertEquals(StatusVectorCodec.VERSION_1, packed[0]);
+        assertEquals(cells, StatusVectorCodec.decode(packed));
+    }
+
+    @Test
+    void shouldEncodeSmallCountsInSingleBytes() {
+        byte[] one = StatusVectorCodec.encode(List.of(new StatusVectorCodec.Cell("CP", "psp", vector("CLOSED", 1))));
+        byte[] many = StatusVectorCodec
+                .encode(List.of(new StatusVectorCodec.Cell("CP", "psp", vector("CLOSED", 127))));
+        byte[] more = StatusVectorCodec
+                .encode(List.of(new StatusVectorCodec.Cell("CP", "psp", vector("CLOSED", 128))));
+
+        assertEquals(one.length, many.length);
+        assertEquals(one.length + 1, more.length);
+    }
+
+    @Test
+    void shouldRejectUnknownVersionsAndMalformedContent() {
+        byte[] packed = StatusVectorCodec.encode(List.of(new StatusVectorCodec.Cell("CP", "psp", vector("CLOSED", 1))));
+        byte[] unknownVersion = packed.clone();
+        unknownVersion[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> StatusVectorCodec.decode(unknownVersion));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> StatusVectorCodec.decode(Arrays.copyOf(packed, packed.length - 1))
+        );
+        assertThrows(IllegalArgumentException.class, () -> StatusVectorCodec.decode(new byte[0]));
+    }
+}
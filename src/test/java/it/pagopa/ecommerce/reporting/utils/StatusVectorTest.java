@@ -0,0 +1,69 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatusVectorTest {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static StatusVector parse(String json) throws IOException {
+        return StatusVector.readFrom(
+                JSON_FACTORY.createParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))
+        );
+    }
+
+    @Test
+    void shouldReadKnownStatusesAndSkipOtherFields() throws IOException {
+        StatusVector statusVector = parse(
+                "{\"clientId\":\"IO\",\"ACTIVATED\":12,\"nested\":{\"CLOSED\":99},\"list\":[1,2],\"CLOSED\":45,\"NOTIFIED_KO\":3}"
+        );
+
+        assertEquals(12, statusVector.get(StatusStorageFields.indexOf("ACTIVATED")));
+        assertEquals(45, statusVector.get(StatusStorageFields.indexOf("CLOSED")));
+        assertFalse(statusVector.isPresent(StatusStorageFields.indexOf("NOTIFIED_OK")));
+        assertEquals("{ACTIVATED=12, CLOSED=45}", statusVector.toString());
+    }
+
+    @Test
+    void shouldIgnoreNonIntegerValues() throws IOException {
+        StatusVector statusVector = parse("{\"ACTIVATED\":\"12\",\"CLOSED\":1.5,\"EXPIRED\":null}");
+
+        assertTrue(statusVector.isEmpty());
+    }
+
+    @Test
+    void shouldKeepZeroCountsAsPresent() throws IOException {
+        StatusVector statusVector = parse("{\"EXPIRED\":0}");
+
+        assertFalse(statusVector.isEmpty());
+        assertTrue(statusVector.isPresent(StatusStorageFields.indexOf("EXPIRED")));
+        assertEquals(0, statusVector.get(StatusStorageFields.indexOf("EXPIRED")));
+    }
+
+    @Test
+    void shouldRejectNonObjectContent() {
+        assertThrows(IOException.class, () -> parse("[1,2,3]"));
+        assertThrows(IOException.class, () -> parse("invalid-json"));
+    }
+
+    @Test
+    void shouldCompareByContent() throws IOException {
+        assertEquals(parse("{\"CLOSED\":1,\"ACTIVATED\":2}"), parse("{\"ACTIVATED\":2,\"CLOSED\":1}"));
+        assertNotEquals(parse("{\"CLOSED\":0}"), parse("{}"));
+    }
+
+    @Test
+    void shouldResolveStatusIndexes() {
+        assertEquals(0, StatusStorageFields.indexOf("ACTIVATED"));
+        assertEquals(StatusStorageFields.size() - 1, StatusStorageFields.indexOf("CLOSURE_ERROR"));
+        assertEquals(-1, StatusStorageFields.indexOf("UNKNOWN"));
+        assertEquals(-1, StatusStorageFields.indexOf(null));
+    }
+}
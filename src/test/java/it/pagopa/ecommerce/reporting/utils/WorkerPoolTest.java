@@ -0,0 +1,106 @@
+package it.pagopa.ecommerce.reporting.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junitpioneer.jupiter.SetEnvironmentVariable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerPoolTest {
+
+    private ScheduledExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = WorkerPool.createExecutor(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldSummarizeDoneAndFailedWorkItems() {
+        List<Future<Boolean>> workItems = List.of(
+                executor.submit(() -> true),
+                executor.submit(() -> false),
+                executor.submit(() -> {
+                    throw new IllegalStateException("boom");
+                })
+        );
+
+        RunSummary summary = WorkerPool.awaitAll("test", workItems, Duration.ofSeconds(5));
+
+        assertEquals(3, summary.submitted());
+        assertEquals(1, summary.done());
+        assertEquals(2, summary.failed());
+        assertEquals(0, summary.timedOut());
+        assertFalse(summary.isSuccessful());
+    }
+
+    @Test
+    void shouldCancelWorkItemsStillPendingAtDeadline() {
+        CountDownLatch neverReleased = new CountDownLatch(1);
+        Future<Boolean> slowWorkItem = executor.submit(() -> neverReleased.await(1, TimeUnit.MINUTES));
+        Future<Boolean> delayedWorkItem = executor.schedule(() -> true, 1, TimeUnit.MINUTES);
+
+        RunSummary summary = WorkerPool
+                .awaitAll("test", List.of(slowWorkItem, delayedWorkItem), Duration.ofMillis(200));
+
+        assertEquals(2, summary.timedOut());
+        assertEquals(0, summary.done());
+        assertTrue(slowWorkItem.isCancelled());
+        assertTrue(delayedWorkItem.isCancelled());
+    }
+
+    @Test
+    void shouldMoveLateFailuresFromDoneToFailed() {
+        RunSummary summary = new RunSummary("test", 4, 3, 1, 0, Duration.ZERO);
+
+        RunSummary updated = summary.withFailures(2);
+
+        assertEquals(1, updated.done());
+        assertEquals(3, updated.failed());
+        assertEquals(summary, summary.withFailures(0));
+        assertEquals(0, summary.withFailures(10).done());
+    }
+
+    @Test
+    void shouldCreateAggregationPoolWithGivenParallelism() throws Exception {
+        ForkJoinPool pool = WorkerPool.createAggregationPool(3);
+        try {
+            assertEquals(3, pool.getParallelism());
+            String threadName = pool.submit(() -> Thread.currentThread().getName()).get();
+            assertTrue(threadName.startsWith("reporting-aggregation-"));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertSame(WorkerPool.getAggregationPool(), WorkerPool.getAggregationPool());
+    }
+
+    @Test
+    void shouldShareTheSameExecutor() {
+        assertSame(WorkerPool.getExecutor(), WorkerPool.getExecutor());
+    }
+
+    @Test
+    @SetEnvironmentVariable(key = "ECOMMERCE_RUN_DEADLINE_SECONDS", value = "30")
+    void shouldReadRunDeadlineFromEnvironment() {
+        assertEquals(Duration.ofSeconds(30), WorkerPool.getRunDeadline());
+    }
+
+    @Test
+    void shouldUseDefaultRunDeadline() {
+        assertEquals(Duration.ofSeconds(240), WorkerPool.getRunDeadline());
+    }
+}